@@ -24,6 +24,10 @@ import java.lang.annotation.Target;
 import org.apache.ibatis.cache.Cache;
 import org.apache.ibatis.cache.decorators.LruCache;
 import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.apache.ibatis.cache.serializer.CacheSerializer;
+import org.apache.ibatis.mapping.CacheCopyStrategy;
+import org.apache.ibatis.cache.weigher.EstimatedSizeWeigher;
+import org.apache.ibatis.cache.weigher.Weigher;
 
 /**
  * The annotation that specify to use cache on namespace(e.g. mapper interface).
@@ -92,6 +96,94 @@ public @interface CacheNamespace {
    */
   boolean blocking() default false;
 
+  /**
+   * Returns the maximum total weight of the cached entries, as computed by the {@link #weigher()}.
+   *
+   * @return the maximum weight, {@code 0} for no weight limit
+   * @since 3.5.12
+   */
+  long maxWeight() default 0;
+
+  /**
+   * Returns the weigher used when {@link #maxWeight()} is set.
+   *
+   * @return the weigher type
+   * @since 3.5.12
+   */
+  Class<? extends Weigher> weigher() default EstimatedSizeWeigher.class;
+
+  /**
+   * Returns the serializer used to copy the cached objects of a read/write cache.
+   *
+   * @return the serializer type, {@link CacheSerializer} to use the one of the configuration
+   * @since 3.5.12
+   */
+  Class<? extends CacheSerializer> serializer() default CacheSerializer.class;
+
+  /**
+   * Returns how a read/write cache copies the cached objects.
+   *
+   * @return the copy strategy
+   * @since 3.5.12
+   */
+  CacheCopyStrategy copyStrategy() default CacheCopyStrategy.SERIALIZE;
+
+  /**
+   * Returns the fraction of the {@link #flushInterval() flush interval} after which an entry that is read is reloaded
+   * in the background. When set, entries expire one by one after the flush interval instead of the whole cache being
+   * cleared.
+   *
+   * @return the refresh ahead fraction, between 0 and 1. Default is 0 (disabled)
+   * @since 3.5.12
+   */
+  double refreshAhead() default 0;
+
+  /**
+   * Returns how long an entry is kept after it was stored, in milliseconds. Setting it or
+   * {@link #expireAfterAccess()}, even to 0 (no limit), lets statements declare their own
+   * {@link Options#cacheTimeToLive() time to live}.
+   *
+   * @return the expire after write time. Default is -1 (not set)
+   * @since 3.5.12
+   */
+  long expireAfterWrite() default -1;
+
+  /**
+   * Returns how long an entry is kept after it was stored or last read, in milliseconds.
+   *
+   * @return the expire after access time. Default is -1 (not set)
+   * @since 3.5.12
+   */
+  long expireAfterAccess() default -1;
+
+  /**
+   * Returns how long the result of a query that returned no rows is kept, in milliseconds. It applies when the
+   * {@code shareEmptyResults} setting is enabled.
+   *
+   * @return the time to live of empty results. Default is -1 (not set)
+   * @since 3.5.12
+   */
+  long emptyResultTimeToLive() default -1;
+
+  /**
+   * Returns whether concurrent misses of the same key are coalesced into one query. The waiting threads read its
+   * result from the cache once the session that ran the query commits, so they never see uncommitted values; with the
+   * default timeout they wait for that whole transaction. It replaces {@link #blocking()}.
+   *
+   * @return {@code true} if the cache coalesces misses; {@code false} if otherwise
+   * @since 3.5.12
+   */
+  boolean singleFlight() default false;
+
+  /**
+   * Returns how long a coalesced miss waits for the query of another thread and the commit of its session before
+   * running its own query, in milliseconds.
+   *
+   * @return the timeout. Default is 0 (wait until the query ends)
+   * @since 3.5.12
+   */
+  long singleFlightTimeout() default 0;
+
   /**
    * Returns property values for a implementation object.
    *
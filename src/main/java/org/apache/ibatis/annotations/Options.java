@@ -66,6 +66,56 @@ public @interface Options {
    */
   boolean useCache() default true;
 
+  /**
+   * Returns whether the results stay in the session level cache after the query has completed.
+   *
+   * @return {@code true} if they stay; {@code false} if they are only cached while the query is running
+   * @since 3.5.12
+   */
+  boolean useLocalCache() default true;
+
+  /**
+   * Returns how long the results stay in the 2nd level cache, in milliseconds. It only applies when the cache has
+   * {@link CacheNamespace#expireAfterWrite() expiration} enabled.
+   *
+   * @return the time to live. Default is -1 (the one of the cache)
+   * @since 3.5.12
+   */
+  long cacheTimeToLive() default -1;
+
+  /**
+   * Returns the cache tags (usually table names) the statement reads, or writes when it flushes the cache. A writing
+   * statement with tags only invalidates the cached results read with any of its tags, in any namespace, instead of
+   * clearing its whole namespace cache.
+   *
+   * @return the comma separated cache tags. Default is none
+   * @since 3.5.12
+   */
+  String cacheTags() default "";
+
+  /**
+   * Returns the name of the parameter holding the ids a select looks up, usually the collection of a
+   * {@code WHERE id IN} list. When set, the rows are cached one by one by the {@code id} of the result map, and only
+   * the ids missing from the 2nd level cache are queried. The values of the other parameters are part of the key of
+   * each row, so they should be simple values with a proper {@code equals}.
+   * <p>
+   * The results are always returned in the order of the ids in the parameter, cached and queried rows alike; an
+   * {@code ORDER BY} of the select is not kept. Rows that can not be matched to one of the ids come last.
+   *
+   * @return the parameter name. Default is none (the whole result is cached)
+   * @since 3.5.12
+   */
+  String cacheRowsBy() default "";
+
+  /**
+   * Returns whether a select is run without parameter by {@link org.apache.ibatis.session.CacheWarmer} to fill the
+   * 2nd level cache before the application serves requests.
+   *
+   * @return {@code true} if the statement is part of the cache warm-up. Default is {@code false}
+   * @since 3.5.12
+   */
+  boolean warmUp() default false;
+
   /**
    * Returns the 2nd cache flush strategy.
    *
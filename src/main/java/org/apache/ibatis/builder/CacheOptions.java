@@ -0,0 +1,131 @@
+/*
+ *    Copyright 2009-2022 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.builder;
+
+import org.apache.ibatis.cache.serializer.CacheSerializer;
+import org.apache.ibatis.cache.weigher.Weigher;
+import org.apache.ibatis.mapping.CacheCopyStrategy;
+
+/**
+ * The settings of a second level cache beyond the classic ones (implementation, eviction, flush interval, size, read
+ * write and blocking), passed to {@link MapperBuilderAssistant#useNewCache}. Unset values keep the defaults of the
+ * {@link org.apache.ibatis.mapping.CacheBuilder}.
+ *
+ * @since 3.5.12
+ */
+public class CacheOptions {
+
+  private Long maxWeight;
+  private Class<? extends Weigher> weigherClass;
+  private Class<? extends CacheSerializer> serializerClass;
+  private CacheCopyStrategy copyStrategy;
+  private Double refreshAhead;
+  private Long expireAfterWrite;
+  private Long expireAfterAccess;
+  private Long emptyResultTimeToLive;
+  private boolean singleFlight;
+  private Long singleFlightTimeout;
+
+  public CacheOptions maxWeight(Long maxWeight) {
+    this.maxWeight = maxWeight;
+    return this;
+  }
+
+  public CacheOptions weigher(Class<? extends Weigher> weigherClass) {
+    this.weigherClass = weigherClass;
+    return this;
+  }
+
+  public CacheOptions serializer(Class<? extends CacheSerializer> serializerClass) {
+    this.serializerClass = serializerClass;
+    return this;
+  }
+
+  public CacheOptions copyStrategy(CacheCopyStrategy copyStrategy) {
+    this.copyStrategy = copyStrategy;
+    return this;
+  }
+
+  public CacheOptions refreshAhead(Double refreshAhead) {
+    this.refreshAhead = refreshAhead;
+    return this;
+  }
+
+  public CacheOptions expireAfterWrite(Long expireAfterWrite) {
+    this.expireAfterWrite = expireAfterWrite;
+    return this;
+  }
+
+  public CacheOptions expireAfterAccess(Long expireAfterAccess) {
+    this.expireAfterAccess = expireAfterAccess;
+    return this;
+  }
+
+  public CacheOptions emptyResultTimeToLive(Long emptyResultTimeToLive) {
+    this.emptyResultTimeToLive = emptyResultTimeToLive;
+    return this;
+  }
+
+  public CacheOptions singleFlight(boolean singleFlight) {
+    this.singleFlight = singleFlight;
+    return this;
+  }
+
+  public CacheOptions singleFlightTimeout(Long singleFlightTimeout) {
+    this.singleFlightTimeout = singleFlightTimeout;
+    return this;
+  }
+
+  public Long getMaxWeight() {
+    return maxWeight;
+  }
+
+  public Class<? extends Weigher> getWeigherClass() {
+    return weigherClass;
+  }
+
+  public Class<? extends CacheSerializer> getSerializerClass() {
+    return serializerClass;
+  }
+
+  public CacheCopyStrategy getCopyStrategy() {
+    return copyStrategy;
+  }
+
+  public Double getRefreshAhead() {
+    return refreshAhead;
+  }
+
+  public Long getExpireAfterWrite() {
+    return expireAfterWrite;
+  }
+
+  public Long getExpireAfterAccess() {
+    return expireAfterAccess;
+  }
+
+  public Long getEmptyResultTimeToLive() {
+    return emptyResultTimeToLive;
+  }
+
+  public boolean isSingleFlight() {
+    return singleFlight;
+  }
+
+  public Long getSingleFlightTimeout() {
+    return singleFlightTimeout;
+  }
+}
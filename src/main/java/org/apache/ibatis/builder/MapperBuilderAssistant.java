@@ -26,11 +26,17 @@ import java.util.Set;
 import java.util.StringTokenizer;
 
 import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.DeepCloner;
+import org.apache.ibatis.cache.ObjectGraphWalker;
 import org.apache.ibatis.cache.decorators.LruCache;
+import org.apache.ibatis.cache.impl.ConcurrentCache;
 import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.apache.ibatis.cache.metrics.CacheMetrics;
+import org.apache.ibatis.cache.serializer.CacheSerializer;
 import org.apache.ibatis.executor.ErrorContext;
 import org.apache.ibatis.executor.keygen.KeyGenerator;
 import org.apache.ibatis.mapping.CacheBuilder;
+import org.apache.ibatis.mapping.CacheCopyStrategy;
 import org.apache.ibatis.mapping.Discriminator;
 import org.apache.ibatis.mapping.MappedStatement;
 import org.apache.ibatis.mapping.ParameterMap;
@@ -128,21 +134,71 @@ public class MapperBuilderAssistant extends BaseBuilder {
                              boolean readWrite,
                              boolean blocking,
                              Properties props) {
+        return useNewCache(typeClass, evictionClass, flushInterval, size, readWrite, blocking, props, new CacheOptions());
+    }
+
+    public Cache useNewCache(Class<? extends Cache> typeClass,
+                             Class<? extends Cache> evictionClass,
+                             Long flushInterval,
+                             Integer size,
+                             boolean readWrite,
+                             boolean blocking,
+                             Properties props,
+                             CacheOptions options) {
+        Class<? extends CacheSerializer> serializerClass = options.getSerializerClass();
+        CacheMetrics metrics = configuration.getCacheMetricsFactory().newCacheMetrics(currentNamespace);
+        ObjectGraphWalker walker = new ObjectGraphWalker(configuration.getReflectorFactory());
         Cache cache = new CacheBuilder(currentNamespace)
                 .implementation(valueOrDefault(typeClass, PerpetualCache.class))
                 .addDecorator(valueOrDefault(evictionClass, LruCache.class))
                 .clearInterval(flushInterval)
+                .refreshAhead(options.getRefreshAhead())
+                .expireAfterWrite(options.getExpireAfterWrite())
+                .expireAfterAccess(options.getExpireAfterAccess())
+                .emptyResultTimeToLive(options.getEmptyResultTimeToLive())
                 .size(size)
                 .readWrite(readWrite)
                 .blocking(blocking)
+                .singleFlight(options.isSingleFlight())
+                .singleFlightTimeout(options.getSingleFlightTimeout())
+                .maxWeight(options.getMaxWeight())
+                .weigher(options.getWeigherClass())
+                .serializer(serializerClass == null ? configuration.getCacheSerializer() : newCacheSerializer(serializerClass))
+                .copyStrategy(options.getCopyStrategy())
+                .tagRegistry(configuration.getCacheTagRegistry())
+                .walker(walker)
+                .cloner(new DeepCloner(walker, configuration.getObjectFactory()))
+                .metrics(metrics)
                 .properties(props)
                 //构建
                 .build();
         configuration.addCache(cache);
+        configuration.addCacheMetrics(cache.getId(), metrics);
+        //可读写缓存的copyStrategy为ROWS时,CachingExecutor缓存原始行,命中时重新映射
+        if (readWrite && options.getCopyStrategy() == CacheCopyStrategy.ROWS) {
+            configuration.addRowCache(cache.getId());
+        }
+        //自定义的缓存实现不会包装RefreshAheadCache和TaggedCache(issue #352)
+        //查询时只有内置缓存才需要准备重新查询的loader,也只有内置缓存按cache tag失效
+        Class<? extends Cache> implementation = valueOrDefault(typeClass, PerpetualCache.class);
+        if (implementation == PerpetualCache.class || implementation == ConcurrentCache.class) {
+            configuration.addTaggedCache(cache.getId());
+            if (options.getRefreshAhead() != null) {
+                configuration.addRefreshAheadCache(cache.getId());
+            }
+        }
         currentCache = cache;
         return cache;
     }
 
+    private CacheSerializer newCacheSerializer(Class<? extends CacheSerializer> serializerClass) {
+        try {
+            return serializerClass.getDeclaredConstructor().newInstance();
+        } catch (Exception e) {
+            throw new BuilderException("Error creating cache serializer. Cause: " + e, e);
+        }
+    }
+
     public ParameterMap addParameterMap(String id, Class<?> parameterClass, List<ParameterMapping> parameterMappings) {
         id = applyCurrentNamespace(id, false);
         ParameterMap parameterMap = new ParameterMap.Builder(configuration, id, parameterClass, parameterMappings).build();
@@ -262,7 +318,8 @@ public class MapperBuilderAssistant extends BaseBuilder {
             String keyColumn,
             String databaseId,
             LanguageDriver lang,
-            String resultSets) {
+            String resultSets,
+            StatementCacheOptions cacheOptions) {
 
         if (unresolvedCacheRef) {
             throw new IncompleteElementException("Cache-ref not yet resolved");
@@ -287,6 +344,11 @@ public class MapperBuilderAssistant extends BaseBuilder {
                 .resultSetType(resultSetType)
                 .flushCacheRequired(valueOrDefault(flushCache, !isSelect))
                 .useCache(valueOrDefault(useCache, isSelect))
+                .useLocalCache(cacheOptions.isUseLocalCache())
+                .cacheTimeToLive(cacheOptions.getCacheTimeToLive())
+                .cacheTags(cacheOptions.getCacheTags())
+                .cacheRowsBy(cacheOptions.getCacheRowsBy())
+                .warmUp(cacheOptions.isWarmUp())
                 .cache(currentCache);
 
         ParameterMap statementParameterMap = getStatementParameterMap(parameterMap, parameterType, id);
@@ -295,10 +357,51 @@ public class MapperBuilderAssistant extends BaseBuilder {
         }
 
         MappedStatement statement = statementBuilder.build();
+        //声明了cacheTags的语句写数据时只让相关tag的二级缓存失效,而不是清空整个namespace的缓存
+        if (statement.getCacheTags() != null) {
+            configuration.getCacheTagRegistry().markInUse();
+        }
         configuration.addMappedStatement(statement);
         return statement;
     }
 
+    /**
+     * Backward compatibility signature 'addMappedStatement'.
+     *
+     * @param id             the id
+     * @param sqlSource      the sql source
+     * @param statementType  the statement type
+     * @param sqlCommandType the sql command type
+     * @param fetchSize      the fetch size
+     * @param timeout        the timeout
+     * @param parameterMap   the parameter map
+     * @param parameterType  the parameter type
+     * @param resultMap      the result map
+     * @param resultType     the result type
+     * @param resultSetType  the result set type
+     * @param flushCache     the flush cache
+     * @param useCache       the use cache
+     * @param resultOrdered  the result ordered
+     * @param keyGenerator   the key generator
+     * @param keyProperty    the key property
+     * @param keyColumn      the key column
+     * @param databaseId     the database id
+     * @param lang           the lang
+     * @param resultSets     the result sets
+     * @return the mapped statement
+     */
+    public MappedStatement addMappedStatement(String id, SqlSource sqlSource, StatementType statementType,
+                                              SqlCommandType sqlCommandType, Integer fetchSize, Integer timeout, String parameterMap, Class<?> parameterType,
+                                              String resultMap, Class<?> resultType, ResultSetType resultSetType, boolean flushCache, boolean useCache,
+                                              boolean resultOrdered, KeyGenerator keyGenerator, String keyProperty, String keyColumn, String databaseId,
+                                              LanguageDriver lang, String resultSets) {
+        return addMappedStatement(
+                id, sqlSource, statementType, sqlCommandType, fetchSize, timeout,
+                parameterMap, parameterType, resultMap, resultType, resultSetType,
+                flushCache, useCache, resultOrdered, keyGenerator, keyProperty,
+                keyColumn, databaseId, lang, resultSets, new StatementCacheOptions());
+    }
+
     /**
      * Backward compatibility signature 'addMappedStatement'.
      *
@@ -0,0 +1,76 @@
+/*
+ *    Copyright 2009-2022 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.builder;
+
+/**
+ * The cache settings of a mapped statement beyond {@code flushCache} and {@code useCache}, passed to
+ * {@link MapperBuilderAssistant#addMappedStatement}.
+ *
+ * @since 3.5.12
+ */
+public class StatementCacheOptions {
+
+  private boolean useLocalCache = true;
+  private Long cacheTimeToLive;
+  private String cacheTags;
+  private String cacheRowsBy;
+  private boolean warmUp;
+
+  public StatementCacheOptions useLocalCache(boolean useLocalCache) {
+    this.useLocalCache = useLocalCache;
+    return this;
+  }
+
+  public StatementCacheOptions cacheTimeToLive(Long cacheTimeToLive) {
+    this.cacheTimeToLive = cacheTimeToLive;
+    return this;
+  }
+
+  public StatementCacheOptions cacheTags(String cacheTags) {
+    this.cacheTags = cacheTags;
+    return this;
+  }
+
+  public StatementCacheOptions cacheRowsBy(String cacheRowsBy) {
+    this.cacheRowsBy = cacheRowsBy;
+    return this;
+  }
+
+  public StatementCacheOptions warmUp(boolean warmUp) {
+    this.warmUp = warmUp;
+    return this;
+  }
+
+  public boolean isUseLocalCache() {
+    return useLocalCache;
+  }
+
+  public Long getCacheTimeToLive() {
+    return cacheTimeToLive;
+  }
+
+  public String getCacheTags() {
+    return cacheTags;
+  }
+
+  public String getCacheRowsBy() {
+    return cacheRowsBy;
+  }
+
+  public boolean isWarmUp() {
+    return warmUp;
+  }
+}
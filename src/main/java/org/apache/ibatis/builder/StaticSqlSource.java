@@ -28,6 +28,7 @@ import org.apache.ibatis.session.Configuration;
 public class StaticSqlSource implements SqlSource {
 
   private final String sql;
+  private final long sqlFingerprint;
   private final List<ParameterMapping> parameterMappings;
   private final Configuration configuration;
 
@@ -37,13 +38,14 @@ public class StaticSqlSource implements SqlSource {
 
   public StaticSqlSource(Configuration configuration, String sql, List<ParameterMapping> parameterMappings) {
     this.sql = sql;
+    this.sqlFingerprint = BoundSql.fingerprint(sql);
     this.parameterMappings = parameterMappings;
     this.configuration = configuration;
   }
 
   @Override
   public BoundSql getBoundSql(Object parameterObject) {
-    return new BoundSql(configuration, sql, parameterMappings, parameterObject);
+    return new BoundSql(configuration, sql, sqlFingerprint, parameterMappings, parameterObject);
   }
 
 }
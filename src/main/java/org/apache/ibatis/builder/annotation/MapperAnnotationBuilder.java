@@ -61,10 +61,13 @@ import org.apache.ibatis.annotations.Update;
 import org.apache.ibatis.annotations.UpdateProvider;
 import org.apache.ibatis.binding.MapperMethod.ParamMap;
 import org.apache.ibatis.builder.BuilderException;
+import org.apache.ibatis.builder.CacheOptions;
 import org.apache.ibatis.builder.CacheRefResolver;
 import org.apache.ibatis.builder.IncompleteElementException;
 import org.apache.ibatis.builder.MapperBuilderAssistant;
+import org.apache.ibatis.builder.StatementCacheOptions;
 import org.apache.ibatis.builder.xml.XMLMapperBuilder;
+import org.apache.ibatis.cache.serializer.CacheSerializer;
 import org.apache.ibatis.cursor.Cursor;
 import org.apache.ibatis.executor.keygen.Jdbc3KeyGenerator;
 import org.apache.ibatis.executor.keygen.KeyGenerator;
@@ -204,8 +207,26 @@ public class MapperAnnotationBuilder {
         if (cacheDomain != null) {
             Integer size = cacheDomain.size() == 0 ? null : cacheDomain.size();
             Long flushInterval = cacheDomain.flushInterval() == 0 ? null : cacheDomain.flushInterval();
+            Long maxWeight = cacheDomain.maxWeight() == 0 ? null : cacheDomain.maxWeight();
+            Class<? extends CacheSerializer> serializer = cacheDomain.serializer() == CacheSerializer.class ? null : cacheDomain.serializer();
+            Double refreshAhead = cacheDomain.refreshAhead() == 0 ? null : cacheDomain.refreshAhead();
+            Long expireAfterWrite = cacheDomain.expireAfterWrite() < 0 ? null : cacheDomain.expireAfterWrite();
+            Long expireAfterAccess = cacheDomain.expireAfterAccess() < 0 ? null : cacheDomain.expireAfterAccess();
+            Long emptyResultTimeToLive = cacheDomain.emptyResultTimeToLive() < 0 ? null : cacheDomain.emptyResultTimeToLive();
+            Long singleFlightTimeout = cacheDomain.singleFlightTimeout() == 0 ? null : cacheDomain.singleFlightTimeout();
             Properties props = convertToProperties(cacheDomain.properties());
-            assistant.useNewCache(cacheDomain.implementation(), cacheDomain.eviction(), flushInterval, size, cacheDomain.readWrite(), cacheDomain.blocking(), props);
+            assistant.useNewCache(cacheDomain.implementation(), cacheDomain.eviction(), flushInterval, size, cacheDomain.readWrite(), cacheDomain.blocking(), props,
+                    new CacheOptions()
+                            .maxWeight(maxWeight)
+                            .weigher(cacheDomain.weigher())
+                            .serializer(serializer)
+                            .copyStrategy(cacheDomain.copyStrategy())
+                            .refreshAhead(refreshAhead)
+                            .expireAfterWrite(expireAfterWrite)
+                            .expireAfterAccess(expireAfterAccess)
+                            .emptyResultTimeToLive(emptyResultTimeToLive)
+                            .singleFlight(cacheDomain.singleFlight())
+                            .singleFlightTimeout(singleFlightTimeout));
         }
     }
 
@@ -360,6 +381,7 @@ public class MapperAnnotationBuilder {
                     boolean isSelect = sqlCommandType == SqlCommandType.SELECT;
                     boolean flushCache = !isSelect;
                     boolean useCache = isSelect;
+                    StatementCacheOptions cacheOptions = new StatementCacheOptions();
                     if (options != null) {
                         if (FlushCachePolicy.TRUE.equals(options.flushCache())) {
                             flushCache = true;
@@ -367,6 +389,11 @@ public class MapperAnnotationBuilder {
                             flushCache = false;
                         }
                         useCache = options.useCache();
+                        cacheOptions.useLocalCache(options.useLocalCache())
+                                .cacheTimeToLive(options.cacheTimeToLive() > -1 ? options.cacheTimeToLive() : null)
+                                .cacheTags(nullOrEmpty(options.cacheTags()))
+                                .cacheRowsBy(nullOrEmpty(options.cacheRowsBy()))
+                                .warmUp(options.warmUp());
                         fetchSize = options.fetchSize() > -1 || options.fetchSize() == Integer.MIN_VALUE ? options.fetchSize() : null; //issue #348
                         timeout = options.timeout() > -1 ? options.timeout() : null;
                         statementType = options.statementType();
@@ -409,7 +436,8 @@ public class MapperAnnotationBuilder {
                             statementAnnotation.getDatabaseId(),
                             languageDriver,
                             // ResultSets
-                            options != null ? nullOrEmpty(options.resultSets()) : null);
+                            options != null ? nullOrEmpty(options.resultSets()) : null,
+                            cacheOptions);
                 });
     }
 
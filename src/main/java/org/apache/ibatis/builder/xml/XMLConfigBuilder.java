@@ -23,6 +23,8 @@ import javax.sql.DataSource;
 
 import org.apache.ibatis.builder.BaseBuilder;
 import org.apache.ibatis.builder.BuilderException;
+import org.apache.ibatis.cache.metrics.CacheMetricsFactory;
+import org.apache.ibatis.cache.serializer.CacheSerializer;
 import org.apache.ibatis.datasource.DataSourceFactory;
 import org.apache.ibatis.executor.ErrorContext;
 import org.apache.ibatis.executor.loader.ProxyFactory;
@@ -214,12 +216,22 @@ public class XMLConfigBuilder extends BaseBuilder {
         //    protected Class<? extends VFS> vfsImpl;
         //    protected Class<?> defaultSqlProviderType;
         //    protected LocalCacheScope localCacheScope = LocalCacheScope.SESSION;
+        //    protected int localCacheSize;
+        //    protected long localCacheMaxRows;
+        //    protected boolean shareEmptyResults;
         //    protected JdbcType jdbcTypeForNull = JdbcType.OTHER;
         //    protected Set<String> lazyLoadTriggerMethods = new HashSet<>(Arrays.asList("equals", "clone", "hashCode", "toString"));
         //    protected Integer defaultStatementTimeout;
         //    protected Integer defaultFetchSize;
         //    protected ResultSetType defaultResultSetType;
         //    protected ExecutorType defaultExecutorType = ExecutorType.SIMPLE;
+        //    protected boolean batchReorderInserts;
+        //    protected int batchSize;
+        //    protected long batchMaxPendingBytes;
+        //    protected boolean batchRetainParameterObjects = true;
+        //    protected boolean batchPipelined;
+        //    protected int batchInsertRows;
+        //    protected int reuseStatementCacheSize;
         //    protected AutoMappingBehavior autoMappingBehavior = AutoMappingBehavior.PARTIAL;
         //    protected AutoMappingUnknownColumnBehavior autoMappingUnknownColumnBehavior = AutoMappingUnknownColumnBehavior.NONE;
 
@@ -418,18 +430,30 @@ public class XMLConfigBuilder extends BaseBuilder {
         configuration.setAutoMappingUnknownColumnBehavior(AutoMappingUnknownColumnBehavior.valueOf(props.getProperty("autoMappingUnknownColumnBehavior", "NONE")));
         configuration.setCacheEnabled(booleanValueOf(props.getProperty("cacheEnabled"), true));
         configuration.setProxyFactory((ProxyFactory) createInstance(props.getProperty("proxyFactory")));
+        configuration.setCacheSerializer((CacheSerializer) createInstance(props.getProperty("cacheSerializer")));
+        configuration.setCacheMetricsFactory((CacheMetricsFactory) createInstance(props.getProperty("cacheMetricsFactory")));
         configuration.setLazyLoadingEnabled(booleanValueOf(props.getProperty("lazyLoadingEnabled"), false));
         configuration.setAggressiveLazyLoading(booleanValueOf(props.getProperty("aggressiveLazyLoading"), false));
         configuration.setMultipleResultSetsEnabled(booleanValueOf(props.getProperty("multipleResultSetsEnabled"), true));
         configuration.setUseColumnLabel(booleanValueOf(props.getProperty("useColumnLabel"), true));
         configuration.setUseGeneratedKeys(booleanValueOf(props.getProperty("useGeneratedKeys"), false));
         configuration.setDefaultExecutorType(ExecutorType.valueOf(props.getProperty("defaultExecutorType", "SIMPLE")));
+        configuration.setBatchReorderInserts(booleanValueOf(props.getProperty("batchReorderInserts"), false));
+        configuration.setBatchSize(integerValueOf(props.getProperty("batchSize"), 0));
+        configuration.setBatchMaxPendingBytes(longValueOf(props.getProperty("batchMaxPendingBytes"), 0L));
+        configuration.setBatchRetainParameterObjects(booleanValueOf(props.getProperty("batchRetainParameterObjects"), true));
+        configuration.setBatchPipelined(booleanValueOf(props.getProperty("batchPipelined"), false));
+        configuration.setBatchInsertRows(integerValueOf(props.getProperty("batchInsertRows"), 0));
+        configuration.setReuseStatementCacheSize(integerValueOf(props.getProperty("reuseStatementCacheSize"), 0));
         configuration.setDefaultStatementTimeout(integerValueOf(props.getProperty("defaultStatementTimeout"), null));
         configuration.setDefaultFetchSize(integerValueOf(props.getProperty("defaultFetchSize"), null));
         configuration.setDefaultResultSetType(resolveResultSetType(props.getProperty("defaultResultSetType")));
         configuration.setMapUnderscoreToCamelCase(booleanValueOf(props.getProperty("mapUnderscoreToCamelCase"), false));
         configuration.setSafeRowBoundsEnabled(booleanValueOf(props.getProperty("safeRowBoundsEnabled"), false));
         configuration.setLocalCacheScope(LocalCacheScope.valueOf(props.getProperty("localCacheScope", "SESSION")));
+        configuration.setLocalCacheSize(integerValueOf(props.getProperty("localCacheSize"), 0));
+        configuration.setLocalCacheMaxRows(longValueOf(props.getProperty("localCacheMaxRows"), 0L));
+        configuration.setShareEmptyResults(booleanValueOf(props.getProperty("shareEmptyResults"), false));
         configuration.setJdbcTypeForNull(JdbcType.valueOf(props.getProperty("jdbcTypeForNull", "OTHER")));
         configuration.setLazyLoadTriggerMethods(stringSetValueOf(props.getProperty("lazyLoadTriggerMethods"), "equals,clone,hashCode,toString"));
         configuration.setSafeResultHandlerEnabled(booleanValueOf(props.getProperty("safeResultHandlerEnabled"), true));
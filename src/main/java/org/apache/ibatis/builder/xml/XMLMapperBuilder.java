@@ -29,13 +29,17 @@ import java.util.Properties;
 
 import org.apache.ibatis.builder.BaseBuilder;
 import org.apache.ibatis.builder.BuilderException;
+import org.apache.ibatis.builder.CacheOptions;
 import org.apache.ibatis.builder.CacheRefResolver;
 import org.apache.ibatis.builder.IncompleteElementException;
 import org.apache.ibatis.builder.MapperBuilderAssistant;
 import org.apache.ibatis.builder.ResultMapResolver;
 import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.serializer.CacheSerializer;
+import org.apache.ibatis.cache.weigher.Weigher;
 import org.apache.ibatis.executor.ErrorContext;
 import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.mapping.CacheCopyStrategy;
 import org.apache.ibatis.mapping.Discriminator;
 import org.apache.ibatis.mapping.ParameterMapping;
 import org.apache.ibatis.mapping.ParameterMode;
@@ -242,6 +246,8 @@ public class XMLMapperBuilder extends BaseBuilder {
     private void cacheElement(XNode context) {
         if (context != null) {
             //解析<cache>标签的type属性:缓存实现类,如果未设置,默认是PERPETUAL(具体实现为PerpetualCache,这个类实现了永久缓存,也就是没设置过期时间)
+            //高并发场景可以设置为CONCURRENT(具体实现为ConcurrentCache,分段加锁,不再需要SynchronizedCache包装)
+            //大容量缓存可以设置为OFF_HEAP(具体实现为OffHeapCache,序列化后存放在堆外内存,通过<property>设置capacity、slabSize和serializer)
             String type = context.getStringAttribute("type", "PERPETUAL");
             //加载缓存实现类
             Class<? extends Cache> typeClass = typeAliasRegistry.resolveAlias(type);
@@ -252,6 +258,7 @@ public class XMLMapperBuilder extends BaseBuilder {
             //FIFO – 先进先出：按对象进入缓存的顺序来移除它们。(FifoCache)-使用LinkedList实现
             //SOFT – 软引用：基于垃圾回收器状态和软引用规则移除对象。(SoftCache)
             //WEAK – 弱引用：更积极地基于垃圾收集器状态和弱引用规则移除对象。(WeakCache)
+            //另外还提供了TINYLFU – 窗口+频率准入：新对象只有访问频率高于被淘汰者时才会留下,可以抵御大范围扫描。(TinyLfuCache)-读操作无锁
             String eviction = context.getStringAttribute("eviction", "LRU");
 
             //加载淘汰机制类
@@ -269,9 +276,44 @@ public class XMLMapperBuilder extends BaseBuilder {
             boolean readWrite = !context.getBooleanAttribute("readOnly", false);
             //获取<cache>标签的blocking属性:true或者false,如果为true则会使用BlockingCache
             boolean blocking = context.getBooleanAttribute("blocking", false);
+            //获取<cache>标签的maxWeight属性:缓存的最大权重,超过后按放入顺序淘汰,单个超过最大权重的结果不会被缓存
+            //权重由weigher属性决定:BYTES – 估算的字节数(默认,EstimatedSizeWeigher);ROWS – 结果的行数(RowCountWeigher)
+            Long maxWeight = context.getLongAttribute("maxWeight");
+            Class<? extends Weigher> weigherClass = typeAliasRegistry.resolveAlias(context.getStringAttribute("weigher"));
+            //获取<cache>标签的serializer属性:可读写缓存复制对象时使用的序列化方式,如果未设置,使用全局的cacheSerializer配置
+            //JAVA – java原生序列化(JavaCacheSerializer);COMPACT – 紧凑的二进制格式,速度更快,pojo类无需实现Serializable接口(CompactCacheSerializer)
+            Class<? extends CacheSerializer> serializerClass = typeAliasRegistry.resolveAlias(context.getStringAttribute("serializer"));
+            //获取<cache>标签的copyStrategy属性:可读写缓存复制对象的方式,默认SERIALIZE(序列化后再反序列化)
+            //CLONE – 通过Reflector的getter/setter深拷贝对象,不需要生成byte[],pojo类也无需实现Serializable接口(CloningCache)
+            //ROWS – 缓存结果集的原始列值(每行一个数组),命中时不访问数据库,只在内存中重新执行映射(CachedResultSets)
+            CacheCopyStrategy copyStrategy = CacheCopyStrategy.valueOf(context.getStringAttribute("copyStrategy", CacheCopyStrategy.SERIALIZE.name()));
+            //获取<cache>标签的refreshAhead属性:0到1之间的小数,需要同时设置flushInterval
+            //设置后不再每隔flushInterval清空整个缓存,而是每个元素在放入flushInterval毫秒之后过期,
+            //元素存在的时间超过flushInterval * refreshAhead之后再被读取时,先返回旧值,同时在后台重新执行查询刷新这个元素(RefreshAheadCache)
+            Double refreshAhead = context.getDoubleAttribute("refreshAhead");
+            //获取<cache>标签的expireAfterWrite和expireAfterAccess属性:单位毫秒,每个元素在放入/最后一次读取之后多久过期(ExpiringCache)
+            //设置了其中任意一个(可以是0,表示不限制)之后,<select>标签也可以通过cacheTimeToLive属性设置自己的结果的过期时间
+            Long expireAfterWrite = context.getLongAttribute("expireAfterWrite");
+            Long expireAfterAccess = context.getLongAttribute("expireAfterAccess");
+            //获取<cache>标签的emptyResultTimeToLive属性:单位毫秒,没有结果的查询(开启了shareEmptyResults配置时)在缓存中保留多久,通常比其他元素短
+            Long emptyResultTimeToLive = context.getLongAttribute("emptyResultTimeToLive");
+            //获取<cache>标签的singleFlight属性:true或者false,如果为true则使用SingleFlightCache代替BlockingCache
+            //同一个key同时只有一个线程查询数据库,其他线程最多等待singleFlightTimeout毫秒,直接拿到这次查询的结果
+            boolean singleFlight = context.getBooleanAttribute("singleFlight", false);
+            Long singleFlightTimeout = context.getLongAttribute("singleFlightTimeout");
             Properties props = context.getChildrenAsProperties();
             //将参数封装成一个Cache对象(包装成一个大Cache,将最底层的Cache一层一层的用其他Cache包装,类似穿衣服),并放入到configuration对象中
-            builderAssistant.useNewCache(typeClass, evictionClass, flushInterval, size, readWrite, blocking, props);
+            builderAssistant.useNewCache(typeClass, evictionClass, flushInterval, size, readWrite, blocking, props, new CacheOptions()
+                    .maxWeight(maxWeight)
+                    .weigher(weigherClass)
+                    .serializer(serializerClass)
+                    .copyStrategy(copyStrategy)
+                    .refreshAhead(refreshAhead)
+                    .expireAfterWrite(expireAfterWrite)
+                    .expireAfterAccess(expireAfterAccess)
+                    .emptyResultTimeToLive(emptyResultTimeToLive)
+                    .singleFlight(singleFlight)
+                    .singleFlightTimeout(singleFlightTimeout));
         }
     }
 
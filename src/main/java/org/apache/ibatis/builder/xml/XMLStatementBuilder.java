@@ -20,6 +20,7 @@ import java.util.Locale;
 
 import org.apache.ibatis.builder.BaseBuilder;
 import org.apache.ibatis.builder.MapperBuilderAssistant;
+import org.apache.ibatis.builder.StatementCacheOptions;
 import org.apache.ibatis.executor.keygen.Jdbc3KeyGenerator;
 import org.apache.ibatis.executor.keygen.KeyGenerator;
 import org.apache.ibatis.executor.keygen.NoKeyGenerator;
@@ -75,6 +76,16 @@ public class XMLStatementBuilder extends BaseBuilder {
         boolean flushCache = context.getBooleanAttribute("flushCache", !isSelect);
         //执行sql后是否将结果加入到缓存中,查询:默认true,增删改:默认false
         boolean useCache = context.getBooleanAttribute("useCache", isSelect);
+        //执行sql后结果是否保留在一级缓存中,默认true,如果是false,则一次完整的查询执行完毕后就从一级缓存中删除
+        boolean useLocalCache = context.getBooleanAttribute("useLocalCache", true);
+        //结果在二级缓存中的过期时间(毫秒),覆盖<cache>标签的expireAfterWrite属性
+        Long cacheTimeToLive = context.getLongAttribute("cacheTimeToLive");
+        //语句读/写的缓存tag(一般是表名),逗号分隔.增删改语句只让读了这些tag的二级缓存失效,而不是清空整个namespace的缓存
+        String cacheTags = context.getStringAttribute("cacheTags");
+        //按行缓存:参数中id集合的属性名(一般是foreach IN的集合),每一行按resultMap的<id>单独放入二级缓存,只查询缓存中没有的id
+        String cacheRowsBy = context.getStringAttribute("cacheRowsBy");
+        //启动预热:CacheWarmer在应用接收请求前不带参数执行该语句,填充二级缓存
+        boolean warmUp = context.getBooleanAttribute("warmUp", false);
         boolean resultOrdered = context.getBooleanAttribute("resultOrdered", false);
 
         // Include Fragments before parsing
@@ -159,7 +170,12 @@ public class XMLStatementBuilder extends BaseBuilder {
         builderAssistant.addMappedStatement(id, sqlSource, statementType, sqlCommandType,
                 fetchSize, timeout, parameterMap, parameterTypeClass, resultMap, resultTypeClass,
                 resultSetTypeEnum, flushCache, useCache, resultOrdered,
-                keyGenerator, keyProperty, keyColumn, databaseId, langDriver, resultSets);
+                keyGenerator, keyProperty, keyColumn, databaseId, langDriver, resultSets, new StatementCacheOptions()
+                        .useLocalCache(useLocalCache)
+                        .cacheTimeToLive(cacheTimeToLive)
+                        .cacheTags(cacheTags)
+                        .cacheRowsBy(cacheRowsBy)
+                        .warmUp(warmUp));
     }
 
     private void processSelectKeyNodes(String id, Class<?> parameterTypeClass, LanguageDriver langDriver) {
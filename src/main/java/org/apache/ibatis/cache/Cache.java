@@ -15,6 +15,10 @@
  */
 package org.apache.ibatis.cache;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.locks.ReadWriteLock;
 
 /**
@@ -54,6 +58,22 @@ public interface Cache {
    */
   void putObject(Object key, Object value);
 
+  /**
+   * Stores several entries at once, e.g. all the results of a committing transaction.
+   * <p>
+   * Decorators should hand the entries over to their delegate with a single call, so locks are acquired once per
+   * batch rather than once per entry. The default implementation stores them one by one.
+   *
+   * @param entries
+   *          The keys and the results of a select
+   * @since 3.5.12
+   */
+  default void putObjects(Map<Object, Object> entries) {
+    for (Map.Entry<Object, Object> entry : entries.entrySet()) {
+      putObject(entry.getKey(), entry.getValue());
+    }
+  }
+
   /**
    * @param key
    *          The key
@@ -61,6 +81,59 @@ public interface Cache {
    */
   Object getObject(Object key);
 
+  /**
+   * Reads several entries at once, e.g. the rows of a query cached one by one.
+   * <p>
+   * As with {@link #putObjects(Map)}, decorators that only guard their delegate should hand the keys over in a single
+   * call. The default implementation reads them one by one.
+   *
+   * @param keys
+   *          The keys
+   * @return The objects found in the cache by key, missing keys are absent
+   * @since 3.5.12
+   */
+  default Map<Object, Object> getObjects(Collection<?> keys) {
+    Map<Object, Object> found = new HashMap<>();
+    for (Object key : keys) {
+      Object value = getObject(key);
+      if (value != null) {
+        found.put(key, value);
+      }
+    }
+    return found;
+  }
+
+  /**
+   * Reads several entries without counting it as an access, e.g. to write a snapshot of the cache.
+   * <p>
+   * Unlike {@link #getObjects(Collection)}, it must not change the state of the cache: no access times, recency or
+   * frequency updates, hit counts, locks or evictions of stale entries, which are just left out of the result.
+   * Decorators should forward it to the {@link #peekObjects(Collection)} of their delegate and only transform the
+   * values, as they do on a read. The default implementation calls {@link #getObjects(Collection)}.
+   *
+   * @param keys
+   *          The keys
+   * @return The objects found in the cache by key, missing keys are absent
+   * @since 3.5.12
+   */
+  default Map<Object, Object> peekObjects(Collection<?> keys) {
+    return getObjects(keys);
+  }
+
+  /**
+   * Optional. Returns the keys currently stored, e.g. to write a snapshot of the cache.
+   * <p>
+   * The result is a copy that may include entries that are about to expire. Decorators that do not change the keys
+   * should return the keys of their delegate. The default implementation returns no keys, meaning that the cache can
+   * not be enumerated.
+   *
+   * @return The keys stored in the cache
+   * @since 3.5.12
+   */
+  default Collection<Object> getKeys() {
+    return Collections.emptyList();
+  }
+
   /**
    * As of 3.3.0 this method is only called during a rollback
    * for any previous value that was missing in the cache.
@@ -60,6 +60,12 @@ public class CacheKey implements Cloneable, Serializable {
     this.updateList = new ArrayList<>();
   }
 
+  CacheKey(List<Object> updateList) {
+    this.hashcode = DEFAULT_HASHCODE;
+    this.multiplier = DEFAULT_MULTIPLIER;
+    this.updateList = updateList;
+  }
+
   public CacheKey(Object[] objects) {
     this();
     updateAll(objects);
@@ -92,7 +98,7 @@ public class CacheKey implements Cloneable, Serializable {
     if (this == object) {
       return true;
     }
-    if (!(object instanceof CacheKey)) {
+    if (!(object instanceof CacheKey) || object instanceof CompactCacheKey) {
       return false;
     }
 
@@ -0,0 +1,60 @@
+/*
+ *    Copyright 2009-2022 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+/**
+ * Loads the current value of one cache entry again, e.g. by executing the statement that produced it.
+ *
+ * @since 3.5.12
+ */
+@FunctionalInterface
+public interface CacheLoader {
+
+  /**
+   * @return the fresh value, or {@code null} if it can not be loaded
+   * @throws Exception
+   *           if loading failed
+   */
+  Object load() throws Exception;
+
+  /**
+   * @return the time to live of the loaded value in milliseconds, or {@code null} to use the one of the cache
+   */
+  default Long getTimeToLive() {
+    return null;
+  }
+
+  /**
+   * Called right before {@link #load()}, so that a write committed while the value is being loaded discards it.
+   *
+   * @return the versions of the cache tags the value is read with, or {@code null} if it has none
+   */
+  default CacheTagRegistry.Snapshot snapshotTags() {
+    return null;
+  }
+
+  /**
+   * Called on the reading thread once the entry is actually going to be refreshed, before the loader is handed to
+   * another thread. Loaders that capture mutable state of the caller, like the parameter object of a statement,
+   * should copy it here rather than on every read.
+   *
+   * @return a loader that no longer depends on the state of the caller
+   */
+  default CacheLoader detach() {
+    return this;
+  }
+
+}
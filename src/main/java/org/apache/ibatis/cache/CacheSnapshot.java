@@ -0,0 +1,366 @@
+/*
+ *    Copyright 2009-2022 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.ibatis.cache.decorators.ExpiringCache;
+import org.apache.ibatis.cache.decorators.TaggedCache;
+import org.apache.ibatis.cache.serializer.CacheSerializer;
+import org.apache.ibatis.cache.serializer.JavaCacheSerializer;
+import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.logging.LogFactory;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.session.Configuration;
+
+/**
+ * Writes the content of the second level caches to a file and reads it back, so an application that restarts does
+ * not start with empty caches.
+ * <p>
+ * Entries are read and stored through the whole decorator chain of their cache, and each key and value is written on
+ * its own with the {@link Configuration#getCacheSerializer() cache serializer}: an entry that can not be serialized
+ * or read back is skipped. Caches that can not {@link Cache#getKeys() enumerate their keys} are not written. The
+ * entries are read with {@link Cache#peekObjects(Collection)}, so writing them does not count as an access: the access
+ * times of {@link ExpiringCache}, the recency and frequency of the eviction policies and the hit counts of the metrics
+ * are left as they are, and a blocking cache does not lock the keys.
+ * <p>
+ * A snapshot file is not trusted more than any other input: entries larger than 256 MB are rejected, and when the
+ * cache serializer is a {@link JavaCacheSerializer} the depth and size of the objects read back are limited on top of
+ * its own {@link JavaCacheSerializer#setSerialFilter(String) serial filter}, which should also restrict their classes.
+ * <p>
+ * A snapshot does not know what was written to the database after it was taken. {@link #restore(Configuration, Path,
+ * long)} ignores snapshots older than a given age, and the restored entries get the shortest time to live and all the
+ * cache tags declared by the selects of their cache, so a write still invalidates them. Entries already in the cache
+ * are kept.
+ *
+ * @since 3.5.12
+ */
+public final class CacheSnapshot {
+
+  private static final Log log = LogFactory.getLog(CacheSnapshot.class);
+
+  private static final int MAGIC = 0x4D424353;
+  private static final int VERSION = 1;
+  private static final int BATCH_SIZE = 256;
+  private static final int MAX_ENTRY_SIZE = 256 * 1024 * 1024;
+  private static final int READ_CHUNK_SIZE = 64 * 1024;
+  private static final String SERIAL_LIMITS = "maxdepth=128;maxrefs=10000000;maxbytes=" + MAX_ENTRY_SIZE;
+
+  private CacheSnapshot() {
+    // Prevent Instantiation
+  }
+
+  /**
+   * Writes the second level caches of a configuration to a file. The file is replaced only once the snapshot is
+   * complete.
+   *
+   * @param configuration
+   *          the configuration
+   * @param file
+   *          the snapshot file
+   * @return the number of entries written
+   * @throws IOException
+   *           if the file can not be written
+   */
+  public static int write(Configuration configuration, Path file) throws IOException {
+    Path absolute = file.toAbsolutePath();
+    Path temporary = Files.createTempFile(absolute.getParent(), absolute.getFileName().toString(), ".tmp");
+    try {
+      int count;
+      try (OutputStream out = Files.newOutputStream(temporary)) {
+        count = write(configuration, out);
+      }
+      try {
+        Files.move(temporary, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(temporary, absolute, StandardCopyOption.REPLACE_EXISTING);
+      }
+      return count;
+    } finally {
+      Files.deleteIfExists(temporary);
+    }
+  }
+
+  /**
+   * Writes the second level caches of a configuration to a stream.
+   *
+   * @param configuration
+   *          the configuration
+   * @param out
+   *          the stream, that is not closed
+   * @return the number of entries written
+   * @throws IOException
+   *           if the stream can not be written
+   */
+  public static int write(Configuration configuration, OutputStream out) throws IOException {
+    CacheSerializer serializer = configuration.getCacheSerializer();
+    DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+    data.writeInt(MAGIC);
+    data.writeInt(VERSION);
+    data.writeLong(System.currentTimeMillis());
+    int count = 0;
+    for (Cache cache : distinctCaches(configuration)) {
+      List<Object> keys = new ArrayList<>(cache.getKeys());
+      if (keys.isEmpty()) {
+        continue;
+      }
+      data.writeBoolean(true);
+      data.writeUTF(cache.getId());
+      for (int from = 0; from < keys.size(); from += BATCH_SIZE) {
+        List<Object> batch = keys.subList(from, Math.min(keys.size(), from + BATCH_SIZE));
+        Map<Object, Object> values = cache.peekObjects(batch);
+        for (Map.Entry<Object, Object> value : values.entrySet()) {
+          byte[] keyBytes;
+          byte[] valueBytes;
+          try {
+            keyBytes = serializer.serialize(value.getKey());
+            valueBytes = serializer.serialize(value.getValue());
+          } catch (CacheException e) {
+            if (log.isDebugEnabled()) {
+              log.debug("Skipping an entry of cache " + cache.getId() + " that can not be serialized: " + e);
+            }
+            continue;
+          }
+          if (keyBytes.length > MAX_ENTRY_SIZE || valueBytes.length > MAX_ENTRY_SIZE) {
+            log.debug("Skipping an entry of cache " + cache.getId() + " that is too large");
+            continue;
+          }
+          data.writeBoolean(true);
+          writeBytes(data, keyBytes);
+          writeBytes(data, valueBytes);
+          count++;
+        }
+      }
+      data.writeBoolean(false);
+    }
+    data.writeBoolean(false);
+    data.flush();
+    return count;
+  }
+
+  /**
+   * Restores the second level caches of a configuration from a file written by {@link #write(Configuration, Path)}.
+   *
+   * @param configuration
+   *          the configuration, with all its mappers loaded
+   * @param file
+   *          the snapshot file
+   * @param maxAge
+   *          the age in milliseconds above which the snapshot is ignored, zero or less to accept any age
+   * @return the number of entries restored, zero if the file does not exist or is too old
+   * @throws IOException
+   *           if the file can not be read
+   */
+  public static int restore(Configuration configuration, Path file, long maxAge) throws IOException {
+    if (!Files.exists(file)) {
+      return 0;
+    }
+    try (InputStream in = Files.newInputStream(file)) {
+      return restore(configuration, in, maxAge);
+    }
+  }
+
+  /**
+   * Restores the second level caches of a configuration from a stream written by
+   * {@link #write(Configuration, OutputStream)}. Entries of caches that no longer exist are skipped.
+   *
+   * @param configuration
+   *          the configuration, with all its mappers loaded
+   * @param in
+   *          the stream, that is not closed
+   * @param maxAge
+   *          the age in milliseconds above which the snapshot is ignored, zero or less to accept any age
+   * @return the number of entries restored, zero if the snapshot is too old
+   * @throws IOException
+   *           if the stream can not be read or is not a snapshot
+   */
+  public static int restore(Configuration configuration, InputStream in, long maxAge) throws IOException {
+    CacheSerializer serializer = limited(configuration.getCacheSerializer());
+    DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+    if (data.readInt() != MAGIC) {
+      throw new IOException("Not a cache snapshot");
+    }
+    int version = data.readInt();
+    if (version != VERSION) {
+      throw new IOException("Unsupported cache snapshot version " + version);
+    }
+    long age = System.currentTimeMillis() - data.readLong();
+    if (maxAge > 0 && age > maxAge) {
+      log.debug("Ignoring a cache snapshot taken " + age + " ms ago");
+      return 0;
+    }
+    int count = 0;
+    while (data.readBoolean()) {
+      String id = data.readUTF();
+      Cache cache = configuration.hasCache(id) ? configuration.getCache(id) : null;
+      Restorer restorer = cache == null ? null : new Restorer(configuration, cache);
+      while (data.readBoolean()) {
+        byte[] keyBytes = readBytes(data);
+        byte[] valueBytes = readBytes(data);
+        if (restorer != null) {
+          restorer.add(serializer, keyBytes, valueBytes);
+        }
+      }
+      if (restorer != null) {
+        count += restorer.flush();
+      }
+    }
+    return count;
+  }
+
+  private static Set<Cache> distinctCaches(Configuration configuration) {
+    // caches are registered under their full and their short id, and shared by cache-ref
+    Set<Cache> caches = Collections.newSetFromMap(new IdentityHashMap<>());
+    caches.addAll(configuration.getCaches());
+    return caches;
+  }
+
+  private static CacheSerializer limited(CacheSerializer serializer) {
+    // a tampered file must not make java serialization build arbitrarily large graphs
+    if (serializer.getClass() != JavaCacheSerializer.class || !JavaCacheSerializer.isSerialFilterSupported()) {
+      return serializer;
+    }
+    String serialFilter = ((JavaCacheSerializer) serializer).getSerialFilter();
+    JavaCacheSerializer limited = new JavaCacheSerializer();
+    limited.setSerialFilter(serialFilter == null ? SERIAL_LIMITS : SERIAL_LIMITS + ";" + serialFilter);
+    return limited;
+  }
+
+  private static void writeBytes(DataOutputStream data, byte[] bytes) throws IOException {
+    data.writeInt(bytes.length);
+    data.write(bytes);
+  }
+
+  private static byte[] readBytes(DataInputStream data) throws IOException {
+    int length = data.readInt();
+    if (length < 0 || length > MAX_ENTRY_SIZE) {
+      throw new IOException("Corrupted cache snapshot, invalid entry length " + length);
+    }
+    // grows with the bytes actually read, a truncated file does not allocate the length it declares
+    byte[] bytes = new byte[Math.min(length, READ_CHUNK_SIZE)];
+    int read = 0;
+    while (read < length) {
+      if (read == bytes.length) {
+        bytes = Arrays.copyOf(bytes, (int) Math.min(length, 2L * bytes.length));
+      }
+      int chunk = data.read(bytes, read, bytes.length - read);
+      if (chunk < 0) {
+        throw new EOFException("Truncated cache snapshot");
+      }
+      read += chunk;
+    }
+    return bytes;
+  }
+
+  private static final class Restorer {
+
+    private final Cache cache;
+    private final Long timeToLive;
+    private final CacheTagRegistry.Snapshot snapshot;
+    private final Map<Object, Object> pending = new LinkedHashMap<>();
+    private int count;
+
+    Restorer(Configuration configuration, Cache cache) {
+      this.cache = cache;
+      long shortest = 0;
+      Set<String> tags = new LinkedHashSet<>();
+      tags.add(cache.getId());
+      for (MappedStatement ms : new ArrayList<>(configuration.getMappedStatements())) {
+        if (ms.getCache() != cache || ms.getSqlCommandType() != SqlCommandType.SELECT) {
+          continue;
+        }
+        Long statementTimeToLive = ms.getCacheTimeToLive();
+        if (statementTimeToLive != null && statementTimeToLive > 0) {
+          shortest = shortest == 0 ? statementTimeToLive : Math.min(shortest, statementTimeToLive);
+        }
+        if (ms.getCacheTags() != null) {
+          Collections.addAll(tags, ms.getCacheTags());
+        }
+      }
+      this.timeToLive = shortest > 0 ? shortest : null;
+      CacheTagRegistry tagRegistry = configuration.getCacheTagRegistry();
+      this.snapshot = tagRegistry.isInUse() ? tagRegistry.snapshot(tags.toArray(new String[0])) : null;
+    }
+
+    void add(CacheSerializer serializer, byte[] keyBytes, byte[] valueBytes) {
+      try {
+        pending.put(serializer.deserialize(keyBytes), serializer.deserialize(valueBytes));
+      } catch (CacheException e) {
+        if (log.isDebugEnabled()) {
+          log.debug("Skipping an entry of cache " + cache.getId() + " that can not be read: " + e);
+        }
+        return;
+      }
+      if (pending.size() >= BATCH_SIZE) {
+        flush();
+      }
+    }
+
+    int flush() {
+      if (!pending.isEmpty()) {
+        // entries stored since the start are fresher than the snapshot
+        pending.keySet().removeAll(cache.getObjects(new ArrayList<>(pending.keySet())).keySet());
+      }
+      if (!pending.isEmpty()) {
+        Map<Object, Long> timeToLives = timeToLive == null ? null : new HashMap<>();
+        Map<Object, CacheTagRegistry.Snapshot> snapshots = snapshot == null ? null : new HashMap<>();
+        for (Object key : pending.keySet()) {
+          if (timeToLives != null) {
+            timeToLives.put(key, timeToLive);
+          }
+          if (snapshots != null) {
+            snapshots.put(key, snapshot);
+          }
+        }
+        ExpiringCache.setCurrentTimeToLives(timeToLives);
+        TaggedCache.setCurrentSnapshots(snapshots);
+        try {
+          cache.putObjects(pending);
+        } finally {
+          ExpiringCache.clearCurrentTimeToLives();
+          TaggedCache.clearCurrentSnapshots();
+        }
+        count += pending.size();
+        pending.clear();
+      }
+      return count;
+    }
+  }
+
+}
@@ -0,0 +1,105 @@
+/*
+ *    Copyright 2009-2022 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Versions of the cache tags (usually table names) declared by the mapped statements.
+ * <p>
+ * A statement that writes a tag increments its version when its transaction commits. Cached results remember the
+ * versions of the tags they were read with and are discarded once any of them has changed, so a write only
+ * invalidates the results that depend on what it changed, in any namespace, instead of clearing whole namespace
+ * caches.
+ *
+ * @since 3.5.12
+ * @see org.apache.ibatis.cache.decorators.TaggedCache
+ */
+public class CacheTagRegistry {
+
+  private final ConcurrentHashMap<String, AtomicLong> versions = new ConcurrentHashMap<>();
+  private volatile boolean inUse;
+
+  /**
+   * @return whether any statement declares cache tags
+   */
+  public boolean isInUse() {
+    return inUse;
+  }
+
+  public void markInUse() {
+    this.inUse = true;
+  }
+
+  /**
+   * @param tags
+   *          the tags a result is about to be read with
+   * @return the current versions of the tags
+   */
+  public Snapshot snapshot(String[] tags) {
+    long[] current = new long[tags.length];
+    for (int i = 0; i < tags.length; i++) {
+      current[i] = version(tags[i]).get();
+    }
+    return new Snapshot(tags, current);
+  }
+
+  /**
+   * Invalidates all the results read with any of the given tags.
+   *
+   * @param tags
+   *          the written tags
+   */
+  public void invalidate(Collection<String> tags) {
+    for (String tag : tags) {
+      version(tag).incrementAndGet();
+    }
+  }
+
+  private AtomicLong version(String tag) {
+    AtomicLong version = versions.get(tag);
+    return version != null ? version : versions.computeIfAbsent(tag, k -> new AtomicLong());
+  }
+
+  /**
+   * The versions of a set of tags at the time a result was read.
+   */
+  public final class Snapshot {
+
+    private final String[] tags;
+    private final long[] versions;
+
+    private Snapshot(String[] tags, long[] versions) {
+      this.tags = tags;
+      this.versions = versions;
+    }
+
+    /**
+     * @return whether none of the tags has been written since the snapshot was taken
+     */
+    public boolean isCurrent() {
+      for (int i = 0; i < tags.length; i++) {
+        if (version(tags[i]).get() != versions[i]) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+}
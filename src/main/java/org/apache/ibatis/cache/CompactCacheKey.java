@@ -0,0 +1,225 @@
+/*
+ *    Copyright 2009-2022 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.StringJoiner;
+
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.reflection.ArrayUtil;
+
+/**
+ * Cache key holding its components in an exact-size array, with a 64-bit hash computed while it is built.
+ * <p>
+ * Two keys are only compared component by component when their hashes and lengths match, and components that are
+ * the very same instance (statement ids and the SQL of static statements are shared strings) are matched without
+ * calling {@code equals}. Instances are created with a {@link Builder}. Like a regular {@link CacheKey} they can
+ * still be {@link #update(Object) updated}, e.g. by plugins that add the paging parameters to the key of a query;
+ * each update copies the components and rehashes the key. The hash is not serialized but computed again when a key is
+ * read back, as components such as enums and classes have a different hash code in every JVM.
+ *
+ * @since 3.5.12
+ */
+public final class CompactCacheKey extends CacheKey {
+
+  private static final long serialVersionUID = -2316482937417340522L;
+
+  private static final long SEED = 0x9e3779b97f4a7c15L;
+  private static final long MULTIPLIER = 0xbf58476d1ce4e5b9L;
+
+  private Object[] components;
+  // the index of the component hashed with its SQL fingerprint, -1 if none
+  private int sqlIndex;
+  // the hash before it is finalized, updates go on from there
+  private transient long state;
+  private transient long hash;
+
+  private CompactCacheKey(Object[] components, int sqlIndex, long state) {
+    super(Collections.emptyList());
+    this.components = components;
+    this.sqlIndex = sqlIndex;
+    this.state = state;
+    this.hash = finish(state, components.length);
+  }
+
+  /**
+   * @param expectedSize
+   *          the number of components the key will most likely hold
+   * @return a builder sized for the given number of components
+   */
+  public static Builder builder(int expectedSize) {
+    return new Builder(expectedSize);
+  }
+
+  /**
+   * @return the components of this key, in the order they were added
+   */
+  public Object[] getComponents() {
+    return components.clone();
+  }
+
+  /**
+   * @return the 64-bit hash of this key
+   */
+  public long getHash() {
+    return hash;
+  }
+
+  @Override
+  public int getUpdateCount() {
+    return components.length;
+  }
+
+  @Override
+  public void update(Object object) {
+    updateAll(new Object[] { object });
+  }
+
+  @Override
+  public void updateAll(Object[] objects) {
+    int count = components.length;
+    // never modify the array in place, clones share it
+    Object[] updated = Arrays.copyOf(components, count + objects.length);
+    for (Object object : objects) {
+      updated[count++] = object;
+      state = mix(state, hashOf(object));
+    }
+    components = updated;
+    hash = finish(state, count);
+  }
+
+  @Override
+  public boolean equals(Object object) {
+    if (this == object) {
+      return true;
+    }
+    if (!(object instanceof CompactCacheKey)) {
+      return false;
+    }
+
+    final CompactCacheKey cacheKey = (CompactCacheKey) object;
+
+    if (hash != cacheKey.hash || components.length != cacheKey.components.length) {
+      return false;
+    }
+
+    for (int i = 0; i < components.length; i++) {
+      Object thisObject = components[i];
+      Object thatObject = cacheKey.components[i];
+      if (thisObject != thatObject && !ArrayUtil.equals(thisObject, thatObject)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public int hashCode() {
+    return (int) (hash ^ (hash >>> 32));
+  }
+
+  @Override
+  public String toString() {
+    StringJoiner returnValue = new StringJoiner(":");
+    returnValue.add(Long.toHexString(hash));
+    Arrays.stream(components).map(ArrayUtil::toString).forEach(returnValue::add);
+    return returnValue.toString();
+  }
+
+  @Override
+  public CompactCacheKey clone() {
+    return new CompactCacheKey(components, sqlIndex, state);
+  }
+
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    in.defaultReadObject();
+    long rehashed = SEED;
+    for (int i = 0; i < components.length; i++) {
+      rehashed = mix(rehashed, i == sqlIndex ? BoundSql.fingerprint((String) components[i]) : hashOf(components[i]));
+    }
+    state = rehashed;
+    hash = finish(rehashed, components.length);
+  }
+
+  private static long hashOf(Object object) {
+    return object == null ? 1 : ArrayUtil.hashCode(object);
+  }
+
+  private static long mix(long hash, long componentHash) {
+    long h = (hash ^ componentHash) * MULTIPLIER;
+    return h ^ (h >>> 31);
+  }
+
+  private static long finish(long state, int count) {
+    long h = state ^ count;
+    h = (h ^ (h >>> 33)) * 0xff51afd7ed558ccdL;
+    return h ^ (h >>> 33);
+  }
+
+  /**
+   * Collects the components of a {@link CompactCacheKey}, hashing them as they are added.
+   */
+  public static final class Builder {
+
+    private Object[] components;
+    private int count;
+    private int sqlIndex = -1;
+    private long hash = SEED;
+
+    private Builder(int expectedSize) {
+      this.components = new Object[Math.max(expectedSize, 1)];
+    }
+
+    public Builder add(Object object) {
+      return add(object, hashOf(object));
+    }
+
+    /**
+     * Adds the SQL of the statement, hashed with its fingerprint that is already known.
+     *
+     * @param sql
+     *          the SQL
+     * @param fingerprint
+     *          the {@link BoundSql#fingerprint(String) fingerprint} of the SQL
+     * @return this builder
+     */
+    public Builder addSql(String sql, long fingerprint) {
+      sqlIndex = count;
+      return add(sql, fingerprint);
+    }
+
+    private Builder add(Object object, long componentHash) {
+      if (count == components.length) {
+        components = Arrays.copyOf(components, count << 1);
+      }
+      components[count++] = object;
+      hash = mix(hash, componentHash);
+      return this;
+    }
+
+    public CompactCacheKey build() {
+      Object[] result = count == components.length ? components : Arrays.copyOf(components, count);
+      // the builder must not modify the array of a key it has already built
+      components = result;
+      count = result.length;
+      return new CompactCacheKey(result, sqlIndex, hash);
+    }
+  }
+
+}
@@ -0,0 +1,229 @@
+/*
+ *    Copyright 2009-2022 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import java.io.Serializable;
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.apache.ibatis.cache.serializer.JavaCacheSerializer;
+import org.apache.ibatis.reflection.Reflector;
+import org.apache.ibatis.reflection.ReflectorFactory;
+import org.apache.ibatis.reflection.factory.ObjectFactory;
+
+/**
+ * Makes deep copies of result objects using the {@link Reflector} metadata, without a serialization round trip.
+ * <p>
+ * Beans are instantiated with the {@link ObjectFactory} and every property having both a getter and a setter (or a
+ * plain field) is copied. Immutable JDK values are shared, dates, arrays, lists, sets and maps are copied, and
+ * shared references and cycles are preserved. Objects that cannot be copied this way (lazy loading proxies, classes
+ * without a default constructor, other JDK types) are copied with java serialization and must be
+ * {@link Serializable}.
+ * <p>
+ * Sets and maps whose elements refer back to an object that is still being copied are filled once the whole graph
+ * has been copied, so their elements are hashed (or compared) in their final state.
+ *
+ * @see ObjectGraphWalker
+ */
+public class DeepCloner {
+
+  private final ObjectGraphWalker walker;
+  private final ObjectFactory objectFactory;
+  private final JavaCacheSerializer serializer = new JavaCacheSerializer();
+
+  public DeepCloner(ReflectorFactory reflectorFactory, ObjectFactory objectFactory) {
+    this(new ObjectGraphWalker(reflectorFactory), objectFactory);
+  }
+
+  public DeepCloner(ObjectGraphWalker walker, ObjectFactory objectFactory) {
+    this.walker = walker;
+    this.objectFactory = objectFactory;
+  }
+
+  /**
+   * @param original
+   *          the object to copy, may be {@code null}
+   * @return a deep copy of the object
+   */
+  public Object deepClone(Object original) {
+    Copy copy = new Copy();
+    Object result = copy.copy(original);
+    copy.fillDeferred();
+    return result;
+  }
+
+  /**
+   * The state of one deep copy.
+   */
+  private final class Copy {
+
+    private final Map<Object, Object> copies = new IdentityHashMap<>();
+    private final Set<Object> inProgress = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final List<Runnable> deferred = new ArrayList<>();
+    private int backReferences;
+
+    Object copy(Object original) {
+      if (original == null) {
+        return null;
+      }
+      ObjectGraphWalker.Kind kind = walker.kindOf(original.getClass());
+      if (kind == ObjectGraphWalker.Kind.IMMUTABLE) {
+        return original;
+      }
+      Object copy = copies.get(original);
+      if (copy != null) {
+        if (inProgress.contains(original)) {
+          // the copy is not complete yet, whatever refers to it must not be hashed now
+          backReferences++;
+        }
+        return copy;
+      }
+      switch (kind) {
+        case DATE:
+          copy = ((Date) original).clone();
+          copies.put(original, copy);
+          return copy;
+        case ARRAY:
+          return copyArray(original, original.getClass().getComponentType());
+        case COLLECTION:
+          return copyCollection((Collection<?>) original);
+        case MAP:
+          return copyMap((Map<?, ?>) original);
+        case BEAN:
+          return copyBean(original, walker.propertiesOf(original.getClass()));
+        default:
+          copy = serializer.deserialize(serializer.serialize(original));
+          copies.put(original, copy);
+          return copy;
+      }
+    }
+
+    private Object copyArray(Object original, Class<?> componentType) {
+      int length = Array.getLength(original);
+      Object copy = Array.newInstance(componentType, length);
+      copies.put(original, copy);
+      if (componentType.isPrimitive()) {
+        System.arraycopy(original, 0, copy, 0, length);
+        return copy;
+      }
+      inProgress.add(original);
+      Object[] source = (Object[]) original;
+      Object[] target = (Object[]) copy;
+      for (int i = 0; i < length; i++) {
+        target[i] = copy(source[i]);
+      }
+      inProgress.remove(original);
+      return copy;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Object copyCollection(Collection<?> original) {
+      Collection<Object> copy;
+      if (original instanceof ArrayList) {
+        copy = new ArrayList<>(original.size());
+      } else if (original instanceof SortedSet) {
+        copy = new TreeSet<>((Comparator<Object>) ((SortedSet<?>) original).comparator());
+      } else {
+        copy = (Collection<Object>) objectFactory.create(original.getClass());
+      }
+      copies.put(original, copy);
+      inProgress.add(original);
+      if (original instanceof List) {
+        for (Object element : original) {
+          copy.add(copy(element));
+        }
+      } else {
+        int before = backReferences;
+        List<Object> elements = new ArrayList<>(original.size());
+        for (Object element : original) {
+          elements.add(copy(element));
+        }
+        fill(() -> copy.addAll(elements), before);
+      }
+      inProgress.remove(original);
+      return copy;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Object copyMap(Map<?, ?> original) {
+      Map<Object, Object> copy;
+      if (original instanceof SortedMap) {
+        copy = new TreeMap<>((Comparator<Object>) ((SortedMap<?, ?>) original).comparator());
+      } else {
+        copy = (Map<Object, Object>) objectFactory.create(original.getClass());
+      }
+      copies.put(original, copy);
+      inProgress.add(original);
+      int before = backReferences;
+      List<Object> entries = new ArrayList<>(original.size() * 2);
+      for (Map.Entry<?, ?> entry : original.entrySet()) {
+        entries.add(copy(entry.getKey()));
+        entries.add(copy(entry.getValue()));
+      }
+      fill(() -> {
+        for (int i = 0; i < entries.size(); i += 2) {
+          copy.put(entries.get(i), entries.get(i + 1));
+        }
+      }, before);
+      inProgress.remove(original);
+      return copy;
+    }
+
+    private Object copyBean(Object original, ObjectGraphWalker.BeanProperties properties) {
+      Object copy = objectFactory.create(original.getClass());
+      copies.put(original, copy);
+      inProgress.add(original);
+      for (int i = 0; i < properties.size(); i++) {
+        properties.set(copy, i, copy(properties.get(original, i)));
+      }
+      inProgress.remove(original);
+      return copy;
+    }
+
+    /**
+     * Fills a set or a map now, or once the whole graph is copied if any of its elements refers to an object whose
+     * copy is not complete yet. Once a fill is deferred the following ones are too, since their elements may contain
+     * the set or map that is still empty. Deferred fills run in the order they were registered, inner sets and maps
+     * first.
+     */
+    private void fill(Runnable filler, int backReferencesBefore) {
+      if (backReferences == backReferencesBefore && deferred.isEmpty()) {
+        filler.run();
+      } else {
+        deferred.add(filler);
+      }
+    }
+
+    void fillDeferred() {
+      for (Runnable filler : deferred) {
+        filler.run();
+      }
+    }
+  }
+
+}
@@ -0,0 +1,49 @@
+/*
+ *    Copyright 2009-2022 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import java.io.Serializable;
+
+/**
+ * Shared marker stored in the second level cache for a query that returned no rows, when the
+ * {@code shareEmptyResults} setting is enabled.
+ * <p>
+ * It is immutable, so the decorators that copy the cached values pass it through as it is, and it stays the same
+ * instance when a cache serializes it. An {@link org.apache.ibatis.cache.decorators.ExpiringCache} can give it a
+ * shorter time to live than the other entries.
+ *
+ * @since 3.5.12
+ */
+public final class EmptyResult implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  public static final EmptyResult INSTANCE = new EmptyResult();
+
+  private EmptyResult() {
+    // singleton
+  }
+
+  private Object readResolve() {
+    return INSTANCE;
+  }
+
+  @Override
+  public String toString() {
+    return "EmptyResult";
+  }
+
+}
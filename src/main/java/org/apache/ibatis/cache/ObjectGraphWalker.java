@@ -0,0 +1,311 @@
+/*
+ *    Copyright 2009-2022 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import java.io.Externalizable;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import org.apache.ibatis.executor.loader.WriteReplaceInterface;
+import org.apache.ibatis.reflection.Reflector;
+import org.apache.ibatis.reflection.ReflectorFactory;
+import org.apache.ibatis.reflection.invoker.Invoker;
+
+/**
+ * Classifies the objects of the graphs of cached values and gives access to the properties of plain beans, using the
+ * {@link Reflector} metadata.
+ * <p>
+ * It is shared by the {@link DeepCloner}, the {@link org.apache.ibatis.cache.serializer.CompactCacheSerializer} and
+ * the {@link org.apache.ibatis.cache.weigher.EstimatedSizeWeigher}, so they agree on which objects are walked
+ * property by property and on which properties are.
+ *
+ * @since 3.5.12
+ */
+public class ObjectGraphWalker {
+
+  private static final String[] SERIALIZATION_METHODS = { "writeObject", "readObject", "writeReplace", "readResolve" };
+
+  private final ReflectorFactory reflectorFactory;
+  private final Map<Class<?>, Layout> layouts = new ConcurrentHashMap<>();
+
+  public ObjectGraphWalker(ReflectorFactory reflectorFactory) {
+    this.reflectorFactory = reflectorFactory;
+  }
+
+  /**
+   * How an object is walked.
+   */
+  public enum Kind {
+    /** Immutable values, shared by copies. */
+    IMMUTABLE,
+    /** {@link Date} and its {@code java.sql} subclasses. */
+    DATE,
+    ARRAY,
+    /** The usual {@code java.util} lists and sets. */
+    COLLECTION,
+    /** The usual {@code java.util} maps. */
+    MAP,
+    /** Classes that are walked property by property, see {@link #propertiesOf(Class)}. */
+    BEAN,
+    /** Anything else: other JDK types, lazy loading proxies, classes customizing their serialization. */
+    OPAQUE
+  }
+
+  /**
+   * @param type
+   *          the class of an object
+   * @return how objects of that class are walked
+   */
+  public Kind kindOf(Class<?> type) {
+    return layoutOf(type).kind;
+  }
+
+  /**
+   * @param type
+   *          a class of kind {@link Kind#BEAN}
+   * @return the properties that have both a getter and a setter (or a plain field), sorted by name
+   */
+  public BeanProperties propertiesOf(Class<?> type) {
+    Layout layout = layoutOf(type);
+    if (layout.properties == null) {
+      throw new CacheException("Class " + type.getName() + " is not walked property by property.");
+    }
+    return layout.properties;
+  }
+
+  /**
+   * Passes the objects directly referenced by an object to a consumer: the elements of arrays and collections, the
+   * keys and values of maps, and the property values of beans. Opaque objects reference nothing.
+   *
+   * @param object
+   *          the object
+   * @param consumer
+   *          the consumer of the references, called with {@code null} for null references
+   */
+  public void forEachReference(Object object, Consumer<Object> consumer) {
+    Layout layout = layoutOf(object.getClass());
+    switch (layout.kind) {
+      case ARRAY:
+        if (!object.getClass().getComponentType().isPrimitive()) {
+          for (Object element : (Object[]) object) {
+            consumer.accept(element);
+          }
+        }
+        break;
+      case COLLECTION:
+        for (Object element : (Collection<?>) object) {
+          consumer.accept(element);
+        }
+        break;
+      case MAP:
+        for (Map.Entry<?, ?> entry : ((Map<?, ?>) object).entrySet()) {
+          consumer.accept(entry.getKey());
+          consumer.accept(entry.getValue());
+        }
+        break;
+      case BEAN:
+        BeanProperties properties = layout.properties;
+        for (int i = 0; i < properties.size(); i++) {
+          if (!properties.getType(i).isPrimitive()) {
+            consumer.accept(properties.get(object, i));
+          }
+        }
+        break;
+      default:
+        break;
+    }
+  }
+
+  private Layout layoutOf(Class<?> type) {
+    Layout layout = layouts.get(type);
+    return layout != null ? layout : layouts.computeIfAbsent(type, this::newLayout);
+  }
+
+  private Layout newLayout(Class<?> type) {
+    if (isImmutable(type)) {
+      return new Layout(Kind.IMMUTABLE, null);
+    } else if (Date.class.isAssignableFrom(type) && isJdkType(type)) {
+      return new Layout(Kind.DATE, null);
+    } else if (type.isArray()) {
+      return new Layout(Kind.ARRAY, null);
+    } else if (type == ArrayList.class || type == LinkedList.class || type == HashSet.class
+        || type == LinkedHashSet.class || type == TreeSet.class) {
+      return new Layout(Kind.COLLECTION, null);
+    } else if (type == HashMap.class || type == LinkedHashMap.class || type == TreeMap.class) {
+      return new Layout(Kind.MAP, null);
+    } else if (isBean(type)) {
+      return new Layout(Kind.BEAN, new BeanProperties(reflectorFactory.findForClass(type)));
+    }
+    return new Layout(Kind.OPAQUE, null);
+  }
+
+  private boolean isBean(Class<?> type) {
+    if (type.isInterface() || Modifier.isAbstract(type.getModifiers()) || Proxy.isProxyClass(type)
+        || WriteReplaceInterface.class.isAssignableFrom(type) || Externalizable.class.isAssignableFrom(type)) {
+      return false;
+    }
+    for (Class<?> current = type; current != Object.class; current = current.getSuperclass()) {
+      if (isJdkType(current) || declaresSerializationMethod(current)) {
+        return false;
+      }
+    }
+    return reflectorFactory.findForClass(type).hasDefaultConstructor();
+  }
+
+  private static boolean isImmutable(Class<?> type) {
+    return type == String.class || type == Integer.class || type == Long.class || type == Boolean.class
+        || type == Double.class || type == Float.class || type == Short.class || type == Byte.class
+        || type == Character.class || type == BigDecimal.class || type == BigInteger.class || type.isEnum()
+        || type.getSuperclass() != null && type.getSuperclass().isEnum() || type == Class.class || type == UUID.class
+        || type == Locale.class || type.getName().startsWith("java.time.");
+  }
+
+  private static boolean declaresSerializationMethod(Class<?> type) {
+    for (Method method : type.getDeclaredMethods()) {
+      for (String name : SERIALIZATION_METHODS) {
+        if (name.equals(method.getName())) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @param type
+   *          a class
+   * @return whether the class belongs to the JDK
+   */
+  public static boolean isJdkType(Class<?> type) {
+    String name = type.getName();
+    return name.startsWith("java.") || name.startsWith("javax.") || name.startsWith("jdk.") || name.startsWith("sun.");
+  }
+
+  private static final class Layout {
+    private final Kind kind;
+    private final BeanProperties properties;
+
+    Layout(Kind kind, BeanProperties properties) {
+      this.kind = kind;
+      this.properties = properties;
+    }
+  }
+
+  /**
+   * The readable and writable properties of a bean class.
+   */
+  public static final class BeanProperties {
+
+    private final Reflector reflector;
+    private final Constructor<?> constructor;
+    private final String[] names;
+    private final Class<?>[] types;
+    private final Invoker[] getters;
+    private final Invoker[] setters;
+
+    BeanProperties(Reflector reflector) {
+      List<String> properties = new ArrayList<>();
+      for (String property : reflector.getGetablePropertyNames()) {
+        if (reflector.hasSetter(property) && reflector.getGetterType(property) == reflector.getSetterType(property)) {
+          properties.add(property);
+        }
+      }
+      // the same order in every JVM, serialized beans are read back property by property
+      properties.sort(null);
+      this.reflector = reflector;
+      this.constructor = reflector.getDefaultConstructor();
+      if (Reflector.canControlMemberAccessible()) {
+        try {
+          constructor.setAccessible(true);
+        } catch (RuntimeException e) {
+          // inaccessible module, newInstance fails if the constructor is not public
+        }
+      }
+      this.names = properties.toArray(new String[0]);
+      this.types = new Class<?>[names.length];
+      this.getters = new Invoker[names.length];
+      this.setters = new Invoker[names.length];
+      for (int i = 0; i < names.length; i++) {
+        types[i] = reflector.getGetterType(names[i]);
+        getters[i] = reflector.getGetInvoker(names[i]);
+        setters[i] = reflector.getSetInvoker(names[i]);
+      }
+    }
+
+    public int size() {
+      return names.length;
+    }
+
+    public String getName(int index) {
+      return names[index];
+    }
+
+    public Class<?> getType(int index) {
+      return types[index];
+    }
+
+    /**
+     * @return a new instance of the bean class, created with its default constructor
+     */
+    public Object newInstance() {
+      try {
+        return constructor.newInstance();
+      } catch (ReflectiveOperationException | RuntimeException e) {
+        throw new CacheException("Error instantiating " + reflector.getType().getName() + ".  Cause: " + e, e);
+      }
+    }
+
+    public Object get(Object bean, int index) {
+      try {
+        return getters[index].invoke(bean, null);
+      } catch (IllegalAccessException | InvocationTargetException e) {
+        throw new CacheException("Error reading property '" + names[index] + "' of an instance of "
+            + reflector.getType().getName() + ".  Cause: " + e, e);
+      }
+    }
+
+    public void set(Object bean, int index, Object value) {
+      try {
+        setters[index].invoke(bean, new Object[] { value });
+      } catch (IllegalAccessException | InvocationTargetException e) {
+        throw new CacheException("Error writing property '" + names[index] + "' of an instance of "
+            + reflector.getType().getName() + ".  Cause: " + e, e);
+      }
+    }
+  }
+
+}
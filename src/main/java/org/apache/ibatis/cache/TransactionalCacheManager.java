@@ -15,8 +15,12 @@
  */
 package org.apache.ibatis.cache;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.ibatis.cache.decorators.TransactionalCache;
 import org.apache.ibatis.util.MapUtil;
@@ -27,26 +31,125 @@ import org.apache.ibatis.util.MapUtil;
 public class TransactionalCacheManager {
 
   private final Map<Cache, TransactionalCache> transactionalCaches = new HashMap<>();
+  private final Set<String> invalidatedTags = new HashSet<>();
+  private CacheTagRegistry tagRegistry;
 
   public void clear(Cache cache) {
     getTransactionalCache(cache).clear();
   }
 
+  /**
+   * Invalidates the results read with any of the given tags when the transaction commits. Until then, reads with
+   * those tags miss the cache.
+   *
+   * @param registry
+   *          the tag registry
+   * @param tags
+   *          the written tags
+   * @since 3.5.12
+   */
+  public void invalidate(CacheTagRegistry registry, Collection<String> tags) {
+    this.tagRegistry = registry;
+    invalidatedTags.addAll(tags);
+  }
+
   public Object getObject(Cache cache, CacheKey key) {
     return getTransactionalCache(cache).getObject(key);
   }
 
+  /**
+   * @param cache
+   *          the cache
+   * @param key
+   *          the key
+   * @param tags
+   *          the tags the value is read with
+   * @return the cached value, or {@code null} if this transaction has written any of the tags
+   * @since 3.5.12
+   */
+  public Object getObject(Cache cache, CacheKey key, String[] tags) {
+    Object value = getTransactionalCache(cache).getObject(key);
+    if (value != null && !invalidatedTags.isEmpty()) {
+      for (String tag : tags) {
+        if (invalidatedTags.contains(tag)) {
+          return null;
+        }
+      }
+    }
+    return value;
+  }
+
+  /**
+   * @param cache
+   *          the cache
+   * @param keys
+   *          the keys
+   * @param tags
+   *          the tags the values are read with, {@code null} if they do not depend on tags
+   * @return the cached values by key, empty if this transaction has written any of the tags
+   * @since 3.5.12
+   */
+  public Map<Object, Object> getObjects(Cache cache, Collection<CacheKey> keys, String[] tags) {
+    Map<Object, Object> values = getTransactionalCache(cache).getObjects(keys);
+    if (tags != null && !values.isEmpty() && !invalidatedTags.isEmpty()) {
+      for (String tag : tags) {
+        if (invalidatedTags.contains(tag)) {
+          return Collections.emptyMap();
+        }
+      }
+    }
+    return values;
+  }
+
   public void putObject(Cache cache, CacheKey key, Object value) {
     getTransactionalCache(cache).putObject(key, value);
   }
 
+  /**
+   * @param cache
+   *          the cache
+   * @param key
+   *          the key
+   * @param value
+   *          the value
+   * @param timeToLive
+   *          the time to live of the entry in milliseconds, {@code null} for the time to live of the cache
+   * @since 3.5.12
+   */
+  public void putObject(Cache cache, CacheKey key, Object value, Long timeToLive) {
+    getTransactionalCache(cache).putObject(key, value, timeToLive);
+  }
+
+  /**
+   * @param cache
+   *          the cache
+   * @param key
+   *          the key
+   * @param value
+   *          the value
+   * @param timeToLive
+   *          the time to live of the entry in milliseconds, {@code null} for the time to live of the cache
+   * @param snapshot
+   *          the versions of the tags the value was read with, {@code null} if it does not depend on tags
+   * @since 3.5.12
+   */
+  public void putObject(Cache cache, CacheKey key, Object value, Long timeToLive, CacheTagRegistry.Snapshot snapshot) {
+    getTransactionalCache(cache).putObject(key, value, timeToLive, snapshot);
+  }
+
   public void commit() {
+    // results read before the commit with the written tags are stale, whether they are cached already or pending
+    if (!invalidatedTags.isEmpty()) {
+      tagRegistry.invalidate(invalidatedTags);
+      invalidatedTags.clear();
+    }
     for (TransactionalCache txCache : transactionalCaches.values()) {
       txCache.commit();
     }
   }
 
   public void rollback() {
+    invalidatedTags.clear();
     for (TransactionalCache txCache : transactionalCaches.values()) {
       txCache.rollback();
     }
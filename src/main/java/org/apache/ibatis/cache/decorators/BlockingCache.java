@@ -15,6 +15,10 @@
  */
 package org.apache.ibatis.cache.decorators;
 
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
@@ -55,6 +59,11 @@ public class BlockingCache implements Cache {
     return delegate.getSize();
   }
 
+  @Override
+  public Collection<Object> getKeys() {
+    return delegate.getKeys();
+  }
+
   @Override
   public void putObject(Object key, Object value) {
     try {
@@ -64,6 +73,17 @@ public class BlockingCache implements Cache {
     }
   }
 
+  @Override
+  public void putObjects(Map<Object, Object> entries) {
+    try {
+      delegate.putObjects(entries);
+    } finally {
+      for (Object key : entries.keySet()) {
+        releaseLock(key);
+      }
+    }
+  }
+
   @Override
   public Object getObject(Object key) {
     acquireLock(key);
@@ -74,6 +94,32 @@ public class BlockingCache implements Cache {
     return value;
   }
 
+  @Override
+  public Map<Object, Object> getObjects(Collection<?> keys) {
+    Set<Object> locked = acquireLocks(keys);
+    Map<Object, Object> found;
+    try {
+      found = delegate.getObjects(locked);
+    } catch (RuntimeException e) {
+      for (Object key : locked) {
+        releaseLock(key);
+      }
+      throw e;
+    }
+    for (Object key : locked) {
+      if (found.get(key) != null) {
+        releaseLock(key);
+      }
+    }
+    return found;
+  }
+
+  @Override
+  public Map<Object, Object> peekObjects(Collection<?> keys) {
+    // a passive read takes no lock, so it never blocks nor makes others wait
+    return delegate.peekObjects(keys);
+  }
+
   @Override
   public Object removeObject(Object key) {
     // despite its name, this method is called only to release locks
@@ -109,6 +155,47 @@ public class BlockingCache implements Cache {
     }
   }
 
+  /**
+   * Locks all the keys or none: a key locked by another thread releases the ones already taken before waiting, so
+   * that two threads locking overlapping keys in different orders cannot deadlock.
+   */
+  private Set<Object> acquireLocks(Collection<?> keys) {
+    Set<Object> pending = new LinkedHashSet<>(keys);
+    while (true) {
+      Set<Object> acquired = new LinkedHashSet<>();
+      Object busyKey = null;
+      CountDownLatch busy = null;
+      for (Object key : pending) {
+        CountDownLatch latch = locks.putIfAbsent(key, new CountDownLatch(1));
+        if (latch != null) {
+          busyKey = key;
+          busy = latch;
+          break;
+        }
+        acquired.add(key);
+      }
+      if (busy == null) {
+        return acquired;
+      }
+      for (Object key : acquired) {
+        releaseLock(key);
+      }
+      try {
+        if (timeout > 0) {
+          boolean released = busy.await(timeout, TimeUnit.MILLISECONDS);
+          if (!released) {
+            throw new CacheException(
+                "Couldn't get a lock in " + timeout + " for the key " + busyKey + " at the cache " + delegate.getId());
+          }
+        } else {
+          busy.await();
+        }
+      } catch (InterruptedException e) {
+        throw new CacheException("Got interrupted while trying to acquire lock for key " + busyKey, e);
+      }
+    }
+  }
+
   private void releaseLock(Object key) {
     CountDownLatch latch = locks.remove(key);
     if (latch == null) {
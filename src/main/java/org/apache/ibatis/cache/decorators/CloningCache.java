@@ -0,0 +1,109 @@
+/*
+ *    Copyright 2009-2022 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.decorators;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.EmptyResult;
+import org.apache.ibatis.cache.DeepCloner;
+
+/**
+ * Read/write cache decorator that stores and returns deep copies made by a {@link DeepCloner}, a cheaper alternative
+ * to {@link SerializedCache} that does not require the cached objects to be serializable.
+ */
+public class CloningCache implements Cache {
+
+  private final Cache delegate;
+  private final DeepCloner cloner;
+
+  public CloningCache(Cache delegate, DeepCloner cloner) {
+    this.delegate = delegate;
+    this.cloner = cloner;
+  }
+
+  @Override
+  public String getId() {
+    return delegate.getId();
+  }
+
+  @Override
+  public int getSize() {
+    return delegate.getSize();
+  }
+
+  @Override
+  public Collection<Object> getKeys() {
+    return delegate.getKeys();
+  }
+
+  @Override
+  public void putObject(Object key, Object object) {
+    delegate.putObject(key, copy(object));
+  }
+
+  @Override
+  public void putObjects(Map<Object, Object> entries) {
+    Map<Object, Object> copies = new HashMap<>(entries.size() * 4 / 3 + 1);
+    for (Map.Entry<Object, Object> entry : entries.entrySet()) {
+      copies.put(entry.getKey(), copy(entry.getValue()));
+    }
+    delegate.putObjects(copies);
+  }
+
+  @Override
+  public Object getObject(Object key) {
+    return copy(delegate.getObject(key));
+  }
+
+  @Override
+  public Map<Object, Object> peekObjects(Collection<?> keys) {
+    Map<Object, Object> found = delegate.peekObjects(keys);
+    Map<Object, Object> copies = new HashMap<>(found.size() * 4 / 3 + 1);
+    for (Map.Entry<Object, Object> entry : found.entrySet()) {
+      copies.put(entry.getKey(), copy(entry.getValue()));
+    }
+    return copies;
+  }
+
+  private Object copy(Object object) {
+    // the empty result marker is immutable and shared
+    return object == EmptyResult.INSTANCE ? object : cloner.deepClone(object);
+  }
+
+  @Override
+  public Object removeObject(Object key) {
+    return delegate.removeObject(key);
+  }
+
+  @Override
+  public void clear() {
+    delegate.clear();
+  }
+
+  @Override
+  public int hashCode() {
+    return delegate.hashCode();
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    return delegate.equals(obj);
+  }
+
+}
@@ -0,0 +1,103 @@
+/*
+ *    Copyright 2009-2022 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.decorators;
+
+import java.util.Collection;
+import java.util.Map;
+
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.metrics.CacheMetrics;
+
+/**
+ * Reports the entries removed from the cache it decorates as evictions to a {@link CacheMetrics}.
+ * <p>
+ * It sits right above the cache that holds the entries, so that the removals made by the eviction and expiration
+ * decorators above it are all seen. Removals of keys that are not cached, like the ones used to release the locks of
+ * a {@link BlockingCache}, are not counted.
+ *
+ * @since 3.5.12
+ * @see MetricsCache
+ */
+public class EvictionMetricsCache implements Cache {
+
+  private final Cache delegate;
+  private final CacheMetrics metrics;
+
+  public EvictionMetricsCache(Cache delegate, CacheMetrics metrics) {
+    this.delegate = delegate;
+    this.metrics = metrics;
+  }
+
+  @Override
+  public String getId() {
+    return delegate.getId();
+  }
+
+  @Override
+  public int getSize() {
+    return delegate.getSize();
+  }
+
+  @Override
+  public Collection<Object> getKeys() {
+    return delegate.getKeys();
+  }
+
+  @Override
+  public void putObject(Object key, Object value) {
+    delegate.putObject(key, value);
+  }
+
+  @Override
+  public void putObjects(Map<Object, Object> entries) {
+    delegate.putObjects(entries);
+  }
+
+  @Override
+  public Object getObject(Object key) {
+    return delegate.getObject(key);
+  }
+
+  @Override
+  public Map<Object, Object> peekObjects(Collection<?> keys) {
+    return delegate.peekObjects(keys);
+  }
+
+  @Override
+  public Object removeObject(Object key) {
+    Object value = delegate.removeObject(key);
+    if (value != null) {
+      metrics.recordEviction();
+    }
+    return value;
+  }
+
+  @Override
+  public void clear() {
+    delegate.clear();
+  }
+
+  @Override
+  public int hashCode() {
+    return delegate.hashCode();
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    return delegate.equals(obj);
+  }
+
+}
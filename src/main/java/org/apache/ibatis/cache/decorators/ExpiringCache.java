@@ -0,0 +1,210 @@
+/*
+ *    Copyright 2009-2022 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.decorators;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.EmptyResult;
+
+/**
+ * Expires entries one by one, after a fixed time since they were stored and/or since they were last read.
+ * <p>
+ * The expiration time of an entry is stored with its value, so it is evicted together with the entry by the
+ * decorators below, and entries that never expire are stored as they are. Expiration is lazy: an expired entry is
+ * removed when it is read, and entries that are never read again are left to the eviction policy, like any other
+ * cold entry. The time to live of the entries written by the current thread can be overridden with
+ * {@link #setCurrentTimeToLives(Map)}, which is how statements declare their own time to live.
+ * {@link EmptyResult Empty results} can be given a shorter time to live with {@link #setEmptyResultTimeToLive(long)}.
+ * <p>
+ * A duration of zero or less disables the corresponding expiration.
+ */
+public class ExpiringCache implements Cache {
+
+  private static final ThreadLocal<Map<Object, Long>> CURRENT_TIME_TO_LIVES = new ThreadLocal<>();
+
+  private final Cache delegate;
+  private long expireAfterWrite;
+  private long expireAfterAccess;
+  private long emptyResultTimeToLive;
+
+  public ExpiringCache(Cache delegate) {
+    this.delegate = delegate;
+  }
+
+  /**
+   * Overrides the expire after write time of the entries stored by the current thread, until
+   * {@link #clearCurrentTimeToLives()} is called.
+   *
+   * @param timeToLives
+   *          the time to live in milliseconds by key, keys that are not present use the one of the cache
+   */
+  public static void setCurrentTimeToLives(Map<Object, Long> timeToLives) {
+    CURRENT_TIME_TO_LIVES.set(timeToLives);
+  }
+
+  public static void clearCurrentTimeToLives() {
+    CURRENT_TIME_TO_LIVES.remove();
+  }
+
+  /**
+   * @param expireAfterWrite
+   *          how long an entry is kept after it was stored, in milliseconds
+   */
+  public void setExpireAfterWrite(long expireAfterWrite) {
+    this.expireAfterWrite = expireAfterWrite;
+  }
+
+  /**
+   * @param expireAfterAccess
+   *          how long an entry is kept after it was stored or last read, in milliseconds
+   */
+  public void setExpireAfterAccess(long expireAfterAccess) {
+    this.expireAfterAccess = expireAfterAccess;
+  }
+
+  /**
+   * @param emptyResultTimeToLive
+   *          how long an empty result is kept after it was stored, in milliseconds
+   * @since 3.5.12
+   */
+  public void setEmptyResultTimeToLive(long emptyResultTimeToLive) {
+    this.emptyResultTimeToLive = emptyResultTimeToLive;
+  }
+
+  @Override
+  public String getId() {
+    return delegate.getId();
+  }
+
+  @Override
+  public int getSize() {
+    return delegate.getSize();
+  }
+
+  @Override
+  public Collection<Object> getKeys() {
+    return delegate.getKeys();
+  }
+
+  @Override
+  public void putObject(Object key, Object value) {
+    delegate.putObject(key, wrap(key, value, System.currentTimeMillis(), CURRENT_TIME_TO_LIVES.get()));
+  }
+
+  @Override
+  public void putObjects(Map<Object, Object> values) {
+    long now = System.currentTimeMillis();
+    Map<Object, Long> timeToLives = CURRENT_TIME_TO_LIVES.get();
+    Map<Object, Object> wrapped = new LinkedHashMap<>(values.size() * 4 / 3 + 1);
+    for (Map.Entry<Object, Object> value : values.entrySet()) {
+      wrapped.put(value.getKey(), wrap(value.getKey(), value.getValue(), now, timeToLives));
+    }
+    delegate.putObjects(wrapped);
+  }
+
+  @Override
+  public Object getObject(Object key) {
+    Object stored = delegate.getObject(key);
+    if (!(stored instanceof Expiring)) {
+      return stored;
+    }
+    Expiring entry = (Expiring) stored;
+    long now = System.currentTimeMillis();
+    if (now >= entry.expiresAt || expireAfterAccess > 0 && now - entry.accessedAt >= expireAfterAccess) {
+      delegate.removeObject(key);
+      return null;
+    }
+    if (expireAfterAccess > 0) {
+      entry.accessedAt = now;
+    }
+    return entry.value;
+  }
+
+  @Override
+  public Map<Object, Object> peekObjects(Collection<?> keys) {
+    Map<Object, Object> found = delegate.peekObjects(keys);
+    Map<Object, Object> values = new HashMap<>(found.size() * 4 / 3 + 1);
+    long now = System.currentTimeMillis();
+    for (Map.Entry<Object, Object> stored : found.entrySet()) {
+      if (!(stored.getValue() instanceof Expiring)) {
+        values.put(stored.getKey(), stored.getValue());
+        continue;
+      }
+      // expired entries are left out but neither removed nor touched
+      Expiring entry = (Expiring) stored.getValue();
+      if (now < entry.expiresAt && (expireAfterAccess <= 0 || now - entry.accessedAt < expireAfterAccess)) {
+        values.put(stored.getKey(), entry.value);
+      }
+    }
+    return values;
+  }
+
+  @Override
+  public Object removeObject(Object key) {
+    return unwrap(delegate.removeObject(key));
+  }
+
+  @Override
+  public void clear() {
+    delegate.clear();
+  }
+
+  @Override
+  public int hashCode() {
+    return delegate.hashCode();
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    return delegate.equals(obj);
+  }
+
+  private Object wrap(Object key, Object value, long now, Map<Object, Long> timeToLives) {
+    if (value == null) {
+      return null;
+    }
+    Long timeToLive = timeToLives == null ? null : timeToLives.get(key);
+    long expireAfter = timeToLive == null ? expireAfterWrite : timeToLive;
+    if (value == EmptyResult.INSTANCE && emptyResultTimeToLive > 0) {
+      expireAfter = expireAfter > 0 ? Math.min(expireAfter, emptyResultTimeToLive) : emptyResultTimeToLive;
+    }
+    if (expireAfter <= 0 && expireAfterAccess <= 0) {
+      // never expires, nothing to keep
+      return value;
+    }
+    return new Expiring(value, expireAfter > 0 ? now + expireAfter : Long.MAX_VALUE, now);
+  }
+
+  private static Object unwrap(Object stored) {
+    return stored instanceof Expiring ? ((Expiring) stored).value : stored;
+  }
+
+  private static final class Expiring extends ValueEnvelope {
+    private final long expiresAt;
+    private volatile long accessedAt;
+
+    Expiring(Object value, long expiresAt, long accessedAt) {
+      super(value);
+      this.expiresAt = expiresAt;
+      this.accessedAt = accessedAt;
+    }
+  }
+
+}
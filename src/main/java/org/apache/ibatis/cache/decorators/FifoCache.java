@@ -15,8 +15,10 @@
  */
 package org.apache.ibatis.cache.decorators;
 
+import java.util.Collection;
 import java.util.Deque;
 import java.util.LinkedList;
+import java.util.Map;
 
 import org.apache.ibatis.cache.Cache;
 
@@ -47,6 +49,11 @@ public class FifoCache implements Cache {
     return delegate.getSize();
   }
 
+  @Override
+  public Collection<Object> getKeys() {
+    return delegate.getKeys();
+  }
+
   public void setSize(int size) {
     this.size = size;
   }
@@ -62,6 +69,11 @@ public class FifoCache implements Cache {
     return delegate.getObject(key);
   }
 
+  @Override
+  public Map<Object, Object> peekObjects(Collection<?> keys) {
+    return delegate.peekObjects(keys);
+  }
+
   @Override
   public Object removeObject(Object key) {
     return delegate.removeObject(key);
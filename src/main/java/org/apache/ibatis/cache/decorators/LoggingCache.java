@@ -15,6 +15,10 @@
  */
 package org.apache.ibatis.cache.decorators;
 
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
 import org.apache.ibatis.cache.Cache;
 import org.apache.ibatis.logging.Log;
 import org.apache.ibatis.logging.LogFactory;
@@ -26,7 +30,17 @@ public class LoggingCache implements Cache {
 
   private final Log log;
   private final Cache delegate;
+  private final LongAdder requestCount = new LongAdder();
+  private final LongAdder hitCount = new LongAdder();
+  /**
+   * @deprecated racy when the cache is not synchronized, use {@link #getRequests()} instead
+   */
+  @Deprecated
   protected int requests = 0;
+  /**
+   * @deprecated racy when the cache is not synchronized, use {@link #getHits()} instead
+   */
+  @Deprecated
   protected int hits = 0;
 
   public LoggingCache(Cache delegate) {
@@ -44,16 +58,28 @@ public class LoggingCache implements Cache {
     return delegate.getSize();
   }
 
+  @Override
+  public Collection<Object> getKeys() {
+    return delegate.getKeys();
+  }
+
   @Override
   public void putObject(Object key, Object object) {
     delegate.putObject(key, object);
   }
 
+  @Override
+  public void putObjects(Map<Object, Object> entries) {
+    delegate.putObjects(entries);
+  }
+
   @Override
   public Object getObject(Object key) {
+    requestCount.increment();
     requests++;
     final Object value = delegate.getObject(key);
     if (value != null) {
+      hitCount.increment();
       hits++;
     }
     if (log.isDebugEnabled()) {
@@ -62,6 +88,11 @@ public class LoggingCache implements Cache {
     return value;
   }
 
+  @Override
+  public Map<Object, Object> peekObjects(Collection<?> keys) {
+    return delegate.peekObjects(keys);
+  }
+
   @Override
   public Object removeObject(Object key) {
     return delegate.removeObject(key);
@@ -82,8 +113,24 @@ public class LoggingCache implements Cache {
     return delegate.equals(obj);
   }
 
+  /**
+   * @return the number of reads of this cache
+   * @since 3.5.12
+   */
+  protected long getRequests() {
+    return requestCount.sum();
+  }
+
+  /**
+   * @return the number of reads of this cache that found a value
+   * @since 3.5.12
+   */
+  protected long getHits() {
+    return hitCount.sum();
+  }
+
   private double getHitRatio() {
-    return (double) hits / (double) requests;
+    return (double) getHits() / (double) getRequests();
   }
 
 }
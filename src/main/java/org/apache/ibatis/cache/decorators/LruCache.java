@@ -15,6 +15,7 @@
  */
 package org.apache.ibatis.cache.decorators;
 
+import java.util.Collection;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
@@ -46,6 +47,11 @@ public class LruCache implements Cache {
     return delegate.getSize();
   }
 
+  @Override
+  public Collection<Object> getKeys() {
+    return delegate.getKeys();
+  }
+
   public void setSize(final int size) {
     keyMap = new LinkedHashMap<Object, Object>(size, .75F, true) {
       private static final long serialVersionUID = 4267176411845948333L;
@@ -73,6 +79,11 @@ public class LruCache implements Cache {
     return delegate.getObject(key);
   }
 
+  @Override
+  public Map<Object, Object> peekObjects(Collection<?> keys) {
+    return delegate.peekObjects(keys);
+  }
+
   @Override
   public Object removeObject(Object key) {
     return delegate.removeObject(key);
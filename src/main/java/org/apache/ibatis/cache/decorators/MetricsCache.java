@@ -0,0 +1,119 @@
+/*
+ *    Copyright 2009-2022 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.decorators;
+
+import java.util.Collection;
+import java.util.Map;
+
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.metrics.CacheMetrics;
+
+/**
+ * Reports the hits, misses and latencies of the cache it decorates to a {@link CacheMetrics}.
+ *
+ * @since 3.5.12
+ * @see EvictionMetricsCache
+ */
+public class MetricsCache implements Cache {
+
+  private final Cache delegate;
+  private final CacheMetrics metrics;
+
+  public MetricsCache(Cache delegate, CacheMetrics metrics) {
+    this.delegate = delegate;
+    this.metrics = metrics;
+  }
+
+  @Override
+  public String getId() {
+    return delegate.getId();
+  }
+
+  @Override
+  public int getSize() {
+    return delegate.getSize();
+  }
+
+  @Override
+  public Collection<Object> getKeys() {
+    return delegate.getKeys();
+  }
+
+  @Override
+  public void putObject(Object key, Object value) {
+    long start = System.nanoTime();
+    delegate.putObject(key, value);
+    metrics.recordPut(1, System.nanoTime() - start);
+  }
+
+  @Override
+  public void putObjects(Map<Object, Object> entries) {
+    long start = System.nanoTime();
+    delegate.putObjects(entries);
+    metrics.recordPut(entries.size(), System.nanoTime() - start);
+  }
+
+  @Override
+  public Object getObject(Object key) {
+    long start = System.nanoTime();
+    Object value = delegate.getObject(key);
+    metrics.recordGet(value != null, System.nanoTime() - start);
+    return value;
+  }
+
+  @Override
+  public Map<Object, Object> getObjects(Collection<?> keys) {
+    long start = System.nanoTime();
+    Map<Object, Object> found = delegate.getObjects(keys);
+    long nanos = keys.isEmpty() ? 0 : (System.nanoTime() - start) / keys.size();
+    for (Object key : keys) {
+      metrics.recordGet(found.containsKey(key), nanos);
+    }
+    return found;
+  }
+
+  @Override
+  public Map<Object, Object> peekObjects(Collection<?> keys) {
+    return delegate.peekObjects(keys);
+  }
+
+  @Override
+  public Object removeObject(Object key) {
+    return delegate.removeObject(key);
+  }
+
+  @Override
+  public void clear() {
+    long start = System.nanoTime();
+    delegate.clear();
+    metrics.recordClear(System.nanoTime() - start);
+  }
+
+  public CacheMetrics getMetrics() {
+    return metrics;
+  }
+
+  @Override
+  public int hashCode() {
+    return delegate.hashCode();
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    return delegate.equals(obj);
+  }
+
+}
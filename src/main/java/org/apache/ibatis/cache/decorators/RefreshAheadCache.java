@@ -0,0 +1,304 @@
+/*
+ *    Copyright 2009-2022 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.decorators;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.cache.CacheLoader;
+import org.apache.ibatis.cache.CacheTagRegistry;
+import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.logging.LogFactory;
+
+/**
+ * Refresh-ahead cache decorator.
+ * <p>
+ * Every entry lives for {@link #setTimeToLive(long) timeToLive} milliseconds after it was stored. When an entry is
+ * read after {@link #setRefreshAhead(double) refreshAhead} of that time has passed, the current value is returned
+ * and the entry is reloaded in the background, so a frequently used entry is replaced before it expires instead of
+ * all entries disappearing at once as with a {@link ScheduledCache}.
+ * <p>
+ * The loader of an entry is supplied by the caller of {@link #getObject(Object)} through
+ * {@link #setCurrentLoader(CacheLoader)}; entries read without a loader simply expire. The reloaded value is stored
+ * with the {@link CacheLoader#getTimeToLive() time to live} and the {@link CacheLoader#snapshotTags() tag versions}
+ * of its loader. Clearing the cache or removing the entry while it is being reloaded discards the reloaded value.
+ */
+public class RefreshAheadCache implements Cache {
+
+  private static final Log log = LogFactory.getLog(RefreshAheadCache.class);
+  private static final ThreadLocal<CacheLoader> CURRENT_LOADER = new ThreadLocal<>();
+  private static final ExecutorService REFRESH_EXECUTOR = newRefreshExecutor();
+
+  private final Cache delegate;
+  private final ConcurrentHashMap<Object, Entry> entries = new ConcurrentHashMap<>();
+  private final AtomicLong generation = new AtomicLong();
+  private final Object writeLock = new Object();
+  private long timeToLive = TimeUnit.HOURS.toMillis(1);
+  private long refreshAfter = timeToLive * 4 / 5;
+  private double refreshAhead = 0.8;
+  private volatile long nextSweep;
+
+  public RefreshAheadCache(Cache delegate) {
+    this.delegate = delegate;
+  }
+
+  /**
+   * Sets the loader used to refresh the entries read by the current thread, until {@link #clearCurrentLoader()} is
+   * called.
+   *
+   * @param loader
+   *          the loader of the entry about to be read
+   */
+  public static void setCurrentLoader(CacheLoader loader) {
+    CURRENT_LOADER.set(loader);
+  }
+
+  public static void clearCurrentLoader() {
+    CURRENT_LOADER.remove();
+  }
+
+  /**
+   * @param timeToLive
+   *          how long an entry is kept after it was stored, in milliseconds
+   */
+  public void setTimeToLive(long timeToLive) {
+    if (timeToLive <= 0) {
+      throw new CacheException("Cache '" + getId() + "' requires a positive timeToLive but was " + timeToLive);
+    }
+    this.timeToLive = timeToLive;
+    this.refreshAfter = (long) (timeToLive * refreshAhead);
+  }
+
+  /**
+   * @param refreshAhead
+   *          the fraction of the time to live after which a read entry is reloaded, between 0 (exclusive) and 1
+   *          (exclusive)
+   */
+  public void setRefreshAhead(double refreshAhead) {
+    if (refreshAhead <= 0 || refreshAhead >= 1) {
+      throw new CacheException("Cache '" + getId() + "' requires a refreshAhead between 0 and 1 but was " + refreshAhead);
+    }
+    this.refreshAhead = refreshAhead;
+    this.refreshAfter = (long) (timeToLive * refreshAhead);
+  }
+
+  @Override
+  public String getId() {
+    return delegate.getId();
+  }
+
+  @Override
+  public int getSize() {
+    return delegate.getSize();
+  }
+
+  @Override
+  public Collection<Object> getKeys() {
+    return delegate.getKeys();
+  }
+
+  @Override
+  public void putObject(Object key, Object value) {
+    long now = System.currentTimeMillis();
+    delegate.putObject(key, value);
+    entries.put(key, new Entry(now));
+    sweepIfDue(now);
+  }
+
+  @Override
+  public void putObjects(Map<Object, Object> values) {
+    long now = System.currentTimeMillis();
+    delegate.putObjects(values);
+    for (Object key : values.keySet()) {
+      entries.put(key, new Entry(now));
+    }
+    sweepIfDue(now);
+  }
+
+  @Override
+  public Object getObject(Object key) {
+    Entry entry = entries.get(key);
+    if (entry == null) {
+      // stored before this decorator knew about it or already expired
+      return delegate.getObject(key);
+    }
+    long age = System.currentTimeMillis() - entry.storedAt;
+    if (age >= timeToLive) {
+      if (entries.remove(key, entry)) {
+        delegate.removeObject(key);
+      }
+      return null;
+    }
+    Object value = delegate.getObject(key);
+    if (value == null) {
+      // evicted by the delegate
+      entries.remove(key, entry);
+    } else if (age >= refreshAfter) {
+      CacheLoader loader = CURRENT_LOADER.get();
+      if (loader != null && entry.refreshing.compareAndSet(false, true)) {
+        scheduleRefresh(key, entry, loader);
+      }
+    }
+    return value;
+  }
+
+  @Override
+  public Map<Object, Object> peekObjects(Collection<?> keys) {
+    Map<Object, Object> found = delegate.peekObjects(keys);
+    Map<Object, Object> values = new HashMap<>(found.size() * 4 / 3 + 1);
+    long now = System.currentTimeMillis();
+    for (Map.Entry<Object, Object> value : found.entrySet()) {
+      Entry entry = entries.get(value.getKey());
+      if (entry == null || now - entry.storedAt < timeToLive) {
+        values.put(value.getKey(), value.getValue());
+      }
+    }
+    return values;
+  }
+
+  @Override
+  public Object removeObject(Object key) {
+    synchronized (writeLock) {
+      generation.incrementAndGet();
+      entries.remove(key);
+      return delegate.removeObject(key);
+    }
+  }
+
+  @Override
+  public void clear() {
+    synchronized (writeLock) {
+      generation.incrementAndGet();
+      entries.clear();
+      delegate.clear();
+    }
+  }
+
+  @Override
+  public int hashCode() {
+    return delegate.hashCode();
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    return delegate.equals(obj);
+  }
+
+  private void scheduleRefresh(Object key, Entry entry, CacheLoader loader) {
+    long expectedGeneration = generation.get();
+    try {
+      CacheLoader detached = loader.detach();
+      REFRESH_EXECUTOR.execute(() -> refresh(key, entry, detached, expectedGeneration));
+    } catch (RejectedExecutionException e) {
+      // too many pending refreshes, the entry will just expire
+      entry.refreshing.set(false);
+    } catch (RuntimeException e) {
+      entry.refreshing.set(false);
+      if (log.isDebugEnabled()) {
+        log.debug("Failed to refresh an entry of cache " + getId() + ". Cause: " + e);
+      }
+    }
+  }
+
+  private void refresh(Object key, Entry entry, CacheLoader loader, long expectedGeneration) {
+    try {
+      CacheTagRegistry.Snapshot snapshot = loader.snapshotTags();
+      Object value = loader.load();
+      if (value == null) {
+        return;
+      }
+      synchronized (writeLock) {
+        // the entry was invalidated while it was being loaded, the value may be stale
+        if (generation.get() == expectedGeneration && entries.get(key) == entry) {
+          putRefreshed(key, value, loader.getTimeToLive(), snapshot);
+        }
+      }
+    } catch (Exception e) {
+      if (log.isDebugEnabled()) {
+        log.debug("Failed to refresh an entry of cache " + getId() + ". Cause: " + e);
+      }
+    } finally {
+      entry.refreshing.set(false);
+    }
+  }
+
+  private void putRefreshed(Object key, Object value, Long timeToLive, CacheTagRegistry.Snapshot snapshot) {
+    // the decorators below keep the time to live and the tag versions of the statement, as for a committed put
+    if (timeToLive != null) {
+      ExpiringCache.setCurrentTimeToLives(Collections.singletonMap(key, timeToLive));
+    }
+    if (snapshot != null) {
+      TaggedCache.setCurrentSnapshots(Collections.singletonMap(key, snapshot));
+    }
+    try {
+      putObject(key, value);
+    } finally {
+      ExpiringCache.clearCurrentTimeToLives();
+      TaggedCache.clearCurrentSnapshots();
+    }
+  }
+
+  private void sweepIfDue(long now) {
+    // removes the expired entries that were never read again
+    if (now < nextSweep) {
+      return;
+    }
+    nextSweep = now + timeToLive;
+    for (Iterator<Map.Entry<Object, Entry>> iterator = entries.entrySet().iterator(); iterator.hasNext();) {
+      Map.Entry<Object, Entry> expired = iterator.next();
+      if (now - expired.getValue().storedAt >= timeToLive && entries.remove(expired.getKey(), expired.getValue())) {
+        delegate.removeObject(expired.getKey());
+      }
+    }
+  }
+
+  private static ExecutorService newRefreshExecutor() {
+    AtomicInteger threadNumber = new AtomicInteger();
+    int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<>(1024), runnable -> {
+          Thread thread = new Thread(runnable, "mybatis-cache-refresh-" + threadNumber.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        });
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+
+  private static final class Entry {
+    private final long storedAt;
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+
+    Entry(long storedAt) {
+      this.storedAt = storedAt;
+    }
+  }
+
+}
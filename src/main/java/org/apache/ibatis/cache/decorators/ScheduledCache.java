@@ -15,6 +15,9 @@
  */
 package org.apache.ibatis.cache.decorators;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.ibatis.cache.Cache;
@@ -26,7 +29,7 @@ public class ScheduledCache implements Cache {
 
   private final Cache delegate;
   protected long clearInterval;
-  protected long lastClear;
+  protected volatile long lastClear;
 
   public ScheduledCache(Cache delegate) {
     this.delegate = delegate;
@@ -49,17 +52,35 @@ public class ScheduledCache implements Cache {
     return delegate.getSize();
   }
 
+  @Override
+  public Collection<Object> getKeys() {
+    clearWhenStale();
+    return delegate.getKeys();
+  }
+
   @Override
   public void putObject(Object key, Object object) {
     clearWhenStale();
     delegate.putObject(key, object);
   }
 
+  @Override
+  public void putObjects(Map<Object, Object> entries) {
+    clearWhenStale();
+    delegate.putObjects(entries);
+  }
+
   @Override
   public Object getObject(Object key) {
     return clearWhenStale() ? null : delegate.getObject(key);
   }
 
+  @Override
+  public Map<Object, Object> peekObjects(Collection<?> keys) {
+    // the stale content is cleared by the next regular access
+    return System.currentTimeMillis() - lastClear > clearInterval ? Collections.emptyMap() : delegate.peekObjects(keys);
+  }
+
   @Override
   public Object removeObject(Object key) {
     clearWhenStale();
@@ -15,19 +15,19 @@
  */
 package org.apache.ibatis.cache.decorators;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.io.ObjectStreamClass;
-import java.io.Serializable;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 
 import org.apache.ibatis.cache.Cache;
-import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.cache.EmptyResult;
+import org.apache.ibatis.cache.serializer.CacheSerializer;
+import org.apache.ibatis.cache.serializer.JavaCacheSerializer;
 import org.apache.ibatis.io.Resources;
-import org.apache.ibatis.io.SerialFilterChecker;
 
 /**
  * @author Clinton Begin
@@ -35,9 +35,15 @@ import org.apache.ibatis.io.SerialFilterChecker;
 public class SerializedCache implements Cache {
 
   private final Cache delegate;
+  private final CacheSerializer serializer;
 
   public SerializedCache(Cache delegate) {
+    this(delegate, new JavaCacheSerializer());
+  }
+
+  public SerializedCache(Cache delegate, CacheSerializer serializer) {
     this.delegate = delegate;
+    this.serializer = serializer;
   }
 
   @Override
@@ -50,19 +56,45 @@ public class SerializedCache implements Cache {
     return delegate.getSize();
   }
 
+  @Override
+  public Collection<Object> getKeys() {
+    return delegate.getKeys();
+  }
+
   @Override
   public void putObject(Object key, Object object) {
-    if (object == null || object instanceof Serializable) {
-      delegate.putObject(key, serialize((Serializable) object));
-    } else {
-      throw new CacheException("SharedCache failed to make a copy of a non-serializable object: " + object);
+    delegate.putObject(key, serialize(object));
+  }
+
+  @Override
+  public void putObjects(Map<Object, Object> entries) {
+    Map<Object, Object> serialized = new HashMap<>(entries.size() * 4 / 3 + 1);
+    for (Map.Entry<Object, Object> entry : entries.entrySet()) {
+      serialized.put(entry.getKey(), serialize(entry.getValue()));
     }
+    delegate.putObjects(serialized);
   }
 
   @Override
   public Object getObject(Object key) {
     Object object = delegate.getObject(key);
-    return object == null ? null : deserialize((byte[]) object);
+    return object == null || object == EmptyResult.INSTANCE ? object : serializer.deserialize((byte[]) object);
+  }
+
+  @Override
+  public Map<Object, Object> peekObjects(Collection<?> keys) {
+    Map<Object, Object> found = delegate.peekObjects(keys);
+    Map<Object, Object> values = new HashMap<>(found.size() * 4 / 3 + 1);
+    for (Map.Entry<Object, Object> entry : found.entrySet()) {
+      Object object = entry.getValue();
+      values.put(entry.getKey(), object == EmptyResult.INSTANCE ? object : serializer.deserialize((byte[]) object));
+    }
+    return values;
+  }
+
+  private Object serialize(Object object) {
+    // the empty result marker is immutable and shared
+    return object == EmptyResult.INSTANCE ? object : serializer.serialize(object);
   }
 
   @Override
@@ -85,29 +117,6 @@ public class SerializedCache implements Cache {
     return delegate.equals(obj);
   }
 
-  private byte[] serialize(Serializable value) {
-    try (ByteArrayOutputStream bos = new ByteArrayOutputStream();
-        ObjectOutputStream oos = new ObjectOutputStream(bos)) {
-      oos.writeObject(value);
-      oos.flush();
-      return bos.toByteArray();
-    } catch (Exception e) {
-      throw new CacheException("Error serializing object.  Cause: " + e, e);
-    }
-  }
-
-  private Serializable deserialize(byte[] value) {
-    SerialFilterChecker.check();
-    Serializable result;
-    try (ByteArrayInputStream bis = new ByteArrayInputStream(value);
-        ObjectInputStream ois = new CustomObjectInputStream(bis)) {
-      result = (Serializable) ois.readObject();
-    } catch (Exception e) {
-      throw new CacheException("Error deserializing object.  Cause: " + e, e);
-    }
-    return result;
-  }
-
   public static class CustomObjectInputStream extends ObjectInputStream {
 
     public CustomObjectInputStream(InputStream in) throws IOException {
@@ -0,0 +1,243 @@
+/*
+ *    Copyright 2009-2022 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.decorators;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.cache.CacheLoader;
+
+/**
+ * Request coalescing ("single flight") decorator, a lighter alternative to {@link BlockingCache}.
+ * <p>
+ * Reads never block. When several threads miss the same key at the same time, only the first one runs its loader
+ * through {@link #load(Object, CacheLoader, CacheLoader)}; the others wait until the value loaded by that thread is
+ * stored into the cache, that is until its transaction commits, or until the key is removed because it rolled back.
+ * They then read the cache again, so they only see committed values and get their own copy from read/write caches,
+ * as any other hit. This is deliberate: handing them the value as soon as it is loaded would expose data the loading
+ * transaction may still roll back. The price is that, with no {@link #setTimeout(long) timeout}, a waiter is held for
+ * the whole transaction of the loading thread; set a timeout to bound it. A waiter that is not served within the
+ * timeout, or that still misses the cache, runs its own loader.
+ *
+ * @since 3.5.12
+ */
+public class SingleFlightCache implements Cache {
+
+  private final Cache delegate;
+  private final ConcurrentHashMap<Object, Flight> flights = new ConcurrentHashMap<>();
+  private final LongAdder loads = new LongAdder();
+  private final LongAdder coalesced = new LongAdder();
+  private final LongAdder timeouts = new LongAdder();
+  private long timeout;
+
+  public SingleFlightCache(Cache delegate) {
+    this.delegate = delegate;
+  }
+
+  @Override
+  public String getId() {
+    return delegate.getId();
+  }
+
+  @Override
+  public int getSize() {
+    return delegate.getSize();
+  }
+
+  @Override
+  public Collection<Object> getKeys() {
+    return delegate.getKeys();
+  }
+
+  @Override
+  public void putObject(Object key, Object value) {
+    try {
+      delegate.putObject(key, value);
+    } finally {
+      land(key);
+    }
+  }
+
+  @Override
+  public void putObjects(Map<Object, Object> entries) {
+    try {
+      delegate.putObjects(entries);
+    } finally {
+      for (Object key : entries.keySet()) {
+        land(key);
+      }
+    }
+  }
+
+  @Override
+  public Object getObject(Object key) {
+    return delegate.getObject(key);
+  }
+
+  @Override
+  public Map<Object, Object> getObjects(Collection<?> keys) {
+    return delegate.getObjects(keys);
+  }
+
+  @Override
+  public Map<Object, Object> peekObjects(Collection<?> keys) {
+    return delegate.peekObjects(keys);
+  }
+
+  @Override
+  public Object removeObject(Object key) {
+    try {
+      return delegate.removeObject(key);
+    } finally {
+      land(key);
+    }
+  }
+
+  @Override
+  public void clear() {
+    try {
+      delegate.clear();
+    } finally {
+      for (Object key : flights.keySet()) {
+        land(key);
+      }
+    }
+  }
+
+  /**
+   * Runs the loader of a missed key, or waits until the value loaded for it by another thread is stored and reads it.
+   * <p>
+   * The caller that runs its loader must eventually put the key into this cache or remove it, as the transactional
+   * cache does on commit and rollback, otherwise the other threads wait for the timeout.
+   *
+   * @param key
+   *          the missed key
+   * @param reader
+   *          reads the key again once the value loaded by another thread was stored, returns {@code null} on a miss
+   * @param loader
+   *          loads the value of the key, it does not need to put it into the cache
+   * @return the loaded value, or the value returned by the reader
+   * @throws Exception
+   *           if the reader or the loader failed
+   */
+  public Object load(Object key, CacheLoader reader, CacheLoader loader) throws Exception {
+    Flight running = flights.get(key);
+    if (running == null) {
+      // a flight is only allocated when no load of the key is running
+      running = flights.putIfAbsent(key, new Flight());
+    }
+    if (running == null) {
+      loads.increment();
+      try {
+        return loader.load();
+      } catch (Throwable e) {
+        // nothing will be stored, the waiters run their own loader
+        land(key);
+        throw e;
+      }
+    }
+    if (running.owner == Thread.currentThread()) {
+      // a nested or repeated query of the leader itself, waiting for it would never end
+      return loader.load();
+    }
+    try {
+      if (timeout > 0) {
+        running.get(timeout, TimeUnit.MILLISECONDS);
+      } else {
+        running.get();
+      }
+      Object value = reader.load();
+      if (value != null) {
+        coalesced.increment();
+        return value;
+      }
+    } catch (TimeoutException e) {
+      timeouts.increment();
+    } catch (ExecutionException e) {
+      // flights are never completed exceptionally
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new CacheException("Got interrupted while waiting for the load of key " + key, e);
+    }
+    loads.increment();
+    return loader.load();
+  }
+
+  public long getTimeout() {
+    return timeout;
+  }
+
+  /**
+   * Sets how long a thread waits for the load of another thread before running its own.
+   *
+   * @param timeout
+   *          the timeout in milliseconds, zero or less to wait until the load ends
+   */
+  public void setTimeout(long timeout) {
+    this.timeout = timeout;
+  }
+
+  /**
+   * @return the number of loaders that were run
+   */
+  public long getLoadCount() {
+    return loads.sum();
+  }
+
+  /**
+   * @return the number of misses that were served with the value loaded by another thread
+   */
+  public long getCoalescedCount() {
+    return coalesced.sum();
+  }
+
+  /**
+   * @return the number of waiters that gave up on the load of another thread and ran their own loader
+   */
+  public long getTimeoutCount() {
+    return timeouts.sum();
+  }
+
+  @Override
+  public int hashCode() {
+    return delegate.hashCode();
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    return delegate.equals(obj);
+  }
+
+  private void land(Object key) {
+    Flight flight = flights.remove(key);
+    if (flight != null) {
+      flight.complete(null);
+    }
+  }
+
+  private static final class Flight extends CompletableFuture<Object> {
+    private final Thread owner = Thread.currentThread();
+  }
+
+}
@@ -17,8 +17,11 @@ package org.apache.ibatis.cache.decorators;
 
 import java.lang.ref.ReferenceQueue;
 import java.lang.ref.SoftReference;
+import java.util.Collection;
 import java.util.Deque;
+import java.util.HashMap;
 import java.util.LinkedList;
+import java.util.Map;
 
 import org.apache.ibatis.cache.Cache;
 
@@ -52,6 +55,12 @@ public class SoftCache implements Cache {
     return delegate.getSize();
   }
 
+  @Override
+  public Collection<Object> getKeys() {
+    removeGarbageCollectedItems();
+    return delegate.getKeys();
+  }
+
   public void setSize(int size) {
     this.numberOfHardLinks = size;
   }
@@ -84,6 +93,21 @@ public class SoftCache implements Cache {
     return result;
   }
 
+  @Override
+  public Map<Object, Object> peekObjects(Collection<?> keys) {
+    Map<Object, Object> found = delegate.peekObjects(keys);
+    Map<Object, Object> values = new HashMap<>(found.size() * 4 / 3 + 1);
+    for (Map.Entry<Object, Object> entry : found.entrySet()) {
+      @SuppressWarnings("unchecked") // assumed delegate cache is totally managed by this cache
+      SoftReference<Object> reference = (SoftReference<Object>) entry.getValue();
+      Object value = reference.get();
+      if (value != null) {
+        values.put(entry.getKey(), value);
+      }
+    }
+    return values;
+  }
+
   @Override
   public Object removeObject(Object key) {
     removeGarbageCollectedItems();
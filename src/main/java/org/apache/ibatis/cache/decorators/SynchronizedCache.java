@@ -15,6 +15,9 @@
  */
 package org.apache.ibatis.cache.decorators;
 
+import java.util.Collection;
+import java.util.Map;
+
 import org.apache.ibatis.cache.Cache;
 
 /**
@@ -38,11 +41,31 @@ public class SynchronizedCache implements Cache {
     return delegate.getSize();
   }
 
+  @Override
+  public synchronized Collection<Object> getKeys() {
+    return delegate.getKeys();
+  }
+
   @Override
   public synchronized void putObject(Object key, Object object) {
     delegate.putObject(key, object);
   }
 
+  @Override
+  public synchronized Map<Object, Object> getObjects(Collection<?> keys) {
+    return delegate.getObjects(keys);
+  }
+
+  @Override
+  public synchronized Map<Object, Object> peekObjects(Collection<?> keys) {
+    return delegate.peekObjects(keys);
+  }
+
+  @Override
+  public synchronized void putObjects(Map<Object, Object> entries) {
+    delegate.putObjects(entries);
+  }
+
   @Override
   public synchronized Object getObject(Object key) {
     return delegate.getObject(key);
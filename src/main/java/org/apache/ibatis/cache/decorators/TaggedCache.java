@@ -0,0 +1,156 @@
+/*
+ *    Copyright 2009-2022 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.decorators;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheTagRegistry;
+
+/**
+ * Discards entries whose {@link CacheTagRegistry cache tags} were written after the entry was read from the database.
+ * <p>
+ * The tag versions of the entries stored by the current thread are given with {@link #setCurrentSnapshots}, and are
+ * stored together with the value, so they are evicted with the entry by the decorators below. Entries stored without
+ * a snapshot are stored as they are and never invalidated by tags, so the decorator costs nothing while no statement
+ * declares cache tags.
+ */
+public class TaggedCache implements Cache {
+
+  private static final ThreadLocal<Map<Object, CacheTagRegistry.Snapshot>> CURRENT_SNAPSHOTS = new ThreadLocal<>();
+
+  private final Cache delegate;
+
+  public TaggedCache(Cache delegate) {
+    this.delegate = delegate;
+  }
+
+  /**
+   * Sets the tag versions of the entries stored by the current thread, until {@link #clearCurrentSnapshots()} is
+   * called.
+   *
+   * @param snapshots
+   *          the tag versions at the time the entries were read, by key
+   */
+  public static void setCurrentSnapshots(Map<Object, CacheTagRegistry.Snapshot> snapshots) {
+    CURRENT_SNAPSHOTS.set(snapshots);
+  }
+
+  public static void clearCurrentSnapshots() {
+    CURRENT_SNAPSHOTS.remove();
+  }
+
+  @Override
+  public String getId() {
+    return delegate.getId();
+  }
+
+  @Override
+  public int getSize() {
+    return delegate.getSize();
+  }
+
+  @Override
+  public Collection<Object> getKeys() {
+    return delegate.getKeys();
+  }
+
+  @Override
+  public void putObject(Object key, Object value) {
+    delegate.putObject(key, wrap(key, value, CURRENT_SNAPSHOTS.get()));
+  }
+
+  @Override
+  public void putObjects(Map<Object, Object> values) {
+    Map<Object, CacheTagRegistry.Snapshot> current = CURRENT_SNAPSHOTS.get();
+    if (current == null) {
+      delegate.putObjects(values);
+      return;
+    }
+    Map<Object, Object> wrapped = new LinkedHashMap<>(values.size() * 4 / 3 + 1);
+    for (Map.Entry<Object, Object> value : values.entrySet()) {
+      wrapped.put(value.getKey(), wrap(value.getKey(), value.getValue(), current));
+    }
+    delegate.putObjects(wrapped);
+  }
+
+  @Override
+  public Object getObject(Object key) {
+    Object stored = delegate.getObject(key);
+    if (!(stored instanceof Tagged)) {
+      return stored;
+    }
+    Tagged entry = (Tagged) stored;
+    if (!entry.snapshot.isCurrent()) {
+      delegate.removeObject(key);
+      return null;
+    }
+    return entry.value;
+  }
+
+  @Override
+  public Map<Object, Object> peekObjects(Collection<?> keys) {
+    Map<Object, Object> found = delegate.peekObjects(keys);
+    Map<Object, Object> values = new HashMap<>(found.size() * 4 / 3 + 1);
+    for (Map.Entry<Object, Object> stored : found.entrySet()) {
+      if (!(stored.getValue() instanceof Tagged)) {
+        values.put(stored.getKey(), stored.getValue());
+      } else if (((Tagged) stored.getValue()).snapshot.isCurrent()) {
+        values.put(stored.getKey(), ((Tagged) stored.getValue()).value);
+      }
+    }
+    return values;
+  }
+
+  @Override
+  public Object removeObject(Object key) {
+    Object stored = delegate.removeObject(key);
+    return stored instanceof Tagged ? ((Tagged) stored).value : stored;
+  }
+
+  @Override
+  public void clear() {
+    delegate.clear();
+  }
+
+  private static Object wrap(Object key, Object value, Map<Object, CacheTagRegistry.Snapshot> current) {
+    CacheTagRegistry.Snapshot snapshot = current == null || value == null ? null : current.get(key);
+    return snapshot == null ? value : new Tagged(value, snapshot);
+  }
+
+  @Override
+  public int hashCode() {
+    return delegate.hashCode();
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    return delegate.equals(obj);
+  }
+
+  private static final class Tagged extends ValueEnvelope {
+    private final CacheTagRegistry.Snapshot snapshot;
+
+    Tagged(Object value, CacheTagRegistry.Snapshot snapshot) {
+      super(value);
+      this.snapshot = snapshot;
+    }
+  }
+
+}
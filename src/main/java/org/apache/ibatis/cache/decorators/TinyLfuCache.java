@@ -0,0 +1,339 @@
+/*
+ *    Copyright 2009-2022 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.decorators;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.ibatis.cache.Cache;
+
+/**
+ * W-TinyLFU (window tiny least frequently used) cache decorator.
+ * <p>
+ * New keys enter a small LRU window. Keys leaving the window compete with the eldest key of the main segmented LRU
+ * area and are only admitted when their estimated access frequency is higher, so one-off scans do not flush out the
+ * frequently used entries. Frequencies are tracked in a count-min sketch that is aged periodically.
+ * <p>
+ * Reads do not take any lock: accessed keys are recorded in a lossy ring buffer that is replayed against the policy
+ * in batches, by whichever thread manages to acquire the policy lock. Writes update the policy under that lock.
+ * Thus this decorator can be stacked on a thread-safe cache without a {@link SynchronizedCache}.
+ */
+public class TinyLfuCache implements Cache {
+
+  private static final int READ_BUFFER_SIZE = 128;
+  private static final int READ_BUFFER_MASK = READ_BUFFER_SIZE - 1;
+  private static final int READ_DRAIN_THRESHOLD = 32;
+
+  private final Cache delegate;
+  private final ReentrantLock evictionLock = new ReentrantLock();
+  private final AtomicReferenceArray<Object> readBuffer = new AtomicReferenceArray<>(READ_BUFFER_SIZE);
+  private final AtomicLong readBufferTail = new AtomicLong();
+  private volatile long readBufferHead;
+
+  private int size;
+  private int windowSize;
+  private int protectedSize;
+  private Set<Object> window;
+  private Set<Object> probation;
+  private Set<Object> protectedKeys;
+  private FrequencySketch sketch;
+
+  public TinyLfuCache(Cache delegate) {
+    this.delegate = delegate;
+    setSize(1024);
+  }
+
+  @Override
+  public String getId() {
+    return delegate.getId();
+  }
+
+  @Override
+  public int getSize() {
+    return delegate.getSize();
+  }
+
+  @Override
+  public Collection<Object> getKeys() {
+    return delegate.getKeys();
+  }
+
+  public void setSize(int size) {
+    evictionLock.lock();
+    try {
+      this.size = Math.max(1, size);
+      this.windowSize = Math.max(1, this.size / 100);
+      this.protectedSize = (this.size - windowSize) * 4 / 5;
+      this.window = new LinkedHashSet<>();
+      this.probation = new LinkedHashSet<>();
+      this.protectedKeys = new LinkedHashSet<>();
+      this.sketch = new FrequencySketch(this.size);
+      delegate.clear();
+    } finally {
+      evictionLock.unlock();
+    }
+  }
+
+  @Override
+  public void putObject(Object key, Object value) {
+    delegate.putObject(key, value);
+    evictionLock.lock();
+    try {
+      drainReadBuffer();
+      onWrite(key);
+    } finally {
+      evictionLock.unlock();
+    }
+  }
+
+  @Override
+  public void putObjects(Map<Object, Object> entries) {
+    delegate.putObjects(entries);
+    evictionLock.lock();
+    try {
+      drainReadBuffer();
+      for (Object key : entries.keySet()) {
+        onWrite(key);
+      }
+    } finally {
+      evictionLock.unlock();
+    }
+  }
+
+  @Override
+  public Object getObject(Object key) {
+    Object value = delegate.getObject(key);
+    recordRead(key);
+    return value;
+  }
+
+  @Override
+  public Map<Object, Object> getObjects(Collection<?> keys) {
+    Map<Object, Object> found = delegate.getObjects(keys);
+    for (Object key : keys) {
+      recordRead(key);
+    }
+    return found;
+  }
+
+  @Override
+  public Map<Object, Object> peekObjects(Collection<?> keys) {
+    return delegate.peekObjects(keys);
+  }
+
+  @Override
+  public Object removeObject(Object key) {
+    evictionLock.lock();
+    try {
+      window.remove(key);
+      probation.remove(key);
+      protectedKeys.remove(key);
+    } finally {
+      evictionLock.unlock();
+    }
+    return delegate.removeObject(key);
+  }
+
+  @Override
+  public void clear() {
+    evictionLock.lock();
+    try {
+      delegate.clear();
+      window.clear();
+      probation.clear();
+      protectedKeys.clear();
+      drainReadBuffer();
+    } finally {
+      evictionLock.unlock();
+    }
+  }
+
+  private void recordRead(Object key) {
+    long head = readBufferHead;
+    long tail = readBufferTail.get();
+    long pending = tail - head;
+    if (pending < READ_BUFFER_SIZE && readBufferTail.compareAndSet(tail, tail + 1)) {
+      readBuffer.lazySet((int) (tail & READ_BUFFER_MASK), key);
+      pending++;
+    }
+    // a full or contended buffer simply drops the access, the policy only needs a sample
+    if (pending >= READ_DRAIN_THRESHOLD && evictionLock.tryLock()) {
+      try {
+        drainReadBuffer();
+      } finally {
+        evictionLock.unlock();
+      }
+    }
+  }
+
+  private void drainReadBuffer() {
+    long head = readBufferHead;
+    long tail = readBufferTail.get();
+    while (head < tail) {
+      int index = (int) (head & READ_BUFFER_MASK);
+      Object key = readBuffer.get(index);
+      if (key == null) {
+        // slot reserved but not published yet, pick it up on the next drain
+        break;
+      }
+      readBuffer.lazySet(index, null);
+      onAccess(key);
+      head++;
+    }
+    readBufferHead = head;
+  }
+
+  private void onAccess(Object key) {
+    sketch.increment(key);
+    if (window.remove(key)) {
+      window.add(key);
+    } else if (probation.remove(key)) {
+      promote(key);
+    } else if (protectedKeys.remove(key)) {
+      protectedKeys.add(key);
+    }
+  }
+
+  private void onWrite(Object key) {
+    sketch.increment(key);
+    if (probation.remove(key)) {
+      promote(key);
+      return;
+    }
+    if (protectedKeys.remove(key)) {
+      protectedKeys.add(key);
+      return;
+    }
+    window.remove(key);
+    window.add(key);
+    if (window.size() > windowSize) {
+      Object candidate = removeEldest(window);
+      probation.add(candidate);
+      evict(candidate);
+    }
+  }
+
+  private void promote(Object key) {
+    protectedKeys.add(key);
+    if (protectedKeys.size() > protectedSize) {
+      probation.add(removeEldest(protectedKeys));
+    }
+  }
+
+  private void evict(Object candidate) {
+    while (window.size() + probation.size() + protectedKeys.size() > size) {
+      if (probation.isEmpty()) {
+        probation.add(removeEldest(protectedKeys.isEmpty() ? window : protectedKeys));
+      }
+      Object victim = probation.iterator().next();
+      Object loser = victim;
+      if (candidate != null && !victim.equals(candidate) && probation.contains(candidate)
+          && sketch.frequency(candidate) <= sketch.frequency(victim)) {
+        loser = candidate;
+      }
+      probation.remove(loser);
+      delegate.removeObject(loser);
+      if (loser.equals(candidate)) {
+        candidate = null;
+      }
+    }
+  }
+
+  private static Object removeEldest(Set<Object> keys) {
+    Iterator<Object> iterator = keys.iterator();
+    Object eldest = iterator.next();
+    iterator.remove();
+    return eldest;
+  }
+
+  /**
+   * Count-min sketch of 4-bit counters. Counters are halved once the number of increments reaches ten times the
+   * cache size, so old popularity fades out.
+   */
+  private static final class FrequencySketch {
+
+    private static final long[] SEEDS = {
+        0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+    private static final long RESET_MASK = 0x7777777777777777L;
+
+    private final long[] table;
+    private final int tableMask;
+    private final int sampleSize;
+    private int additions;
+
+    FrequencySketch(int maximumSize) {
+      int length = Integer.highestOneBit(Math.max(8, Math.min(maximumSize, 1 << 26)) - 1) << 1;
+      this.table = new long[length];
+      this.tableMask = length - 1;
+      this.sampleSize = 10 * maximumSize;
+    }
+
+    int frequency(Object key) {
+      int hash = spread(key.hashCode());
+      int frequency = 15;
+      for (int i = 0; i < 4; i++) {
+        long h = rehash(hash, i);
+        int index = (int) (h >>> 32) & tableMask;
+        int offset = ((int) h & 15) << 2;
+        frequency = Math.min(frequency, (int) ((table[index] >>> offset) & 15L));
+      }
+      return frequency;
+    }
+
+    void increment(Object key) {
+      int hash = spread(key.hashCode());
+      boolean added = false;
+      for (int i = 0; i < 4; i++) {
+        long h = rehash(hash, i);
+        int index = (int) (h >>> 32) & tableMask;
+        int offset = ((int) h & 15) << 2;
+        if (((table[index] >>> offset) & 15L) != 15L) {
+          table[index] += 1L << offset;
+          added = true;
+        }
+      }
+      if (added && ++additions >= sampleSize) {
+        reset();
+      }
+    }
+
+    private void reset() {
+      for (int i = 0; i < table.length; i++) {
+        table[i] = (table[i] >>> 1) & RESET_MASK;
+      }
+      additions >>>= 1;
+    }
+
+    private static int spread(int hash) {
+      hash ^= hash >>> 17;
+      hash *= 0xed5ad4bb;
+      hash ^= hash >>> 11;
+      return hash;
+    }
+
+    private static long rehash(int hash, int i) {
+      long h = (hash + SEEDS[i]) * SEEDS[(i + 1) & 3];
+      return h ^ (h >>> 29);
+    }
+  }
+
+}
@@ -15,12 +15,15 @@
  */
 package org.apache.ibatis.cache.decorators;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 
 import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheTagRegistry;
 import org.apache.ibatis.logging.Log;
 import org.apache.ibatis.logging.LogFactory;
 
@@ -43,12 +46,16 @@ public class TransactionalCache implements Cache {
   private boolean clearOnCommit;
   private final Map<Object, Object> entriesToAddOnCommit;
   private final Set<Object> entriesMissedInCache;
+  private final Map<Object, Long> timeToLives;
+  private final Map<Object, CacheTagRegistry.Snapshot> snapshots;
 
   public TransactionalCache(Cache delegate) {
     this.delegate = delegate;
     this.clearOnCommit = false;
     this.entriesToAddOnCommit = new HashMap<>();
     this.entriesMissedInCache = new HashSet<>();
+    this.timeToLives = new HashMap<>();
+    this.snapshots = new HashMap<>();
   }
 
   @Override
@@ -61,12 +68,20 @@ public class TransactionalCache implements Cache {
     return delegate.getSize();
   }
 
+  @Override
+  public Collection<Object> getKeys() {
+    return delegate.getKeys();
+  }
+
   @Override
   public Object getObject(Object key) {
     // issue #116
     Object object = delegate.getObject(key);
     if (object == null) {
       entriesMissedInCache.add(key);
+    } else {
+      // missed earlier and stored by another session since, committing a null would overwrite its value
+      entriesMissedInCache.remove(key);
     }
     // issue #146
     if (clearOnCommit) {
@@ -76,9 +91,82 @@ public class TransactionalCache implements Cache {
     }
   }
 
+  @Override
+  public Map<Object, Object> getObjects(Collection<?> keys) {
+    Map<Object, Object> found = delegate.getObjects(keys);
+    for (Object key : keys) {
+      if (!found.containsKey(key)) {
+        entriesMissedInCache.add(key);
+      } else {
+        entriesMissedInCache.remove(key);
+      }
+    }
+    return clearOnCommit ? Collections.emptyMap() : found;
+  }
+
+  @Override
+  public Map<Object, Object> peekObjects(Collection<?> keys) {
+    return clearOnCommit ? Collections.emptyMap() : delegate.peekObjects(keys);
+  }
+
   @Override
   public void putObject(Object key, Object object) {
     entriesToAddOnCommit.put(key, object);
+    timeToLives.remove(key);
+    snapshots.remove(key);
+  }
+
+  /**
+   * Adds an entry that expires after the given time instead of the time to live of the cache.
+   *
+   * @param key
+   *          the key
+   * @param object
+   *          the value
+   * @param timeToLive
+   *          the time to live in milliseconds, {@code null} for the time to live of the cache
+   * @since 3.5.12
+   * @see ExpiringCache
+   */
+  public void putObject(Object key, Object object, Long timeToLive) {
+    putObject(key, object, timeToLive, null);
+  }
+
+  /**
+   * Adds an entry that expires after the given time and is invalidated when the tags it was read with are written.
+   *
+   * @param key
+   *          the key
+   * @param object
+   *          the value
+   * @param timeToLive
+   *          the time to live in milliseconds, {@code null} for the time to live of the cache
+   * @param snapshot
+   *          the versions of the tags the value was read with, {@code null} if it does not depend on tags
+   * @since 3.5.12
+   * @see TaggedCache
+   */
+  public void putObject(Object key, Object object, Long timeToLive, CacheTagRegistry.Snapshot snapshot) {
+    entriesToAddOnCommit.put(key, object);
+    if (timeToLive == null) {
+      timeToLives.remove(key);
+    } else {
+      timeToLives.put(key, timeToLive);
+    }
+    if (snapshot == null) {
+      snapshots.remove(key);
+    } else {
+      snapshots.put(key, snapshot);
+    }
+  }
+
+  @Override
+  public void putObjects(Map<Object, Object> entries) {
+    entriesToAddOnCommit.putAll(entries);
+    for (Object key : entries.keySet()) {
+      timeToLives.remove(key);
+      snapshots.remove(key);
+    }
   }
 
   @Override
@@ -90,6 +178,8 @@ public class TransactionalCache implements Cache {
   public void clear() {
     clearOnCommit = true;
     entriesToAddOnCommit.clear();
+    timeToLives.clear();
+    snapshots.clear();
   }
 
   public void commit() {
@@ -111,17 +201,32 @@ public class TransactionalCache implements Cache {
     clearOnCommit = false;
     entriesToAddOnCommit.clear();
     entriesMissedInCache.clear();
+    timeToLives.clear();
+    snapshots.clear();
   }
 
   private void flushPendingEntries() {
-    for (Map.Entry<Object, Object> entry : entriesToAddOnCommit.entrySet()) {
-      delegate.putObject(entry.getKey(), entry.getValue());
-    }
+    Map<Object, Object> entries = entriesToAddOnCommit;
     for (Object entry : entriesMissedInCache) {
       if (!entriesToAddOnCommit.containsKey(entry)) {
-        delegate.putObject(entry, null);
+        if (entries == entriesToAddOnCommit) {
+          entries = new HashMap<>(entriesToAddOnCommit);
+        }
+        entries.put(entry, null);
       }
     }
+    if (entries.isEmpty()) {
+      return;
+    }
+    // one call through the decorators, the ones that keep per entry settings pick them up from the current thread
+    ExpiringCache.setCurrentTimeToLives(timeToLives.isEmpty() ? null : timeToLives);
+    TaggedCache.setCurrentSnapshots(snapshots.isEmpty() ? null : snapshots);
+    try {
+      delegate.putObjects(entries);
+    } finally {
+      ExpiringCache.clearCurrentTimeToLives();
+      TaggedCache.clearCurrentSnapshots();
+    }
   }
 
   private void unlockMissedEntries() {
@@ -0,0 +1,48 @@
+/*
+ *    Copyright 2009-2022 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.decorators;
+
+/**
+ * A value stored by a decorator together with the metadata it needs, such as an expiration time. The metadata is
+ * stored and evicted with the entry itself, whatever the decorators below do with it, instead of being kept in a
+ * side map that would miss their evictions.
+ * <p>
+ * Each decorator only unwraps its own envelopes; decorators that look at the values, like {@link WeightedCache},
+ * see through all of them with {@link #unwrap(Object)}.
+ *
+ * @since 3.5.12
+ */
+abstract class ValueEnvelope {
+
+  final Object value;
+
+  ValueEnvelope(Object value) {
+    this.value = value;
+  }
+
+  /**
+   * @param stored
+   *          a value as stored in a cache
+   * @return the value without the envelopes of the decorators above
+   */
+  static Object unwrap(Object stored) {
+    while (stored instanceof ValueEnvelope) {
+      stored = ((ValueEnvelope) stored).value;
+    }
+    return stored;
+  }
+
+}
@@ -0,0 +1,214 @@
+/*
+ *    Copyright 2009-2022 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.decorators;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.cache.weigher.EstimatedSizeWeigher;
+import org.apache.ibatis.cache.weigher.Weigher;
+
+/**
+ * Weight bounded cache decorator.
+ * <p>
+ * Caps the total weight of the entries, as computed by a {@link Weigher}, evicting the oldest entries first when
+ * {@link #setMaxWeight(long) maxWeight} is exceeded. An entry heavier than the whole cache is not stored at all, so
+ * a rare huge result cannot take the memory of the whole namespace. This is a memory cap that complements the
+ * count based eviction policy, which must be stacked on top of this decorator so its evictions are accounted.
+ * <p>
+ * Reads are not tracked and do not take any lock, writes are serialized.
+ */
+public class WeightedCache implements Cache {
+
+  private final Cache delegate;
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Map<Object, Long> weights = new LinkedHashMap<>();
+  private Weigher weigher = new EstimatedSizeWeigher();
+  private long maxWeight = Long.MAX_VALUE;
+  private volatile long weight;
+  private volatile long evictionCount;
+  private volatile long rejectionCount;
+
+  public WeightedCache(Cache delegate) {
+    this.delegate = delegate;
+  }
+
+  @Override
+  public String getId() {
+    return delegate.getId();
+  }
+
+  @Override
+  public int getSize() {
+    return delegate.getSize();
+  }
+
+  @Override
+  public Collection<Object> getKeys() {
+    return delegate.getKeys();
+  }
+
+  public void setMaxWeight(long maxWeight) {
+    if (maxWeight <= 0) {
+      throw new CacheException("Cache '" + getId() + "' requires a positive maxWeight but was " + maxWeight);
+    }
+    this.maxWeight = maxWeight;
+  }
+
+  public long getMaxWeight() {
+    return maxWeight;
+  }
+
+  public void setWeigher(Weigher weigher) {
+    this.weigher = weigher;
+  }
+
+  /**
+   * @return the current total weight of the entries
+   */
+  public long getWeight() {
+    return weight;
+  }
+
+  /**
+   * @return the number of entries removed to make room for new ones
+   */
+  public long getEvictionCount() {
+    return evictionCount;
+  }
+
+  /**
+   * @return the number of entries that were not stored because they were heavier than the maximum weight
+   */
+  public long getRejectionCount() {
+    return rejectionCount;
+  }
+
+  @Override
+  public void putObject(Object key, Object value) {
+    long entryWeight = weigher.weigh(key, ValueEnvelope.unwrap(value));
+    lock.lock();
+    try {
+      Long previous = weights.remove(key);
+      if (previous != null) {
+        weight -= previous;
+      }
+      if (entryWeight > maxWeight) {
+        rejectionCount++;
+        delegate.removeObject(key);
+        return;
+      }
+      delegate.putObject(key, value);
+      weights.put(key, entryWeight);
+      weight += entryWeight;
+      evictOverweight();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public void putObjects(Map<Object, Object> entries) {
+    Map<Object, Long> entryWeights = new HashMap<>(entries.size() * 4 / 3 + 1);
+    for (Map.Entry<Object, Object> entry : entries.entrySet()) {
+      entryWeights.put(entry.getKey(), weigher.weigh(entry.getKey(), ValueEnvelope.unwrap(entry.getValue())));
+    }
+    lock.lock();
+    try {
+      Map<Object, Object> accepted = new LinkedHashMap<>(entries.size() * 4 / 3 + 1);
+      for (Map.Entry<Object, Object> entry : entries.entrySet()) {
+        Long previous = weights.remove(entry.getKey());
+        if (previous != null) {
+          weight -= previous;
+        }
+        if (entryWeights.get(entry.getKey()) > maxWeight) {
+          rejectionCount++;
+          delegate.removeObject(entry.getKey());
+        } else {
+          accepted.put(entry.getKey(), entry.getValue());
+        }
+      }
+      delegate.putObjects(accepted);
+      for (Object key : accepted.keySet()) {
+        long entryWeight = entryWeights.get(key);
+        weights.put(key, entryWeight);
+        weight += entryWeight;
+      }
+      evictOverweight();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public Object getObject(Object key) {
+    return delegate.getObject(key);
+  }
+
+  @Override
+  public Map<Object, Object> getObjects(Collection<?> keys) {
+    return delegate.getObjects(keys);
+  }
+
+  @Override
+  public Map<Object, Object> peekObjects(Collection<?> keys) {
+    return delegate.peekObjects(keys);
+  }
+
+  @Override
+  public Object removeObject(Object key) {
+    lock.lock();
+    try {
+      Long previous = weights.remove(key);
+      if (previous != null) {
+        weight -= previous;
+      }
+      return delegate.removeObject(key);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public void clear() {
+    lock.lock();
+    try {
+      delegate.clear();
+      weights.clear();
+      weight = 0;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void evictOverweight() {
+    Iterator<Map.Entry<Object, Long>> iterator = weights.entrySet().iterator();
+    while (weight > maxWeight && iterator.hasNext()) {
+      Map.Entry<Object, Long> eldest = iterator.next();
+      iterator.remove();
+      weight -= eldest.getValue();
+      evictionCount++;
+      delegate.removeObject(eldest.getKey());
+    }
+  }
+
+}
@@ -0,0 +1,285 @@
+/*
+ *    Copyright 2009-2022 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.cache.metrics.CacheMetrics;
+import org.apache.ibatis.cache.metrics.NoOpCacheMetrics;
+
+/**
+ * Lock-striped cache that is safe for concurrent use on its own.
+ * <p>
+ * Keys are spread over a power-of-two number of segments, each one guarded by its own lock. Every segment
+ * keeps its entries in access order and evicts its least recently used entry when it holds more than its
+ * share of {@link #setSize(int) size}, so threads working on different keys rarely contend and the
+ * namespace does not need to be wrapped in a {@link org.apache.ibatis.cache.decorators.SynchronizedCache}.
+ * <p>
+ * A size of zero or less makes the cache unbounded.
+ */
+public class ConcurrentCache implements Cache {
+
+  private static final int DEFAULT_SIZE = 1024;
+  private static final int DEFAULT_CONCURRENCY_LEVEL = 16;
+  private static final int MAX_SEGMENTS = 1 << 16;
+
+  private final String id;
+  private int size = DEFAULT_SIZE;
+  private int concurrencyLevel = DEFAULT_CONCURRENCY_LEVEL;
+  private volatile Segment[] segments;
+  private volatile CacheMetrics metrics = NoOpCacheMetrics.INSTANCE;
+
+  public ConcurrentCache(String id) {
+    this.id = id;
+    this.segments = createSegments();
+  }
+
+  @Override
+  public String getId() {
+    return id;
+  }
+
+  /**
+   * Sets the maximum number of entries. Changing it discards the current content.
+   *
+   * @param size
+   *          the maximum number of entries, zero or less for no limit
+   */
+  public void setSize(int size) {
+    this.size = size;
+    this.segments = createSegments();
+  }
+
+  /**
+   * Sets the estimated number of threads updating the cache at the same time. It is rounded up to the next
+   * power of two to obtain the number of segments. Changing it discards the current content.
+   *
+   * @param concurrencyLevel
+   *          the estimated number of concurrently updating threads
+   */
+  public void setConcurrencyLevel(int concurrencyLevel) {
+    if (concurrencyLevel <= 0) {
+      throw new CacheException("Cache '" + id + "' requires a positive concurrencyLevel but was " + concurrencyLevel);
+    }
+    this.concurrencyLevel = concurrencyLevel;
+    this.segments = createSegments();
+  }
+
+  /**
+   * Sets the metrics the entries evicted by the segments are reported to.
+   *
+   * @param metrics
+   *          the metrics of the cache
+   * @since 3.5.12
+   */
+  public void setMetrics(CacheMetrics metrics) {
+    this.metrics = metrics;
+  }
+
+  @Override
+  public int getSize() {
+    int count = 0;
+    for (Segment segment : segments) {
+      count += segment.size();
+    }
+    return count;
+  }
+
+  @Override
+  public Collection<Object> getKeys() {
+    List<Object> keys = new ArrayList<>();
+    for (Segment segment : segments) {
+      segment.addKeysTo(keys);
+    }
+    return keys;
+  }
+
+  @Override
+  public void putObject(Object key, Object value) {
+    segmentFor(key).put(key, value);
+  }
+
+  @Override
+  public void putObjects(Map<Object, Object> entries) {
+    Segment[] current = segments;
+    Map<Segment, Map<Object, Object>> bySegment = new IdentityHashMap<>();
+    for (Map.Entry<Object, Object> entry : entries.entrySet()) {
+      bySegment.computeIfAbsent(segmentFor(current, entry.getKey()), k -> new HashMap<>()).put(entry.getKey(), entry.getValue());
+    }
+    for (Map.Entry<Segment, Map<Object, Object>> segment : bySegment.entrySet()) {
+      segment.getKey().putAll(segment.getValue());
+    }
+  }
+
+  @Override
+  public Object getObject(Object key) {
+    return segmentFor(key).get(key);
+  }
+
+  @Override
+  public Object removeObject(Object key) {
+    return segmentFor(key).remove(key);
+  }
+
+  @Override
+  public void clear() {
+    for (Segment segment : segments) {
+      segment.clear();
+    }
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (getId() == null) {
+      throw new CacheException("Cache instances require an ID.");
+    }
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof Cache)) {
+      return false;
+    }
+
+    Cache otherCache = (Cache) o;
+    return getId().equals(otherCache.getId());
+  }
+
+  @Override
+  public int hashCode() {
+    if (getId() == null) {
+      throw new CacheException("Cache instances require an ID.");
+    }
+    return getId().hashCode();
+  }
+
+  private Segment segmentFor(Object key) {
+    return segmentFor(segments, key);
+  }
+
+  private static Segment segmentFor(Segment[] current, Object key) {
+    int h = key == null ? 0 : key.hashCode();
+    h ^= h >>> 16;
+    return current[h & (current.length - 1)];
+  }
+
+  private Segment[] createSegments() {
+    int count = 1;
+    while (count < concurrencyLevel && count < MAX_SEGMENTS) {
+      count <<= 1;
+    }
+    int capacity = size <= 0 ? 0 : Math.max(1, (size + count - 1) / count);
+    Segment[] result = new Segment[count];
+    for (int i = 0; i < count; i++) {
+      result[i] = new Segment(capacity, () -> metrics.recordEviction());
+    }
+    return result;
+  }
+
+  private static final class Segment extends ReentrantLock {
+
+    private static final long serialVersionUID = 1L;
+
+    private final transient Map<Object, Object> entries;
+
+    Segment(final int capacity, final Runnable onEviction) {
+      this.entries = new LinkedHashMap<Object, Object>(16, .75F, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Object, Object> eldest) {
+          if (capacity > 0 && size() > capacity) {
+            onEviction.run();
+            return true;
+          }
+          return false;
+        }
+      };
+    }
+
+    Object get(Object key) {
+      lock();
+      try {
+        return entries.get(key);
+      } finally {
+        unlock();
+      }
+    }
+
+    void put(Object key, Object value) {
+      lock();
+      try {
+        entries.put(key, value);
+      } finally {
+        unlock();
+      }
+    }
+
+    void putAll(Map<Object, Object> values) {
+      lock();
+      try {
+        entries.putAll(values);
+      } finally {
+        unlock();
+      }
+    }
+
+    Object remove(Object key) {
+      lock();
+      try {
+        return entries.remove(key);
+      } finally {
+        unlock();
+      }
+    }
+
+    void clear() {
+      lock();
+      try {
+        entries.clear();
+      } finally {
+        unlock();
+      }
+    }
+
+    void addKeysTo(Collection<Object> keys) {
+      lock();
+      try {
+        keys.addAll(entries.keySet());
+      } finally {
+        unlock();
+      }
+    }
+
+    int size() {
+      lock();
+      try {
+        return entries.size();
+      } finally {
+        unlock();
+      }
+    }
+  }
+
+}
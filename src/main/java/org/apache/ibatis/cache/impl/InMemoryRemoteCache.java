@@ -0,0 +1,111 @@
+/*
+ *    Copyright 2009-2022 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.impl;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.cache.serializer.CacheSerializer;
+import org.apache.ibatis.cache.serializer.JavaCacheSerializer;
+
+/**
+ * In-memory stand-in for a remote cache, the default remote tier of a {@link TwoTierCache}.
+ * <p>
+ * All the instances with the same id share their entries within the JVM, as the nodes of a cluster share a remote
+ * store, and values are kept serialized, so every read returns a new copy as a remote store would.
+ *
+ * @since 3.5.12
+ */
+public class InMemoryRemoteCache implements Cache {
+
+  private static final Map<String, Map<Object, byte[]>> STORES = new ConcurrentHashMap<>();
+
+  private final String id;
+  private final Map<Object, byte[]> store;
+  private CacheSerializer serializer = new JavaCacheSerializer();
+
+  public InMemoryRemoteCache(String id) {
+    this.id = id;
+    this.store = STORES.computeIfAbsent(id, k -> new ConcurrentHashMap<>());
+  }
+
+  @Override
+  public String getId() {
+    return id;
+  }
+
+  public void setSerializer(CacheSerializer serializer) {
+    this.serializer = serializer;
+  }
+
+  @Override
+  public int getSize() {
+    return store.size();
+  }
+
+  @Override
+  public void putObject(Object key, Object value) {
+    if (value == null) {
+      store.remove(key);
+    } else {
+      store.put(key, serializer.serialize(value));
+    }
+  }
+
+  @Override
+  public Object getObject(Object key) {
+    byte[] value = store.get(key);
+    return value == null ? null : serializer.deserialize(value);
+  }
+
+  @Override
+  public Object removeObject(Object key) {
+    byte[] value = store.remove(key);
+    return value == null ? null : serializer.deserialize(value);
+  }
+
+  @Override
+  public void clear() {
+    store.clear();
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (getId() == null) {
+      throw new CacheException("Cache instances require an ID.");
+    }
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof Cache)) {
+      return false;
+    }
+
+    Cache otherCache = (Cache) o;
+    return getId().equals(otherCache.getId());
+  }
+
+  @Override
+  public int hashCode() {
+    if (getId() == null) {
+      throw new CacheException("Cache instances require an ID.");
+    }
+    return getId().hashCode();
+  }
+
+}
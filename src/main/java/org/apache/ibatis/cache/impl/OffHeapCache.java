@@ -0,0 +1,270 @@
+/*
+ *    Copyright 2009-2022 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.impl;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.cache.serializer.CacheSerializer;
+import org.apache.ibatis.cache.serializer.JavaCacheSerializer;
+
+/**
+ * Cache that keeps the serialized values outside of the java heap.
+ * <p>
+ * Values are serialized with a pluggable {@link CacheSerializer} and appended to a ring of direct
+ * {@link ByteBuffer} slabs, which are allocated on demand up to {@link #setCapacity(long) capacity} bytes. When the
+ * ring is full the oldest entries are overwritten, so eviction is FIFO and there is no fragmentation. Only the key
+ * index lives on the heap. Every read returns a new copy of the value, as a read/write cache does.
+ * <p>
+ * Slabs count towards the {@code -XX:MaxDirectMemorySize} limit of the JVM. When the capacity is not a multiple of
+ * the slab size, the last slab is smaller and holds the remainder. Values larger than {@link #setSlabSize(int)
+ * slabSize} are not cached.
+ */
+public class OffHeapCache implements Cache {
+
+  private static final long DEFAULT_CAPACITY = 64L * 1024 * 1024;
+  private static final int MAX_SLAB_SIZE = 64 * 1024 * 1024;
+
+  private final String id;
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+  private final Map<Object, Entry> index = new HashMap<>();
+  private final Deque<Entry> entries = new ArrayDeque<>();
+  private CacheSerializer serializer = new JavaCacheSerializer();
+  private long capacity = DEFAULT_CAPACITY;
+  private int slabSize;
+  private ByteBuffer[] slabs;
+  private long position;
+
+  public OffHeapCache(String id) {
+    this.id = id;
+  }
+
+  @Override
+  public String getId() {
+    return id;
+  }
+
+  /**
+   * Sets the off-heap memory available to this cache, in bytes. Must be called before the cache is used.
+   *
+   * @param capacity
+   *          the capacity in bytes
+   */
+  public void setCapacity(long capacity) {
+    if (capacity <= 0) {
+      throw new CacheException("Cache '" + id + "' requires a positive capacity but was " + capacity);
+    }
+    this.capacity = capacity;
+  }
+
+  /**
+   * Sets the size of the direct buffers allocated by this cache, defaults to the capacity up to 64 MB. Must be called
+   * before the cache is used.
+   *
+   * @param slabSize
+   *          the slab size in bytes
+   */
+  public void setSlabSize(int slabSize) {
+    if (slabSize <= 0) {
+      throw new CacheException("Cache '" + id + "' requires a positive slabSize but was " + slabSize);
+    }
+    this.slabSize = slabSize;
+  }
+
+  public void setSerializer(CacheSerializer serializer) {
+    this.serializer = serializer;
+  }
+
+  @Override
+  public int getSize() {
+    lock.readLock().lock();
+    try {
+      return index.size();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public Collection<Object> getKeys() {
+    lock.readLock().lock();
+    try {
+      return new ArrayList<>(index.keySet());
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public void putObject(Object key, Object value) {
+    if (value == null) {
+      removeObject(key);
+      return;
+    }
+    byte[] bytes = serializer.serialize(value);
+    lock.writeLock().lock();
+    try {
+      initSlabs();
+      // a replaced entry keeps its space in the ring until it is overwritten
+      index.remove(key);
+      if (bytes.length > slabSize) {
+        return;
+      }
+      long start = position;
+      int slab = slabOf(start);
+      while (offsetOf(start) + bytes.length > slabLength(slab)) {
+        // values never span two slabs, skip the end of the current one
+        start += slabLength(slab) - offsetOf(start);
+        slab = slabOf(start);
+      }
+      while (!entries.isEmpty() && entries.peekFirst().start < start + bytes.length - capacity) {
+        Entry overwritten = entries.pollFirst();
+        index.remove(overwritten.key, overwritten);
+      }
+      if (slabs[slab] == null) {
+        slabs[slab] = ByteBuffer.allocateDirect(slabLength(slab));
+      }
+      ByteBuffer buffer = slabs[slab].duplicate();
+      buffer.position(offsetOf(start));
+      buffer.put(bytes);
+      Entry entry = new Entry(key, start, bytes.length);
+      entries.addLast(entry);
+      index.put(key, entry);
+      position = start + bytes.length;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  @Override
+  public Object getObject(Object key) {
+    byte[] bytes;
+    lock.readLock().lock();
+    try {
+      Entry entry = index.get(key);
+      if (entry == null) {
+        return null;
+      }
+      bytes = read(entry);
+    } finally {
+      lock.readLock().unlock();
+    }
+    return serializer.deserialize(bytes);
+  }
+
+  @Override
+  public Object removeObject(Object key) {
+    byte[] bytes;
+    lock.writeLock().lock();
+    try {
+      // the space is reclaimed when the ring wraps around
+      Entry entry = index.remove(key);
+      if (entry == null) {
+        return null;
+      }
+      bytes = read(entry);
+    } finally {
+      lock.writeLock().unlock();
+    }
+    return serializer.deserialize(bytes);
+  }
+
+  @Override
+  public void clear() {
+    lock.writeLock().lock();
+    try {
+      index.clear();
+      entries.clear();
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (getId() == null) {
+      throw new CacheException("Cache instances require an ID.");
+    }
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof Cache)) {
+      return false;
+    }
+
+    Cache otherCache = (Cache) o;
+    return getId().equals(otherCache.getId());
+  }
+
+  @Override
+  public int hashCode() {
+    if (getId() == null) {
+      throw new CacheException("Cache instances require an ID.");
+    }
+    return getId().hashCode();
+  }
+
+  private void initSlabs() {
+    if (slabs == null) {
+      slabSize = (int) Math.min(capacity, slabSize == 0 ? MAX_SLAB_SIZE : slabSize);
+      // the last slab holds the remainder of the capacity
+      slabs = new ByteBuffer[(int) ((capacity + slabSize - 1) / slabSize)];
+    }
+  }
+
+  private byte[] read(Entry entry) {
+    ByteBuffer buffer = slabs[slabOf(entry.start)].duplicate();
+    buffer.position(offsetOf(entry.start));
+    byte[] bytes = new byte[entry.length];
+    buffer.get(bytes);
+    return bytes;
+  }
+
+  private int slabOf(long position) {
+    return (int) ((position % capacity) / slabSize);
+  }
+
+  private int offsetOf(long position) {
+    return (int) ((position % capacity) % slabSize);
+  }
+
+  private int slabLength(int slab) {
+    return slab == slabs.length - 1 ? (int) (capacity - (long) slab * slabSize) : slabSize;
+  }
+
+  private static final class Entry {
+
+    private final Object key;
+    private final long start;
+    private final int length;
+
+    Entry(Object key, long start, int length) {
+      this.key = key;
+      this.start = start;
+      this.length = length;
+    }
+  }
+
+}
@@ -15,6 +15,8 @@
  */
 package org.apache.ibatis.cache.impl;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -28,10 +30,22 @@ public class PerpetualCache implements Cache {
 
   private final String id;
 
-  private final Map<Object, Object> cache = new HashMap<>();
+  private final Map<Object, Object> cache;
 
   public PerpetualCache(String id) {
+    this(id, new HashMap<>());
+  }
+
+  /**
+   * @param id
+   *          the cache id
+   * @param cache
+   *          the map holding the entries, e.g. an access ordered map for subclasses that evict
+   * @since 3.5.12
+   */
+  protected PerpetualCache(String id, Map<Object, Object> cache) {
     this.id = id;
+    this.cache = cache;
   }
 
   @Override
@@ -44,6 +58,11 @@ public class PerpetualCache implements Cache {
     return cache.size();
   }
 
+  @Override
+  public Collection<Object> getKeys() {
+    return new ArrayList<>(cache.keySet());
+  }
+
   @Override
   public void putObject(Object key, Object value) {
     cache.put(key, value);
@@ -0,0 +1,319 @@
+/*
+ *    Copyright 2009-2022 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.impl;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.ibatis.builder.InitializingObject;
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.cache.decorators.ExpiringCache;
+import org.apache.ibatis.cache.invalidation.CacheInvalidationBus;
+import org.apache.ibatis.cache.invalidation.CacheInvalidationListener;
+import org.apache.ibatis.cache.invalidation.InMemoryCacheInvalidationBus;
+import org.apache.ibatis.cache.serializer.CacheSerializer;
+import org.apache.ibatis.cache.serializer.JavaCacheSerializer;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.reflection.MetaObject;
+import org.apache.ibatis.reflection.SystemMetaObject;
+
+/**
+ * Cache made of a small local tier in front of a shared remote tier, for applications running on several nodes.
+ * <p>
+ * Reads are served from the local tier, a {@link ConcurrentCache} of {@link #setNearSize(int) nearSize} entries,
+ * and fall back to the remote tier, any {@link Cache} implementation set with {@link #setRemoteType(String)}.
+ * Writes go to both tiers and are published on a {@link CacheInvalidationBus} so that the other nodes drop the copies
+ * of their local tier. As the bus is best effort, the local entries can also expire on their own after
+ * {@link #setNearTimeToLive(long) nearTimeToLive} milliseconds.
+ * <p>
+ * As the other decorators of the cache element are not applied to a custom cache, the local tier keeps the values
+ * serialized and returns a new copy on every read, unless {@link #setNearReadOnly(boolean) nearReadOnly} is set.
+ * <p>
+ * By default the remote tier is an {@link InMemoryRemoteCache} and the bus an {@link InMemoryCacheInvalidationBus},
+ * which share their state between the caches of the same JVM and so can stand in for a cluster in tests.
+ *
+ * @since 3.5.12
+ */
+public class TwoTierCache implements Cache, InitializingObject {
+
+  private static final int DEFAULT_NEAR_SIZE = 256;
+
+  private final String id;
+  private final String nodeId = UUID.randomUUID().toString();
+  // bumped on every invalidation, so that a value read from the remote tier meanwhile is not kept locally
+  private final AtomicLong generation = new AtomicLong();
+  private int nearSize = DEFAULT_NEAR_SIZE;
+  private long nearTimeToLive;
+  private String remoteType = InMemoryRemoteCache.class.getName();
+  private String busType = InMemoryCacheInvalidationBus.class.getName();
+  private boolean nearReadOnly;
+  private CacheSerializer serializer = new JavaCacheSerializer();
+  private Cache near;
+  private Cache remote;
+  private CacheInvalidationBus bus;
+
+  public TwoTierCache(String id) {
+    this.id = id;
+  }
+
+  @Override
+  public String getId() {
+    return id;
+  }
+
+  /**
+   * @param nearSize
+   *          the maximum number of entries of the local tier
+   */
+  public void setNearSize(int nearSize) {
+    this.nearSize = nearSize;
+  }
+
+  /**
+   * @param nearTimeToLive
+   *          how long an entry stays in the local tier in milliseconds, zero or less for no limit
+   */
+  public void setNearTimeToLive(long nearTimeToLive) {
+    this.nearTimeToLive = nearTimeToLive;
+  }
+
+  /**
+   * @param nearReadOnly
+   *          whether the local tier returns the cached instances themselves instead of copies
+   */
+  public void setNearReadOnly(boolean nearReadOnly) {
+    this.nearReadOnly = nearReadOnly;
+  }
+
+  /**
+   * @param remoteType
+   *          the class name of the remote tier, a {@link Cache} with a constructor taking the id
+   */
+  public void setRemoteType(String remoteType) {
+    this.remoteType = remoteType;
+  }
+
+  /**
+   * @param busType
+   *          the class name of the {@link CacheInvalidationBus}
+   */
+  public void setBusType(String busType) {
+    this.busType = busType;
+  }
+
+  /**
+   * @param serializer
+   *          the serializer that copies the values of the local tier, also given to the remote tier if it has a
+   *          {@code serializer} property
+   */
+  public void setSerializer(CacheSerializer serializer) {
+    this.serializer = serializer;
+  }
+
+  public void setRemote(Cache remote) {
+    this.remote = remote;
+  }
+
+  public void setBus(CacheInvalidationBus bus) {
+    this.bus = bus;
+  }
+
+  @Override
+  public void initialize() throws Exception {
+    ConcurrentCache nearCache = new ConcurrentCache(id);
+    nearCache.setSize(nearSize);
+    if (nearTimeToLive > 0) {
+      ExpiringCache expiringCache = new ExpiringCache(nearCache);
+      expiringCache.setExpireAfterWrite(nearTimeToLive);
+      near = expiringCache;
+    } else {
+      near = nearCache;
+    }
+    if (remote == null) {
+      remote = (Cache) Resources.classForName(remoteType).getConstructor(String.class).newInstance(id);
+    }
+    MetaObject metaRemote = SystemMetaObject.forObject(remote);
+    if (metaRemote.hasSetter("serializer")
+        && CacheSerializer.class.isAssignableFrom(metaRemote.getSetterType("serializer"))) {
+      metaRemote.setValue("serializer", serializer);
+    }
+    if (bus == null) {
+      bus = (CacheInvalidationBus) Resources.classForName(busType).getConstructor().newInstance();
+    }
+    // the bus must not keep a cache alive once its configuration is discarded
+    bus.subscribe(id, nodeId, new NearInvalidator(this, bus, id, nodeId));
+  }
+
+  /**
+   * Stops receiving the invalidations of the other nodes. A cache that is no longer referenced is unsubscribed on the
+   * next invalidation it receives even if this method was not called.
+   */
+  public void close() {
+    if (bus != null) {
+      bus.unsubscribe(id, nodeId);
+    }
+  }
+
+  @Override
+  public int getSize() {
+    return remote.getSize();
+  }
+
+  @Override
+  public void putObject(Object key, Object value) {
+    if (value == null) {
+      // a miss committed by a transaction, nothing changed
+      return;
+    }
+    remote.putObject(key, value);
+    generation.incrementAndGet();
+    near.putObject(key, toNear(value));
+    bus.publish(id, nodeId, Collections.singletonList(key));
+  }
+
+  @Override
+  public void putObjects(Map<Object, Object> entries) {
+    // the misses committed by a transaction are skipped
+    Map<Object, Object> values = new LinkedHashMap<>(entries.size() * 4 / 3 + 1);
+    for (Map.Entry<Object, Object> entry : entries.entrySet()) {
+      if (entry.getValue() != null) {
+        values.put(entry.getKey(), entry.getValue());
+      }
+    }
+    if (values.isEmpty()) {
+      return;
+    }
+    remote.putObjects(values);
+    generation.incrementAndGet();
+    for (Map.Entry<Object, Object> entry : values.entrySet()) {
+      near.putObject(entry.getKey(), toNear(entry.getValue()));
+    }
+    bus.publish(id, nodeId, new ArrayList<>(values.keySet()));
+  }
+
+  @Override
+  public Object getObject(Object key) {
+    Object value = near.getObject(key);
+    if (value != null) {
+      return nearReadOnly ? value : serializer.deserialize((byte[]) value);
+    }
+    long readAt = generation.get();
+    value = remote.getObject(key);
+    if (value != null && generation.get() == readAt) {
+      near.putObject(key, toNear(value));
+      if (generation.get() != readAt) {
+        // invalidated while it was being stored
+        near.removeObject(key);
+      }
+    }
+    return value;
+  }
+
+  @Override
+  public Map<Object, Object> peekObjects(Collection<?> keys) {
+    // the remote cache holds every entry, the near one is neither read nor filled
+    return remote.peekObjects(keys);
+  }
+
+  @Override
+  public Object removeObject(Object key) {
+    generation.incrementAndGet();
+    near.removeObject(key);
+    Object value = remote.removeObject(key);
+    bus.publish(id, nodeId, Collections.singletonList(key));
+    return value;
+  }
+
+  @Override
+  public void clear() {
+    generation.incrementAndGet();
+    near.clear();
+    remote.clear();
+    bus.publish(id, nodeId, null);
+  }
+
+  private Object toNear(Object value) {
+    return nearReadOnly ? value : serializer.serialize(value);
+  }
+
+  private void invalidateNear(Collection<Object> keys) {
+    generation.incrementAndGet();
+    if (keys == null) {
+      near.clear();
+    } else {
+      for (Object key : keys) {
+        near.removeObject(key);
+      }
+    }
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (getId() == null) {
+      throw new CacheException("Cache instances require an ID.");
+    }
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof Cache)) {
+      return false;
+    }
+
+    Cache otherCache = (Cache) o;
+    return getId().equals(otherCache.getId());
+  }
+
+  @Override
+  public int hashCode() {
+    if (getId() == null) {
+      throw new CacheException("Cache instances require an ID.");
+    }
+    return getId().hashCode();
+  }
+
+  private static final class NearInvalidator implements CacheInvalidationListener {
+
+    private final WeakReference<TwoTierCache> cache;
+    private final CacheInvalidationBus bus;
+    private final String cacheId;
+    private final String nodeId;
+
+    NearInvalidator(TwoTierCache cache, CacheInvalidationBus bus, String cacheId, String nodeId) {
+      this.cache = new WeakReference<>(cache);
+      this.bus = bus;
+      this.cacheId = cacheId;
+      this.nodeId = nodeId;
+    }
+
+    @Override
+    public void invalidate(Collection<Object> keys) {
+      TwoTierCache target = cache.get();
+      if (target == null) {
+        bus.unsubscribe(cacheId, nodeId);
+      } else {
+        target.invalidateNear(keys);
+      }
+    }
+  }
+
+}
@@ -0,0 +1,60 @@
+/*
+ *    Copyright 2009-2022 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.invalidation;
+
+import java.util.Collection;
+
+/**
+ * Fans out the invalidations of a cache to the other nodes that cache the same namespace, so that they drop the copies
+ * kept in their local tier.
+ * <p>
+ * Implementations must be thread-safe and must have a public no-arg constructor. Messages are best effort: a node
+ * that misses one keeps its stale local copy until it expires or is evicted.
+ *
+ * @since 3.5.12
+ * @see org.apache.ibatis.cache.impl.TwoTierCache
+ */
+public interface CacheInvalidationBus {
+
+  /**
+   * @param cacheId
+   *          the id of the cache
+   * @param nodeId
+   *          the id of the subscribing node, it does not receive its own messages
+   * @param listener
+   *          the listener of the node
+   */
+  void subscribe(String cacheId, String nodeId, CacheInvalidationListener listener);
+
+  /**
+   * @param cacheId
+   *          the id of the cache
+   * @param nodeId
+   *          the id of the subscribed node
+   */
+  void unsubscribe(String cacheId, String nodeId);
+
+  /**
+   * @param cacheId
+   *          the id of the cache
+   * @param nodeId
+   *          the id of the publishing node
+   * @param keys
+   *          the keys that changed, {@code null} if the whole cache was cleared
+   */
+  void publish(String cacheId, String nodeId, Collection<Object> keys);
+
+}
@@ -0,0 +1,34 @@
+/*
+ *    Copyright 2009-2022 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.invalidation;
+
+import java.util.Collection;
+
+/**
+ * Receives the invalidations published by the other nodes of a cache.
+ *
+ * @since 3.5.12
+ */
+@FunctionalInterface
+public interface CacheInvalidationListener {
+
+  /**
+   * @param keys
+   *          the keys that changed, {@code null} if the whole cache was cleared
+   */
+  void invalidate(Collection<Object> keys);
+
+}
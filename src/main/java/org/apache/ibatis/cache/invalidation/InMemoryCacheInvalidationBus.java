@@ -0,0 +1,59 @@
+/*
+ *    Copyright 2009-2022 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.invalidation;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Bus that delivers the messages synchronously to the nodes living in the same JVM, for example several
+ * {@link org.apache.ibatis.session.SqlSessionFactory} instances in a test. All the instances share the same
+ * subscriptions.
+ *
+ * @since 3.5.12
+ */
+public class InMemoryCacheInvalidationBus implements CacheInvalidationBus {
+
+  private static final Map<String, Map<String, CacheInvalidationListener>> SUBSCRIPTIONS = new ConcurrentHashMap<>();
+
+  @Override
+  public void subscribe(String cacheId, String nodeId, CacheInvalidationListener listener) {
+    SUBSCRIPTIONS.computeIfAbsent(cacheId, k -> new ConcurrentHashMap<>()).put(nodeId, listener);
+  }
+
+  @Override
+  public void unsubscribe(String cacheId, String nodeId) {
+    Map<String, CacheInvalidationListener> listeners = SUBSCRIPTIONS.get(cacheId);
+    if (listeners != null) {
+      listeners.remove(nodeId);
+    }
+  }
+
+  @Override
+  public void publish(String cacheId, String nodeId, Collection<Object> keys) {
+    Map<String, CacheInvalidationListener> listeners = SUBSCRIPTIONS.get(cacheId);
+    if (listeners == null) {
+      return;
+    }
+    for (Map.Entry<String, CacheInvalidationListener> listener : listeners.entrySet()) {
+      if (!listener.getKey().equals(nodeId)) {
+        listener.getValue().invalidate(keys);
+      }
+    }
+  }
+
+}
@@ -0,0 +1,76 @@
+/*
+ *    Copyright 2009-2022 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.metrics;
+
+import java.util.function.IntSupplier;
+import java.util.function.LongSupplier;
+
+/**
+ * Receives the measurements of one second level cache.
+ * <p>
+ * Instances are created by a {@link CacheMetricsFactory} and are called concurrently by every session using the
+ * cache, so implementations must be thread-safe and should be cheap to call. Latencies are given in nanoseconds.
+ *
+ * @since 3.5.12
+ */
+public interface CacheMetrics {
+
+  /**
+   * @param hit
+   *          whether the key was found
+   * @param nanos
+   *          the time spent reading the cache
+   */
+  void recordGet(boolean hit, long nanos);
+
+  /**
+   * @param entries
+   *          the number of entries stored at once
+   * @param nanos
+   *          the time spent writing them
+   */
+  void recordPut(int entries, long nanos);
+
+  /**
+   * Records one entry removed because it was evicted or expired.
+   */
+  void recordEviction();
+
+  /**
+   * @param nanos
+   *          the time spent clearing the cache
+   */
+  void recordClear(long nanos);
+
+  /**
+   * @param nanos
+   *          the time spent executing the statement of a missed key
+   */
+  void recordLoad(long nanos);
+
+  /**
+   * Gives access to the current state of the cache, once it has been built.
+   *
+   * @param size
+   *          the current number of entries
+   * @param estimatedBytes
+   *          the estimated size of the entries in bytes, {@code null} if the cache does not track it
+   */
+  default void bind(IntSupplier size, LongSupplier estimatedBytes) {
+    // nothing to do
+  }
+
+}
@@ -0,0 +1,36 @@
+/*
+ *    Copyright 2009-2022 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.metrics;
+
+/**
+ * Creates the {@link CacheMetrics} of every second level cache, and of the statements reused by the
+ * {@link org.apache.ibatis.executor.ReuseExecutor}s, configured with the {@code cacheMetricsFactory} setting.
+ * <p>
+ * Implementations must be thread-safe and must have a public no-arg constructor.
+ *
+ * @since 3.5.12
+ */
+public interface CacheMetricsFactory {
+
+  /**
+   * @param id
+   *          the id of the cache, that is its namespace, or
+   *          {@link org.apache.ibatis.executor.ReuseExecutor#STATEMENT_CACHE_ID}
+   * @return the metrics of the cache
+   */
+  CacheMetrics newCacheMetrics(String id);
+
+}
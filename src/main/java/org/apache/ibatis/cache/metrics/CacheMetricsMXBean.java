@@ -0,0 +1,74 @@
+/*
+ *    Copyright 2009-2022 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.metrics;
+
+/**
+ * Management interface of the metrics of one second level cache, registered by {@link JmxCacheMetricsFactory}.
+ * Latencies are in nanoseconds.
+ *
+ * @since 3.5.12
+ */
+public interface CacheMetricsMXBean {
+
+  String getCacheId();
+
+  long getRequests();
+
+  long getHits();
+
+  long getMisses();
+
+  double getHitRatio();
+
+  long getPuts();
+
+  long getEvictions();
+
+  long getClears();
+
+  long getLoads();
+
+  int getSize();
+
+  /**
+   * @return the estimated size of the entries in bytes, -1 unless the cache is bounded by {@code maxWeight} with the
+   *         default weigher
+   */
+  long getEstimatedBytes();
+
+  long getGetLatencyMean();
+
+  long getGetLatency99thPercentile();
+
+  long getGetLatencyMax();
+
+  long getPutLatencyMean();
+
+  long getPutLatency99thPercentile();
+
+  long getPutLatencyMax();
+
+  long getClearLatencyMean();
+
+  long getLoadTimeMean();
+
+  long getLoadTime99thPercentile();
+
+  long getLoadTimeMax();
+
+  void reset();
+
+}
@@ -0,0 +1,198 @@
+/*
+ *    Copyright 2009-2022 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+import java.util.function.LongSupplier;
+
+/**
+ * Metrics of one cache kept in memory and exposed as a {@link CacheMetricsMXBean}.
+ *
+ * @since 3.5.12
+ */
+public class JmxCacheMetrics implements CacheMetrics, CacheMetricsMXBean {
+
+  private final String cacheId;
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder puts = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+  private final LatencyHistogram gets = new LatencyHistogram();
+  private final LatencyHistogram writes = new LatencyHistogram();
+  private final LatencyHistogram clears = new LatencyHistogram();
+  private final LatencyHistogram loads = new LatencyHistogram();
+  private volatile IntSupplier size = () -> 0;
+  private volatile LongSupplier estimatedBytes;
+
+  public JmxCacheMetrics(String cacheId) {
+    this.cacheId = cacheId;
+  }
+
+  @Override
+  public void recordGet(boolean hit, long nanos) {
+    if (hit) {
+      hits.increment();
+    }
+    gets.record(nanos);
+  }
+
+  @Override
+  public void recordPut(int entries, long nanos) {
+    puts.add(entries);
+    // a bulk put is measured as a whole
+    writes.record(nanos);
+  }
+
+  @Override
+  public void recordEviction() {
+    evictions.increment();
+  }
+
+  @Override
+  public void recordClear(long nanos) {
+    clears.record(nanos);
+  }
+
+  @Override
+  public void recordLoad(long nanos) {
+    loads.record(nanos);
+  }
+
+  @Override
+  public void bind(IntSupplier size, LongSupplier estimatedBytes) {
+    this.size = size;
+    this.estimatedBytes = estimatedBytes;
+  }
+
+  @Override
+  public String getCacheId() {
+    return cacheId;
+  }
+
+  @Override
+  public long getRequests() {
+    return gets.getCount();
+  }
+
+  @Override
+  public long getHits() {
+    return hits.sum();
+  }
+
+  @Override
+  public long getMisses() {
+    return Math.max(0, gets.getCount() - hits.sum());
+  }
+
+  @Override
+  public double getHitRatio() {
+    long requests = gets.getCount();
+    return requests == 0 ? 0 : (double) hits.sum() / requests;
+  }
+
+  @Override
+  public long getPuts() {
+    return puts.sum();
+  }
+
+  @Override
+  public long getEvictions() {
+    return evictions.sum();
+  }
+
+  @Override
+  public long getClears() {
+    return clears.getCount();
+  }
+
+  @Override
+  public long getLoads() {
+    return loads.getCount();
+  }
+
+  @Override
+  public int getSize() {
+    return size.getAsInt();
+  }
+
+  @Override
+  public long getEstimatedBytes() {
+    LongSupplier bytes = estimatedBytes;
+    return bytes == null ? -1 : bytes.getAsLong();
+  }
+
+  @Override
+  public long getGetLatencyMean() {
+    return gets.getMean();
+  }
+
+  @Override
+  public long getGetLatency99thPercentile() {
+    return gets.getPercentile(.99);
+  }
+
+  @Override
+  public long getGetLatencyMax() {
+    return gets.getMax();
+  }
+
+  @Override
+  public long getPutLatencyMean() {
+    return writes.getMean();
+  }
+
+  @Override
+  public long getPutLatency99thPercentile() {
+    return writes.getPercentile(.99);
+  }
+
+  @Override
+  public long getPutLatencyMax() {
+    return writes.getMax();
+  }
+
+  @Override
+  public long getClearLatencyMean() {
+    return clears.getMean();
+  }
+
+  @Override
+  public long getLoadTimeMean() {
+    return loads.getMean();
+  }
+
+  @Override
+  public long getLoadTime99thPercentile() {
+    return loads.getPercentile(.99);
+  }
+
+  @Override
+  public long getLoadTimeMax() {
+    return loads.getMax();
+  }
+
+  @Override
+  public void reset() {
+    hits.reset();
+    evictions.reset();
+    puts.reset();
+    gets.reset();
+    writes.reset();
+    clears.reset();
+    loads.reset();
+  }
+
+}
@@ -0,0 +1,63 @@
+/*
+ *    Copyright 2009-2022 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.metrics;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.ibatis.cache.CacheException;
+
+/**
+ * Registers the metrics of every cache in the platform MBean server, under
+ * {@code org.apache.ibatis:type=Cache,name="<namespace>"}. A cache built again under the same namespace, for example
+ * when the configuration is reloaded, replaces the registration of the previous one, so that rebuilt caches are not
+ * kept alive by the MBean server.
+ *
+ * @since 3.5.12
+ */
+public class JmxCacheMetricsFactory implements CacheMetricsFactory {
+
+  private static final String DOMAIN = "org.apache.ibatis";
+
+  @Override
+  public CacheMetrics newCacheMetrics(String id) {
+    JmxCacheMetrics metrics = new JmxCacheMetrics(id);
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    try {
+      ObjectName name = new ObjectName(DOMAIN + ":type=Cache,name=" + ObjectName.quote(id));
+      while (true) {
+        try {
+          server.registerMBean(metrics, name);
+          return metrics;
+        } catch (InstanceAlreadyExistsException e) {
+          try {
+            server.unregisterMBean(name);
+          } catch (InstanceNotFoundException ignored) {
+            // unregistered concurrently, register again
+          }
+        }
+      }
+    } catch (JMException e) {
+      throw new CacheException("Could not register the metrics of cache " + id + ".  Cause: " + e, e);
+    }
+  }
+
+}
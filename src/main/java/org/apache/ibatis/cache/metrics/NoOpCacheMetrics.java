@@ -0,0 +1,56 @@
+/*
+ *    Copyright 2009-2022 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.metrics;
+
+/**
+ * Metrics that are not recorded. Caches built with them are not decorated for metrics at all.
+ *
+ * @since 3.5.12
+ */
+public final class NoOpCacheMetrics implements CacheMetrics {
+
+  public static final NoOpCacheMetrics INSTANCE = new NoOpCacheMetrics();
+
+  private NoOpCacheMetrics() {
+    // singleton
+  }
+
+  @Override
+  public void recordGet(boolean hit, long nanos) {
+    // nothing to record
+  }
+
+  @Override
+  public void recordPut(int entries, long nanos) {
+    // nothing to record
+  }
+
+  @Override
+  public void recordEviction() {
+    // nothing to record
+  }
+
+  @Override
+  public void recordClear(long nanos) {
+    // nothing to record
+  }
+
+  @Override
+  public void recordLoad(long nanos) {
+    // nothing to record
+  }
+
+}
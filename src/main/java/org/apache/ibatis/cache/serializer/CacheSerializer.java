@@ -0,0 +1,40 @@
+/*
+ *    Copyright 2009-2022 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.serializer;
+
+/**
+ * SPI for turning cached values into bytes and back.
+ * <p>
+ * Implementations must be thread-safe and must have a public no-arg constructor. Failures are reported as
+ * {@link org.apache.ibatis.cache.CacheException}.
+ */
+public interface CacheSerializer {
+
+  /**
+   * @param value
+   *          the value to serialize, may be {@code null}
+   * @return the serialized form of the value
+   */
+  byte[] serialize(Object value);
+
+  /**
+   * @param bytes
+   *          bytes produced by {@link #serialize(Object)}
+   * @return a new copy of the serialized value
+   */
+  Object deserialize(byte[] bytes);
+
+}
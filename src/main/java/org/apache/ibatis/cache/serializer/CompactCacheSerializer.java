@@ -0,0 +1,679 @@
+/*
+ *    Copyright 2009-2022 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.serializer;
+
+import java.lang.reflect.Array;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.cache.ObjectGraphWalker;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.reflection.DefaultReflectorFactory;
+
+/**
+ * Serializer that writes result objects in a compact binary form, much faster than java serialization.
+ * <p>
+ * Strings, boxed primitives, big numbers, dates, enums, arrays, the usual {@code java.util} lists, sets and maps and
+ * plain beans are written property by property using the {@link ObjectGraphWalker}, keeping shared references and
+ * cycles. A plain bean is a class with a no-arg constructor that does not customize its java serialization; it does
+ * not need to be {@link java.io.Serializable}. Any other object, lazy loading proxies and sorted sets or maps with a
+ * comparator included, is written with java serialization (in that case object identity is only kept within that
+ * object).
+ */
+public class CompactCacheSerializer implements CacheSerializer {
+
+  private static final byte NULL = 0;
+  private static final byte REFERENCE = 1;
+  private static final byte STRING = 2;
+  private static final byte INTEGER = 3;
+  private static final byte LONG = 4;
+  private static final byte DOUBLE = 5;
+  private static final byte FLOAT = 6;
+  private static final byte SHORT = 7;
+  private static final byte BYTE = 8;
+  private static final byte BOOLEAN = 9;
+  private static final byte CHARACTER = 10;
+  private static final byte BIG_DECIMAL = 11;
+  private static final byte BIG_INTEGER = 12;
+  private static final byte DATE = 13;
+  private static final byte SQL_DATE = 14;
+  private static final byte SQL_TIME = 15;
+  private static final byte TIMESTAMP = 16;
+  private static final byte BYTES = 17;
+  private static final byte ENUM = 18;
+  private static final byte COLLECTION = 19;
+  private static final byte MAP = 20;
+  private static final byte ARRAY = 21;
+  private static final byte BEAN = 22;
+  private static final byte SERIALIZED = 23;
+  private static final byte PRIMITIVE_ARRAY = 24;
+
+  private static final Class<?>[] PRIMITIVE_TYPES = {
+      int.class, long.class, double.class, float.class, short.class, boolean.class, char.class };
+
+  private final JavaCacheSerializer javaSerializer = new JavaCacheSerializer();
+  private final ObjectGraphWalker walker;
+
+  public CompactCacheSerializer() {
+    this(new ObjectGraphWalker(new DefaultReflectorFactory()));
+  }
+
+  public CompactCacheSerializer(ObjectGraphWalker walker) {
+    this.walker = walker;
+  }
+
+  @Override
+  public byte[] serialize(Object value) {
+    try {
+      Writer writer = new Writer();
+      writer.write(value);
+      return writer.toByteArray();
+    } catch (ReflectiveOperationException e) {
+      throw new CacheException("Error serializing object.  Cause: " + e, e);
+    }
+  }
+
+  @Override
+  public Object deserialize(byte[] bytes) {
+    try {
+      Reader reader = new Reader(bytes);
+      Object value = reader.read();
+      reader.fillDeferred();
+      return value;
+    } catch (ReflectiveOperationException | IndexOutOfBoundsException e) {
+      throw new CacheException("Error deserializing object.  Cause: " + e, e);
+    }
+  }
+
+  private final class Writer {
+
+    private final Map<Object, Integer> handles = new IdentityHashMap<>();
+    private final Map<Class<?>, Integer> classes = new HashMap<>();
+    private final Output out = new Output();
+
+    byte[] toByteArray() {
+      return out.toByteArray();
+    }
+
+    void write(Object value) throws ReflectiveOperationException {
+      if (value == null) {
+        out.writeByte(NULL);
+        return;
+      }
+      Class<?> type = value.getClass();
+      if (type == String.class) {
+        writeString((String) value);
+      } else if (type == Integer.class) {
+        out.writeByte(INTEGER);
+        out.writeInt((Integer) value);
+      } else if (type == Long.class) {
+        out.writeByte(LONG);
+        out.writeLong((Long) value);
+      } else if (type == Double.class) {
+        out.writeByte(DOUBLE);
+        out.writeDouble((Double) value);
+      } else if (type == Float.class) {
+        out.writeByte(FLOAT);
+        out.writeFloat((Float) value);
+      } else if (type == Short.class) {
+        out.writeByte(SHORT);
+        out.writeShort((Short) value);
+      } else if (type == Byte.class) {
+        out.writeByte(BYTE);
+        out.writeByte((Byte) value);
+      } else if (type == Boolean.class) {
+        out.writeByte(BOOLEAN);
+        out.writeBoolean((Boolean) value);
+      } else if (type == Character.class) {
+        out.writeByte(CHARACTER);
+        out.writeChar((Character) value);
+      } else if (type == BigDecimal.class) {
+        BigDecimal decimal = (BigDecimal) value;
+        out.writeByte(BIG_DECIMAL);
+        out.writeInt(decimal.scale());
+        writeBytes(decimal.unscaledValue().toByteArray());
+      } else if (type == BigInteger.class) {
+        out.writeByte(BIG_INTEGER);
+        writeBytes(((BigInteger) value).toByteArray());
+      } else if (type.isEnum() || type.getSuperclass() != null && type.getSuperclass().isEnum()) {
+        out.writeByte(ENUM);
+        writeClass(((Enum<?>) value).getDeclaringClass());
+        writeString(((Enum<?>) value).name());
+      } else if (!writeReference(value)) {
+        writeMutable(value, type);
+      }
+    }
+
+    private void writeMutable(Object value, Class<?> type) throws ReflectiveOperationException {
+      if (type == Date.class || type == java.sql.Date.class || type == Time.class) {
+        out.writeByte(type == Date.class ? DATE : type == Time.class ? SQL_TIME : SQL_DATE);
+        out.writeLong(((Date) value).getTime());
+      } else if (type == Timestamp.class) {
+        out.writeByte(TIMESTAMP);
+        out.writeLong(((Timestamp) value).getTime());
+        out.writeInt(((Timestamp) value).getNanos());
+      } else if (type == byte[].class) {
+        out.writeByte(BYTES);
+        writeBytes((byte[]) value);
+      } else if (type == ArrayList.class || type == LinkedList.class || type == HashSet.class
+          || type == LinkedHashSet.class || type == TreeSet.class && ((SortedSet<?>) value).comparator() == null) {
+        Collection<?> collection = (Collection<?>) value;
+        out.writeByte(COLLECTION);
+        writeClass(type);
+        out.writeInt(collection.size());
+        for (Object element : collection) {
+          write(element);
+        }
+      } else if (type == HashMap.class || type == LinkedHashMap.class
+          || type == TreeMap.class && ((SortedMap<?, ?>) value).comparator() == null) {
+        Map<?, ?> map = (Map<?, ?>) value;
+        out.writeByte(MAP);
+        writeClass(type);
+        out.writeInt(map.size());
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+          write(entry.getKey());
+          write(entry.getValue());
+        }
+      } else if (type.isArray() && type.getComponentType().isPrimitive()) {
+        writePrimitiveArray(value, type.getComponentType());
+      } else if (type.isArray()) {
+        writeArray(value, type);
+      } else if (walker.kindOf(type) == ObjectGraphWalker.Kind.BEAN) {
+        ObjectGraphWalker.BeanProperties properties = walker.propertiesOf(type);
+        out.writeByte(BEAN);
+        writeClass(type);
+        for (int i = 0; i < properties.size(); i++) {
+          writeProperty(properties.getType(i), properties.get(value, i));
+        }
+      } else {
+        out.writeByte(SERIALIZED);
+        writeBytes(javaSerializer.serialize(value));
+      }
+    }
+
+    private void writeArray(Object array, Class<?> type) throws ReflectiveOperationException {
+      int length = Array.getLength(array);
+      out.writeByte(ARRAY);
+      writeClass(type.getComponentType());
+      out.writeInt(length);
+      for (int i = 0; i < length; i++) {
+        write(Array.get(array, i));
+      }
+    }
+
+    private void writePrimitiveArray(Object array, Class<?> componentType) {
+      int length = Array.getLength(array);
+      out.writeByte(PRIMITIVE_ARRAY);
+      out.writeByte(Arrays.asList(PRIMITIVE_TYPES).indexOf(componentType));
+      out.writeInt(length);
+      for (int i = 0; i < length; i++) {
+        writePrimitive(componentType, Array.get(array, i));
+      }
+    }
+
+    private void writePrimitive(Class<?> type, Object value) {
+      if (type == int.class) {
+        out.writeInt((Integer) value);
+      } else if (type == long.class) {
+        out.writeLong((Long) value);
+      } else if (type == boolean.class) {
+        out.writeBoolean((Boolean) value);
+      } else if (type == double.class) {
+        out.writeDouble((Double) value);
+      } else if (type == float.class) {
+        out.writeFloat((Float) value);
+      } else if (type == short.class) {
+        out.writeShort((Short) value);
+      } else {
+        out.writeChar((Character) value);
+      }
+    }
+
+    private void writeProperty(Class<?> type, Object value) throws ReflectiveOperationException {
+      if (!type.isPrimitive()) {
+        write(value);
+      } else if (type == byte.class) {
+        out.writeByte((Byte) value);
+      } else {
+        writePrimitive(type, value);
+      }
+    }
+
+    private boolean writeReference(Object value) {
+      Integer handle = handles.get(value);
+      if (handle != null) {
+        out.writeByte(REFERENCE);
+        out.writeInt(handle);
+        return true;
+      }
+      handles.put(value, handles.size());
+      return false;
+    }
+
+    private void writeString(String value) {
+      out.writeByte(STRING);
+      writeBytes(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void writeBytes(byte[] value) {
+      out.writeInt(value.length);
+      out.write(value);
+    }
+
+    private void writeClass(Class<?> type) {
+      Integer index = classes.get(type);
+      if (index != null) {
+        out.writeInt(index);
+      } else {
+        classes.put(type, classes.size());
+        out.writeInt(-1);
+        writeBytes(type.getName().getBytes(StandardCharsets.UTF_8));
+      }
+    }
+  }
+
+  private final class Reader {
+
+    private final Input in;
+    private final List<Object> handles = new ArrayList<>();
+    private final List<Class<?>> classes = new ArrayList<>();
+    private final Set<Object> inProgress = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final List<Runnable> deferred = new ArrayList<>();
+    private int backReferences;
+
+    Reader(byte[] bytes) {
+      this.in = new Input(bytes);
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    Object read() throws ReflectiveOperationException {
+      byte tag = in.readByte();
+      switch (tag) {
+        case NULL:
+          return null;
+        case REFERENCE:
+          return readReference();
+        case STRING:
+          return readChars();
+        case INTEGER:
+          return in.readInt();
+        case LONG:
+          return in.readLong();
+        case DOUBLE:
+          return in.readDouble();
+        case FLOAT:
+          return in.readFloat();
+        case SHORT:
+          return in.readShort();
+        case BYTE:
+          return in.readByte();
+        case BOOLEAN:
+          return in.readBoolean();
+        case CHARACTER:
+          return in.readChar();
+        case BIG_DECIMAL:
+          int scale = in.readInt();
+          return new BigDecimal(new BigInteger(readBytes()), scale);
+        case BIG_INTEGER:
+          return new BigInteger(readBytes());
+        case ENUM:
+          return Enum.valueOf((Class<Enum>) readClass(), readString());
+        case DATE:
+          return register(new Date(in.readLong()));
+        case SQL_DATE:
+          return register(new java.sql.Date(in.readLong()));
+        case SQL_TIME:
+          return register(new Time(in.readLong()));
+        case TIMESTAMP:
+          Timestamp timestamp = new Timestamp(in.readLong());
+          timestamp.setNanos(in.readInt());
+          return register(timestamp);
+        case BYTES:
+          return register(readBytes());
+        case COLLECTION:
+          return readCollection();
+        case MAP:
+          return readMap();
+        case ARRAY:
+          return readArray();
+        case BEAN:
+          return readBean();
+        case PRIMITIVE_ARRAY:
+          return readPrimitiveArray();
+        case SERIALIZED:
+          return register(javaSerializer.deserialize(readBytes()));
+        default:
+          throw new CacheException("Unknown tag " + tag + " in serialized cache entry.");
+      }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Object readCollection() throws ReflectiveOperationException {
+      Class<?> type = readClass();
+      int size = in.readInt();
+      Collection<Object> collection;
+      if (type == ArrayList.class) {
+        collection = new ArrayList<>(size);
+      } else if (type == HashSet.class) {
+        collection = new HashSet<>(Math.max(16, (int) (size / .75F) + 1));
+      } else if (type == LinkedHashSet.class) {
+        collection = new LinkedHashSet<>(Math.max(16, (int) (size / .75F) + 1));
+      } else {
+        collection = (Collection<Object>) type.getDeclaredConstructor().newInstance();
+      }
+      register(collection);
+      inProgress.add(collection);
+      if (collection instanceof List) {
+        for (int i = 0; i < size; i++) {
+          collection.add(read());
+        }
+      } else {
+        int before = backReferences;
+        List<Object> elements = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+          elements.add(read());
+        }
+        fill(() -> collection.addAll(elements), before);
+      }
+      inProgress.remove(collection);
+      return collection;
+    }
+
+    private Object readMap() throws ReflectiveOperationException {
+      Class<?> type = readClass();
+      int size = in.readInt();
+      int capacity = Math.max(16, (int) (size / .75F) + 1);
+      Map<Object, Object> map;
+      if (type == LinkedHashMap.class) {
+        map = new LinkedHashMap<>(capacity);
+      } else if (type == TreeMap.class) {
+        map = new TreeMap<>();
+      } else {
+        map = new HashMap<>(capacity);
+      }
+      register(map);
+      inProgress.add(map);
+      int before = backReferences;
+      List<Object> entries = new ArrayList<>(size * 2);
+      for (int i = 0; i < size; i++) {
+        entries.add(read());
+        entries.add(read());
+      }
+      fill(() -> {
+        for (int i = 0; i < entries.size(); i += 2) {
+          map.put(entries.get(i), entries.get(i + 1));
+        }
+      }, before);
+      inProgress.remove(map);
+      return map;
+    }
+
+    /**
+     * Fills a set or a map now, or once the whole value is read if any of its elements refers to an object that is
+     * not completely read yet, as the {@link org.apache.ibatis.cache.DeepCloner} does.
+     */
+    private void fill(Runnable filler, int backReferencesBefore) {
+      if (backReferences == backReferencesBefore && deferred.isEmpty()) {
+        filler.run();
+      } else {
+        deferred.add(filler);
+      }
+    }
+
+    void fillDeferred() {
+      for (Runnable filler : deferred) {
+        filler.run();
+      }
+    }
+
+    private Object readReference() {
+      Object value = handles.get(in.readInt());
+      if (inProgress.contains(value)) {
+        backReferences++;
+      }
+      return value;
+    }
+
+    private Object readArray() throws ReflectiveOperationException {
+      Class<?> componentType = readClass();
+      int length = in.readInt();
+      Object array = register(Array.newInstance(componentType, length));
+      inProgress.add(array);
+      for (int i = 0; i < length; i++) {
+        Array.set(array, i, read());
+      }
+      inProgress.remove(array);
+      return array;
+    }
+
+    private Object readPrimitiveArray() {
+      Class<?> componentType = PRIMITIVE_TYPES[in.readByte()];
+      int length = in.readInt();
+      Object array = register(Array.newInstance(componentType, length));
+      for (int i = 0; i < length; i++) {
+        Array.set(array, i, readPrimitive(componentType));
+      }
+      return array;
+    }
+
+    private Object readPrimitive(Class<?> type) {
+      if (type == int.class) {
+        return in.readInt();
+      } else if (type == long.class) {
+        return in.readLong();
+      } else if (type == boolean.class) {
+        return in.readBoolean();
+      } else if (type == double.class) {
+        return in.readDouble();
+      } else if (type == float.class) {
+        return in.readFloat();
+      } else if (type == short.class) {
+        return in.readShort();
+      } else {
+        return in.readChar();
+      }
+    }
+
+    private Object readBean() throws ReflectiveOperationException {
+      ObjectGraphWalker.BeanProperties properties = walker.propertiesOf(readClass());
+      Object bean = register(properties.newInstance());
+      inProgress.add(bean);
+      for (int i = 0; i < properties.size(); i++) {
+        properties.set(bean, i, readProperty(properties.getType(i)));
+      }
+      inProgress.remove(bean);
+      return bean;
+    }
+
+    private Object readProperty(Class<?> type) throws ReflectiveOperationException {
+      if (!type.isPrimitive()) {
+        return read();
+      } else if (type == byte.class) {
+        return in.readByte();
+      }
+      return readPrimitive(type);
+    }
+
+    private Object register(Object value) {
+      handles.add(value);
+      return value;
+    }
+
+    private String readString() {
+      byte tag = in.readByte();
+      if (tag != STRING) {
+        throw new CacheException("Expected a string but found tag " + tag + " in serialized cache entry.");
+      }
+      return readChars();
+    }
+
+    private String readChars() {
+      int length = in.readInt();
+      String value = new String(in.buffer, in.position, length, StandardCharsets.UTF_8);
+      in.position += length;
+      return value;
+    }
+
+    private byte[] readBytes() {
+      int length = in.readInt();
+      byte[] bytes = Arrays.copyOfRange(in.buffer, in.position, in.position + length);
+      in.position += length;
+      return bytes;
+    }
+
+    private Class<?> readClass() throws ClassNotFoundException {
+      int index = in.readInt();
+      if (index >= 0) {
+        return classes.get(index);
+      }
+      byte[] name = readBytes();
+      Class<?> type = Resources.classForName(new String(name, StandardCharsets.UTF_8));
+      classes.add(type);
+      return type;
+    }
+  }
+
+  /**
+   * Growable big-endian byte buffer, without the synchronization of {@code ByteArrayOutputStream}.
+   */
+  private static final class Output {
+
+    private byte[] buffer = new byte[256];
+    private int position;
+
+    void writeByte(int value) {
+      ensureCapacity(1);
+      buffer[position++] = (byte) value;
+    }
+
+    void writeBoolean(boolean value) {
+      writeByte(value ? 1 : 0);
+    }
+
+    void writeShort(int value) {
+      ensureCapacity(2);
+      buffer[position++] = (byte) (value >>> 8);
+      buffer[position++] = (byte) value;
+    }
+
+    void writeChar(int value) {
+      writeShort(value);
+    }
+
+    void writeInt(int value) {
+      ensureCapacity(4);
+      buffer[position++] = (byte) (value >>> 24);
+      buffer[position++] = (byte) (value >>> 16);
+      buffer[position++] = (byte) (value >>> 8);
+      buffer[position++] = (byte) value;
+    }
+
+    void writeLong(long value) {
+      writeInt((int) (value >>> 32));
+      writeInt((int) value);
+    }
+
+    void writeFloat(float value) {
+      writeInt(Float.floatToRawIntBits(value));
+    }
+
+    void writeDouble(double value) {
+      writeLong(Double.doubleToRawLongBits(value));
+    }
+
+    void write(byte[] bytes) {
+      ensureCapacity(bytes.length);
+      System.arraycopy(bytes, 0, buffer, position, bytes.length);
+      position += bytes.length;
+    }
+
+    byte[] toByteArray() {
+      return Arrays.copyOf(buffer, position);
+    }
+
+    private void ensureCapacity(int length) {
+      if (position + length > buffer.length) {
+        buffer = Arrays.copyOf(buffer, Math.max(buffer.length << 1, position + length));
+      }
+    }
+  }
+
+  private static final class Input {
+
+    private final byte[] buffer;
+    private int position;
+
+    Input(byte[] buffer) {
+      this.buffer = buffer;
+    }
+
+    byte readByte() {
+      return buffer[position++];
+    }
+
+    boolean readBoolean() {
+      return readByte() != 0;
+    }
+
+    short readShort() {
+      return (short) (((buffer[position++] & 0xFF) << 8) | (buffer[position++] & 0xFF));
+    }
+
+    char readChar() {
+      return (char) readShort();
+    }
+
+    int readInt() {
+      return ((buffer[position++] & 0xFF) << 24) | ((buffer[position++] & 0xFF) << 16)
+          | ((buffer[position++] & 0xFF) << 8) | (buffer[position++] & 0xFF);
+    }
+
+    long readLong() {
+      return ((long) readInt() << 32) | (readInt() & 0xFFFFFFFFL);
+    }
+
+    float readFloat() {
+      return Float.intBitsToFloat(readInt());
+    }
+
+    double readDouble() {
+      return Double.longBitsToDouble(readLong());
+    }
+  }
+
+}
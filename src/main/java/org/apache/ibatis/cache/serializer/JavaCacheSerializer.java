@@ -0,0 +1,130 @@
+/*
+ *    Copyright 2009-2022 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.serializer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.reflect.Method;
+
+import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.cache.decorators.SerializedCache.CustomObjectInputStream;
+import org.apache.ibatis.io.SerialFilterChecker;
+
+/**
+ * Serializer based on standard java serialization. Values must be {@link Serializable}.
+ * <p>
+ * A {@link #setSerialFilter(String) serial filter} can restrict the classes and the size of the graphs that are read
+ * back, on top of the JVM-wide {@code jdk.serialFilter}.
+ */
+public class JavaCacheSerializer implements CacheSerializer {
+
+  private static final Method CREATE_FILTER;
+  private static final Method SET_FILTER;
+
+  static {
+    Method createFilter;
+    Method setFilter;
+    try {
+      Class<?> filterType = Class.forName("java.io.ObjectInputFilter");
+      createFilter = Class.forName("java.io.ObjectInputFilter$Config").getMethod("createFilter", String.class);
+      setFilter = ObjectInputStream.class.getMethod("setObjectInputFilter", filterType);
+    } catch (ReflectiveOperationException e) {
+      // Java 1.8
+      try {
+        Class<?> filterType = Class.forName("sun.misc.ObjectInputFilter");
+        Class<?> config = Class.forName("sun.misc.ObjectInputFilter$Config");
+        createFilter = config.getMethod("createFilter", String.class);
+        setFilter = config.getMethod("setObjectInputFilter", ObjectInputStream.class, filterType);
+      } catch (ReflectiveOperationException e2) {
+        createFilter = null;
+        setFilter = null;
+      }
+    }
+    CREATE_FILTER = createFilter;
+    SET_FILTER = setFilter;
+  }
+
+  private String serialFilter;
+  private Object filter;
+
+  /**
+   * @return whether the running JVM supports {@link #setSerialFilter(String) serial filters}
+   * @since 3.5.12
+   */
+  public static boolean isSerialFilterSupported() {
+    return CREATE_FILTER != null;
+  }
+
+  public String getSerialFilter() {
+    return serialFilter;
+  }
+
+  /**
+   * Sets the filter applied to the objects read back, for example {@code "maxdepth=32;com.example.*;!*"}.
+   *
+   * @param serialFilter
+   *          a pattern in the syntax of {@code jdk.serialFilter}, {@code null} for none
+   * @since 3.5.12
+   */
+  public void setSerialFilter(String serialFilter) {
+    if (serialFilter != null && !isSerialFilterSupported()) {
+      throw new CacheException("Serial filters are not supported by this JVM.");
+    }
+    try {
+      this.filter = serialFilter == null ? null : CREATE_FILTER.invoke(null, serialFilter);
+    } catch (ReflectiveOperationException e) {
+      throw new CacheException("Invalid serial filter '" + serialFilter + "'.  Cause: " + e, e);
+    }
+    this.serialFilter = serialFilter;
+  }
+
+  @Override
+  public byte[] serialize(Object value) {
+    if (value != null && !(value instanceof Serializable)) {
+      throw new CacheException("SharedCache failed to make a copy of a non-serializable object: " + value);
+    }
+    try (ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        ObjectOutputStream oos = new ObjectOutputStream(bos)) {
+      oos.writeObject(value);
+      oos.flush();
+      return bos.toByteArray();
+    } catch (Exception e) {
+      throw new CacheException("Error serializing object.  Cause: " + e, e);
+    }
+  }
+
+  @Override
+  public Object deserialize(byte[] bytes) {
+    SerialFilterChecker.check();
+    try (ByteArrayInputStream bis = new ByteArrayInputStream(bytes);
+        ObjectInputStream ois = new CustomObjectInputStream(bis)) {
+      if (filter != null) {
+        if (SET_FILTER.getParameterCount() == 1) {
+          SET_FILTER.invoke(ois, filter);
+        } else {
+          SET_FILTER.invoke(null, ois, filter);
+        }
+      }
+      return ois.readObject();
+    } catch (Exception e) {
+      throw new CacheException("Error deserializing object.  Cause: " + e, e);
+    }
+  }
+
+}
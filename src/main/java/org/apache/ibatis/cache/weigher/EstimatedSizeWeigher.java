@@ -0,0 +1,147 @@
+/*
+ *    Copyright 2009-2022 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.weigher;
+
+import java.lang.reflect.Array;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import org.apache.ibatis.cache.ObjectGraphWalker;
+import org.apache.ibatis.reflection.DefaultReflectorFactory;
+
+/**
+ * Weighs entries by an estimation of the heap they retain, in bytes.
+ * <p>
+ * The object graph of the value is walked once when it is put in the cache, assuming a 64-bit JVM with compressed
+ * class pointers. Beans are measured by their properties, as described by the {@link ObjectGraphWalker}. Other JDK
+ * types get a fixed estimate, MyBatis internals (e.g. lazy loading handlers) are not followed, and the walk stops
+ * after {@value #MAX_VISITED} objects, so the result is an approximation meant for capping memory, not an exact
+ * measure. Serialized values (read/write caches) are measured exactly.
+ */
+public class EstimatedSizeWeigher implements Weigher {
+
+  private static final int OBJECT_HEADER = 12;
+  private static final int ARRAY_HEADER = 16;
+  private static final int REFERENCE = 4;
+  private static final int JDK_OBJECT = 32;
+  private static final int COLLECTION_OVERHEAD = 48;
+  private static final int COLLECTION_ENTRY = 16;
+  private static final int MAP_ENTRY = 32;
+  private static final int MAX_VISITED = 100_000;
+
+  private final ObjectGraphWalker walker;
+
+  public EstimatedSizeWeigher() {
+    this(new ObjectGraphWalker(new DefaultReflectorFactory()));
+  }
+
+  public EstimatedSizeWeigher(ObjectGraphWalker walker) {
+    this.walker = walker;
+  }
+
+  @Override
+  public long weigh(Object key, Object value) {
+    if (value == null) {
+      return 0;
+    }
+    if (value instanceof byte[]) {
+      return align(ARRAY_HEADER + ((byte[]) value).length);
+    }
+    Map<Object, Object> visited = new IdentityHashMap<>();
+    Deque<Object> pending = new ArrayDeque<>();
+    pending.push(value);
+    long total = 0;
+    while (!pending.isEmpty() && visited.size() < MAX_VISITED) {
+      Object object = pending.pop();
+      if (visited.put(object, object) == null) {
+        total += shallowSize(object, pending);
+      }
+    }
+    return total;
+  }
+
+  private long shallowSize(Object object, Deque<Object> pending) {
+    Class<?> type = object.getClass();
+    if (type == String.class) {
+      // compact strings, one byte per character for latin-1 content
+      return align(OBJECT_HEADER + 12) + align(ARRAY_HEADER + ((String) object).length());
+    }
+    switch (walker.kindOf(type)) {
+      case ARRAY:
+        int length = Array.getLength(object);
+        Class<?> componentType = type.getComponentType();
+        if (componentType.isPrimitive()) {
+          return align(ARRAY_HEADER + (long) length * primitiveSize(componentType));
+        }
+        walker.forEachReference(object, reference -> push(reference, pending));
+        return align(ARRAY_HEADER + (long) length * REFERENCE);
+      case BEAN:
+        ObjectGraphWalker.BeanProperties properties = walker.propertiesOf(type);
+        long size = OBJECT_HEADER;
+        for (int i = 0; i < properties.size(); i++) {
+          Class<?> propertyType = properties.getType(i);
+          size += propertyType.isPrimitive() ? primitiveSize(propertyType) : REFERENCE;
+        }
+        walker.forEachReference(object, reference -> push(reference, pending));
+        return align(size);
+      default:
+        break;
+    }
+    // lists, sets and maps, including the ones that are not copied entry by entry
+    if (object instanceof Collection) {
+      Collection<?> collection = (Collection<?>) object;
+      for (Object element : collection) {
+        push(element, pending);
+      }
+      return COLLECTION_OVERHEAD + (long) collection.size() * COLLECTION_ENTRY;
+    }
+    if (object instanceof Map) {
+      Map<?, ?> map = (Map<?, ?>) object;
+      for (Map.Entry<?, ?> entry : map.entrySet()) {
+        push(entry.getKey(), pending);
+        push(entry.getValue(), pending);
+      }
+      return COLLECTION_OVERHEAD + (long) map.size() * MAP_ENTRY;
+    }
+    return JDK_OBJECT;
+  }
+
+  private static void push(Object object, Deque<Object> pending) {
+    if (object != null && !object.getClass().getName().startsWith("org.apache.ibatis.")) {
+      pending.push(object);
+    }
+  }
+
+  private static int primitiveSize(Class<?> type) {
+    if (type == long.class || type == double.class) {
+      return 8;
+    } else if (type == int.class || type == float.class) {
+      return 4;
+    } else if (type == short.class || type == char.class) {
+      return 2;
+    } else {
+      return 1;
+    }
+  }
+
+  private static long align(long size) {
+    return (size + 7) & ~7L;
+  }
+
+}
@@ -0,0 +1,35 @@
+/*
+ *    Copyright 2009-2022 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.weigher;
+
+/**
+ * Computes the weight of a cache entry, used by {@link org.apache.ibatis.cache.decorators.WeightedCache} to bound
+ * a cache by weight instead of entry count.
+ * <p>
+ * Implementations must be thread-safe and must have a public no-arg constructor.
+ */
+public interface Weigher {
+
+  /**
+   * @param key
+   *          the cache key
+   * @param value
+   *          the value stored in the cache, that is the result of a select or its serialized form
+   * @return a non-negative weight
+   */
+  long weigh(Object key, Object value);
+
+}
@@ -20,10 +20,13 @@ import static org.apache.ibatis.executor.ExecutionPlaceholder.EXECUTION_PLACEHOL
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ConcurrentLinkedQueue;
 
 import org.apache.ibatis.cache.CacheKey;
+import org.apache.ibatis.cache.CompactCacheKey;
+import org.apache.ibatis.cache.EmptyResult;
 import org.apache.ibatis.cache.impl.PerpetualCache;
 import org.apache.ibatis.cursor.Cursor;
 import org.apache.ibatis.executor.statement.StatementUtil;
@@ -61,12 +64,15 @@ public abstract class BaseExecutor implements Executor {
 
     protected int queryStack;
     private boolean closed;
+    //useLocalCache=false的语句缓存的key,一次完整的查询执行完毕后会从一级缓存中删除
+    private final List<CacheKey> statementScopedKeys = new ArrayList<>();
 
     protected BaseExecutor(Configuration configuration, Transaction transaction) {
         this.transaction = transaction;
         this.deferredLoads = new ConcurrentLinkedQueue<>();
-        this.localCache = new PerpetualCache("LocalCache");
-        this.localOutputParameterCache = new PerpetualCache("LocalOutputParameterCache");
+        //一级缓存可以通过localCacheSize(最大条目数)和localCacheMaxRows(最大行数)设置上限,默认不限制
+        this.localCache = new LocalCache("LocalCache", configuration.getLocalCacheSize(), configuration.getLocalCacheMaxRows());
+        this.localOutputParameterCache = new LocalCache("LocalOutputParameterCache", configuration.getLocalCacheSize(), 0);
         this.closed = false;
         this.configuration = configuration;
         this.wrapper = this;
@@ -158,7 +164,7 @@ public abstract class BaseExecutor implements Executor {
             queryStack++;
             //先从一级缓存获取结果
             //localCache就是一个PerpetualCache(内部用一个Map作为缓存)
-            list = resultHandler == null ? (List<E>) localCache.getObject(key) : null;
+            list = resultHandler == null ? fromLocalCache(localCache.getObject(key)) : null;
             if (list != null) {
                 //一级缓存有数据
 
@@ -187,6 +193,9 @@ public abstract class BaseExecutor implements Executor {
                 // issue #482
                 //清除缓存
                 clearLocalCache();
+            } else {
+                //删除useLocalCache=false的语句的结果,然后把一级缓存修剪到上限以内
+                evictLocalCache();
             }
         }
         return list;
@@ -216,12 +225,14 @@ public abstract class BaseExecutor implements Executor {
         if (closed) {
             throw new ExecutorException("Executor was closed.");
         }
-        CacheKey cacheKey = new CacheKey();
-        cacheKey.update(ms.getId());
-        cacheKey.update(rowBounds.getOffset());
-        cacheKey.update(rowBounds.getLimit());
-        cacheKey.update(boundSql.getSql());
         List<ParameterMapping> parameterMappings = boundSql.getParameterMappings();
+        //一次性按组件数量分配好数组,hash值在添加组件时顺带计算;插件仍可以对返回的key调用update
+        CompactCacheKey.Builder cacheKey = CompactCacheKey.builder(5 + parameterMappings.size());
+        cacheKey.add(ms.getId());
+        cacheKey.add(rowBounds.getOffset());
+        cacheKey.add(rowBounds.getLimit());
+        //SQL的hash使用预先计算好的指纹,静态SQL不需要每次都对整条SQL做hash
+        cacheKey.addSql(boundSql.getSql(), boundSql.getSqlFingerprint());
         TypeHandlerRegistry typeHandlerRegistry = ms.getConfiguration().getTypeHandlerRegistry();
         // mimic DefaultParameterHandler logic
         for (ParameterMapping parameterMapping : parameterMappings) {
@@ -238,14 +249,14 @@ public abstract class BaseExecutor implements Executor {
                     MetaObject metaObject = configuration.newMetaObject(parameterObject);
                     value = metaObject.getValue(propertyName);
                 }
-                cacheKey.update(value);
+                cacheKey.add(value);
             }
         }
         if (configuration.getEnvironment() != null) {
             // issue #176
-            cacheKey.update(configuration.getEnvironment().getId());
+            cacheKey.add(configuration.getEnvironment().getId());
         }
-        return cacheKey;
+        return cacheKey.build();
     }
 
     @Override
@@ -286,6 +297,21 @@ public abstract class BaseExecutor implements Executor {
         if (!closed) {
             localCache.clear();
             localOutputParameterCache.clear();
+            statementScopedKeys.clear();
+        }
+    }
+
+    private void evictLocalCache() {
+        for (CacheKey key : statementScopedKeys) {
+            localCache.removeObject(key);
+            localOutputParameterCache.removeObject(key);
+        }
+        statementScopedKeys.clear();
+        if (localCache instanceof LocalCache) {
+            ((LocalCache) localCache).evictExcess();
+        }
+        if (localOutputParameterCache instanceof LocalCache) {
+            ((LocalCache) localOutputParameterCache).evictExcess();
         }
     }
 
@@ -349,14 +375,25 @@ public abstract class BaseExecutor implements Executor {
             //先从一级缓存中删掉
             localCache.removeObject(key);
         }
-        //放入一级缓存中
-        localCache.putObject(key, list);
+        //放入一级缓存中,开启了shareEmptyResults配置时,没有结果的查询在缓存中都共用同一个EmptyResult
+        localCache.putObject(key, list != null && list.isEmpty() && configuration.isShareEmptyResults() ? EmptyResult.INSTANCE : list);
         if (ms.getStatementType() == StatementType.CALLABLE) {
             localOutputParameterCache.putObject(key, parameter);
         }
+        if (!ms.isUseLocalCache()) {
+            statementScopedKeys.add(key);
+        }
         return list;
     }
 
+    /**
+     * EmptyResult只存在于缓存中,返回给调用者和嵌套属性的总是一个新的可修改的List
+     */
+    @SuppressWarnings("unchecked")
+    private static <E> List<E> fromLocalCache(Object cached) {
+        return cached == EmptyResult.INSTANCE ? new ArrayList<>() : (List<E>) cached;
+    }
+
     protected Connection getConnection(Log statementLog) throws SQLException {
         Connection connection = transaction.getConnection();
         if (statementLog.isDebugEnabled()) {
@@ -404,7 +441,7 @@ public abstract class BaseExecutor implements Executor {
         public void load() {
             @SuppressWarnings("unchecked")
             // we suppose we get back a List
-            List<Object> list = (List<Object>) localCache.getObject(key);
+            List<Object> list = fromLocalCache(localCache.getObject(key));
             Object value = resultExtractor.extractObjectFromList(list, targetType);
             resultObject.setValue(property, value);
         }
@@ -17,12 +17,24 @@ package org.apache.ibatis.executor;
 
 import java.sql.BatchUpdateException;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
+import org.apache.ibatis.cache.weigher.EstimatedSizeWeigher;
 import org.apache.ibatis.cursor.Cursor;
 import org.apache.ibatis.executor.keygen.Jdbc3KeyGenerator;
 import org.apache.ibatis.executor.keygen.KeyGenerator;
@@ -30,22 +42,71 @@ import org.apache.ibatis.executor.keygen.NoKeyGenerator;
 import org.apache.ibatis.executor.statement.StatementHandler;
 import org.apache.ibatis.mapping.BoundSql;
 import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ParameterMapping;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.mapping.StatementType;
+import org.apache.ibatis.scripting.defaults.DefaultParameterHandler;
 import org.apache.ibatis.session.Configuration;
 import org.apache.ibatis.session.ResultHandler;
 import org.apache.ibatis.session.RowBounds;
 import org.apache.ibatis.transaction.Transaction;
 
 /**
+ * Sends the updates as JDBC batches, when the statements are flushed.
+ * <p>
+ * Consecutive updates with the same statement and SQL share one JDBC statement. When
+ * {@link Configuration#isBatchReorderInserts() batchReorderInserts} is enabled, inserts also share the JDBC statement
+ * of an earlier insert with the same statement and SQL, as long as no update or delete, and no insert of the same
+ * statement with another SQL, was batched in between: the statements are executed in the order they were first used,
+ * so interleaved inserts into a parent and a child table are sent as one batch per table, parents first.
+ * <p>
+ * For bulk loads, {@link Configuration#getBatchSize() batchSize} and
+ * {@link Configuration#getBatchMaxPendingBytes() batchMaxPendingBytes} make the executor execute the pending batches
+ * on its own once enough updates are queued; their results are returned by the next flush. Disabling
+ * {@link Configuration#isBatchRetainParameterObjects() batchRetainParameterObjects} also releases the parameter
+ * objects once their batch has been executed, so memory stays flat however many rows are sent.
+ * <p>
+ * With {@link Configuration#isBatchPipelined() batchPipelined}, those batches are sent by a worker thread of the
+ * executor while the caller goes on. The worker only calls {@code executeBatch}: the timeouts are applied before and
+ * the generated keys are read after, by the caller, and the updates made meanwhile are only turned into SQL and
+ * queued, they are bound to their statements once the batch is done, so the connection is never used by two threads
+ * at once. At most one batch is in flight and at most as many updates as it holds are queued; flushes, queries,
+ * rollbacks and updates whose key generator runs a query wait for it. A failed batch is reported, as a
+ * {@link BatchExecutorException} listing the batches executed before it, by the next update or flush, and the queued
+ * updates are discarded. Batches holding multi-row inserts are sent by the caller.
+ * <p>
+ * When {@link Configuration#getBatchInsertRows() batchInsertRows} is greater than one, a batch of a simple
+ * {@code INSERT ... VALUES (...)} statement is sent as multi-row {@code VALUES (...), (...), ...} statements of that
+ * many rows, plus one statement for the remaining rows. Its {@link BatchResult} still holds one update count per row:
+ * 1 when a statement reports as many rows as it inserted, {@link Statement#SUCCESS_NO_INFO} otherwise. Statements
+ * containing comments are not rewritten.
+ *
  * @author Jeff Butler
  */
 public class BatchExecutor extends BaseExecutor {
 
   public static final int BATCH_UPDATE_RETURN_VALUE = Integer.MIN_VALUE + 1002;
 
+  private static final EstimatedSizeWeigher PARAMETER_WEIGHER = new EstimatedSizeWeigher();
+
   private final List<Statement> statementList = new ArrayList<>();
   private final List<BatchResult> batchResultList = new ArrayList<>();
+  // index of the JDBC statement of each insert batched since the last update or delete, by statement and SQL
+  private final Map<MappedStatement, Map<String, Integer>> insertGroups = new HashMap<>();
   private String currentSql;
   private MappedStatement currentStatement;
+  // the JDBC statements that insert several rows at once, with the rows not bound yet
+  private final Map<Statement, MultiRowInsert> multiRowInserts = new IdentityHashMap<>();
+  // results of the batches already executed because a threshold was reached
+  private final List<BatchResult> flushedResults = new ArrayList<>();
+  private int pendingUpdates;
+  private long pendingBytes;
+  // the estimated size of the first parameter object of each JDBC statement
+  private final Map<Statement, Long> parameterSizes = new IdentityHashMap<>();
+  // the batch sent by the worker, at most one at a time, and the updates made since, not bound yet
+  private ExecutorService worker;
+  private InFlight inFlight;
+  private final List<DeferredUpdate> deferredUpdates = new ArrayList<>();
 
   public BatchExecutor(Configuration configuration, Transaction transaction) {
     super(configuration, transaction);
@@ -53,29 +114,94 @@ public class BatchExecutor extends BaseExecutor {
 
   @Override
   public int doUpdate(MappedStatement ms, Object parameterObject) throws SQLException {
+    // report a failed batch as soon as possible, bound the queued updates, and let a selectKey query the database alone
+    while (inFlight != null && (inFlight.future.isDone() || deferredUpdates.size() >= inFlight.updates
+        || !isPassiveKeyGenerator(ms.getKeyGenerator()))) {
+      awaitInFlight();
+    }
+    final StatementHandler handler = ms.getConfiguration().newStatementHandler(this, ms, parameterObject, RowBounds.DEFAULT, null, null);
+    if (inFlight != null) {
+      // binding the parameters would use the connection the worker is sending the batch with
+      deferredUpdates.add(new DeferredUpdate(ms, parameterObject, handler));
+    } else {
+      batch(ms, parameterObject, handler);
+    }
+    return BATCH_UPDATE_RETURN_VALUE;
+  }
+
+  private void batch(MappedStatement ms, Object parameterObject, StatementHandler handler) throws SQLException {
     final Configuration configuration = ms.getConfiguration();
-    final StatementHandler handler = configuration.newStatementHandler(this, ms, parameterObject, RowBounds.DEFAULT, null, null);
     final BoundSql boundSql = handler.getBoundSql();
     final String sql = boundSql.getSql();
     final Statement stmt;
-    if (sql.equals(currentSql) && ms.equals(currentStatement)) {
+    final MultiRowInsert multiRow;
+    final boolean reorder = configuration.isBatchReorderInserts() && ms.getSqlCommandType() == SqlCommandType.INSERT;
+    final Integer group = reorder ? insertGroups.getOrDefault(ms, Collections.emptyMap()).get(sql) : null;
+    if (group != null) {
+      stmt = statementList.get(group);
+      multiRow = multiRowInserts.get(stmt);
+      applyTransactionTimeout(stmt);
+      batchResultList.get(group).addParameterObject(parameterObject);
+    } else if (sql.equals(currentSql) && ms.equals(currentStatement)) {
       int last = statementList.size() - 1;
       stmt = statementList.get(last);
+      multiRow = multiRowInserts.get(stmt);
       applyTransactionTimeout(stmt);
-      handler.parameterize(stmt);// fix Issues 322
       BatchResult batchResult = batchResultList.get(last);
       batchResult.addParameterObject(parameterObject);
     } else {
-      Connection connection = getConnection(ms.getStatementLog());
-      stmt = handler.prepare(connection, transaction.getTimeout());
-      handler.parameterize(stmt);    // fix Issues 322
+      multiRow = MultiRowInsert.of(configuration, ms, handler);
+      if (multiRow != null) {
+        stmt = prepareMultiRowInsert(ms, parameterObject, multiRow, multiRow.rows);
+        multiRowInserts.put(stmt, multiRow);
+      } else {
+        Connection connection = getConnection(ms.getStatementLog());
+        stmt = handler.prepare(connection, transaction.getTimeout());
+      }
       currentSql = sql;
       currentStatement = ms;
       statementList.add(stmt);
       batchResultList.add(new BatchResult(ms, sql, parameterObject));
+      if (reorder) {
+        if (insertGroups.containsKey(ms)) {
+          // the same statement with another SQL: later rows, of this table or of the tables that depend on it, must
+          // not move before this one
+          insertGroups.clear();
+        }
+        insertGroups.computeIfAbsent(ms, k -> new HashMap<>()).put(sql, statementList.size() - 1);
+      }
+    }
+    if (!reorder) {
+      // later inserts must not move before this update or delete
+      insertGroups.clear();
+    }
+    if (multiRow != null) {
+      multiRow.add((PreparedStatement) stmt, (DefaultParameterHandler) handler.getParameterHandler());
+    } else {
+      handler.parameterize(stmt);    // fix Issues 322
+      handler.batch(stmt);
+    }
+    pendingUpdates++;
+    if (configuration.getBatchMaxPendingBytes() > 0) {
+      // the rows of a bulk load have the same shape, walking the graph of every one of them would cost more than it saves
+      pendingBytes += parameterSizes.computeIfAbsent(stmt, k -> PARAMETER_WEIGHER.weigh(null, parameterObject));
+    }
+    if (configuration.getBatchSize() > 0 && pendingUpdates >= configuration.getBatchSize()
+        || configuration.getBatchMaxPendingBytes() > 0 && pendingBytes >= configuration.getBatchMaxPendingBytes()) {
+      if (configuration.isBatchPipelined() && multiRowInserts.isEmpty()) {
+        executeInBackground();
+        return;
+      }
+      try {
+        executeStatements(flushedResults);
+      } catch (SQLException | RuntimeException e) {
+        // the exception lists the batches executed before, the next flush must not return them again
+        flushedResults.clear();
+        throw e;
+      } finally {
+        closeStatements();
+      }
     }
-    handler.batch(stmt);
-    return BATCH_UPDATE_RETURN_VALUE;
   }
 
   @Override
@@ -111,53 +237,441 @@ public class BatchExecutor extends BaseExecutor {
   @Override
   public List<BatchResult> doFlushStatements(boolean isRollback) throws SQLException {
     try {
-      List<BatchResult> results = new ArrayList<>();
       if (isRollback) {
+        discardInFlight();
         return Collections.emptyList();
       }
-      for (int i = 0, n = statementList.size(); i < n; i++) {
-        Statement stmt = statementList.get(i);
-        applyTransactionTimeout(stmt);
-        BatchResult batchResult = batchResultList.get(i);
-        try {
-          batchResult.setUpdateCounts(stmt.executeBatch());
-          MappedStatement ms = batchResult.getMappedStatement();
-          List<Object> parameterObjects = batchResult.getParameterObjects();
-          KeyGenerator keyGenerator = ms.getKeyGenerator();
-          if (Jdbc3KeyGenerator.class.equals(keyGenerator.getClass())) {
-            Jdbc3KeyGenerator jdbc3KeyGenerator = (Jdbc3KeyGenerator) keyGenerator;
-            jdbc3KeyGenerator.processBatch(ms, stmt, parameterObjects);
-          } else if (!NoKeyGenerator.class.equals(keyGenerator.getClass())) { //issue #141
-            for (Object parameter : parameterObjects) {
-              keyGenerator.processAfter(this, ms, stmt, parameter);
-            }
-          }
-          // Close statement to close cursor #1109
-          closeStatement(stmt);
-        } catch (BatchUpdateException e) {
-          StringBuilder message = new StringBuilder();
-          message.append(batchResult.getMappedStatement().getId())
-              .append(" (batch index #")
-              .append(i + 1)
-              .append(")")
-              .append(" failed.");
-          if (i > 0) {
-            message.append(" ")
-                .append(i)
-                .append(" prior sub executor(s) completed successfully, but will be rolled back.");
+      while (inFlight != null) {
+        awaitInFlight();
+      }
+      List<BatchResult> results = new ArrayList<>(flushedResults);
+      executeStatements(results);
+      return results;
+    } finally {
+      flushedResults.clear();
+      closeStatements();
+    }
+  }
+
+  @Override
+  public void close(boolean forceRollback) {
+    try {
+      super.close(forceRollback);
+    } finally {
+      if (worker != null) {
+        worker.shutdown();
+        worker = null;
+      }
+    }
+  }
+
+  private static boolean isPassiveKeyGenerator(KeyGenerator keyGenerator) {
+    // a selectKey runs its query on the connection of the batch
+    return NoKeyGenerator.class.equals(keyGenerator.getClass()) || Jdbc3KeyGenerator.class.equals(keyGenerator.getClass());
+  }
+
+  private void executeInBackground() throws SQLException {
+    for (Statement stmt : statementList) {
+      applyTransactionTimeout(stmt);
+    }
+    final List<Statement> statements = new ArrayList<>(statementList);
+    final List<BatchResult> batchResults = new ArrayList<>(batchResultList);
+    final int[][] updateCounts = new int[statements.size()][];
+    final int updates = pendingUpdates;
+    // the statements are closed once the batch is done
+    statementList.clear();
+    closeStatements();
+    if (worker == null) {
+      ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 30L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+        Thread thread = new Thread(runnable, "mybatis-batch");
+        thread.setDaemon(true);
+        return thread;
+      });
+      executor.allowCoreThreadTimeOut(true);
+      worker = executor;
+    }
+    Future<?> future = worker.submit(() -> {
+      for (int i = 0; i < updateCounts.length; i++) {
+        updateCounts[i] = statements.get(i).executeBatch();
+      }
+      return null;
+    });
+    inFlight = new InFlight(statements, batchResults, updateCounts, updates, future);
+  }
+
+  /**
+   * Waits for the batch in flight, completes its results like a batch sent by the caller, then binds the updates
+   * queued meanwhile, which may send the next batch.
+   */
+  private void awaitInFlight() throws SQLException {
+    InFlight batch = inFlight;
+    inFlight = null;
+    try {
+      Throwable failure = batch.await();
+      for (int i = 0; i < batch.statements.size(); i++) {
+        BatchResult batchResult = batch.batchResults.get(i);
+        if (batch.updateCounts[i] == null) {
+          if (failure instanceof BatchUpdateException) {
+            throw batchFailure(flushedResults, batchResult, (BatchUpdateException) failure);
+          } else if (failure instanceof SQLException) {
+            throw (SQLException) failure;
+          } else if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+          } else if (failure instanceof Error) {
+            throw (Error) failure;
           }
-          throw new BatchExecutorException(message.toString(), e, results, batchResult);
+          throw new ExecutorException("Error executing a batch.  Cause: " + failure, failure);
+        }
+        batchResult.setUpdateCounts(batch.updateCounts[i]);
+        assignKeys(batchResult.getMappedStatement(), batch.statements.get(i), batchResult.getParameterObjects());
+        if (!configuration.isBatchRetainParameterObjects()) {
+          batchResult.getParameterObjects().clear();
         }
-        results.add(batchResult);
+        flushedResults.add(batchResult);
       }
-      return results;
+    } catch (SQLException | RuntimeException e) {
+      // the exception lists the batches executed before, the next flush must not return them again
+      flushedResults.clear();
+      deferredUpdates.clear();
+      throw e;
     } finally {
-      for (Statement stmt : statementList) {
+      for (Statement stmt : batch.statements) {
+        closeStatement(stmt);
+      }
+    }
+    List<DeferredUpdate> updates = new ArrayList<>(deferredUpdates);
+    deferredUpdates.clear();
+    for (DeferredUpdate update : updates) {
+      if (inFlight != null) {
+        // the queued updates sent the next batch
+        deferredUpdates.add(update);
+      } else {
+        batch(update.ms, update.parameterObject, update.handler);
+      }
+    }
+  }
+
+  private void discardInFlight() {
+    deferredUpdates.clear();
+    if (inFlight != null) {
+      InFlight batch = inFlight;
+      inFlight = null;
+      // Ignore the failure. The batch is rolled back anyway.
+      batch.await();
+      for (Statement stmt : batch.statements) {
         closeStatement(stmt);
       }
-      currentSql = null;
-      statementList.clear();
-      batchResultList.clear();
+    }
+  }
+
+  private void executeStatements(List<BatchResult> results) throws SQLException {
+    for (int i = 0, n = statementList.size(); i < n; i++) {
+      Statement stmt = statementList.get(i);
+      applyTransactionTimeout(stmt);
+      BatchResult batchResult = batchResultList.get(i);
+      try {
+        MappedStatement ms = batchResult.getMappedStatement();
+        List<Object> parameterObjects = batchResult.getParameterObjects();
+        MultiRowInsert multiRow = multiRowInserts.get(stmt);
+        if (multiRow != null) {
+          // assigns the generated keys statement by statement
+          executeMultiRowInsert(stmt, batchResult, multiRow);
+        } else {
+          batchResult.setUpdateCounts(stmt.executeBatch());
+          assignKeys(ms, stmt, parameterObjects);
+        }
+        if (!configuration.isBatchRetainParameterObjects()) {
+          parameterObjects.clear();
+        }
+        // Close statement to close cursor #1109
+        closeStatement(stmt);
+      } catch (BatchUpdateException e) {
+        throw batchFailure(results, batchResult, e);
+      }
+      results.add(batchResult);
+    }
+  }
+
+  private void assignKeys(MappedStatement ms, Statement stmt, List<Object> parameterObjects) throws SQLException {
+    KeyGenerator keyGenerator = ms.getKeyGenerator();
+    if (Jdbc3KeyGenerator.class.equals(keyGenerator.getClass())) {
+      Jdbc3KeyGenerator jdbc3KeyGenerator = (Jdbc3KeyGenerator) keyGenerator;
+      jdbc3KeyGenerator.processBatch(ms, stmt, parameterObjects);
+    } else if (!NoKeyGenerator.class.equals(keyGenerator.getClass())) { //issue #141
+      for (Object parameter : parameterObjects) {
+        keyGenerator.processAfter(this, ms, stmt, parameter);
+      }
+    }
+  }
+
+  private static BatchExecutorException batchFailure(List<BatchResult> results, BatchResult batchResult, BatchUpdateException e) {
+    int completed = results.size();
+    StringBuilder message = new StringBuilder();
+    message.append(batchResult.getMappedStatement().getId())
+        .append(" (batch index #")
+        .append(completed + 1)
+        .append(")")
+        .append(" failed.");
+    if (completed > 0) {
+      message.append(" ")
+          .append(completed)
+          .append(" prior sub executor(s) completed successfully, but will be rolled back.");
+    }
+    return new BatchExecutorException(message.toString(), e, new ArrayList<>(results), batchResult);
+  }
+
+  private void executeMultiRowInsert(Statement stmt, BatchResult batchResult, MultiRowInsert multiRow) throws SQLException {
+    MappedStatement ms = batchResult.getMappedStatement();
+    List<Object> parameterObjects = batchResult.getParameterObjects();
+    boolean assignKeys = Jdbc3KeyGenerator.class.equals(ms.getKeyGenerator().getClass());
+    // one count per row, as if the rows had been batched one by one
+    int[] updateCounts = new int[parameterObjects.size()];
+    int row = 0;
+    for (int statementCount : stmt.executeBatch()) {
+      row = fillRowCounts(updateCounts, row, multiRow.rows, statementCount);
+    }
+    if (assignKeys && multiRow.batchedRows > 0) {
+      ((Jdbc3KeyGenerator) ms.getKeyGenerator()).processBatch(ms, stmt, new ArrayList<>(parameterObjects.subList(0, multiRow.batchedRows)));
+    }
+    if (!multiRow.pending.isEmpty()) {
+      Object parameterObject = parameterObjects.get(multiRow.batchedRows);
+      int remainingRows = multiRow.pending.size();
+      PreparedStatement remaining = (PreparedStatement) prepareMultiRowInsert(ms, parameterObject, multiRow, remainingRows);
+      try {
+        applyTransactionTimeout(remaining);
+        multiRow.bind(remaining);
+        remaining.addBatch();
+        for (int statementCount : remaining.executeBatch()) {
+          row = fillRowCounts(updateCounts, row, remainingRows, statementCount);
+        }
+        if (assignKeys) {
+          ((Jdbc3KeyGenerator) ms.getKeyGenerator()).processBatch(ms, remaining,
+              new ArrayList<>(parameterObjects.subList(multiRow.batchedRows, parameterObjects.size())));
+        }
+      } finally {
+        closeStatement(remaining);
+      }
+    }
+    batchResult.setUpdateCounts(updateCounts);
+  }
+
+  private static int fillRowCounts(int[] updateCounts, int from, int rows, int statementCount) {
+    // a statement that reports fewer or more rows than it inserted does not say which rows were affected
+    int rowCount = statementCount == rows ? 1 : Statement.SUCCESS_NO_INFO;
+    int to = Math.min(updateCounts.length, from + rows);
+    Arrays.fill(updateCounts, from, to, rowCount);
+    return to;
+  }
+
+  private Statement prepareMultiRowInsert(MappedStatement ms, Object parameterObject, MultiRowInsert multiRow, int rows) throws SQLException {
+    BoundSql boundSql = multiRow.newBoundSql(ms.getConfiguration(), rows, parameterObject);
+    StatementHandler handler = ms.getConfiguration().newStatementHandler(this, ms, parameterObject, RowBounds.DEFAULT, null, boundSql);
+    return handler.prepare(getConnection(ms.getStatementLog()), transaction.getTimeout());
+  }
+
+  private void closeStatements() {
+    for (Statement stmt : statementList) {
+      closeStatement(stmt);
+    }
+    multiRowInserts.clear();
+    parameterSizes.clear();
+    currentSql = null;
+    insertGroups.clear();
+    statementList.clear();
+    batchResultList.clear();
+    pendingUpdates = 0;
+    pendingBytes = 0;
+  }
+
+  /**
+   * The rows of a simple insert, bound into a statement that inserts {@link #rows} of them at once.
+   */
+  private static final class MultiRowInsert {
+
+    private final String head;
+    private final String tuple;
+    private final List<ParameterMapping> parameterMappings;
+    private final int rows;
+    // the rows that do not fill a statement yet
+    private final List<DefaultParameterHandler> pending = new ArrayList<>();
+    private int batchedRows;
+
+    private MultiRowInsert(String head, String tuple, List<ParameterMapping> parameterMappings, int rows) {
+      this.head = head;
+      this.tuple = tuple;
+      this.parameterMappings = parameterMappings;
+      this.rows = rows;
+    }
+
+    /**
+     * Splits an {@code INSERT ... VALUES (...)} whose placeholders all are in its single row of values.
+     *
+     * @return the multi-row insert, or {@code null} if the statement can not be rewritten
+     */
+    static MultiRowInsert of(Configuration configuration, MappedStatement ms, StatementHandler handler) {
+      Class<?> keyGeneratorType = ms.getKeyGenerator().getClass();
+      if (configuration.getBatchInsertRows() <= 1 || ms.getSqlCommandType() != SqlCommandType.INSERT
+          || ms.getStatementType() != StatementType.PREPARED
+          || !NoKeyGenerator.class.equals(keyGeneratorType) && !Jdbc3KeyGenerator.class.equals(keyGeneratorType)
+          || !(handler.getParameterHandler() instanceof DefaultParameterHandler)) {
+        return null;
+      }
+      BoundSql boundSql = handler.getBoundSql();
+      String sql = boundSql.getSql().trim();
+      if (!sql.regionMatches(true, 0, "insert", 0, 6)) {
+        return null;
+      }
+      int values = -1;
+      int tupleStart = -1;
+      int tupleEnd = -1;
+      int placeholders = 0;
+      int depth = 0;
+      char quote = 0;
+      for (int i = 0; i < sql.length(); i++) {
+        char c = sql.charAt(i);
+        if (quote != 0) {
+          if (c == quote) {
+            quote = 0;
+          }
+        } else if (isCommentStart(sql, i)) {
+          // a comment could hide a parenthesis, a quote or a placeholder from this scan
+          return null;
+        } else if (tupleEnd >= 0 && !Character.isWhitespace(c)) {
+          // e.g. a second row or an ON CONFLICT clause
+          return null;
+        } else if (c == '\'' || c == '"' || c == '`') {
+          quote = c;
+        } else if (c == '(') {
+          if (depth++ == 0 && values >= 0) {
+            tupleStart = i;
+          }
+        } else if (c == ')') {
+          if (--depth == 0 && tupleStart >= 0) {
+            tupleEnd = i;
+          }
+        } else if (c == '?') {
+          if (tupleStart < 0) {
+            return null;
+          }
+          placeholders++;
+        } else if (depth == 0 && values < 0 && isKeyword(sql, i, "values")) {
+          values = i + 6;
+          i = values - 1;
+        } else if (depth == 0 && values >= 0 && tupleStart < 0 && !Character.isWhitespace(c)) {
+          // e.g. INSERT ... VALUES ROW(...)
+          return null;
+        }
+      }
+      List<ParameterMapping> parameterMappings = boundSql.getParameterMappings();
+      if (tupleEnd < 0 || parameterMappings == null || placeholders != parameterMappings.size()) {
+        return null;
+      }
+      return new MultiRowInsert(sql.substring(0, values), sql.substring(tupleStart, tupleEnd + 1), parameterMappings,
+          configuration.getBatchInsertRows());
+    }
+
+    private static boolean isKeyword(String sql, int index, String keyword) {
+      int end = index + keyword.length();
+      return sql.regionMatches(true, index, keyword, 0, keyword.length())
+          && (index == 0 || !isIdentifierPart(sql.charAt(index - 1)))
+          && (end == sql.length() || !isIdentifierPart(sql.charAt(end)));
+    }
+
+    private static boolean isCommentStart(String sql, int index) {
+      char c = sql.charAt(index);
+      return c == '#' || sql.startsWith("--", index) || sql.startsWith("/*", index);
+    }
+
+    private static boolean isIdentifierPart(char c) {
+      return Character.isLetterOrDigit(c) || c == '_' || c == '$';
+    }
+
+    BoundSql newBoundSql(Configuration configuration, int rowCount, Object parameterObject) {
+      StringBuilder sql = new StringBuilder(head.length() + (tuple.length() + 2) * rowCount).append(head).append(' ');
+      List<ParameterMapping> mappings = new ArrayList<>(parameterMappings.size() * rowCount);
+      for (int i = 0; i < rowCount; i++) {
+        if (i > 0) {
+          sql.append(", ");
+        }
+        sql.append(tuple);
+        mappings.addAll(parameterMappings);
+      }
+      return new BoundSql(configuration, sql.toString(), mappings, parameterObject);
+    }
+
+    void add(PreparedStatement stmt, DefaultParameterHandler parameterHandler) throws SQLException {
+      pending.add(parameterHandler);
+      if (pending.size() == rows) {
+        bind(stmt);
+        stmt.addBatch();
+        batchedRows += rows;
+      }
+    }
+
+    void bind(PreparedStatement stmt) {
+      int offset = 0;
+      for (DefaultParameterHandler parameterHandler : pending) {
+        parameterHandler.setParameters(stmt, offset);
+        offset += parameterMappings.size();
+      }
+      pending.clear();
+    }
+
+  }
+
+  /**
+   * A batch sent by the worker. Its update counts are written by the worker and read once it is done.
+   */
+  private static final class InFlight {
+    private final List<Statement> statements;
+    private final List<BatchResult> batchResults;
+    private final int[][] updateCounts;
+    private final int updates;
+    private final Future<?> future;
+
+    InFlight(List<Statement> statements, List<BatchResult> batchResults, int[][] updateCounts, int updates, Future<?> future) {
+      this.statements = statements;
+      this.batchResults = batchResults;
+      this.updateCounts = updateCounts;
+      this.updates = updates;
+      this.future = future;
+    }
+
+    /**
+     * Waits until the worker is done with the connection, even if the caller is interrupted.
+     *
+     * @return the failure of the batch, or {@code null} if all its statements were executed
+     */
+    Throwable await() {
+      boolean interrupted = false;
+      try {
+        while (true) {
+          try {
+            future.get();
+            return null;
+          } catch (ExecutionException e) {
+            return e.getCause();
+          } catch (InterruptedException e) {
+            interrupted = true;
+          }
+        }
+      } finally {
+        if (interrupted) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    }
+  }
+
+  private static final class DeferredUpdate {
+    private final MappedStatement ms;
+    private final Object parameterObject;
+    private final StatementHandler handler;
+
+    DeferredUpdate(MappedStatement ms, Object parameterObject, StatementHandler handler) {
+      this.ms = ms;
+      this.parameterObject = parameterObject;
+      this.handler = handler;
     }
   }
 
@@ -15,22 +15,42 @@
  */
 package org.apache.ibatis.executor;
 
+import java.lang.reflect.Array;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
+import org.apache.ibatis.binding.MapperMethod.ParamMap;
 import org.apache.ibatis.cache.Cache;
 import org.apache.ibatis.cache.CacheKey;
+import org.apache.ibatis.cache.CacheLoader;
+import org.apache.ibatis.cache.CacheTagRegistry;
+import org.apache.ibatis.cache.EmptyResult;
 import org.apache.ibatis.cache.TransactionalCacheManager;
+import org.apache.ibatis.cache.decorators.RefreshAheadCache;
+import org.apache.ibatis.cache.decorators.SingleFlightCache;
 import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.executor.resultset.CachedResultSets;
+import org.apache.ibatis.executor.resultset.ResultSetHandler;
 import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.Environment;
 import org.apache.ibatis.mapping.MappedStatement;
 import org.apache.ibatis.mapping.ParameterMapping;
 import org.apache.ibatis.mapping.ParameterMode;
+import org.apache.ibatis.mapping.ResultMapping;
 import org.apache.ibatis.mapping.StatementType;
 import org.apache.ibatis.reflection.MetaObject;
+import org.apache.ibatis.session.Configuration;
 import org.apache.ibatis.session.ResultHandler;
 import org.apache.ibatis.session.RowBounds;
 import org.apache.ibatis.transaction.Transaction;
+import org.apache.ibatis.type.TypeHandlerRegistry;
 
 /**
  * @author Clinton Begin
@@ -38,6 +58,8 @@ import org.apache.ibatis.transaction.Transaction;
  */
 public class CachingExecutor implements Executor {
 
+    private static final String ROW_KEY = "row";
+
     private final Executor delegate;
     private final TransactionalCacheManager tcm = new TransactionalCacheManager();
 
@@ -120,15 +142,53 @@ public class CachingExecutor implements Executor {
                 //先去二级缓存中(实际上只会从事务缓存管理器获取)去根据key去拿结果
                 //这个tcm是一个事务缓存管理器,所有的二级缓存,都先存到这个tcm中的transactionalCaches属性中(是一个Map),直到事务真正提交了,才会真正的放入到二级缓存中去(也是委托给真正的缓存实现类)
                 //如果事务回滚了,则直接清空(也是使用了委托)
-                @SuppressWarnings("unchecked")
-                List<E> list = (List<E>) tcm.getObject(cache, key);
+                CacheTagRegistry tagRegistry = ms.getConfiguration().getCacheTagRegistry();
+                String[] readTags = tagRegistry.isInUse() && ms.getConfiguration().isTaggedCache(cache.getId()) ? readTags(ms, cache) : null;
+                //声明了cacheRowsBy的语句按行缓存:每一行按resultMap的<id>单独缓存,只查询缓存中没有的id
+                //copyStrategy为ROWS的缓存不按行缓存,否则缓存的是映射后的对象,会被所有调用者共用
+                if (ms.getCacheRowsBy() != null && !ms.getConfiguration().isRowCache(cache.getId())) {
+                    List<E> rows = queryRows(ms, cache, parameterObject, rowBounds, readTags);
+                    if (rows != null) {
+                        return rows;
+                    }
+                }
+                Object cached;
+                if (ms.getConfiguration().isRefreshAheadCache(cache.getId())) {
+                    //配置了refreshAhead的缓存,在元素快过期时,会在后台线程里用这个loader重新查询
+                    RefreshAheadCache.setCurrentLoader(new Reloader(ms, parameterObject, rowBounds, key, boundSql, readTags));
+                    try {
+                        cached = readTags == null ? tcm.getObject(cache, key) : tcm.getObject(cache, key, readTags);
+                    } finally {
+                        RefreshAheadCache.clearCurrentLoader();
+                    }
+                } else {
+                    cached = readTags == null ? tcm.getObject(cache, key) : tcm.getObject(cache, key, readTags);
+                }
+                List<E> list = fromCachedValue(ms, rowBounds, boundSql, cached);
 
                 //二级缓存没有拿到
                 if (list == null) {
+                    //查询之前记下tag的版本,提交之前如果有其他事务写了这些tag,放入的结果会直接失效
+                    CacheTagRegistry.Snapshot snapshot = readTags == null ? null : tagRegistry.snapshot(readTags);
                     //委托给BaseExecutor执行查询
-                    list = delegate.query(ms, parameterObject, rowBounds, resultHandler, key, boundSql);
-                    //将结果放入二级缓存中
-                    tcm.putObject(cache, key, list); // issue #578 and #116
+                    //配置了singleFlight的缓存,同一个key同时只有一个线程查询,其他线程等这次查询的事务提交后再读一次二级缓存
+                    long start = System.nanoTime();
+                    List<?>[] loaded = new List<?>[1];
+                    Object value = cache instanceof SingleFlightCache
+                            ? loadOnce((SingleFlightCache) cache, key,
+                                () -> readTags == null ? tcm.getObject(cache, key) : tcm.getObject(cache, key, readTags),
+                                () -> load(delegate, ms, parameterObject, rowBounds, resultHandler, key, boundSql, loaded))
+                            : load(delegate, ms, parameterObject, rowBounds, resultHandler, key, boundSql, loaded);
+                    //自己查询的直接用查询的结果,等待其他线程查询的用重新读到的缓存值
+                    @SuppressWarnings("unchecked")
+                    List<E> loadedList = (List<E>) loaded[0];
+                    list = loadedList != null ? loadedList : fromCachedValue(ms, rowBounds, boundSql, value);
+                    //统计缓存未命中时查询的耗时
+                    ms.getConfiguration().getCacheMetrics(cache.getId()).recordLoad(System.nanoTime() - start);
+                    //将自己查询的结果放入二级缓存中,从缓存中读到的不用再放
+                    if (value != null && loadedList != null) {
+                        tcm.putObject(cache, key, value, ms.getCacheTimeToLive(), snapshot); // issue #578 and #116
+                    }
                 }
                 //返回结果
                 return list;
@@ -163,6 +223,224 @@ public class CachingExecutor implements Executor {
         }
     }
 
+    private static Object loadOnce(SingleFlightCache cache, CacheKey key, CacheLoader reader, CacheLoader loader) throws SQLException {
+        try {
+            return cache.load(key, reader, loader);
+        } catch (SQLException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new ExecutorException("Error loading the cache entry " + key + ".  Cause: " + e, e);
+        }
+    }
+
+    /**
+     * 按行缓存的查询:先从二级缓存中批量获取所有id对应的行,再只用缓存中没有的id执行查询,最后按id的顺序合并结果
+     * 缓存的行和新查出的行混在一起,SQL中的ORDER BY无法保持,结果总是按参数中id的顺序返回
+     * 参数不是Map,分页查询,或者resultMap没有唯一的<id>时返回null,按整个结果缓存
+     */
+    private <E> List<E> queryRows(MappedStatement ms, Cache cache, Object parameterObject, RowBounds rowBounds, String[] readTags)
+            throws SQLException {
+        String idProperty = rowIdProperty(ms);
+        Object ids = rowIds(ms, parameterObject);
+        if (idProperty == null || ids == null || rowBounds != RowBounds.DEFAULT) {
+            return null;
+        }
+        Object[] keyPrefix = rowKeyPrefix(ms, parameterObject, ids);
+        Map<Object, CacheKey> keys = new LinkedHashMap<>();
+        Map<Object, Object> originalIds = new HashMap<>();
+        for (Object id : toList(ids)) {
+            Object rowId = normalizeRowId(id);
+            if (!keys.containsKey(rowId)) {
+                keys.put(rowId, rowKey(keyPrefix, rowId));
+                originalIds.put(rowId, id);
+            }
+        }
+        Map<Object, Object> cached = tcm.getObjects(cache, keys.values(), readTags);
+        List<Object> missingIds = new ArrayList<>();
+        for (Map.Entry<Object, CacheKey> entry : keys.entrySet()) {
+            if (!cached.containsKey(entry.getValue())) {
+                missingIds.add(originalIds.get(entry.getKey()));
+            }
+        }
+        Map<Object, Object> loaded = new HashMap<>();
+        List<Object> unmatched = new ArrayList<>();
+        if (!missingIds.isEmpty()) {
+            Configuration configuration = ms.getConfiguration();
+            CacheTagRegistry.Snapshot snapshot = readTags == null ? null : configuration.getCacheTagRegistry().snapshot(readTags);
+            //用缓存中没有的id替换参数中的id集合,重新生成SQL
+            Object missingParameter = replaceRowIds(parameterObject, ids, missingIds);
+            BoundSql boundSql = ms.getBoundSql(missingParameter);
+            CacheKey key = createCacheKey(ms, missingParameter, rowBounds, boundSql);
+            long start = System.nanoTime();
+            List<Object> rows = delegate.query(ms, missingParameter, rowBounds, Executor.NO_RESULT_HANDLER, key, boundSql);
+            configuration.getCacheMetrics(cache.getId()).recordLoad(System.nanoTime() - start);
+            for (Object row : rows) {
+                Object rowId = row == null ? null : normalizeRowId(configuration.newMetaObject(row).getValue(idProperty));
+                CacheKey rowKey = rowId == null ? null : keys.get(rowId);
+                if (rowKey == null || loaded.containsKey(rowId)) {
+                    //id的类型和参数不一致等情况,不缓存,直接追加在结果最后
+                    unmatched.add(row);
+                } else {
+                    loaded.put(rowId, row);
+                    tcm.putObject(cache, rowKey, row, ms.getCacheTimeToLive(), snapshot);
+                }
+            }
+        }
+        List<E> result = new ArrayList<>(keys.size() + unmatched.size());
+        for (Map.Entry<Object, CacheKey> entry : keys.entrySet()) {
+            Object row = cached.get(entry.getValue());
+            if (row == null) {
+                row = loaded.get(entry.getKey());
+            }
+            if (row != null) {
+                @SuppressWarnings("unchecked")
+                E element = (E) row;
+                result.add(element);
+            }
+        }
+        for (Object row : unmatched) {
+            @SuppressWarnings("unchecked")
+            E element = (E) row;
+            result.add(element);
+        }
+        return result;
+    }
+
+    private static String rowIdProperty(MappedStatement ms) {
+        if (ms.getResultMaps().size() != 1) {
+            return null;
+        }
+        List<ResultMapping> idMappings = ms.getResultMaps().get(0).getIdResultMappings();
+        if (idMappings.size() != 1 || idMappings.get(0).getProperty() == null) {
+            return null;
+        }
+        return idMappings.get(0).getProperty();
+    }
+
+    private static Object rowIds(MappedStatement ms, Object parameterObject) {
+        if (!(parameterObject instanceof Map) || !((Map<?, ?>) parameterObject).containsKey(ms.getCacheRowsBy())) {
+            return null;
+        }
+        Object ids = ((Map<?, ?>) parameterObject).get(ms.getCacheRowsBy());
+        return ids instanceof Collection || ids != null && ids.getClass().isArray() ? ids : null;
+    }
+
+    private static List<Object> toList(Object ids) {
+        if (ids instanceof Collection) {
+            return new ArrayList<>((Collection<?>) ids);
+        }
+        int length = Array.getLength(ids);
+        List<Object> list = new ArrayList<>(length);
+        for (int i = 0; i < length; i++) {
+            list.add(Array.get(ids, i));
+        }
+        return list;
+    }
+
+    private static Object replaceRowIds(Object parameterObject, Object ids, List<Object> missingIds) {
+        Map<?, ?> parameters = (Map<?, ?>) parameterObject;
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        Map<Object, Object> replaced = parameterObject instanceof ParamMap ? (Map) new ParamMap<Object>() : new HashMap<>();
+        //同一个集合可能以多个名字出现(比如collection,list,param1)
+        for (Map.Entry<?, ?> entry : parameters.entrySet()) {
+            replaced.put(entry.getKey(), entry.getValue() == ids ? missingIds : entry.getValue());
+        }
+        return replaced;
+    }
+
+    private static Object normalizeRowId(Object id) {
+        //参数中的id和结果中的id可能是不同的整数类型
+        if (id instanceof Integer || id instanceof Long || id instanceof Short || id instanceof Byte) {
+            return ((Number) id).longValue();
+        }
+        return id;
+    }
+
+    /**
+     * 每一行的key共用的部分:和createCacheKey一样包含语句id、id集合以外的参数值和环境id,
+     * 这样同一个id在其它参数不同(例如附加的过滤条件)或者在不同的数据源下不会命中同一行
+     */
+    private static Object[] rowKeyPrefix(MappedStatement ms, Object parameterObject, Object ids) {
+        //参数的顺序不固定,按名字排序
+        Map<String, Object> otherParameters = new TreeMap<>();
+        for (Map.Entry<?, ?> entry : ((Map<?, ?>) parameterObject).entrySet()) {
+            if (entry.getValue() != ids) {
+                otherParameters.put(String.valueOf(entry.getKey()), entry.getValue());
+            }
+        }
+        List<Object> prefix = new ArrayList<>(3 + otherParameters.size() * 2);
+        prefix.add(ms.getId());
+        prefix.add(ROW_KEY);
+        for (Map.Entry<String, Object> entry : otherParameters.entrySet()) {
+            prefix.add(entry.getKey());
+            prefix.add(entry.getValue());
+        }
+        Environment environment = ms.getConfiguration().getEnvironment();
+        if (environment != null) {
+            prefix.add(environment.getId());
+        }
+        return prefix.toArray();
+    }
+
+    private static CacheKey rowKey(Object[] keyPrefix, Object rowId) {
+        CacheKey key = new CacheKey(keyPrefix);
+        key.update(rowId);
+        return key;
+    }
+
+    private static Object toCachedValue(MappedStatement ms, List<?> list) {
+        return list != null && list.isEmpty() && ms.getConfiguration().isShareEmptyResults() ? EmptyResult.INSTANCE : list;
+    }
+
+    /**
+     * 查询数据库,返回要放入二级缓存的值,查询出的结果放在loaded[0]中
+     * copyStrategy为ROWS的缓存,查询时记录结果集的原始列值,放入缓存的是这些行而不是映射后的对象
+     * 没有真正执行查询(例如一级缓存命中)时没有记录到行,返回null,不放入二级缓存
+     */
+    private static Object load(Executor executor, MappedStatement ms, Object parameterObject, RowBounds rowBounds, ResultHandler resultHandler,
+                               CacheKey key, BoundSql boundSql, List<?>[] loaded) throws SQLException {
+        if (!ms.getConfiguration().isRowCache(ms.getCache().getId())) {
+            List<?> list = executor.query(ms, parameterObject, rowBounds, resultHandler, key, boundSql);
+            loaded[0] = list;
+            return toCachedValue(ms, list);
+        }
+        CachedResultSets.Recording recording = CachedResultSets.startRecording(ms, maxRecordedRows(rowBounds));
+        List<?> list;
+        try {
+            list = executor.query(ms, parameterObject, rowBounds, resultHandler, key, boundSql);
+        } finally {
+            CachedResultSets.stopRecording();
+        }
+        loaded[0] = list;
+        return list.isEmpty() && ms.getConfiguration().isShareEmptyResults() ? EmptyResult.INSTANCE : recording.getResult();
+    }
+
+    /**
+     * 把二级缓存中的值转换成查询结果:EmptyResult返回一个新的空List,原始行在内存中重新映射成新的对象
+     */
+    @SuppressWarnings("unchecked")
+    private <E> List<E> fromCachedValue(MappedStatement ms, RowBounds rowBounds, BoundSql boundSql, Object cached) throws SQLException {
+        if (cached == EmptyResult.INSTANCE) {
+            return new ArrayList<>();
+        }
+        if (cached instanceof CachedResultSets) {
+            //嵌套查询由delegate执行,和没有缓存时一样
+            ResultSetHandler resultSetHandler = ms.getConfiguration().newResultSetHandler(delegate, ms, rowBounds, null, null, boundSql);
+            return (List<E>) resultSetHandler.handleResultSets(((CachedResultSets) cached).newStatement());
+        }
+        return (List<E>) cached;
+    }
+
+    /**
+     * 分页查询只需要记录前offset+limit行
+     */
+    private static int maxRecordedRows(RowBounds rowBounds) {
+        if (rowBounds.getLimit() == RowBounds.NO_ROW_LIMIT) {
+            return Integer.MAX_VALUE;
+        }
+        return (int) Math.min(Integer.MAX_VALUE, (long) rowBounds.getOffset() + rowBounds.getLimit());
+    }
+
     private void ensureNoOutParams(MappedStatement ms, BoundSql boundSql) {
         if (ms.getStatementType() == StatementType.CALLABLE) {
             for (ParameterMapping parameterMapping : boundSql.getParameterMappings()) {
@@ -196,13 +474,121 @@ public class CachingExecutor implements Executor {
     private void flushCacheIfRequired(MappedStatement ms) {
         Cache cache = ms.getCache();
         if (cache != null && ms.isFlushCacheRequired()) {
-            tcm.clear(cache);
+            String[] tags = ms.getCacheTags();
+            //自定义的缓存实现不按cache tag失效,仍然清空整个缓存
+            if (tags == null || !ms.getConfiguration().isTaggedCache(cache.getId())) {
+                tcm.clear(cache);
+            }
+            if (tags != null) {
+                //声明了cacheTags的语句只让读了这些tag的结果失效,namespace自己的tag让没有声明cacheTags的语句的结果失效
+                List<String> writtenTags = new ArrayList<>(tags.length + 1);
+                Collections.addAll(writtenTags, tags);
+                writtenTags.add(cache.getId());
+                tcm.invalidate(ms.getConfiguration().getCacheTagRegistry(), writtenTags);
+            }
         }
     }
 
+    private static String[] readTags(MappedStatement ms, Cache cache) {
+        String[] tags = ms.getCacheTags();
+        return tags != null ? tags : new String[] { cache.getId() };
+    }
+
     @Override
     public void setExecutorWrapper(Executor executor) {
         throw new UnsupportedOperationException("This method should not be called");
     }
 
+    /**
+     * 配置了refreshAhead的缓存在后台线程中重新查询一个元素
+     * 保存的是查询时参数值的快照,而不是参数对象和BoundSql本身,调用者之后修改参数对象不会影响重新查询
+     */
+    private static final class Reloader implements CacheLoader {
+
+        private final MappedStatement ms;
+        private final Object parameterObject;
+        private final RowBounds rowBounds;
+        private final CacheKey key;
+        private final BoundSql boundSql;
+        private final String[] readTags;
+
+        //只保存引用,大部分读取不会触发刷新,真正刷新时才在detach中复制参数
+        Reloader(MappedStatement ms, Object parameterObject, RowBounds rowBounds, CacheKey key, BoundSql boundSql, String[] readTags) {
+            this.ms = ms;
+            this.parameterObject = parameterObject;
+            this.rowBounds = rowBounds;
+            this.key = key;
+            this.boundSql = boundSql;
+            this.readTags = readTags;
+        }
+
+        @Override
+        public CacheLoader detach() {
+            return new Reloader(ms, null, rowBounds, key, snapshotOf(ms.getConfiguration(), parameterObject, boundSql), readTags);
+        }
+
+        @Override
+        public Object load() throws SQLException {
+            Configuration configuration = ms.getConfiguration();
+            Environment environment = configuration.getEnvironment();
+            if (environment == null) {
+                return null;
+            }
+            //在一个新的事务中直接用SimpleExecutor查询,不经过二级缓存和插件,原来的SqlSession此时可能已经关闭了
+            Transaction transaction = environment.getTransactionFactory().newTransaction(environment.getDataSource(), null, false);
+            Executor executor = new SimpleExecutor(configuration, transaction);
+            try {
+                return CachingExecutor.load(executor, ms, null, rowBounds, Executor.NO_RESULT_HANDLER, key, boundSql, new List<?>[1]);
+            } finally {
+                executor.close(false);
+            }
+        }
+
+        @Override
+        public Long getTimeToLive() {
+            return ms.getCacheTimeToLive();
+        }
+
+        @Override
+        public CacheTagRegistry.Snapshot snapshotTags() {
+            return readTags == null ? null : ms.getConfiguration().getCacheTagRegistry().snapshot(readTags);
+        }
+
+        /**
+         * 和DefaultParameterHandler一样取出每个参数的值,作为附加参数放入一个新的BoundSql
+         */
+        private static BoundSql snapshotOf(Configuration configuration, Object parameterObject, BoundSql boundSql) {
+            List<ParameterMapping> parameterMappings = boundSql.getParameterMappings();
+            List<ParameterMapping> snapshotMappings = new ArrayList<>(parameterMappings.size());
+            BoundSql snapshot = new BoundSql(configuration, boundSql.getSql(), boundSql.getSqlFingerprint(), snapshotMappings, null);
+            TypeHandlerRegistry typeHandlerRegistry = configuration.getTypeHandlerRegistry();
+            MetaObject metaObject = null;
+            for (int i = 0; i < parameterMappings.size(); i++) {
+                ParameterMapping parameterMapping = parameterMappings.get(i);
+                String propertyName = parameterMapping.getProperty();
+                Object value;
+                if (boundSql.hasAdditionalParameter(propertyName)) {
+                    value = boundSql.getAdditionalParameter(propertyName);
+                } else if (parameterObject == null) {
+                    value = null;
+                } else if (typeHandlerRegistry.hasTypeHandler(parameterObject.getClass())) {
+                    value = parameterObject;
+                } else {
+                    if (metaObject == null) {
+                        metaObject = configuration.newMetaObject(parameterObject);
+                    }
+                    value = metaObject.getValue(propertyName);
+                }
+                String name = "_snapshot" + i;
+                snapshotMappings.add(new ParameterMapping.Builder(configuration, name, parameterMapping.getTypeHandler())
+                        .javaType(parameterMapping.getJavaType())
+                        .jdbcType(parameterMapping.getJdbcType())
+                        .numericScale(parameterMapping.getNumericScale())
+                        .build());
+                snapshot.setAdditionalParameter(name, value);
+            }
+            return snapshot;
+        }
+    }
+
 }
@@ -0,0 +1,108 @@
+/*
+ *    Copyright 2009-2022 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.ibatis.cache.impl.PerpetualCache;
+
+/**
+ * Session level cache of an executor that can be bounded by number of entries and by number of cached rows.
+ * <p>
+ * Entries are kept in an access ordered map that backs the {@link PerpetualCache} as well. They are not evicted while
+ * they are added but when the executor calls {@link #evictExcess()} at the end of a top level query, so the results
+ * that pending deferred loads and nested queries rely on stay available until they are no longer needed. Entries
+ * still holding the {@link ExecutionPlaceholder} are never evicted.
+ *
+ * @since 3.5.12
+ */
+public class LocalCache extends PerpetualCache {
+
+  private final int maxSize;
+  private final long maxRows;
+  private final Map<Object, Object> cache;
+  private long rows;
+
+  /**
+   * @param id
+   *          the cache id
+   * @param maxSize
+   *          the maximum number of entries, zero or less for no limit
+   * @param maxRows
+   *          the maximum number of rows held by all cached lists, zero or less for no limit
+   */
+  public LocalCache(String id, int maxSize, long maxRows) {
+    this(id, maxSize, maxRows, new LinkedHashMap<>(16, .75F, true));
+  }
+
+  private LocalCache(String id, int maxSize, long maxRows, Map<Object, Object> cache) {
+    super(id, cache);
+    this.cache = cache;
+    this.maxSize = maxSize;
+    this.maxRows = maxRows;
+  }
+
+  /**
+   * @return the number of rows held by all cached lists
+   */
+  public long getRows() {
+    return rows;
+  }
+
+  @Override
+  public void putObject(Object key, Object value) {
+    rows += rowCount(value) - rowCount(cache.put(key, value));
+  }
+
+  @Override
+  public Object removeObject(Object key) {
+    Object value = cache.remove(key);
+    rows -= rowCount(value);
+    return value;
+  }
+
+  @Override
+  public void clear() {
+    cache.clear();
+    rows = 0;
+  }
+
+  /**
+   * Removes the least recently used entries until the cache is within its bounds.
+   */
+  public void evictExcess() {
+    Iterator<Object> values = cache.values().iterator();
+    while (isOverflowing() && values.hasNext()) {
+      Object value = values.next();
+      if (value != ExecutionPlaceholder.EXECUTION_PLACEHOLDER) {
+        values.remove();
+        rows -= rowCount(value);
+      }
+    }
+  }
+
+  private boolean isOverflowing() {
+    return maxSize > 0 && cache.size() > maxSize || maxRows > 0 && rows > maxRows;
+  }
+
+  private static int rowCount(Object value) {
+    return value instanceof Collection ? ((Collection<?>) value).size() : 0;
+  }
+
+}
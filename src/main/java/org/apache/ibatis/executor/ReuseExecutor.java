@@ -16,13 +16,15 @@
 package org.apache.ibatis.executor;
 
 import java.sql.Connection;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Map;
 
+import org.apache.ibatis.cache.metrics.CacheMetrics;
 import org.apache.ibatis.cursor.Cursor;
 import org.apache.ibatis.executor.statement.StatementHandler;
 import org.apache.ibatis.logging.Log;
@@ -34,14 +36,33 @@ import org.apache.ibatis.session.RowBounds;
 import org.apache.ibatis.transaction.Transaction;
 
 /**
+ * Keeps the prepared statements of a session open, by SQL, to execute them again.
+ * <p>
+ * When {@link Configuration#getReuseStatementCacheSize() reuseStatementCacheSize} is set, at most that many statements
+ * are kept: the least recently used one is closed, unless its results are still being read, e.g. by a cursor or by
+ * the query running a nested select.
+ * <p>
+ * The reuse of the statements is reported to the {@link Configuration#getStatementCacheMetrics() statement cache
+ * metrics} of the configuration.
+ *
  * @author Clinton Begin
  */
 public class ReuseExecutor extends BaseExecutor {
 
-  private final Map<String, Statement> statementMap = new HashMap<>();
+  /**
+   * The id of the {@link Configuration#getStatementCacheMetrics() statement cache metrics}.
+   *
+   * @since 3.5.12
+   */
+  public static final String STATEMENT_CACHE_ID = ReuseExecutor.class.getName();
+
+  // in access order, the least recently used statement first
+  private final LinkedHashMap<String, Statement> statementMap = new LinkedHashMap<>(16, .75F, true);
+  private final CacheMetrics metrics;
 
   public ReuseExecutor(Configuration configuration, Transaction transaction) {
     super(configuration, transaction);
+    this.metrics = configuration.getStatementCacheMetrics();
   }
 
   @Override
@@ -81,12 +102,16 @@ public class ReuseExecutor extends BaseExecutor {
     Statement stmt;
     BoundSql boundSql = handler.getBoundSql();
     String sql = boundSql.getSql();
+    long start = System.nanoTime();
     if (hasStatementFor(sql)) {
       stmt = getStatement(sql);
+      metrics.recordGet(true, System.nanoTime() - start);
       applyTransactionTimeout(stmt);
     } else {
+      metrics.recordGet(false, System.nanoTime() - start);
       Connection connection = getConnection(statementLog);
       stmt = handler.prepare(connection, transaction.getTimeout());
+      metrics.recordLoad(System.nanoTime() - start);
       putStatement(sql, stmt);
     }
     handler.parameterize(stmt);
@@ -107,7 +132,33 @@ public class ReuseExecutor extends BaseExecutor {
   }
 
   private void putStatement(String sql, Statement stmt) {
-    statementMap.put(sql, stmt);
+    Statement replaced = statementMap.put(sql, stmt);
+    if (replaced != null) {
+      closeStatement(replaced);
+    }
+    evictStatements(stmt);
+  }
+
+  private void evictStatements(Statement added) {
+    int maxSize = configuration.getReuseStatementCacheSize();
+    Iterator<Statement> statements = statementMap.values().iterator();
+    while (maxSize > 0 && statementMap.size() > maxSize && statements.hasNext()) {
+      Statement stmt = statements.next();
+      if (stmt != added && !isReadingResults(stmt)) {
+        statements.remove();
+        closeStatement(stmt);
+        metrics.recordEviction();
+      }
+    }
+  }
+
+  private static boolean isReadingResults(Statement stmt) {
+    try {
+      ResultSet rs = stmt.getResultSet();
+      return rs != null && !rs.isClosed();
+    } catch (SQLException e) {
+      return false;
+    }
   }
 
 }
@@ -0,0 +1,187 @@
+/*
+ *    Copyright 2009-2022 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor.resultset;
+
+import java.io.Serializable;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.ibatis.mapping.MappedStatement;
+
+/**
+ * The raw rows of all the result sets of a statement, stored by a second level cache configured with
+ * {@link org.apache.ibatis.mapping.CacheCopyStrategy#ROWS} instead of the mapped objects.
+ * <p>
+ * A query records its rows with {@link #startRecording(MappedStatement, int)}: the result set handler of the statement
+ * reads each result set into {@link CachedRows} and maps those, so the rows that are cached are exactly the ones that
+ * were mapped. On a cache hit, the rows are mapped again from {@link #newStatement()}, which gives every caller its
+ * own objects without a serialization round trip.
+ *
+ * @since 3.5.12
+ */
+public final class CachedResultSets implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  private static final ThreadLocal<Recording> CURRENT_RECORDING = new ThreadLocal<>();
+
+  // the result set handler asks the connection whether to look for more result sets
+  private static final Connection MULTIPLE_RESULT_SETS_CONNECTION = (Connection) Proxy.newProxyInstance(
+      Connection.class.getClassLoader(), new Class<?>[] { Connection.class }, (connection, connectionMethod, connectionArgs) -> {
+        if ("getMetaData".equals(connectionMethod.getName())) {
+          return Proxy.newProxyInstance(DatabaseMetaData.class.getClassLoader(), new Class<?>[] { DatabaseMetaData.class },
+              (metaData, metaDataMethod, metaDataArgs) -> {
+                if ("supportsMultipleResultSets".equals(metaDataMethod.getName())) {
+                  return true;
+                }
+                throw new SQLFeatureNotSupportedException("Cached result sets do not support " + metaDataMethod.getName());
+              });
+        }
+        throw new SQLFeatureNotSupportedException("Cached result sets do not support " + connectionMethod.getName());
+      });
+
+  private final CachedRows[] resultSets;
+
+  private CachedResultSets(CachedRows[] resultSets) {
+    this.resultSets = resultSets;
+  }
+
+  /**
+   * Asks the next result set handler of a statement run by the current thread to record its rows, until
+   * {@link #stopRecording()} is called.
+   *
+   * @param ms
+   *          the statement about to be run
+   * @param maxRows
+   *          the maximum number of rows to read from each result set
+   * @return the recording, filled once the statement ran
+   */
+  public static Recording startRecording(MappedStatement ms, int maxRows) {
+    Recording recording = new Recording(ms, maxRows);
+    CURRENT_RECORDING.set(recording);
+    return recording;
+  }
+
+  public static void stopRecording() {
+    CURRENT_RECORDING.remove();
+  }
+
+  /**
+   * Takes the recording started for a statement, so the nested queries run while its rows are mapped do not record
+   * theirs.
+   *
+   * @param ms
+   *          the statement whose results are about to be handled
+   * @return the recording, or {@code null} if the rows of this statement are not recorded
+   */
+  static Recording takeRecording(MappedStatement ms) {
+    Recording recording = CURRENT_RECORDING.get();
+    if (recording == null || recording.ms != ms) {
+      return null;
+    }
+    CURRENT_RECORDING.remove();
+    return recording;
+  }
+
+  /**
+   * @return the total number of rows
+   */
+  public int size() {
+    int size = 0;
+    for (CachedRows rows : resultSets) {
+      size += rows.size();
+    }
+    return size;
+  }
+
+  /**
+   * @return a new statement whose results are the recorded result sets, to be handled by a {@link ResultSetHandler}
+   */
+  public Statement newStatement() {
+    int[] current = { 0 };
+    ResultSet[] open = { resultSets.length > 0 ? resultSets[0].newResultSet() : null };
+    return (Statement) Proxy.newProxyInstance(Statement.class.getClassLoader(), new Class<?>[] { Statement.class },
+        (proxy, method, args) -> {
+          switch (method.getName()) {
+            case "getResultSet":
+              return open[0];
+            case "getMoreResults":
+              current[0]++;
+              open[0] = current[0] < resultSets.length ? resultSets[current[0]].newResultSet() : null;
+              return open[0] != null;
+            case "getUpdateCount":
+              return -1;
+            case "getConnection":
+              return MULTIPLE_RESULT_SETS_CONNECTION;
+            case "close":
+              return null;
+            case "hashCode":
+              return System.identityHashCode(proxy);
+            case "equals":
+              return proxy == args[0];
+            case "toString":
+              return "CachedResultSets[" + resultSets.length + " result sets]";
+            default:
+              throw new SQLFeatureNotSupportedException("Cached result sets do not support " + method.getName());
+          }
+        });
+  }
+
+  /**
+   * The rows recorded while a statement is run.
+   */
+  public static final class Recording {
+
+    private final MappedStatement ms;
+    private final int maxRows;
+    private final List<CachedRows> resultSets = new ArrayList<>();
+    private boolean failed;
+
+    private Recording(MappedStatement ms, int maxRows) {
+      this.ms = ms;
+      this.maxRows = maxRows;
+    }
+
+    ResultSet record(ResultSet rs) throws SQLException {
+      CachedRows rows;
+      try {
+        rows = CachedRows.read(rs, maxRows);
+      } catch (SQLException | RuntimeException e) {
+        failed = true;
+        throw e;
+      } finally {
+        rs.close();
+      }
+      resultSets.add(rows);
+      return rows.newResultSet();
+    }
+
+    /**
+     * @return the recorded result sets, or {@code null} if the statement did not run or could not be recorded
+     */
+    public CachedResultSets getResult() {
+      return failed || resultSets.isEmpty() ? null : new CachedResultSets(resultSets.toArray(new CachedRows[0]));
+    }
+  }
+
+}
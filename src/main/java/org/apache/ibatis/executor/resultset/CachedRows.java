@@ -0,0 +1,544 @@
+/*
+ *    Copyright 2009-2022 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor.resultset;
+
+import java.io.ByteArrayInputStream;
+import java.io.Serializable;
+import java.io.StringReader;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLXML;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.sql.rowset.serial.SerialBlob;
+import javax.sql.rowset.serial.SerialClob;
+
+/**
+ * The raw column values of a result set, read once and kept as one array per row.
+ * <p>
+ * Values are read with the getter that matches the JDBC type of their column, so they are plain serializable java
+ * types: numbers, strings, dates, byte arrays. Large objects are read entirely, as {@code String} or {@code byte[]}.
+ * {@link #newResultSet()} returns a read-only, forward-only result set over the rows that converts the values as a
+ * driver would, so the rows can be mapped again by the usual type handlers and result maps.
+ *
+ * @since 3.5.12
+ * @see CachedResultSets
+ */
+public final class CachedRows implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  private final String[] columnNames;
+  private final String[] columnLabels;
+  private final int[] columnTypes;
+  private final String[] columnClassNames;
+  private final Object[][] rows;
+
+  private CachedRows(String[] columnNames, String[] columnLabels, int[] columnTypes, String[] columnClassNames,
+      Object[][] rows) {
+    this.columnNames = columnNames;
+    this.columnLabels = columnLabels;
+    this.columnTypes = columnTypes;
+    this.columnClassNames = columnClassNames;
+    this.rows = rows;
+  }
+
+  /**
+   * Reads the remaining rows of a result set.
+   *
+   * @param rs
+   *          the result set, that is not closed
+   * @param maxRows
+   *          the maximum number of rows to read
+   * @return the rows
+   * @throws SQLException
+   *           if the result set can not be read
+   */
+  public static CachedRows read(ResultSet rs, int maxRows) throws SQLException {
+    ResultSetMetaData metaData = rs.getMetaData();
+    int columnCount = metaData.getColumnCount();
+    String[] columnNames = new String[columnCount];
+    String[] columnLabels = new String[columnCount];
+    int[] columnTypes = new int[columnCount];
+    String[] columnClassNames = new String[columnCount];
+    for (int i = 0; i < columnCount; i++) {
+      columnNames[i] = metaData.getColumnName(i + 1);
+      columnLabels[i] = metaData.getColumnLabel(i + 1);
+      columnTypes[i] = metaData.getColumnType(i + 1);
+      columnClassNames[i] = metaData.getColumnClassName(i + 1);
+    }
+    List<Object[]> rows = new ArrayList<>();
+    while (rows.size() < maxRows && rs.next()) {
+      Object[] row = new Object[columnCount];
+      for (int i = 0; i < columnCount; i++) {
+        row[i] = readValue(rs, i + 1, columnTypes[i]);
+      }
+      rows.add(row);
+    }
+    return new CachedRows(columnNames, columnLabels, columnTypes, columnClassNames, rows.toArray(new Object[0][]));
+  }
+
+  /**
+   * @return the number of rows
+   */
+  public int size() {
+    return rows.length;
+  }
+
+  /**
+   * @return a new result set positioned before the first row
+   */
+  public ResultSet newResultSet() {
+    return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[] { ResultSet.class },
+        new RowsHandler());
+  }
+
+  private static Object readValue(ResultSet rs, int column, int type) throws SQLException {
+    Object value;
+    switch (type) {
+      case Types.NUMERIC:
+      case Types.DECIMAL:
+        value = rs.getBigDecimal(column);
+        break;
+      case Types.DATE:
+        value = rs.getDate(column);
+        break;
+      case Types.TIME:
+        value = rs.getTime(column);
+        break;
+      case Types.TIMESTAMP:
+        value = rs.getTimestamp(column);
+        break;
+      case Types.TIMESTAMP_WITH_TIMEZONE:
+        value = readOffsetDateTime(rs, column);
+        break;
+      case Types.CHAR:
+      case Types.VARCHAR:
+      case Types.LONGVARCHAR:
+      case Types.NCHAR:
+      case Types.NVARCHAR:
+      case Types.LONGNVARCHAR:
+      case Types.CLOB:
+      case Types.NCLOB:
+      case Types.SQLXML:
+        value = rs.getString(column);
+        break;
+      case Types.BINARY:
+      case Types.VARBINARY:
+      case Types.LONGVARBINARY:
+      case Types.BLOB:
+        value = rs.getBytes(column);
+        break;
+      default:
+        value = rs.getObject(column);
+        if (value instanceof java.sql.Array) {
+          java.sql.Array array = (java.sql.Array) value;
+          try {
+            value = array.getArray();
+          } finally {
+            array.free();
+          }
+        } else if (value instanceof Clob) {
+          Clob clob = (Clob) value;
+          value = clob.getSubString(1, (int) clob.length());
+        } else if (value instanceof Blob) {
+          Blob blob = (Blob) value;
+          value = blob.getBytes(1, (int) blob.length());
+        } else if (value instanceof SQLXML) {
+          value = ((SQLXML) value).getString();
+        }
+        break;
+    }
+    return rs.wasNull() ? null : value;
+  }
+
+  private static Object readOffsetDateTime(ResultSet rs, int column) throws SQLException {
+    try {
+      return rs.getObject(column, OffsetDateTime.class);
+    } catch (SQLException e) {
+      // JDBC 4.1 getter not supported by the driver
+      return rs.getObject(column);
+    }
+  }
+
+  private class RowsHandler implements InvocationHandler {
+
+    private Map<String, Integer> columnIndexes;
+    private int row = -1;
+    private boolean wasNull;
+    private boolean closed;
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      String name = method.getName();
+      switch (name) {
+        case "next":
+          checkOpen();
+          if (row < rows.length) {
+            row++;
+          }
+          return row < rows.length;
+        case "close":
+          closed = true;
+          return null;
+        case "isClosed":
+          return closed;
+        case "wasNull":
+          return wasNull;
+        case "getMetaData":
+          return newMetaData();
+        case "findColumn":
+          return columnIndex(args[0]);
+        case "getRow":
+          return row >= 0 && row < rows.length ? row + 1 : 0;
+        case "getType":
+          return ResultSet.TYPE_FORWARD_ONLY;
+        case "getConcurrency":
+          return ResultSet.CONCUR_READ_ONLY;
+        case "getHoldability":
+          return ResultSet.CLOSE_CURSORS_AT_COMMIT;
+        case "getFetchDirection":
+          return ResultSet.FETCH_FORWARD;
+        case "getFetchSize":
+          return 0;
+        case "setFetchSize":
+        case "setFetchDirection":
+        case "clearWarnings":
+          return null;
+        case "getStatement":
+        case "getWarnings":
+          return null;
+        case "isWrapperFor":
+          return ((Class<?>) args[0]).isInstance(proxy);
+        case "unwrap":
+          return ((Class<?>) args[0]).cast(proxy);
+        case "hashCode":
+          return System.identityHashCode(proxy);
+        case "equals":
+          return proxy == args[0];
+        case "toString":
+          return "CachedRows[" + rows.length + " rows]";
+        default:
+          if (name.startsWith("get") && args != null && args.length >= 1
+              && (args[0] instanceof Integer || args[0] instanceof String)) {
+            Object value = value(args[0]);
+            wasNull = value == null;
+            return convert(name, value, args);
+          }
+          throw new SQLFeatureNotSupportedException("Cached rows do not support " + name);
+      }
+    }
+
+    private Object value(Object column) throws SQLException {
+      checkOpen();
+      if (row < 0 || row >= rows.length) {
+        throw new SQLException("The cursor is not on a row");
+      }
+      return rows[row][columnIndex(column) - 1];
+    }
+
+    private int columnIndex(Object column) throws SQLException {
+      if (column instanceof Integer) {
+        int index = (Integer) column;
+        if (index < 1 || index > columnLabels.length) {
+          throw new SQLException("Invalid column index " + index);
+        }
+        return index;
+      }
+      if (columnIndexes == null) {
+        Map<String, Integer> indexes = new HashMap<>();
+        for (int i = columnLabels.length - 1; i >= 0; i--) {
+          indexes.put(columnNames[i].toUpperCase(Locale.ENGLISH), i + 1);
+        }
+        for (int i = columnLabels.length - 1; i >= 0; i--) {
+          indexes.put(columnLabels[i].toUpperCase(Locale.ENGLISH), i + 1);
+        }
+        columnIndexes = indexes;
+      }
+      Integer index = columnIndexes.get(((String) column).toUpperCase(Locale.ENGLISH));
+      if (index == null) {
+        throw new SQLException("Invalid column label " + column);
+      }
+      return index;
+    }
+
+    private void checkOpen() throws SQLException {
+      if (closed) {
+        throw new SQLException("The result set is closed");
+      }
+    }
+
+    private ResultSetMetaData newMetaData() {
+      return (ResultSetMetaData) Proxy.newProxyInstance(ResultSetMetaData.class.getClassLoader(),
+          new Class<?>[] { ResultSetMetaData.class }, (proxy, method, args) -> {
+            switch (method.getName()) {
+              case "getColumnCount":
+                return columnLabels.length;
+              case "getColumnName":
+                return columnNames[(Integer) args[0] - 1];
+              case "getColumnLabel":
+                return columnLabels[(Integer) args[0] - 1];
+              case "getColumnType":
+                return columnTypes[(Integer) args[0] - 1];
+              case "getColumnClassName":
+                return columnClassNames[(Integer) args[0] - 1];
+              case "hashCode":
+                return System.identityHashCode(proxy);
+              case "equals":
+                return proxy == args[0];
+              case "toString":
+                return "CachedRows metadata";
+              default:
+                throw new SQLFeatureNotSupportedException("Cached rows metadata do not support " + method.getName());
+            }
+          });
+    }
+  }
+
+  private static Object convert(String getter, Object value, Object[] args) throws SQLException {
+    switch (getter) {
+      case "getObject":
+        return args.length == 2 && args[1] instanceof Class ? toType(value, (Class<?>) args[1]) : value;
+      case "getString":
+      case "getNString":
+        return value == null ? null : value instanceof byte[] ? new String((byte[]) value, StandardCharsets.UTF_8) : value.toString();
+      case "getBoolean":
+        return value != null && toBoolean(value);
+      case "getByte":
+        return value == null ? (byte) 0 : toNumber(value).byteValue();
+      case "getShort":
+        return value == null ? (short) 0 : toNumber(value).shortValue();
+      case "getInt":
+        return value == null ? 0 : toNumber(value).intValue();
+      case "getLong":
+        return value == null ? 0L : toNumber(value).longValue();
+      case "getFloat":
+        return value == null ? 0F : toNumber(value).floatValue();
+      case "getDouble":
+        return value == null ? 0D : toNumber(value).doubleValue();
+      case "getBigDecimal":
+        return value == null ? null : toBigDecimal(value);
+      case "getBytes":
+        return value == null ? null : toBytes(value);
+      case "getDate":
+        return toType(value, Date.class);
+      case "getTime":
+        return toType(value, Time.class);
+      case "getTimestamp":
+        return toType(value, Timestamp.class);
+      case "getClob":
+      case "getNClob":
+        return value == null ? null : new SerialClob(value.toString().toCharArray());
+      case "getBlob":
+        return value == null ? null : new SerialBlob(toBytes(value));
+      case "getCharacterStream":
+      case "getNCharacterStream":
+        return value == null ? null : new StringReader(value.toString());
+      case "getBinaryStream":
+        return value == null ? null : new ByteArrayInputStream(toBytes(value));
+      case "getArray":
+        return value == null ? null : newArray(value);
+      default:
+        throw new SQLFeatureNotSupportedException("Cached rows do not support " + getter);
+    }
+  }
+
+  private static Object toType(Object value, Class<?> type) throws SQLException {
+    if (value == null || type.isInstance(value)) {
+      return value;
+    }
+    if (type == String.class) {
+      return value.toString();
+    }
+    if (type == Timestamp.class) {
+      if (value instanceof java.util.Date) {
+        return new Timestamp(((java.util.Date) value).getTime());
+      }
+      if (value instanceof LocalDateTime) {
+        return Timestamp.valueOf((LocalDateTime) value);
+      }
+      if (value instanceof OffsetDateTime) {
+        return Timestamp.from(((OffsetDateTime) value).toInstant());
+      }
+    } else if (type == Date.class) {
+      if (value instanceof Timestamp) {
+        return Date.valueOf(((Timestamp) value).toLocalDateTime().toLocalDate());
+      }
+      if (value instanceof LocalDate) {
+        return Date.valueOf((LocalDate) value);
+      }
+    } else if (type == Time.class) {
+      if (value instanceof Timestamp) {
+        return Time.valueOf(((Timestamp) value).toLocalDateTime().toLocalTime());
+      }
+      if (value instanceof LocalTime) {
+        return Time.valueOf((LocalTime) value);
+      }
+    } else if (type == LocalDateTime.class) {
+      if (value instanceof Timestamp) {
+        return ((Timestamp) value).toLocalDateTime();
+      }
+      if (value instanceof Date) {
+        return ((Date) value).toLocalDate().atStartOfDay();
+      }
+    } else if (type == LocalDate.class) {
+      if (value instanceof Date) {
+        return ((Date) value).toLocalDate();
+      }
+      if (value instanceof Timestamp) {
+        return ((Timestamp) value).toLocalDateTime().toLocalDate();
+      }
+    } else if (type == LocalTime.class) {
+      if (value instanceof Time) {
+        return ((Time) value).toLocalTime();
+      }
+      if (value instanceof Timestamp) {
+        return ((Timestamp) value).toLocalDateTime().toLocalTime();
+      }
+    } else if (type == OffsetDateTime.class || type == ZonedDateTime.class || type == Instant.class) {
+      Instant instant = null;
+      if (value instanceof OffsetDateTime) {
+        instant = ((OffsetDateTime) value).toInstant();
+        if (type == ZonedDateTime.class) {
+          return ((OffsetDateTime) value).toZonedDateTime();
+        }
+      } else if (value instanceof Timestamp) {
+        instant = ((Timestamp) value).toInstant();
+      }
+      if (instant != null) {
+        return type == Instant.class ? instant
+            : type == OffsetDateTime.class ? OffsetDateTime.ofInstant(instant, ZoneId.systemDefault())
+            : ZonedDateTime.ofInstant(instant, ZoneId.systemDefault());
+      }
+    } else if (Number.class.isAssignableFrom(type) && (value instanceof Number || value instanceof String)) {
+      Number number = toNumber(value);
+      if (type == Integer.class) {
+        return number.intValue();
+      } else if (type == Long.class) {
+        return number.longValue();
+      } else if (type == Short.class) {
+        return number.shortValue();
+      } else if (type == Byte.class) {
+        return number.byteValue();
+      } else if (type == Double.class) {
+        return number.doubleValue();
+      } else if (type == Float.class) {
+        return number.floatValue();
+      } else if (type == BigDecimal.class) {
+        return toBigDecimal(value);
+      } else if (type == BigInteger.class) {
+        return toBigDecimal(value).toBigInteger();
+      }
+    } else if (type == Boolean.class) {
+      return toBoolean(value);
+    }
+    throw new SQLException("Cannot convert a cached " + value.getClass().getName() + " to " + type.getName());
+  }
+
+  private static Number toNumber(Object value) throws SQLException {
+    if (value instanceof Number) {
+      return (Number) value;
+    }
+    if (value instanceof Boolean) {
+      return (Boolean) value ? 1 : 0;
+    }
+    if (value instanceof String) {
+      try {
+        return new BigDecimal(((String) value).trim());
+      } catch (NumberFormatException e) {
+        throw new SQLException("Cannot convert '" + value + "' to a number", e);
+      }
+    }
+    throw new SQLException("Cannot convert a cached " + value.getClass().getName() + " to a number");
+  }
+
+  private static BigDecimal toBigDecimal(Object value) throws SQLException {
+    if (value instanceof BigDecimal) {
+      return (BigDecimal) value;
+    }
+    if (value instanceof BigInteger) {
+      return new BigDecimal((BigInteger) value);
+    }
+    return new BigDecimal(toNumber(value).toString());
+  }
+
+  private static boolean toBoolean(Object value) throws SQLException {
+    if (value instanceof Boolean) {
+      return (Boolean) value;
+    }
+    if (value instanceof String) {
+      String string = ((String) value).trim();
+      return "1".equals(string) || "true".equalsIgnoreCase(string) || "y".equalsIgnoreCase(string);
+    }
+    return toNumber(value).doubleValue() != 0;
+  }
+
+  private static byte[] toBytes(Object value) throws SQLException {
+    if (value instanceof byte[]) {
+      return (byte[]) value;
+    }
+    if (value instanceof String) {
+      return ((String) value).getBytes(StandardCharsets.UTF_8);
+    }
+    throw new SQLException("Cannot convert a cached " + value.getClass().getName() + " to bytes");
+  }
+
+  private static java.sql.Array newArray(Object value) {
+    return (java.sql.Array) Proxy.newProxyInstance(java.sql.Array.class.getClassLoader(),
+        new Class<?>[] { java.sql.Array.class }, (proxy, method, args) -> {
+          switch (method.getName()) {
+            case "getArray":
+              return value;
+            case "free":
+              return null;
+            case "hashCode":
+              return System.identityHashCode(proxy);
+            case "equals":
+              return proxy == args[0];
+            case "toString":
+              return "CachedRows array";
+            default:
+              throw new SQLFeatureNotSupportedException("Cached arrays do not support " + method.getName());
+          }
+        });
+  }
+
+}
@@ -105,6 +105,9 @@ public class DefaultResultSetHandler implements ResultSetHandler {
     // temporary marking flag that indicate using constructor mapping (use field to reduce memory usage)
     private boolean useConstructorMappings;
 
+    // raw rows recorded for a second level cache that stores rows
+    private CachedResultSets.Recording recording;
+
     private static class PendingRelation {
         public MetaObject metaObject;
         public ResultMapping propertyMapping;
@@ -191,6 +194,9 @@ public class DefaultResultSetHandler implements ResultSetHandler {
         final List<Object> multipleResults = new ArrayList<>();
 
         int resultSetCount = 0;
+        //二级缓存保存原始行(copyStrategy=ROWS)时,先把每个结果集的列值读到内存中记录下来,再映射记录的行
+        //这里取走记录,映射时执行的嵌套查询不会再记录
+        recording = CachedResultSets.takeRecording(mappedStatement);
         //将结果集封装成一个ResultSetWrapper
         ResultSetWrapper rsw = getFirstResultSet(stmt);
 
@@ -258,7 +264,7 @@ public class DefaultResultSetHandler implements ResultSetHandler {
             }
         }
         //封装成一个ResultSetWrapper返回
-        return rs != null ? new ResultSetWrapper(rs, configuration) : null;
+        return rs != null ? wrapResultSet(rs) : null;
     }
 
     private ResultSetWrapper getNextResultSet(Statement stmt) {
@@ -271,7 +277,7 @@ public class DefaultResultSetHandler implements ResultSetHandler {
                     if (rs == null) {
                         return getNextResultSet(stmt);
                     } else {
-                        return new ResultSetWrapper(rs, configuration);
+                        return wrapResultSet(rs);
                     }
                 }
             }
@@ -281,6 +287,13 @@ public class DefaultResultSetHandler implements ResultSetHandler {
         return null;
     }
 
+    private ResultSetWrapper wrapResultSet(ResultSet rs) throws SQLException {
+        if (recording != null) {
+            rs = recording.record(rs);
+        }
+        return new ResultSetWrapper(rs, configuration);
+    }
+
     private void closeResultSet(ResultSet rs) {
         try {
             if (rs != null) {
@@ -40,9 +40,28 @@ public class BoundSql {
   private final Object parameterObject;
   private final Map<String, Object> additionalParameters;
   private final MetaObject metaParameters;
+  private long sqlFingerprint;
 
   public BoundSql(Configuration configuration, String sql, List<ParameterMapping> parameterMappings, Object parameterObject) {
+    this(configuration, sql, 0L, parameterMappings, parameterObject);
+  }
+
+  /**
+   * @param configuration
+   *          the configuration
+   * @param sql
+   *          the SQL
+   * @param sqlFingerprint
+   *          the {@link #fingerprint(String) fingerprint} of the SQL, or 0 to compute it on first use
+   * @param parameterMappings
+   *          the parameter mappings
+   * @param parameterObject
+   *          the parameter object
+   * @since 3.5.12
+   */
+  public BoundSql(Configuration configuration, String sql, long sqlFingerprint, List<ParameterMapping> parameterMappings, Object parameterObject) {
     this.sql = sql;
+    this.sqlFingerprint = sqlFingerprint;
     this.parameterMappings = parameterMappings;
     this.parameterObject = parameterObject;
     this.additionalParameters = new HashMap<>();
@@ -53,6 +72,20 @@ public class BoundSql {
     return sql;
   }
 
+  /**
+   * Returns a 64-bit hash of the SQL. Sql sources whose SQL never changes compute it once and hand it over to every
+   * bound SQL, so callers such as the cache key do not have to hash the whole statement text on each execution.
+   *
+   * @return the SQL fingerprint, never 0
+   * @since 3.5.12
+   */
+  public long getSqlFingerprint() {
+    if (sqlFingerprint == 0L) {
+      sqlFingerprint = fingerprint(sql);
+    }
+    return sqlFingerprint;
+  }
+
   public List<ParameterMapping> getParameterMappings() {
     return parameterMappings;
   }
@@ -77,4 +110,23 @@ public class BoundSql {
   public Map<String, Object> getAdditionalParameters() {
     return additionalParameters;
   }
+
+  /**
+   * @param sql
+   *          the SQL
+   * @return a 64-bit FNV-1a hash of the SQL, never 0
+   * @since 3.5.12
+   */
+  public static long fingerprint(String sql) {
+    if (sql == null) {
+      return 1L;
+    }
+    long hash = 0xcbf29ce484222325L;
+    for (int i = 0, length = sql.length(); i < length; i++) {
+      hash ^= sql.charAt(i);
+      hash *= 0x100000001b3L;
+    }
+    hash ^= hash >>> 33;
+    return hash == 0L ? 1L : hash;
+  }
 }
@@ -17,35 +17,82 @@ package org.apache.ibatis.mapping;
 
 import java.lang.reflect.Constructor;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.function.LongSupplier;
 
 import org.apache.ibatis.builder.InitializingObject;
 import org.apache.ibatis.cache.Cache;
 import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.cache.CacheTagRegistry;
+import org.apache.ibatis.cache.DeepCloner;
+import org.apache.ibatis.cache.ObjectGraphWalker;
 import org.apache.ibatis.cache.decorators.BlockingCache;
+import org.apache.ibatis.cache.decorators.CloningCache;
+import org.apache.ibatis.cache.decorators.EvictionMetricsCache;
+import org.apache.ibatis.cache.decorators.ExpiringCache;
 import org.apache.ibatis.cache.decorators.LoggingCache;
 import org.apache.ibatis.cache.decorators.LruCache;
+import org.apache.ibatis.cache.decorators.MetricsCache;
+import org.apache.ibatis.cache.decorators.RefreshAheadCache;
 import org.apache.ibatis.cache.decorators.ScheduledCache;
 import org.apache.ibatis.cache.decorators.SerializedCache;
+import org.apache.ibatis.cache.decorators.SingleFlightCache;
 import org.apache.ibatis.cache.decorators.SynchronizedCache;
+import org.apache.ibatis.cache.decorators.TaggedCache;
+import org.apache.ibatis.cache.decorators.TinyLfuCache;
+import org.apache.ibatis.cache.decorators.WeightedCache;
+import org.apache.ibatis.cache.impl.ConcurrentCache;
 import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.apache.ibatis.cache.metrics.CacheMetrics;
+import org.apache.ibatis.cache.metrics.NoOpCacheMetrics;
+import org.apache.ibatis.cache.serializer.CacheSerializer;
+import org.apache.ibatis.cache.weigher.EstimatedSizeWeigher;
+import org.apache.ibatis.cache.weigher.Weigher;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.reflection.DefaultReflectorFactory;
 import org.apache.ibatis.reflection.MetaObject;
 import org.apache.ibatis.reflection.SystemMetaObject;
+import org.apache.ibatis.reflection.factory.DefaultObjectFactory;
 
 /**
  * @author Clinton Begin
  */
 public class CacheBuilder {
+    /**
+     * Decorators that are safe to stack on a {@link ConcurrentCache} without a {@link SynchronizedCache} around them.
+     */
+    private static final Set<Class<? extends Cache>> CONCURRENT_DECORATORS = new HashSet<>(Arrays.asList(
+            BlockingCache.class, CloningCache.class, LoggingCache.class, ScheduledCache.class, SerializedCache.class, SingleFlightCache.class,
+            TinyLfuCache.class, WeightedCache.class));
+
     private final String id;
     private Class<? extends Cache> implementation;
     private final List<Class<? extends Cache>> decorators;
     private Integer size;
     private Long clearInterval;
+    private Double refreshAhead;
+    private Long expireAfterWrite;
+    private CacheTagRegistry tagRegistry;
+    private Long expireAfterAccess;
+    private Long emptyResultTimeToLive;
     private boolean readWrite;
     private Properties properties;
     private boolean blocking;
+    private boolean singleFlight;
+    private Long singleFlightTimeout;
+    private Long maxWeight;
+    private Class<? extends Weigher> weigher;
+    private CacheSerializer serializer;
+    private CacheCopyStrategy copyStrategy;
+    private DeepCloner cloner;
+    private ObjectGraphWalker walker;
+    private CacheMetrics metrics = NoOpCacheMetrics.INSTANCE;
+    private LongSupplier estimatedBytes;
 
     public CacheBuilder(String id) {
         this.id = id;
@@ -74,6 +121,31 @@ public class CacheBuilder {
         return this;
     }
 
+    public CacheBuilder expireAfterWrite(Long expireAfterWrite) {
+        this.expireAfterWrite = expireAfterWrite;
+        return this;
+    }
+
+    public CacheBuilder expireAfterAccess(Long expireAfterAccess) {
+        this.expireAfterAccess = expireAfterAccess;
+        return this;
+    }
+
+    public CacheBuilder emptyResultTimeToLive(Long emptyResultTimeToLive) {
+        this.emptyResultTimeToLive = emptyResultTimeToLive;
+        return this;
+    }
+
+    public CacheBuilder tagRegistry(CacheTagRegistry tagRegistry) {
+        this.tagRegistry = tagRegistry;
+        return this;
+    }
+
+    public CacheBuilder refreshAhead(Double refreshAhead) {
+        this.refreshAhead = refreshAhead;
+        return this;
+    }
+
     public CacheBuilder readWrite(boolean readWrite) {
         this.readWrite = readWrite;
         return this;
@@ -84,6 +156,51 @@ public class CacheBuilder {
         return this;
     }
 
+    public CacheBuilder singleFlight(boolean singleFlight) {
+        this.singleFlight = singleFlight;
+        return this;
+    }
+
+    public CacheBuilder singleFlightTimeout(Long singleFlightTimeout) {
+        this.singleFlightTimeout = singleFlightTimeout;
+        return this;
+    }
+
+    public CacheBuilder maxWeight(Long maxWeight) {
+        this.maxWeight = maxWeight;
+        return this;
+    }
+
+    public CacheBuilder weigher(Class<? extends Weigher> weigher) {
+        this.weigher = weigher;
+        return this;
+    }
+
+    public CacheBuilder serializer(CacheSerializer serializer) {
+        this.serializer = serializer;
+        return this;
+    }
+
+    public CacheBuilder copyStrategy(CacheCopyStrategy copyStrategy) {
+        this.copyStrategy = copyStrategy;
+        return this;
+    }
+
+    public CacheBuilder metrics(CacheMetrics metrics) {
+        this.metrics = metrics == null ? NoOpCacheMetrics.INSTANCE : metrics;
+        return this;
+    }
+
+    public CacheBuilder cloner(DeepCloner cloner) {
+        this.cloner = cloner;
+        return this;
+    }
+
+    public CacheBuilder walker(ObjectGraphWalker walker) {
+        this.walker = walker;
+        return this;
+    }
+
     public CacheBuilder properties(Properties properties) {
         this.properties = properties;
         return this;
@@ -94,11 +211,23 @@ public class CacheBuilder {
         setDefaultImplementations();
         //获取当前的缓存实例
         Cache cache = newBaseCacheInstance(implementation, id);
+        //自己存放序列化数据的缓存(比如OffHeapCache)也使用<cache>上配置的serializer,<property>中的配置优先
+        MetaObject metaBaseCache = SystemMetaObject.forObject(cache);
+        if (serializer != null && metaBaseCache.hasSetter("serializer")
+                && CacheSerializer.class.isAssignableFrom(metaBaseCache.getSetterType("serializer"))) {
+            metaBaseCache.setValue("serializer", serializer);
+        }
         setCacheProperties(cache);
         // issue #352, do not apply decorators to custom caches
 
         //如果当前的缓存实现是PerpetualCache类型
         if (PerpetualCache.class.equals(cache.getClass())) {
+            //如果配置了cacheMetricsFactory,最内层包装一层EvictionMetricsCache:外层所有淘汰和过期的元素都会经过它,统计淘汰数
+            cache = setEvictionMetrics(cache);
+            //如果设置了maxWeight,最内层包装一层WeightedCache:按权重(估算的字节数或行数)限制缓存,外层淘汰装饰器的淘汰也会经过它
+            cache = setWeightBound(cache);
+            //设置了tagRegistry时包装一层TaggedCache:tag的版本和元素一起存放,没有语句声明cacheTags时原样存放元素
+            cache = setTagIndex(cache);
             //循环decorators,也就是除PerpetualCache以外的Cache实现类
             for (Class<? extends Cache> decorator : decorators) {
                 //一层一层的包装
@@ -107,10 +236,41 @@ public class CacheBuilder {
             }
             //将这个cache继续包装
             cache = setStandardDecorators(cache);
-        } else if (!LoggingCache.class.isAssignableFrom(cache.getClass())) {
-            //如果当前的cache不是LoggingCache,那就包装一个LoggingCache
-            cache = new LoggingCache(cache);
+        } else if (ConcurrentCache.class.equals(cache.getClass())) {
+            //分段加锁的缓存自身就是线程安全的,并且每个分段已经按LRU淘汰,所以不需要LruCache和SynchronizedCache
+            //使用其他淘汰机制或者按权重限制时,由装饰器控制缓存数量,分段缓存本身不再限制大小
+            //(分段内部的淘汰不会经过WeightedCache,无法统计权重)
+            if (maxWeight != null || !decorators.isEmpty() && !decorators.contains(LruCache.class)) {
+                ((ConcurrentCache) cache).setSize(0);
+            } else if (size != null) {
+                ((ConcurrentCache) cache).setSize(size);
+            }
+            if (isMetricsEnabled()) {
+                ((ConcurrentCache) cache).setMetrics(metrics);
+            }
+            cache = setEvictionMetrics(cache);
+            cache = setWeightBound(cache);
+            cache = setTagIndex(cache);
+            boolean synchronize = false;
+            for (Class<? extends Cache> decorator : decorators) {
+                if (!LruCache.class.equals(decorator)) {
+                    cache = newCacheDecoratorInstance(decorator, cache);
+                    setCacheProperties(cache);
+                    //只要有一个装饰器不是线程安全的,就仍然需要SynchronizedCache
+                    synchronize |= !CONCURRENT_DECORATORS.contains(decorator);
+                }
+            }
+            cache = setConcurrentDecorators(cache, synchronize);
+        } else {
+            boolean logging = LoggingCache.class.isAssignableFrom(cache.getClass());
+            if (!logging) {
+                //如果当前的cache不是LoggingCache,那就包装一个LoggingCache
+                cache = new LoggingCache(cache);
+            }
+            cache = setMetrics(cache);
         }
+        //监控指标可以读取缓存当前的元素数量和估算的字节数
+        metrics.bind(cache::getSize, estimatedBytes);
         return cache;
     }
 
@@ -130,7 +290,11 @@ public class CacheBuilder {
                 metaCache.setValue("size", size);
             }
             //如果<cache>标签的flushInterval属性不为空
-            if (clearInterval != null) {
+            //如果<cache>标签设置了expireAfterWrite,expireAfterAccess或emptyResultTimeToLive属性
+            //包装一层ExpiringCache:每个元素单独过期,而不是定时清空整个缓存
+            cache = setExpiration(cache);
+            //如果<cache>标签的flushInterval属性不为空(且没有设置refreshAhead属性)
+            if (clearInterval != null && refreshAhead == null) {
                 //包装一层ScheduledCache:负责定时刷新缓存
                 cache = new ScheduledCache(cache);
                 //设置刷新间隔时间
@@ -140,23 +304,165 @@ public class CacheBuilder {
             if (readWrite) {
                 //包装一层SerializedCache:存入缓存的时候,会进行序列化,获得缓存的时候,会进行反序列化
                 //所以一旦<cache>标签的readOnly属性设置为true,则pojo类都需要实现Serializable接口
-                cache = new SerializedCache(cache);
+                //如果copyStrategy为CLONE,则包装CloningCache:通过Reflector深拷贝对象,不需要序列化
+                //如果copyStrategy为ROWS,则不包装:缓存的是结果集的原始行,命中时由CachingExecutor重新映射
+                cache = newCopyingDecorator(cache);
             }
             //包装一层LoggingCache:只要获取缓存并且命中了,就打印一条命中率的日志信息
             cache = new LoggingCache(cache);
             //包装一层SynchronizedCache:为了保证线程安全,这个类所有的方法都用synchronized关键字修饰
             cache = new SynchronizedCache(cache);
+            //如果<cache>标签设置了refreshAhead属性
+            //包装一层RefreshAheadCache:每个元素在flushInterval之后过期,快过期时返回旧值并在后台重新查询
+            //放在SynchronizedCache外面,这样后台线程写入的时候也是线程安全的
+            cache = setRefreshAhead(cache);
+            //如果配置了cacheMetricsFactory,包装一层MetricsCache:统计命中率,读写和清空的耗时
+            //放在BlockingCache里面,这样等待锁的时间不会算在读缓存的耗时里
+            cache = setMetrics(cache);
             //如果<cache>标签的blocking属性设置为true
-            if (blocking) {
-                //包装一层BlockingCache:当在缓存中找不到元素时，它会在缓存键上设置锁定。这样，其他线程将等待直到该元素被填充
-                cache = new BlockingCache(cache);
-            }
+            //包装一层BlockingCache:当在缓存中找不到元素时，它会在缓存键上设置锁定。这样，其他线程将等待直到该元素被填充
+            //如果<cache>标签的singleFlight属性设置为true,则包装SingleFlightCache代替BlockingCache:
+            //同一个key同时只有一个线程执行查询,其他线程不加锁,直接拿到这次查询的结果
+            cache = setBlocking(cache);
             return cache;
         } catch (Exception e) {
             throw new CacheException("Error building standard cache decorators.  Cause: " + e, e);
         }
     }
 
+    private boolean isMetricsEnabled() {
+        return !(metrics instanceof NoOpCacheMetrics);
+    }
+
+    private Cache setMetrics(Cache cache) {
+        return isMetricsEnabled() ? new MetricsCache(cache, metrics) : cache;
+    }
+
+    private Cache setEvictionMetrics(Cache cache) {
+        return isMetricsEnabled() ? new EvictionMetricsCache(cache, metrics) : cache;
+    }
+
+    private Cache setTagIndex(Cache cache) {
+        return tagRegistry == null ? cache : new TaggedCache(cache);
+    }
+
+    private Cache setExpiration(Cache cache) {
+        if (expireAfterWrite == null && expireAfterAccess == null && emptyResultTimeToLive == null) {
+            return cache;
+        }
+        ExpiringCache expiringCache = new ExpiringCache(cache);
+        if (expireAfterWrite != null) {
+            expiringCache.setExpireAfterWrite(expireAfterWrite);
+        }
+        if (expireAfterAccess != null) {
+            expiringCache.setExpireAfterAccess(expireAfterAccess);
+        }
+        if (emptyResultTimeToLive != null) {
+            expiringCache.setEmptyResultTimeToLive(emptyResultTimeToLive);
+        }
+        return expiringCache;
+    }
+
+    private Cache setRefreshAhead(Cache cache) {
+        if (refreshAhead == null) {
+            return cache;
+        }
+        if (clearInterval == null) {
+            throw new CacheException("Cache '" + id + "' requires a flushInterval to refresh entries ahead of time.");
+        }
+        RefreshAheadCache refreshAheadCache = new RefreshAheadCache(cache);
+        refreshAheadCache.setTimeToLive(clearInterval);
+        refreshAheadCache.setRefreshAhead(refreshAhead);
+        return refreshAheadCache;
+    }
+
+    private Cache setBlocking(Cache cache) {
+        if (singleFlight) {
+            SingleFlightCache singleFlightCache = new SingleFlightCache(cache);
+            if (singleFlightTimeout != null) {
+                singleFlightCache.setTimeout(singleFlightTimeout);
+            }
+            return singleFlightCache;
+        }
+        return blocking ? new BlockingCache(cache) : cache;
+    }
+
+    private Cache newCopyingDecorator(Cache cache) {
+        if (copyStrategy == CacheCopyStrategy.ROWS) {
+            return cache;
+        }
+        if (copyStrategy == CacheCopyStrategy.CLONE) {
+            return new CloningCache(cache, newCloner());
+        }
+        return serializer == null ? new SerializedCache(cache) : new SerializedCache(cache, serializer);
+    }
+
+    private ObjectGraphWalker getWalker() {
+        if (walker == null) {
+            walker = new ObjectGraphWalker(new DefaultReflectorFactory());
+        }
+        return walker;
+    }
+
+    private DeepCloner newCloner() {
+        return cloner != null ? cloner : new DeepCloner(getWalker(), new DefaultObjectFactory());
+    }
+
+    private Cache setWeightBound(Cache cache) {
+        if (maxWeight == null) {
+            return cache;
+        }
+        WeightedCache weightedCache = new WeightedCache(cache);
+        weightedCache.setMaxWeight(maxWeight);
+        if (weigher == null || EstimatedSizeWeigher.class.equals(weigher)) {
+            //和CloningCache共用同一份Reflector元数据
+            weightedCache.setWeigher(new EstimatedSizeWeigher(getWalker()));
+        } else {
+            weightedCache.setWeigher(newWeigherInstance(weigher));
+        }
+        if (weigher == null || EstimatedSizeWeigher.class.equals(weigher)) {
+            estimatedBytes = weightedCache::getWeight;
+        }
+        return weightedCache;
+    }
+
+    private Weigher newWeigherInstance(Class<? extends Weigher> weigherClass) {
+        try {
+            return weigherClass.getConstructor().newInstance();
+        } catch (Exception e) {
+            throw new CacheException("Could not instantiate cache weigher (" + weigherClass + "). Cause: " + e, e);
+        }
+    }
+
+    private Cache setConcurrentDecorators(Cache cache, boolean synchronize) {
+        try {
+            MetaObject metaCache = SystemMetaObject.forObject(cache);
+            if (size != null && metaCache.hasSetter("size")) {
+                metaCache.setValue("size", size);
+            }
+            cache = setExpiration(cache);
+            if (clearInterval != null && refreshAhead == null) {
+                cache = new ScheduledCache(cache);
+                ((ScheduledCache) cache).setClearInterval(clearInterval);
+            }
+            if (readWrite) {
+                cache = newCopyingDecorator(cache);
+            }
+            //这一层之外的装饰器(ExpiringCache,TaggedCache,MetricsCache,EvictionMetricsCache,RefreshAheadCache)
+            //以及LoggingCache的命中率计数都是线程安全的,不需要SynchronizedCache
+            cache = new LoggingCache(cache);
+            if (synchronize) {
+                cache = new SynchronizedCache(cache);
+            }
+            cache = setRefreshAhead(cache);
+            cache = setMetrics(cache);
+            cache = setBlocking(cache);
+            return cache;
+        } catch (Exception e) {
+            throw new CacheException("Error building concurrent cache decorators.  Cause: " + e, e);
+        }
+    }
+
     private void setCacheProperties(Cache cache) {
         if (properties != null) {
             MetaObject metaCache = SystemMetaObject.forObject(cache);
@@ -188,6 +494,8 @@ public class CacheBuilder {
                     } else if (double.class == type
                             || Double.class == type) {
                         metaCache.setValue(name, Double.valueOf(value));
+                    } else if (CacheSerializer.class.isAssignableFrom(type)) {
+                        metaCache.setValue(name, newSerializerInstance(value));
                     } else {
                         throw new CacheException("Unsupported property type for cache: '" + name + "' of type " + type);
                     }
@@ -204,6 +512,14 @@ public class CacheBuilder {
         }
     }
 
+    private CacheSerializer newSerializerInstance(String className) {
+        try {
+            return (CacheSerializer) Resources.classForName(className).getConstructor().newInstance();
+        } catch (Exception e) {
+            throw new CacheException("Could not instantiate cache serializer (" + className + "). Cause: " + e, e);
+        }
+    }
+
     private Cache newBaseCacheInstance(Class<? extends Cache> cacheClass, String id) {
         Constructor<? extends Cache> cacheConstructor = getBaseCacheConstructor(cacheClass);
         try {
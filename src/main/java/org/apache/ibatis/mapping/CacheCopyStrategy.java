@@ -0,0 +1,37 @@
+/*
+ *    Copyright 2009-2022 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.mapping;
+
+/**
+ * How a read/write cache gives callers their own copy of the cached objects.
+ *
+ * @since 3.5.12
+ */
+public enum CacheCopyStrategy {
+  /**
+   * Serialization round trip with the cache serializer, see {@link org.apache.ibatis.cache.decorators.SerializedCache}.
+   */
+  SERIALIZE,
+  /**
+   * Deep copy through the reflector metadata, see {@link org.apache.ibatis.cache.decorators.CloningCache}.
+   */
+  CLONE,
+  /**
+   * No copy: the cache stores the raw column values of the rows instead of the mapped objects, and the rows are mapped
+   * again on every hit, see {@link org.apache.ibatis.executor.resultset.CachedResultSets}.
+   */
+  ROWS
+}
@@ -46,6 +46,11 @@ public final class MappedStatement {
     private List<ResultMap> resultMaps;
     private boolean flushCacheRequired;
     private boolean useCache;
+    private boolean useLocalCache;
+    private Long cacheTimeToLive;
+    private String[] cacheTags;
+    private String cacheRowsBy;
+    private boolean warmUp;
     private boolean resultOrdered;
     private SqlCommandType sqlCommandType;
     private KeyGenerator keyGenerator;
@@ -73,6 +78,7 @@ public final class MappedStatement {
             mappedStatement.parameterMap = new ParameterMap.Builder(configuration, "defaultParameterMap", null, new ArrayList<>()).build();
             mappedStatement.resultMaps = new ArrayList<>();
             mappedStatement.sqlCommandType = sqlCommandType;
+            mappedStatement.useLocalCache = true;
             mappedStatement.keyGenerator = configuration.isUseGeneratedKeys() && SqlCommandType.INSERT.equals(sqlCommandType) ? Jdbc3KeyGenerator.INSTANCE : NoKeyGenerator.INSTANCE;
             String logId = id;
             if (configuration.getLogPrefix() != null) {
@@ -139,6 +145,31 @@ public final class MappedStatement {
             return this;
         }
 
+        public Builder useLocalCache(boolean useLocalCache) {
+            mappedStatement.useLocalCache = useLocalCache;
+            return this;
+        }
+
+        public Builder cacheTimeToLive(Long cacheTimeToLive) {
+            mappedStatement.cacheTimeToLive = cacheTimeToLive;
+            return this;
+        }
+
+        public Builder cacheTags(String cacheTags) {
+            mappedStatement.cacheTags = cacheTags == null || cacheTags.trim().isEmpty() ? null : cacheTags.trim().split("\\s*,\\s*");
+            return this;
+        }
+
+        public Builder cacheRowsBy(String cacheRowsBy) {
+            mappedStatement.cacheRowsBy = cacheRowsBy == null || cacheRowsBy.trim().isEmpty() ? null : cacheRowsBy.trim();
+            return this;
+        }
+
+        public Builder warmUp(boolean warmUp) {
+            mappedStatement.warmUp = warmUp;
+            return this;
+        }
+
         public Builder resultOrdered(boolean resultOrdered) {
             mappedStatement.resultOrdered = resultOrdered;
             return this;
@@ -261,6 +292,60 @@ public final class MappedStatement {
         return useCache;
     }
 
+    /**
+     * Whether the results of this statement are kept in the session level cache after the query that executed it
+     * has completed.
+     *
+     * @return false if the results are only cached while the query is running
+     * @since 3.5.12
+     */
+    public boolean isUseLocalCache() {
+        return useLocalCache;
+    }
+
+    /**
+     * Gets how long the results of this statement stay in the 2nd level cache, overriding the expiration of the cache.
+     *
+     * @return the time to live in milliseconds, or {@code null} to use the one of the cache
+     * @since 3.5.12
+     */
+    public Long getCacheTimeToLive() {
+        return cacheTimeToLive;
+    }
+
+    /**
+     * Gets the cache tags (usually table names) this statement reads, or writes when it flushes the cache.
+     *
+     * @return the cache tags, or {@code null} if none were declared
+     * @since 3.5.12
+     * @see org.apache.ibatis.cache.CacheTagRegistry
+     */
+    public String[] getCacheTags() {
+        return cacheTags;
+    }
+
+    /**
+     * Gets the name of the parameter holding the ids this statement looks up, when its rows are cached one by one.
+     *
+     * @return the parameter name, or {@code null} if the whole result is cached
+     * @since 3.5.12
+     */
+    public String getCacheRowsBy() {
+        return cacheRowsBy;
+    }
+
+    /**
+     * Whether this statement is run, without parameter, to fill the 2nd level cache before the application serves
+     * requests.
+     *
+     * @return {@code true} if the statement is part of the cache warm-up
+     * @since 3.5.12
+     * @see org.apache.ibatis.session.CacheWarmer
+     */
+    public boolean isWarmUp() {
+        return warmUp;
+    }
+
     public boolean isResultOrdered() {
         return resultOrdered;
     }
@@ -304,7 +389,7 @@ public final class MappedStatement {
         BoundSql boundSql = sqlSource.getBoundSql(parameterObject);
         List<ParameterMapping> parameterMappings = boundSql.getParameterMappings();
         if (parameterMappings == null || parameterMappings.isEmpty()) {
-            boundSql = new BoundSql(configuration, boundSql.getSql(), parameterMap.getParameterMappings(), parameterObject);
+            boundSql = new BoundSql(configuration, boundSql.getSql(), boundSql.getSqlFingerprint(), parameterMap.getParameterMappings(), parameterObject);
         }
 
         // check for nested result maps in parameter mappings (issue #30)
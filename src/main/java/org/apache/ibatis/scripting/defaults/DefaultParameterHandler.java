@@ -60,6 +60,20 @@ public class DefaultParameterHandler implements ParameterHandler {
 
     @Override
     public void setParameters(PreparedStatement ps) {
+        setParameters(ps, 0);
+    }
+
+    /**
+     * Sets the parameters after the first {@code offset} placeholders of the statement, e.g. to bind one row of a
+     * multi-row insert.
+     *
+     * @param ps
+     *          the statement
+     * @param offset
+     *          the number of placeholders bound before the ones of this handler
+     * @since 3.5.12
+     */
+    public void setParameters(PreparedStatement ps, int offset) {
         ErrorContext.instance().activity("setting parameters").object(mappedStatement.getParameterMap().getId());
         //拿到解析BoundSql时生成的ParameterMapping集合
         List<ParameterMapping> parameterMappings = boundSql.getParameterMappings();
@@ -92,7 +106,7 @@ public class DefaultParameterHandler implements ParameterHandler {
                     }
                     try {
                         //利用类型处理器设置PreparedStatement的值
-                        typeHandler.setParameter(ps, i + 1, value, jdbcType);
+                        typeHandler.setParameter(ps, offset + i + 1, value, jdbcType);
                     } catch (TypeException | SQLException e) {
                         throw new TypeException("Could not set parameters for mapping: " + parameterMapping + ". Cause: " + e, e);
                     }
@@ -0,0 +1,166 @@
+/*
+ *    Copyright 2009-2022 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.session;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.ibatis.exceptions.ExceptionFactory;
+import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.logging.LogFactory;
+import org.apache.ibatis.mapping.MappedStatement;
+
+/**
+ * Fills the second level caches before the application serves requests, by running selects in parallel.
+ * <p>
+ * The selects that declare {@code warmUp="true"} (or {@code @Options(warmUp = true)}) are run without parameter, the
+ * ones added with {@link #add(String, Object)} with their parameter, which must be equal to the one the application
+ * will use for the results to be found. Each select runs in its own session, committed so its results reach the
+ * cache. A select that fails is logged and skipped.
+ *
+ * <pre>
+ * new CacheWarmer(sqlSessionFactory)
+ *     .add("org.example.CountryMapper.selectByCode", "FR")
+ *     .warmUp(4);
+ * </pre>
+ *
+ * @since 3.5.12
+ */
+public class CacheWarmer {
+
+  private static final Log log = LogFactory.getLog(CacheWarmer.class);
+
+  private final SqlSessionFactory sqlSessionFactory;
+  private final List<Query> queries = new ArrayList<>();
+
+  public CacheWarmer(SqlSessionFactory sqlSessionFactory) {
+    this.sqlSessionFactory = sqlSessionFactory;
+  }
+
+  /**
+   * Adds a select to run without parameter.
+   *
+   * @param statement
+   *          the id of the select
+   * @return this warmer
+   */
+  public CacheWarmer add(String statement) {
+    return add(statement, null);
+  }
+
+  /**
+   * Adds a select to run with a parameter.
+   *
+   * @param statement
+   *          the id of the select
+   * @param parameter
+   *          the parameter of the select
+   * @return this warmer
+   */
+  public CacheWarmer add(String statement, Object parameter) {
+    queries.add(new Query(statement, parameter));
+    return this;
+  }
+
+  /**
+   * Runs the declared and the added selects and waits for them to complete.
+   *
+   * @param parallelism
+   *          the number of selects run at the same time
+   * @return the number of selects that completed successfully
+   */
+  public int warmUp(int parallelism) {
+    List<Query> all = new ArrayList<>(declaredQueries());
+    all.addAll(queries);
+    if (all.isEmpty()) {
+      return 0;
+    }
+    AtomicInteger completed = new AtomicInteger();
+    ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(parallelism, all.size())), runnable -> {
+      Thread thread = new Thread(runnable, "mybatis-cache-warm-up");
+      thread.setDaemon(true);
+      return thread;
+    });
+    try {
+      List<Future<?>> futures = new ArrayList<>(all.size());
+      for (Query query : all) {
+        futures.add(executor.submit(() -> {
+          if (run(query)) {
+            completed.incrementAndGet();
+          }
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw ExceptionFactory.wrapException("Cache warm-up interrupted.", e);
+    } catch (ExecutionException e) {
+      throw ExceptionFactory.wrapException("Error warming up caches.", e);
+    } finally {
+      executor.shutdownNow();
+    }
+    return completed.get();
+  }
+
+  private List<Query> declaredQueries() {
+    // statements are registered under their full and their short id
+    Set<MappedStatement> statements = Collections.newSetFromMap(new IdentityHashMap<>());
+    List<Query> declared = new ArrayList<>();
+    for (MappedStatement ms : new ArrayList<>(sqlSessionFactory.getConfiguration().getMappedStatements())) {
+      if (ms.isWarmUp() && statements.add(ms)) {
+        declared.add(new Query(ms.getId(), null));
+      }
+    }
+    return declared;
+  }
+
+  private boolean run(Query query) {
+    long start = System.currentTimeMillis();
+    try (SqlSession session = sqlSessionFactory.openSession()) {
+      int rows = session.selectList(query.statement, query.parameter).size();
+      session.commit();
+      if (log.isDebugEnabled()) {
+        log.debug("Warmed up " + query.statement + " with " + rows + " rows in " + (System.currentTimeMillis() - start) + " ms");
+      }
+      return true;
+    } catch (RuntimeException e) {
+      log.warn("Could not warm up " + query.statement + ". Cause: " + e);
+      return false;
+    }
+  }
+
+  private static final class Query {
+
+    private final String statement;
+    private final Object parameter;
+
+    Query(String statement, Object parameter) {
+      this.statement = statement;
+      this.parameter = parameter;
+    }
+  }
+
+}
@@ -15,6 +15,8 @@
  */
 package org.apache.ibatis.session;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
@@ -34,11 +36,27 @@ import org.apache.ibatis.builder.ResultMapResolver;
 import org.apache.ibatis.builder.annotation.MethodResolver;
 import org.apache.ibatis.builder.xml.XMLStatementBuilder;
 import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheSnapshot;
+import org.apache.ibatis.cache.CacheTagRegistry;
 import org.apache.ibatis.cache.decorators.FifoCache;
 import org.apache.ibatis.cache.decorators.LruCache;
 import org.apache.ibatis.cache.decorators.SoftCache;
+import org.apache.ibatis.cache.decorators.TinyLfuCache;
 import org.apache.ibatis.cache.decorators.WeakCache;
+import org.apache.ibatis.cache.impl.ConcurrentCache;
+import org.apache.ibatis.cache.impl.OffHeapCache;
 import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.apache.ibatis.cache.impl.TwoTierCache;
+import org.apache.ibatis.cache.metrics.CacheMetrics;
+import org.apache.ibatis.cache.metrics.CacheMetricsFactory;
+import org.apache.ibatis.cache.metrics.JmxCacheMetricsFactory;
+import org.apache.ibatis.cache.metrics.NoOpCacheMetrics;
+import org.apache.ibatis.cache.metrics.NoOpCacheMetricsFactory;
+import org.apache.ibatis.cache.serializer.CacheSerializer;
+import org.apache.ibatis.cache.serializer.CompactCacheSerializer;
+import org.apache.ibatis.cache.serializer.JavaCacheSerializer;
+import org.apache.ibatis.cache.weigher.EstimatedSizeWeigher;
+import org.apache.ibatis.cache.weigher.RowCountWeigher;
 import org.apache.ibatis.datasource.jndi.JndiDataSourceFactory;
 import org.apache.ibatis.datasource.pooled.PooledDataSourceFactory;
 import org.apache.ibatis.datasource.unpooled.UnpooledDataSourceFactory;
@@ -122,12 +140,22 @@ public class Configuration {
     protected Class<? extends VFS> vfsImpl;
     protected Class<?> defaultSqlProviderType;
     protected LocalCacheScope localCacheScope = LocalCacheScope.SESSION;
+    protected int localCacheSize;
+    protected long localCacheMaxRows;
+    protected boolean shareEmptyResults;
     protected JdbcType jdbcTypeForNull = JdbcType.OTHER;
     protected Set<String> lazyLoadTriggerMethods = new HashSet<>(Arrays.asList("equals", "clone", "hashCode", "toString"));
     protected Integer defaultStatementTimeout;
     protected Integer defaultFetchSize;
     protected ResultSetType defaultResultSetType;
     protected ExecutorType defaultExecutorType = ExecutorType.SIMPLE;
+    protected boolean batchReorderInserts;
+    protected int batchSize;
+    protected long batchMaxPendingBytes;
+    protected boolean batchRetainParameterObjects = true;
+    protected boolean batchPipelined;
+    protected int batchInsertRows;
+    protected int reuseStatementCacheSize;
     protected AutoMappingBehavior autoMappingBehavior = AutoMappingBehavior.PARTIAL;
     protected AutoMappingUnknownColumnBehavior autoMappingUnknownColumnBehavior = AutoMappingUnknownColumnBehavior.NONE;
 
@@ -138,6 +166,10 @@ public class Configuration {
 
     protected boolean lazyLoadingEnabled = false;
     protected ProxyFactory proxyFactory = new JavassistProxyFactory(); // #224 Using internal Javassist instead of OGNL
+    protected CacheSerializer cacheSerializer = new JavaCacheSerializer();
+    protected final CacheTagRegistry cacheTagRegistry = new CacheTagRegistry();
+    protected CacheMetricsFactory cacheMetricsFactory = new NoOpCacheMetricsFactory();
+    protected volatile CacheMetrics statementCacheMetrics;
 
     protected String databaseId;
     /**
@@ -158,6 +190,10 @@ public class Configuration {
             .conflictMessageProducer((savedValue, targetValue) ->
                     ". please check " + savedValue.getResource() + " and " + targetValue.getResource());
     protected final Map<String, Cache> caches = new StrictMap<>("Caches collection");
+    protected final Map<String, CacheMetrics> cacheMetrics = new HashMap<>();
+    protected final Set<String> rowCaches = new HashSet<>();
+    protected final Set<String> refreshAheadCaches = new HashSet<>();
+    protected final Set<String> taggedCaches = new HashSet<>();
     protected final Map<String, ResultMap> resultMaps = new StrictMap<>("Result Maps collection");
     protected final Map<String, ParameterMap> parameterMaps = new StrictMap<>("Parameter Maps collection");
     protected final Map<String, KeyGenerator> keyGenerators = new StrictMap<>("Key Generators collection");
@@ -192,10 +228,23 @@ public class Configuration {
         typeAliasRegistry.registerAlias("UNPOOLED", UnpooledDataSourceFactory.class);
 
         typeAliasRegistry.registerAlias("PERPETUAL", PerpetualCache.class);
+        typeAliasRegistry.registerAlias("CONCURRENT", ConcurrentCache.class);
+        typeAliasRegistry.registerAlias("OFF_HEAP", OffHeapCache.class);
+        typeAliasRegistry.registerAlias("TWO_TIER", TwoTierCache.class);
         typeAliasRegistry.registerAlias("FIFO", FifoCache.class);
         typeAliasRegistry.registerAlias("LRU", LruCache.class);
         typeAliasRegistry.registerAlias("SOFT", SoftCache.class);
         typeAliasRegistry.registerAlias("WEAK", WeakCache.class);
+        typeAliasRegistry.registerAlias("TINYLFU", TinyLfuCache.class);
+
+        typeAliasRegistry.registerAlias("BYTES", EstimatedSizeWeigher.class);
+        typeAliasRegistry.registerAlias("ROWS", RowCountWeigher.class);
+
+        typeAliasRegistry.registerAlias("JAVA", JavaCacheSerializer.class);
+        typeAliasRegistry.registerAlias("COMPACT", CompactCacheSerializer.class);
+
+        typeAliasRegistry.registerAlias("JMX", JmxCacheMetricsFactory.class);
+        typeAliasRegistry.registerAlias("NO_METRICS", NoOpCacheMetricsFactory.class);
 
         typeAliasRegistry.registerAlias("DB_VENDOR", VendorDatabaseIdProvider.class);
 
@@ -432,6 +481,75 @@ public class Configuration {
         this.proxyFactory = proxyFactory;
     }
 
+    /**
+     * Gets the serializer used by read/write caches that do not declare their own.
+     *
+     * @return the default cache serializer
+     * @since 3.5.12
+     */
+    public CacheSerializer getCacheSerializer() {
+        return cacheSerializer;
+    }
+
+    public void setCacheSerializer(CacheSerializer cacheSerializer) {
+        if (cacheSerializer == null) {
+            cacheSerializer = new JavaCacheSerializer();
+        }
+        this.cacheSerializer = cacheSerializer;
+    }
+
+    /**
+     * Gets the versions of the cache tags declared by the statements.
+     *
+     * @return the cache tag registry
+     * @since 3.5.12
+     */
+    public CacheTagRegistry getCacheTagRegistry() {
+        return cacheTagRegistry;
+    }
+
+    /**
+     * Gets the factory of the metrics the second level caches report to.
+     *
+     * @return the cache metrics factory
+     * @since 3.5.12
+     */
+    public CacheMetricsFactory getCacheMetricsFactory() {
+        return cacheMetricsFactory;
+    }
+
+    public void setCacheMetricsFactory(CacheMetricsFactory cacheMetricsFactory) {
+        if (cacheMetricsFactory == null) {
+            cacheMetricsFactory = new NoOpCacheMetricsFactory();
+        }
+        this.cacheMetricsFactory = cacheMetricsFactory;
+        this.statementCacheMetrics = null;
+    }
+
+    /**
+     * Gets the metrics the {@link org.apache.ibatis.executor.ReuseExecutor}s of all the sessions report the reuse of
+     * their prepared statements to: a hit for a statement found open, a miss and a load for one that was prepared, an
+     * eviction for one closed to respect {@link #getReuseStatementCacheSize() reuseStatementCacheSize}. They are
+     * created by the {@link #getCacheMetricsFactory() cache metrics factory}, with the id
+     * {@link org.apache.ibatis.executor.ReuseExecutor#STATEMENT_CACHE_ID}, when the first session uses them.
+     *
+     * @return the metrics of the reused statements
+     * @since 3.5.12
+     */
+    public CacheMetrics getStatementCacheMetrics() {
+        CacheMetrics metrics = statementCacheMetrics;
+        if (metrics == null) {
+            synchronized (cacheMetrics) {
+                metrics = statementCacheMetrics;
+                if (metrics == null) {
+                    metrics = cacheMetricsFactory.newCacheMetrics(ReuseExecutor.STATEMENT_CACHE_ID);
+                    statementCacheMetrics = metrics;
+                }
+            }
+        }
+        return metrics;
+    }
+
     public boolean isAggressiveLazyLoading() {
         return aggressiveLazyLoading;
     }
@@ -472,6 +590,113 @@ public class Configuration {
         this.defaultExecutorType = defaultExecutorType;
     }
 
+    /**
+     * Whether the batch executor keeps one statement open per distinct insert, so interleaved inserts into several
+     * tables are still sent as one JDBC batch per table.
+     *
+     * @return true if the inserts of a batch are grouped by statement
+     * @since 3.5.12
+     */
+    public boolean isBatchReorderInserts() {
+        return batchReorderInserts;
+    }
+
+    public void setBatchReorderInserts(boolean batchReorderInserts) {
+        this.batchReorderInserts = batchReorderInserts;
+    }
+
+    /**
+     * Gets how many updates the batch executor queues before it executes the pending batches on its own.
+     *
+     * @return the maximum number of pending updates, 0 for no limit
+     * @since 3.5.12
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Gets the estimated size of the parameters the batch executor queues before it executes the pending batches on its
+     * own. Only the first parameter object of each JDBC statement is measured, the following ones are assumed to be of
+     * the same size.
+     *
+     * @return the maximum size in bytes, 0 for no limit
+     * @since 3.5.12
+     */
+    public long getBatchMaxPendingBytes() {
+        return batchMaxPendingBytes;
+    }
+
+    public void setBatchMaxPendingBytes(long batchMaxPendingBytes) {
+        this.batchMaxPendingBytes = batchMaxPendingBytes;
+    }
+
+    /**
+     * Whether the batch results keep the parameter objects of their updates once the batches have been executed and
+     * the generated keys assigned.
+     *
+     * @return false if {@link org.apache.ibatis.executor.BatchResult#getParameterObjects()} is emptied after execution
+     * @since 3.5.12
+     */
+    public boolean isBatchRetainParameterObjects() {
+        return batchRetainParameterObjects;
+    }
+
+    public void setBatchRetainParameterObjects(boolean batchRetainParameterObjects) {
+        this.batchRetainParameterObjects = batchRetainParameterObjects;
+    }
+
+    /**
+     * Whether the batches executed because {@link #getBatchSize() batchSize} or
+     * {@link #getBatchMaxPendingBytes() batchMaxPendingBytes} was reached are sent by a worker thread, while the caller
+     * goes on with the next updates. Only {@code executeBatch} runs on the worker; the next updates are bound once it
+     * is done.
+     *
+     * @return true if the batch executor sends its batches from a worker thread
+     * @since 3.5.12
+     */
+    public boolean isBatchPipelined() {
+        return batchPipelined;
+    }
+
+    public void setBatchPipelined(boolean batchPipelined) {
+        this.batchPipelined = batchPipelined;
+    }
+
+    /**
+     * Gets how many rows the batch executor inserts per statement, by rewriting a batch of a simple
+     * {@code INSERT ... VALUES (...)} into multi-row {@code VALUES (...), (...), ...} statements.
+     *
+     * @return the number of rows per insert, 0 or 1 to send one statement per row
+     * @since 3.5.12
+     */
+    public int getBatchInsertRows() {
+        return batchInsertRows;
+    }
+
+    public void setBatchInsertRows(int batchInsertRows) {
+        this.batchInsertRows = batchInsertRows;
+    }
+
+    /**
+     * Gets how many prepared statements the reuse executor keeps open per session. Past that number, the least recently
+     * used statement is closed.
+     *
+     * @return the maximum number of statements, zero or less for no limit
+     * @since 3.5.12
+     */
+    public int getReuseStatementCacheSize() {
+        return reuseStatementCacheSize;
+    }
+
+    public void setReuseStatementCacheSize(int reuseStatementCacheSize) {
+        this.reuseStatementCacheSize = reuseStatementCacheSize;
+    }
+
     public boolean isCacheEnabled() {
         return cacheEnabled;
     }
@@ -544,6 +769,50 @@ public class Configuration {
         this.localCacheScope = localCacheScope;
     }
 
+    /**
+     * Gets the maximum number of entries of the session level cache.
+     *
+     * @return the maximum number of entries, zero or less for no limit
+     * @since 3.5.12
+     */
+    public int getLocalCacheSize() {
+        return localCacheSize;
+    }
+
+    public void setLocalCacheSize(int localCacheSize) {
+        this.localCacheSize = localCacheSize;
+    }
+
+    /**
+     * Gets the maximum number of rows held by all the lists in the session level cache.
+     *
+     * @return the maximum number of rows, zero or less for no limit
+     * @since 3.5.12
+     */
+    public long getLocalCacheMaxRows() {
+        return localCacheMaxRows;
+    }
+
+    public void setLocalCacheMaxRows(long localCacheMaxRows) {
+        this.localCacheMaxRows = localCacheMaxRows;
+    }
+
+    /**
+     * Whether the queries that return no rows are cached as the shared {@link org.apache.ibatis.cache.EmptyResult}, in
+     * the session level and in the second level cache, instead of holding an empty list each. Callers still get a new
+     * mutable list.
+     *
+     * @return true if empty results are shared
+     * @since 3.5.12
+     */
+    public boolean isShareEmptyResults() {
+        return shareEmptyResults;
+    }
+
+    public void setShareEmptyResults(boolean shareEmptyResults) {
+        this.shareEmptyResults = shareEmptyResults;
+    }
+
     public JdbcType getJdbcTypeForNull() {
         return jdbcTypeForNull;
     }
@@ -756,10 +1025,108 @@ public class Configuration {
         return caches.get(id);
     }
 
+    public void addCacheMetrics(String id, CacheMetrics metrics) {
+        cacheMetrics.put(id, metrics);
+    }
+
+    /**
+     * Gets the metrics of a second level cache.
+     *
+     * @param id
+     *          the id of the cache
+     * @return the metrics of the cache, that record nothing if the cache has none
+     * @since 3.5.12
+     */
+    public CacheMetrics getCacheMetrics(String id) {
+        return cacheMetrics.getOrDefault(id, NoOpCacheMetrics.INSTANCE);
+    }
+
+    public void addRowCache(String id) {
+        rowCaches.add(id);
+    }
+
+    /**
+     * Whether a second level cache stores the raw rows of the results instead of the mapped objects.
+     *
+     * @param id
+     *          the id of the cache
+     * @return {@code true} if the cache is a read/write cache with the {@code ROWS} copy strategy
+     * @since 3.5.12
+     */
+    public boolean isRowCache(String id) {
+        return rowCaches.contains(id);
+    }
+
+    public void addRefreshAheadCache(String id) {
+        refreshAheadCaches.add(id);
+    }
+
+    /**
+     * Whether a second level cache reloads its entries in the background before they expire.
+     *
+     * @param id
+     *          the id of the cache
+     * @return {@code true} if the cache is a built-in cache configured with {@code refreshAhead}
+     * @since 3.5.12
+     */
+    public boolean isRefreshAheadCache(String id) {
+        return refreshAheadCaches.contains(id);
+    }
+
+    public void addTaggedCache(String id) {
+        taggedCaches.add(id);
+    }
+
+    /**
+     * Whether a second level cache discards the entries whose cache tags were written. Other caches are cleared by
+     * the writes of their namespace only.
+     *
+     * @param id
+     *          the id of the cache
+     * @return {@code true} if the cache is a built-in cache
+     * @since 3.5.12
+     */
+    public boolean isTaggedCache(String id) {
+        return taggedCaches.contains(id);
+    }
+
     public boolean hasCache(String id) {
         return caches.containsKey(id);
     }
 
+    /**
+     * Writes the content of the second level caches to a file, e.g. when the application shuts down.
+     *
+     * @param file
+     *          the snapshot file
+     * @return the number of entries written
+     * @throws IOException
+     *           if the file can not be written
+     * @since 3.5.12
+     * @see CacheSnapshot
+     */
+    public int snapshotCaches(Path file) throws IOException {
+        return CacheSnapshot.write(this, file);
+    }
+
+    /**
+     * Fills the second level caches from a file written by {@link #snapshotCaches(Path)}, once all the mappers are
+     * loaded.
+     *
+     * @param file
+     *          the snapshot file
+     * @param maxAge
+     *          the age in milliseconds above which the snapshot is ignored, zero or less to accept any age
+     * @return the number of entries restored
+     * @throws IOException
+     *           if the file can not be read
+     * @since 3.5.12
+     * @see CacheSnapshot
+     */
+    public int restoreCaches(Path file, long maxAge) throws IOException {
+        return CacheSnapshot.restore(this, file, maxAge);
+    }
+
     public void addResultMap(ResultMap rm) {
         resultMaps.put(rm.getId(), rm);
         checkLocallyForDiscriminatedNestedResultMaps(rm);
@@ -0,0 +1,215 @@
+/*
+ *    Copyright 2009-2022 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.apache.ibatis.mapping.CacheBuilder;
+import org.apache.ibatis.session.Configuration;
+import org.junit.jupiter.api.Test;
+
+class CacheSnapshotTest {
+
+  private static Configuration configuration(String... cacheIds) {
+    Configuration configuration = new Configuration();
+    for (String id : cacheIds) {
+      configuration.addCache(new CacheBuilder(id).size(2).build());
+    }
+    return configuration;
+  }
+
+  private static CacheKey key(Object id) {
+    CacheKey key = new CacheKey();
+    key.update(id);
+    return key;
+  }
+
+  private static byte[] write(Configuration configuration) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    CacheSnapshot.write(configuration, out);
+    return out.toByteArray();
+  }
+
+  private static int restore(Configuration configuration, byte[] snapshot) throws IOException {
+    return CacheSnapshot.restore(configuration, new ByteArrayInputStream(snapshot), 0);
+  }
+
+  @Test
+  void shouldRestoreWrittenEntries() throws IOException {
+    Configuration source = configuration("authors", "blogs");
+    source.getCache("authors").putObject(key(1), Arrays.asList("jane", "john"));
+    source.getCache("authors").putObject(key(2), Arrays.asList("bob"));
+    source.getCache("blogs").putObject(key(1), Arrays.asList("blog"));
+
+    Configuration target = configuration("authors", "blogs");
+    assertEquals(3, restore(target, write(source)));
+    assertEquals(Arrays.asList("jane", "john"), target.getCache("authors").getObject(key(1)));
+    assertEquals(Arrays.asList("bob"), target.getCache("authors").getObject(key(2)));
+    assertEquals(Arrays.asList("blog"), target.getCache("blogs").getObject(key(1)));
+  }
+
+  @Test
+  void shouldRestoreThroughAFile() throws IOException {
+    Configuration source = configuration("authors");
+    source.getCache("authors").putObject(key(1), Arrays.asList("jane"));
+    Path file = Files.createTempFile("snapshot", ".bin");
+    try {
+      assertEquals(1, CacheSnapshot.write(source, file));
+      Configuration target = configuration("authors");
+      assertEquals(1, CacheSnapshot.restore(target, file, 60_000));
+      assertEquals(Arrays.asList("jane"), target.getCache("authors").getObject(key(1)));
+    } finally {
+      Files.delete(file);
+    }
+    assertEquals(0, CacheSnapshot.restore(configuration("authors"), file, 0));
+  }
+
+  @Test
+  void shouldNotTouchEntriesWhileWriting() throws IOException {
+    // whatever the order the keys are written in, reading them would make one of the two the most recently used
+    for (int recent = 1; recent <= 2; recent++) {
+      Configuration configuration = configuration("authors");
+      Cache cache = configuration.getCache("authors");
+      cache.putObject(key(1), Arrays.asList("jane"));
+      cache.putObject(key(2), Arrays.asList("bob"));
+      cache.getObject(key(recent));
+      write(configuration);
+      cache.putObject(key(3), Arrays.asList("john"));
+      assertNotNull(cache.getObject(key(recent)));
+      assertNull(cache.getObject(key(3 - recent)));
+    }
+  }
+
+  @Test
+  void shouldKeepFresherEntriesAndSkipUnknownCaches() throws IOException {
+    Configuration source = configuration("authors", "removed");
+    source.getCache("authors").putObject(key(1), Arrays.asList("old"));
+    source.getCache("authors").putObject(key(2), Arrays.asList("bob"));
+    source.getCache("removed").putObject(key(1), Arrays.asList("gone"));
+
+    Configuration target = configuration("authors");
+    target.getCache("authors").putObject(key(1), Arrays.asList("new"));
+    assertEquals(1, restore(target, write(source)));
+    assertEquals(Arrays.asList("new"), target.getCache("authors").getObject(key(1)));
+    assertEquals(Arrays.asList("bob"), target.getCache("authors").getObject(key(2)));
+  }
+
+  @Test
+  void shouldSkipEntriesThatCanNotBeSerialized() throws IOException {
+    Configuration source = new Configuration();
+    // a read only cache stores the values as they are
+    source.addCache(new CacheBuilder("authors").readWrite(false).build());
+    source.getCache("authors").putObject(key(1), Arrays.asList("jane"));
+    source.getCache("authors").putObject(key(2), Arrays.asList(new Object()));
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    assertEquals(1, CacheSnapshot.write(source, out));
+    Configuration target = configuration("authors");
+    assertEquals(1, restore(target, out.toByteArray()));
+  }
+
+  @Test
+  void shouldIgnoreSnapshotsThatAreTooOld() throws IOException {
+    Configuration source = configuration("authors");
+    source.getCache("authors").putObject(key(1), Arrays.asList("jane"));
+    byte[] snapshot = write(source);
+    // rewrite the time the snapshot was taken
+    byte[] old = header(0x4D424353, 1, System.currentTimeMillis() - 120_000);
+    System.arraycopy(old, 0, snapshot, 0, old.length);
+
+    Configuration target = configuration("authors");
+    assertEquals(0, CacheSnapshot.restore(target, new ByteArrayInputStream(snapshot), 60_000));
+    assertEquals(0, target.getCache("authors").getSize());
+  }
+
+  @Test
+  void shouldRejectInputThatIsNotASnapshot() {
+    Configuration target = configuration("authors");
+    IOException notSnapshot = assertThrows(IOException.class,
+        () -> restore(target, "not a snapshot at all".getBytes()));
+    assertEquals("Not a cache snapshot", notSnapshot.getMessage());
+    IOException version = assertThrows(IOException.class,
+        () -> restore(target, header(0x4D424353, 99, System.currentTimeMillis())));
+    assertEquals("Unsupported cache snapshot version 99", version.getMessage());
+  }
+
+  @Test
+  void shouldRejectCorruptedEntries() throws IOException {
+    Configuration target = configuration("authors");
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream data = new DataOutputStream(bytes);
+    data.write(header(0x4D424353, 1, System.currentTimeMillis()));
+    data.writeBoolean(true);
+    data.writeUTF("authors");
+    data.writeBoolean(true);
+    data.writeInt(-5);
+    IOException corrupted = assertThrows(IOException.class, () -> restore(target, bytes.toByteArray()));
+    assertEquals("Corrupted cache snapshot, invalid entry length -5", corrupted.getMessage());
+
+    // a huge declared length must not be allocated up front
+    bytes.reset();
+    data.write(header(0x4D424353, 1, System.currentTimeMillis()));
+    data.writeBoolean(true);
+    data.writeUTF("authors");
+    data.writeBoolean(true);
+    data.writeInt(200 * 1024 * 1024);
+    data.write(new byte[10]);
+    assertThrows(EOFException.class, () -> restore(target, bytes.toByteArray()));
+    assertEquals(0, target.getCache("authors").getSize());
+  }
+
+  @Test
+  void shouldSkipEntriesThatCanNotBeRead() throws IOException {
+    Configuration source = configuration("authors");
+    source.getCache("authors").putObject(key(1), Arrays.asList("jane"));
+    byte[] snapshot = write(source);
+    // corrupt the stream header of the serialized value, the last entry of the snapshot
+    int lastStream = -1;
+    for (int i = 0; i < snapshot.length - 1; i++) {
+      if (snapshot[i] == (byte) 0xAC && snapshot[i + 1] == (byte) 0xED) {
+        lastStream = i;
+      }
+    }
+    assertTrue(lastStream > 0);
+    snapshot[lastStream] = 0;
+
+    Configuration target = configuration("authors");
+    assertEquals(0, restore(target, snapshot));
+  }
+
+  private static byte[] header(int magic, int version, long time) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream data = new DataOutputStream(bytes);
+    data.writeInt(magic);
+    data.writeInt(version);
+    data.writeLong(time);
+    return bytes.toByteArray();
+  }
+
+}
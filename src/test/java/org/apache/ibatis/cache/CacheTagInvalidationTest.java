@@ -0,0 +1,117 @@
+/*
+ *    Copyright 2009-2022 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.Collections;
+
+import org.apache.ibatis.cache.decorators.TaggedCache;
+import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class CacheTagInvalidationTest {
+
+  private static final String[] AUTHOR = { "author" };
+
+  private CacheTagRegistry registry;
+  private Cache authors;
+  private Cache blogs;
+
+  @BeforeEach
+  void setUp() {
+    registry = new CacheTagRegistry();
+    authors = new TaggedCache(new PerpetualCache("authors"));
+    blogs = new TaggedCache(new PerpetualCache("blogs"));
+  }
+
+  private CacheKey key(String id) {
+    CacheKey key = new CacheKey();
+    key.update(id);
+    return key;
+  }
+
+  private void read(Cache cache, CacheKey key, Object value) {
+    TransactionalCacheManager reader = new TransactionalCacheManager();
+    reader.putObject(cache, key, value, null, registry.snapshot(AUTHOR));
+    reader.commit();
+  }
+
+  @Test
+  void shouldInvalidateTaggedEntriesOfEveryNamespaceAtCommit() {
+    read(authors, key("a"), "author");
+    read(blogs, key("b"), "blog with author");
+    authors.putObject(key("untagged"), "untagged");
+
+    TransactionalCacheManager writer = new TransactionalCacheManager();
+    writer.invalidate(registry, Collections.singletonList("author"));
+    // other sessions read the committed state until the write commits
+    assertEquals("author", authors.getObject(key("a")));
+    assertEquals("blog with author", blogs.getObject(key("b")));
+
+    writer.commit();
+    assertNull(authors.getObject(key("a")));
+    assertNull(blogs.getObject(key("b")));
+    assertEquals("untagged", authors.getObject(key("untagged")));
+    assertEquals(1, authors.getSize());
+  }
+
+  @Test
+  void shouldMissWrittenTagsInsideTheWritingTransaction() {
+    read(authors, key("a"), "author");
+    TransactionalCacheManager writer = new TransactionalCacheManager();
+    writer.invalidate(registry, Collections.singletonList("author"));
+    assertNull(writer.getObject(authors, key("a"), AUTHOR));
+    assertEquals("author", writer.getObject(authors, key("a"), new String[] { "blog" }));
+  }
+
+  @Test
+  void shouldKeepEntriesWhenTheWriteRollsBack() {
+    read(authors, key("a"), "author");
+    TransactionalCacheManager writer = new TransactionalCacheManager();
+    writer.invalidate(registry, Collections.singletonList("author"));
+    writer.rollback();
+    writer.commit();
+    assertEquals("author", authors.getObject(key("a")));
+  }
+
+  @Test
+  void shouldDiscardResultsReadBeforeAConcurrentWriteCommitted() {
+    TransactionalCacheManager reader = new TransactionalCacheManager();
+    reader.putObject(authors, key("a"), "old author", null, registry.snapshot(AUTHOR));
+
+    TransactionalCacheManager writer = new TransactionalCacheManager();
+    writer.invalidate(registry, Collections.singletonList("author"));
+    writer.commit();
+
+    reader.commit();
+    assertNull(authors.getObject(key("a")));
+  }
+
+  @Test
+  void shouldCacheAgainAfterTheInvalidation() {
+    read(authors, key("a"), "author");
+    TransactionalCacheManager writer = new TransactionalCacheManager();
+    writer.invalidate(registry, Collections.singletonList("author"));
+    writer.commit();
+
+    read(authors, key("a"), "new author");
+    assertEquals("new author", authors.getObject(key("a")));
+  }
+
+}
@@ -0,0 +1,117 @@
+/*
+ *    Copyright 2009-2022 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.junit.jupiter.api.Test;
+
+class CompactCacheKeyTest {
+
+  private static final String SQL = "select * from author where id = ?";
+
+  private static CompactCacheKey key(Object... components) {
+    CompactCacheKey.Builder builder = CompactCacheKey.builder(components.length + 1);
+    builder.addSql(SQL, BoundSql.fingerprint(SQL));
+    for (Object component : components) {
+      builder.add(component);
+    }
+    return builder.build();
+  }
+
+  @Test
+  void shouldBeEqualWhenComponentsAreEqual() {
+    CompactCacheKey key = key("Author.select", 1, null, new int[] { 1, 2 });
+    CompactCacheKey same = key(new String("Author.select"), 1, null, new int[] { 1, 2 });
+    assertEquals(key, same);
+    assertEquals(key.hashCode(), same.hashCode());
+    assertEquals(key.getHash(), same.getHash());
+    assertArrayEquals(new Object[] { SQL, "Author.select", 1, null, new int[] { 1, 2 } }, key.getComponents());
+  }
+
+  @Test
+  void shouldNotBeEqualWhenComponentsDiffer() {
+    assertNotEquals(key("Author.select", 1), key("Author.select", 2));
+    assertNotEquals(key(1, 2), key(2, 1));
+    assertNotEquals(key(1), key(1, null));
+    assertNotEquals(key(new int[] { 1, 2 }), key(new int[] { 1, 3 }));
+  }
+
+  @Test
+  void shouldMatchBuiltKeyWhenUpdated() {
+    CompactCacheKey updated = key("Author.select", 1);
+    updated.update(10);
+    updated.updateAll(new Object[] { 20, "x" });
+    CompactCacheKey built = key("Author.select", 1, 10, 20, "x");
+    assertEquals(built, updated);
+    assertEquals(built.getHash(), updated.getHash());
+    assertEquals(6, updated.getUpdateCount());
+  }
+
+  @Test
+  void shouldNotShareUpdatesWithClones() {
+    CompactCacheKey key = key("Author.select", 1);
+    CompactCacheKey clone = key.clone();
+    assertEquals(key, clone);
+    clone.update(10);
+    assertNotEquals(key, clone);
+    assertEquals(key("Author.select", 1), key);
+  }
+
+  @Test
+  void shouldNotChangeBuiltKeysWhenBuilderIsReused() {
+    CompactCacheKey.Builder builder = CompactCacheKey.builder(1).add("Author.select");
+    CompactCacheKey first = builder.build();
+    builder.add(1);
+    CompactCacheKey second = builder.build();
+    assertArrayEquals(new Object[] { "Author.select" }, first.getComponents());
+    assertArrayEquals(new Object[] { "Author.select", 1 }, second.getComponents());
+  }
+
+  @Test
+  void shouldRehashWhenDeserialized() throws Exception {
+    CompactCacheKey key = key("Author.select", SqlCommandType.SELECT, 1L, new byte[] { 1 });
+    key.update("page");
+    CompactCacheKey copy = roundTrip(key);
+    assertEquals(key, copy);
+    assertEquals(key.getHash(), copy.getHash());
+    assertEquals(key.hashCode(), copy.hashCode());
+    copy.update(2);
+    key.update(2);
+    assertEquals(key, copy);
+  }
+
+  private static CompactCacheKey roundTrip(CompactCacheKey key) throws IOException, ClassNotFoundException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+      out.writeObject(key);
+    }
+    try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+      return (CompactCacheKey) in.readObject();
+    }
+  }
+
+}
@@ -0,0 +1,182 @@
+/*
+ *    Copyright 2009-2022 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import org.apache.ibatis.reflection.DefaultReflectorFactory;
+import org.apache.ibatis.reflection.factory.DefaultObjectFactory;
+import org.junit.jupiter.api.Test;
+
+class DeepClonerTest {
+
+  private final DeepCloner cloner = new DeepCloner(new DefaultReflectorFactory(), new DefaultObjectFactory());
+
+  @Test
+  void shouldShareImmutableValuesAndCopyMutableOnes() {
+    String text = "text";
+    Date date = new Date(1_000L);
+    int[] numbers = { 1, 2 };
+    List<Object> original = new ArrayList<>(Arrays.asList(text, date, numbers, null));
+
+    @SuppressWarnings("unchecked")
+    List<Object> copy = (List<Object>) cloner.deepClone(original);
+    assertNotSame(original, copy);
+    assertSame(text, copy.get(0));
+    assertNotSame(date, copy.get(1));
+    assertEquals(date, copy.get(1));
+    assertNotSame(numbers, copy.get(2));
+    assertEquals(2, ((int[]) copy.get(2))[1]);
+    assertNull(copy.get(3));
+    assertNull(cloner.deepClone(null));
+  }
+
+  @Test
+  void shouldCopyBeansKeepingSharedReferencesAndCycles() {
+    Author author = new Author();
+    author.setName("jane");
+    Post post = new Post();
+    post.setTitle("first");
+    post.setAuthor(author);
+    Map<String, Post> byTitle = new HashMap<>();
+    byTitle.put("first", post);
+    author.setPosts(new HashSet<>(Arrays.asList(post)));
+    author.setByTitle(byTitle);
+
+    Author copy = (Author) cloner.deepClone(author);
+    assertNotSame(author, copy);
+    assertEquals("jane", copy.getName());
+    Post copiedPost = copy.getByTitle().get("first");
+    assertNotSame(post, copiedPost);
+    assertSame(copy, copiedPost.getAuthor());
+    assertSame(copiedPost, copy.getPosts().iterator().next());
+  }
+
+  @Test
+  void shouldHashSetElementsInTheirCopiedState() {
+    Author author = new Author();
+    author.setName("jane");
+    Post post = new Post();
+    post.setTitle("first");
+    post.setAuthor(author);
+    // the hash code of the post depends on its author, which is still being copied when the set is reached
+    author.setPosts(new HashSet<>(Arrays.asList(post)));
+
+    Author copy = (Author) cloner.deepClone(author);
+    Post copiedPost = copy.getPosts().iterator().next();
+    assertTrue(copy.getPosts().contains(copiedPost));
+  }
+
+  @Test
+  void shouldCopyOtherObjectsWithJavaSerialization() {
+    Money money = new Money(10);
+    Money copy = (Money) cloner.deepClone(money);
+    assertNotSame(money, copy);
+    assertEquals(10, copy.amount);
+  }
+
+  public static class Author {
+    private String name;
+    private Set<Post> posts;
+    private Map<String, Post> byTitle;
+
+    public String getName() {
+      return name;
+    }
+
+    public void setName(String name) {
+      this.name = name;
+    }
+
+    public Set<Post> getPosts() {
+      return posts;
+    }
+
+    public void setPosts(Set<Post> posts) {
+      this.posts = posts;
+    }
+
+    public Map<String, Post> getByTitle() {
+      return byTitle;
+    }
+
+    public void setByTitle(Map<String, Post> byTitle) {
+      this.byTitle = byTitle;
+    }
+  }
+
+  public static class Post {
+    private String title;
+    private Author author;
+
+    public String getTitle() {
+      return title;
+    }
+
+    public void setTitle(String title) {
+      this.title = title;
+    }
+
+    public Author getAuthor() {
+      return author;
+    }
+
+    public void setAuthor(Author author) {
+      this.author = author;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Post)) {
+        return false;
+      }
+      Post other = (Post) o;
+      return Objects.equals(title, other.title)
+          && Objects.equals(author == null ? null : author.getName(),
+              other.author == null ? null : other.author.getName());
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(title, author == null ? null : author.getName());
+    }
+  }
+
+  static class Money implements Serializable {
+    private static final long serialVersionUID = 1L;
+    final int amount;
+
+    Money(int amount) {
+      this.amount = amount;
+    }
+  }
+
+}
@@ -0,0 +1,113 @@
+/*
+ *    Copyright 2009-2022 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.decorators;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class SingleFlightCacheTest {
+
+  private SingleFlightCache cache;
+  private AtomicInteger waiterLoads;
+
+  @BeforeEach
+  void setUp() {
+    cache = new SingleFlightCache(new PerpetualCache("default"));
+    waiterLoads = new AtomicInteger();
+  }
+
+  @Test
+  void shouldServeWaitersWithTheCommittedValue() throws Exception {
+    assertEquals("leader", cache.load("key", () -> null, () -> "leader"));
+    FutureTask<Object> waiter = startWaiter();
+    cache.putObject("key", "committed");
+
+    assertEquals("committed", waiter.get(5, TimeUnit.SECONDS));
+    assertEquals(0, waiterLoads.get());
+    assertEquals(1, cache.getLoadCount());
+    assertEquals(1, cache.getCoalescedCount());
+  }
+
+  @Test
+  void shouldLetWaitersLoadWhenTheLeaderRollsBack() throws Exception {
+    cache.load("key", () -> null, () -> "leader");
+    FutureTask<Object> waiter = startWaiter();
+    cache.removeObject("key");
+
+    assertEquals("waiter", waiter.get(5, TimeUnit.SECONDS));
+    assertEquals(1, waiterLoads.get());
+    assertEquals(2, cache.getLoadCount());
+    assertEquals(0, cache.getCoalescedCount());
+  }
+
+  @Test
+  void shouldLetWaitersLoadAfterTheTimeout() throws Exception {
+    cache.setTimeout(50);
+    cache.load("key", () -> null, () -> "leader");
+    FutureTask<Object> waiter = startWaiter();
+
+    // the leader never stores the key
+    assertEquals("waiter", waiter.get(5, TimeUnit.SECONDS));
+    assertEquals(1, cache.getTimeoutCount());
+    assertEquals(2, cache.getLoadCount());
+  }
+
+  @Test
+  void shouldEndTheFlightWhenTheLoaderFails() throws Exception {
+    IllegalStateException failure = new IllegalStateException("down");
+    assertSame(failure, assertThrows(IllegalStateException.class, () -> cache.load("key", () -> null, () -> {
+      throw failure;
+    })));
+    // no load is running anymore, the next miss loads without waiting
+    FutureTask<Object> next = new FutureTask<>(() -> cache.load("key", () -> null, () -> "next"));
+    new Thread(next).start();
+    assertEquals("next", next.get(5, TimeUnit.SECONDS));
+    assertEquals(0, cache.getTimeoutCount());
+  }
+
+  @Test
+  void shouldNotMakeTheLeaderWaitForItself() throws Exception {
+    cache.load("key", () -> null, () -> "first");
+    assertEquals("nested", cache.load("key", () -> null, () -> "nested"));
+    assertEquals(0, cache.getCoalescedCount());
+  }
+
+  private FutureTask<Object> startWaiter() throws InterruptedException {
+    FutureTask<Object> waiter = new FutureTask<>(() -> cache.load("key",
+        () -> cache.getObject("key"), () -> {
+          waiterLoads.incrementAndGet();
+          return "waiter";
+        }));
+    Thread thread = new Thread(waiter);
+    thread.start();
+    // the waiter must be waiting for the flight of the leader before the leader lands
+    while (thread.getState() != Thread.State.WAITING && thread.getState() != Thread.State.TIMED_WAITING
+        && !waiter.isDone()) {
+      Thread.sleep(1);
+    }
+    return waiter;
+  }
+
+}
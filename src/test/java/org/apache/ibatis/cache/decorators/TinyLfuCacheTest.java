@@ -0,0 +1,95 @@
+/*
+ *    Copyright 2009-2022 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.decorators;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.junit.jupiter.api.Test;
+
+class TinyLfuCacheTest {
+
+  @Test
+  void shouldNeverHoldMoreThanItsSize() {
+    TinyLfuCache cache = new TinyLfuCache(new PerpetualCache("default"));
+    cache.setSize(100);
+    for (int i = 0; i < 1000; i++) {
+      cache.putObject(i, i);
+    }
+    assertEquals(100, cache.getSize());
+  }
+
+  @Test
+  void shouldKeepFrequentlyReadEntriesDuringAScan() {
+    TinyLfuCache cache = new TinyLfuCache(new PerpetualCache("default"));
+    cache.setSize(100);
+    for (int i = 0; i < 50; i++) {
+      cache.putObject("hot" + i, i);
+    }
+    for (int round = 0; round < 20; round++) {
+      for (int i = 0; i < 50; i++) {
+        cache.getObject("hot" + i);
+      }
+    }
+    // one-off keys, each one read once
+    for (int i = 0; i < 2000; i++) {
+      cache.putObject("scan" + i, i);
+      cache.getObject("scan" + i);
+    }
+    int kept = 0;
+    for (int i = 0; i < 50; i++) {
+      if (cache.getObject("hot" + i) != null) {
+        kept++;
+      }
+    }
+    assertTrue(kept >= 45, "only " + kept + " frequently read entries were kept");
+    assertEquals(100, cache.getSize());
+  }
+
+  @Test
+  void shouldStoreSeveralEntriesAtOnce() {
+    TinyLfuCache cache = new TinyLfuCache(new PerpetualCache("default"));
+    cache.setSize(10);
+    Map<Object, Object> entries = new HashMap<>();
+    for (int i = 0; i < 30; i++) {
+      entries.put(i, i);
+    }
+    cache.putObjects(entries);
+    assertEquals(10, cache.getSize());
+    assertEquals(10, cache.getObjects(entries.keySet()).size());
+  }
+
+  @Test
+  void shouldForgetRemovedEntries() {
+    TinyLfuCache cache = new TinyLfuCache(new PerpetualCache("default"));
+    cache.setSize(2);
+    cache.putObject("a", "A");
+    cache.putObject("b", "B");
+    assertEquals("A", cache.removeObject("a"));
+    cache.putObject("c", "C");
+    // the removed key no longer takes a place
+    assertEquals(2, cache.getSize());
+    assertNull(cache.getObject("a"));
+    cache.clear();
+    assertEquals(0, cache.getSize());
+  }
+
+}
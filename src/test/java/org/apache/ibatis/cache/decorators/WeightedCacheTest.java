@@ -0,0 +1,113 @@
+/*
+ *    Copyright 2009-2022 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.decorators;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.apache.ibatis.cache.weigher.RowCountWeigher;
+import org.junit.jupiter.api.Test;
+
+class WeightedCacheTest {
+
+  private static WeightedCache rowCountCache(long maxWeight) {
+    WeightedCache cache = new WeightedCache(new PerpetualCache("default"));
+    cache.setWeigher(new RowCountWeigher());
+    cache.setMaxWeight(maxWeight);
+    return cache;
+  }
+
+  @Test
+  void shouldEvictOldestEntriesWhenOverweight() {
+    WeightedCache cache = rowCountCache(5);
+    cache.putObject("a", Arrays.asList(1, 2));
+    cache.putObject("b", Arrays.asList(1, 2));
+    assertEquals(4, cache.getWeight());
+    cache.putObject("c", Arrays.asList(1, 2));
+    assertNull(cache.getObject("a"));
+    assertNotNull(cache.getObject("b"));
+    assertNotNull(cache.getObject("c"));
+    assertEquals(4, cache.getWeight());
+    assertEquals(1, cache.getEvictionCount());
+  }
+
+  @Test
+  void shouldRejectEntriesHeavierThanTheCache() {
+    WeightedCache cache = rowCountCache(3);
+    cache.putObject("a", Collections.singletonList(1));
+    cache.putObject("a", Arrays.asList(1, 2, 3, 4));
+    // the previous value of the key must not be served either
+    assertNull(cache.getObject("a"));
+    assertEquals(0, cache.getWeight());
+    assertEquals(1, cache.getRejectionCount());
+    assertEquals(0, cache.getEvictionCount());
+  }
+
+  @Test
+  void shouldReweighReplacedEntries() {
+    WeightedCache cache = rowCountCache(10);
+    cache.putObject("a", Arrays.asList(1, 2, 3));
+    cache.putObject("a", Collections.singletonList(1));
+    assertEquals(1, cache.getWeight());
+    cache.removeObject("a");
+    assertEquals(0, cache.getWeight());
+  }
+
+  @Test
+  void shouldWeighSeveralEntriesAtOnce() {
+    WeightedCache cache = rowCountCache(4);
+    Map<Object, Object> entries = new LinkedHashMap<>();
+    entries.put("a", Arrays.asList(1, 2));
+    entries.put("b", Arrays.asList(1, 2, 3, 4, 5));
+    entries.put("c", Arrays.asList(1, 2));
+    entries.put("d", Collections.singletonList(1));
+    cache.putObjects(entries);
+    assertNull(cache.getObject("a"));
+    assertNull(cache.getObject("b"));
+    assertNotNull(cache.getObject("c"));
+    assertNotNull(cache.getObject("d"));
+    assertEquals(3, cache.getWeight());
+    assertEquals(1, cache.getRejectionCount());
+    assertEquals(1, cache.getEvictionCount());
+    cache.clear();
+    assertEquals(0, cache.getWeight());
+    assertEquals(0, cache.getSize());
+  }
+
+  @Test
+  void shouldWeighSerializedValuesByTheirLength() {
+    WeightedCache cache = new WeightedCache(new PerpetualCache("default"));
+    cache.putObject("a", new byte[100]);
+    // 16 bytes of array header, aligned to 8 bytes
+    assertEquals(120, cache.getWeight());
+  }
+
+  @Test
+  void shouldRequireAPositiveMaxWeight() {
+    WeightedCache cache = new WeightedCache(new PerpetualCache("default"));
+    assertThrows(CacheException.class, () -> cache.setMaxWeight(0));
+  }
+
+}
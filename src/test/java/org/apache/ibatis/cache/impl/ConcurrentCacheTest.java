@@ -0,0 +1,159 @@
+/*
+ *    Copyright 2009-2022 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.cache.metrics.CacheMetrics;
+import org.junit.jupiter.api.Test;
+
+class ConcurrentCacheTest {
+
+  @Test
+  void shouldEvictLeastRecentlyUsedEntry() {
+    ConcurrentCache cache = new ConcurrentCache("default");
+    cache.setConcurrencyLevel(1);
+    cache.setSize(2);
+    cache.putObject("a", "A");
+    cache.putObject("b", "B");
+    // reading a makes b the least recently used entry
+    assertEquals("A", cache.getObject("a"));
+    cache.putObject("c", "C");
+    assertEquals(2, cache.getSize());
+    assertNotNull(cache.getObject("a"));
+    assertNull(cache.getObject("b"));
+    assertNotNull(cache.getObject("c"));
+  }
+
+  @Test
+  void shouldReportEvictions() {
+    AtomicInteger evictions = new AtomicInteger();
+    ConcurrentCache cache = new ConcurrentCache("default");
+    cache.setConcurrencyLevel(1);
+    cache.setSize(10);
+    cache.setMetrics(new CountingMetrics(evictions));
+    for (int i = 0; i < 25; i++) {
+      cache.putObject(i, i);
+    }
+    assertEquals(10, cache.getSize());
+    assertEquals(15, evictions.get());
+  }
+
+  @Test
+  void shouldNotEvictWhenUnbounded() {
+    ConcurrentCache cache = new ConcurrentCache("default");
+    cache.setSize(0);
+    for (int i = 0; i < 5000; i++) {
+      cache.putObject(i, i);
+    }
+    assertEquals(5000, cache.getSize());
+    assertEquals(5000, cache.getKeys().size());
+  }
+
+  @Test
+  void shouldStoreAndClearSeveralEntries() {
+    ConcurrentCache cache = new ConcurrentCache("default");
+    Map<Object, Object> entries = new HashMap<>();
+    for (int i = 0; i < 100; i++) {
+      entries.put(i, "value" + i);
+    }
+    cache.putObjects(entries);
+    assertEquals(100, cache.getSize());
+    assertEquals("value42", cache.getObject(42));
+    assertEquals("value42", cache.removeObject(42));
+    assertNull(cache.getObject(42));
+    cache.clear();
+    assertEquals(0, cache.getSize());
+  }
+
+  @Test
+  void shouldStayWithinItsSizeUnderConcurrentWrites() throws Exception {
+    ConcurrentCache cache = new ConcurrentCache("default");
+    cache.setConcurrencyLevel(4);
+    cache.setSize(64);
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int t = 0; t < 4; t++) {
+        final int thread = t;
+        futures.add(executor.submit(() -> {
+          for (int i = 0; i < 10000; i++) {
+            Object key = thread * 10000 + i;
+            cache.putObject(key, key);
+            cache.getObject(key);
+          }
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get(30, TimeUnit.SECONDS);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    assertTrue(cache.getSize() <= 64, "size was " + cache.getSize());
+  }
+
+  @Test
+  void shouldRejectNonPositiveConcurrencyLevel() {
+    ConcurrentCache cache = new ConcurrentCache("default");
+    assertThrows(CacheException.class, () -> cache.setConcurrencyLevel(0));
+  }
+
+  private static final class CountingMetrics implements CacheMetrics {
+    private final AtomicInteger evictions;
+
+    CountingMetrics(AtomicInteger evictions) {
+      this.evictions = evictions;
+    }
+
+    @Override
+    public void recordGet(boolean hit, long nanos) {
+    }
+
+    @Override
+    public void recordPut(int entries, long nanos) {
+    }
+
+    @Override
+    public void recordEviction() {
+      evictions.incrementAndGet();
+    }
+
+    @Override
+    public void recordClear(long nanos) {
+    }
+
+    @Override
+    public void recordLoad(long nanos) {
+    }
+  }
+
+}
@@ -0,0 +1,149 @@
+/*
+ *    Copyright 2009-2022 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.serializer;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.UUID;
+
+import org.apache.ibatis.cache.CacheException;
+import org.junit.jupiter.api.Test;
+
+class CompactCacheSerializerTest {
+
+  private final CacheSerializer serializer = new CompactCacheSerializer();
+
+  private Object roundTrip(Object value) {
+    return serializer.deserialize(serializer.serialize(value));
+  }
+
+  @Test
+  void shouldRoundTripValues() {
+    Timestamp timestamp = new Timestamp(1_000_000L);
+    timestamp.setNanos(123_456_789);
+    List<Object> values = Arrays.asList(null, "text", 1, 2L, 3.5d, 4.5f, (short) 6, (byte) 7, true, 'c',
+        new BigDecimal("12.345"), new BigInteger("123456789012345678901234567890"), new Date(1_000L),
+        new java.sql.Date(2_000L), new java.sql.Time(3_000L), timestamp, Level.HIGH, UUID.randomUUID());
+    Object copy = roundTrip(new ArrayList<>(values));
+    assertEquals(values, copy);
+    assertEquals(ArrayList.class, copy.getClass());
+  }
+
+  @Test
+  void shouldRoundTripArraysAndCollections() {
+    assertArrayEquals(new byte[] { 1, 2, 3 }, (byte[]) roundTrip(new byte[] { 1, 2, 3 }));
+    assertArrayEquals(new int[] { 4, 5 }, (int[]) roundTrip(new int[] { 4, 5 }));
+    assertArrayEquals(new Object[] { "a", 1 }, (Object[]) roundTrip(new Object[] { "a", 1 }));
+
+    Map<String, Object> map = new LinkedHashMap<>();
+    map.put("b", new TreeSet<>(Arrays.asList(3, 1, 2)));
+    map.put("a", null);
+    Object copy = roundTrip(map);
+    assertEquals(map, copy);
+    assertEquals(LinkedHashMap.class, copy.getClass());
+    assertEquals(Arrays.asList("b", "a"), new ArrayList<>(((Map<?, ?>) copy).keySet()));
+  }
+
+  @Test
+  void shouldRoundTripBeansKeepingSharedReferencesAndCycles() {
+    Author author = new Author();
+    author.setName("jane");
+    Post first = new Post();
+    first.setAuthor(author);
+    first.setTitle("first");
+    Post second = new Post();
+    second.setAuthor(author);
+    author.setPosts(new ArrayList<>(Arrays.asList(first, second)));
+
+    Author copy = (Author) roundTrip(author);
+    assertNotSame(author, copy);
+    assertEquals("jane", copy.getName());
+    assertEquals(2, copy.getPosts().size());
+    assertEquals("first", copy.getPosts().get(0).getTitle());
+    assertNull(copy.getPosts().get(1).getTitle());
+    assertSame(copy, copy.getPosts().get(0).getAuthor());
+    assertSame(copy, copy.getPosts().get(1).getAuthor());
+  }
+
+  @Test
+  void shouldRejectCorruptedBytes() {
+    assertThrows(CacheException.class, () -> serializer.deserialize(new byte[] { 99 }));
+    byte[] bytes = serializer.serialize("some text");
+    assertThrows(CacheException.class, () -> serializer.deserialize(Arrays.copyOf(bytes, bytes.length - 2)));
+  }
+
+  enum Level {
+    LOW, HIGH
+  }
+
+  public static class Author {
+    private String name;
+    private List<Post> posts;
+
+    public String getName() {
+      return name;
+    }
+
+    public void setName(String name) {
+      this.name = name;
+    }
+
+    public List<Post> getPosts() {
+      return posts;
+    }
+
+    public void setPosts(List<Post> posts) {
+      this.posts = posts;
+    }
+  }
+
+  public static class Post {
+    private Author author;
+    private String title;
+
+    public Author getAuthor() {
+      return author;
+    }
+
+    public void setAuthor(Author author) {
+      this.author = author;
+    }
+
+    public String getTitle() {
+      return title;
+    }
+
+    public void setTitle(String title) {
+      this.title = title;
+    }
+  }
+
+}
@@ -0,0 +1,328 @@
+/*
+ *    Copyright 2009-2022 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.ibatis.builder.StaticSqlSource;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ParameterMapping;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.mapping.SqlSource;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.transaction.jdbc.JdbcTransaction;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class BatchExecutorTest {
+
+  private static final String PARENT = "insert into parent (id) values (?)";
+  private static final String CHILD = "insert into child (id) values (?)";
+
+  private FakeJdbc jdbc;
+  private Configuration configuration;
+  private BatchExecutor executor;
+
+  @BeforeEach
+  void setUp() {
+    jdbc = new FakeJdbc();
+    configuration = new Configuration();
+    executor = new BatchExecutor(configuration, new JdbcTransaction(jdbc.connection()));
+  }
+
+  @AfterEach
+  void tearDown() {
+    executor.close(false);
+  }
+
+  @Test
+  void shouldKeepTheOrderOfTheUpdatesByDefault() throws SQLException {
+    MappedStatement parent = statement("parent", SqlCommandType.INSERT, PARENT);
+    MappedStatement child = statement("child", SqlCommandType.INSERT, CHILD);
+    executor.update(parent, row(1));
+    executor.update(child, row(1));
+    executor.update(parent, row(2));
+
+    assertEquals(3, executor.flushStatements().size());
+    assertEquals(Arrays.asList(PARENT + " [1]", CHILD + " [1]", PARENT + " [2]"), jdbc.executed);
+  }
+
+  @Test
+  void shouldGroupInterleavedInsertsByStatement() throws SQLException {
+    configuration.setBatchReorderInserts(true);
+    MappedStatement parent = statement("parent", SqlCommandType.INSERT, PARENT);
+    MappedStatement child = statement("child", SqlCommandType.INSERT, CHILD);
+    for (int i = 1; i <= 3; i++) {
+      executor.update(parent, row(i));
+      executor.update(child, row(i));
+    }
+
+    List<BatchResult> results = executor.flushStatements();
+    assertEquals(2, results.size());
+    assertEquals(Arrays.asList(row(1), row(2), row(3)), results.get(0).getParameterObjects());
+    assertEquals(3, results.get(1).getUpdateCounts().length);
+    assertEquals(Arrays.asList(PARENT + " [1]", PARENT + " [2]", PARENT + " [3]", CHILD + " [1]", CHILD + " [2]",
+        CHILD + " [3]"), jdbc.executed);
+    assertEquals(2, jdbc.prepared.size());
+  }
+
+  @Test
+  void shouldNotMoveInsertsBeforeAnUpdate() throws SQLException {
+    configuration.setBatchReorderInserts(true);
+    MappedStatement parent = statement("parent", SqlCommandType.INSERT, PARENT);
+    MappedStatement rename = statement("rename", SqlCommandType.UPDATE, "update parent set name = 'x' where id = ?");
+    executor.update(parent, row(1));
+    executor.update(rename, row(1));
+    executor.update(parent, row(2));
+
+    assertEquals(3, executor.flushStatements().size());
+    assertEquals(PARENT + " [2]", jdbc.executed.get(2));
+  }
+
+  @Test
+  void shouldNotMoveInsertsBeforeTheSameStatementWithOtherSql() throws SQLException {
+    configuration.setBatchReorderInserts(true);
+    // the parent insert writes an optional column, its SQL depends on the row
+    String withName = "insert into parent (id, name) values (?, 'x')";
+    MappedStatement parent = statement("parent", SqlCommandType.INSERT,
+        parameter -> new BoundSql(configuration, ((Map<?, ?>) parameter).get("id").equals(3) ? withName : PARENT,
+            idMapping(), parameter));
+    MappedStatement child = statement("child", SqlCommandType.INSERT, CHILD);
+    executor.update(parent, row(1));
+    executor.update(child, row(1));
+    executor.update(parent, row(3));
+    // the child of the third parent must not be inserted before it, with the child of the first one
+    executor.update(child, row(3));
+
+    assertEquals(4, executor.flushStatements().size());
+    assertEquals(Arrays.asList(PARENT + " [1]", CHILD + " [1]", withName + " [3]", CHILD + " [3]"), jdbc.executed);
+  }
+
+  @Test
+  void shouldExecutePendingBatchesPastTheBatchSize() throws SQLException {
+    configuration.setBatchSize(3);
+    MappedStatement parent = statement("parent", SqlCommandType.INSERT, PARENT);
+    for (int i = 1; i <= 7; i++) {
+      executor.update(parent, row(i));
+      assertEquals(i / 3 * 3, jdbc.executed.size());
+    }
+
+    List<BatchResult> results = executor.flushStatements();
+    assertEquals(3, results.size());
+    assertEquals(Arrays.asList(row(7)), results.get(2).getParameterObjects());
+    assertEquals(7, jdbc.executed.size());
+    assertEquals(0, executor.flushStatements().size());
+  }
+
+  @Test
+  void shouldExecutePendingBatchesPastTheMaxPendingBytes() throws SQLException {
+    configuration.setBatchMaxPendingBytes(1);
+    MappedStatement parent = statement("parent", SqlCommandType.INSERT, PARENT);
+    for (int i = 1; i <= 3; i++) {
+      executor.update(parent, row(i));
+      assertEquals(i, jdbc.executed.size());
+    }
+    assertEquals(3, executor.flushStatements().size());
+  }
+
+  @Test
+  void shouldReleaseParameterObjectsOnceExecuted() throws SQLException {
+    configuration.setBatchSize(2);
+    configuration.setBatchRetainParameterObjects(false);
+    MappedStatement parent = statement("parent", SqlCommandType.INSERT, PARENT);
+    for (int i = 1; i <= 3; i++) {
+      executor.update(parent, row(i));
+    }
+
+    List<BatchResult> results = executor.flushStatements();
+    assertEquals(2, results.size());
+    assertEquals(Collections.emptyList(), results.get(0).getParameterObjects());
+    assertEquals(2, results.get(0).getUpdateCounts().length);
+    assertEquals(1, results.get(1).getUpdateCounts().length);
+  }
+
+  @Test
+  void shouldReportTheBatchesExecutedBeforeAFailure() throws SQLException {
+    configuration.setBatchSize(2);
+    MappedStatement parent = statement("parent", SqlCommandType.INSERT, PARENT);
+    executor.update(parent, row(1));
+    executor.update(parent, row(2));
+    executor.update(parent, row(3));
+    executor.update(parent, row(4));
+    jdbc.failOn = 5;
+    executor.update(parent, row(5));
+
+    BatchExecutorException e = assertThrows(BatchExecutorException.class, () -> executor.update(parent, row(6)));
+    assertEquals(2, e.getSuccessfulBatchResults().size());
+    assertEquals("parent", e.getFailingStatementId());
+    // the executed batches are reported once
+    assertEquals(0, executor.flushStatements().size());
+  }
+
+  @Test
+  void shouldSendPipelinedBatchesWithoutSharingTheConnection() throws SQLException {
+    configuration.setBatchSize(3);
+    configuration.setBatchPipelined(true);
+    jdbc.executeDelay = 20;
+    MappedStatement parent = statement("parent", SqlCommandType.INSERT, PARENT);
+    List<String> expected = new ArrayList<>();
+    for (int i = 1; i <= 10; i++) {
+      executor.update(parent, row(i));
+      expected.add(PARENT + " [" + i + "]");
+    }
+
+    List<BatchResult> results = executor.flushStatements();
+    int rows = 0;
+    for (BatchResult result : results) {
+      rows += result.getUpdateCounts().length;
+    }
+    assertEquals(10, rows);
+    assertEquals(expected, jdbc.executed);
+    assertTrue(jdbc.threads.contains("execute:mybatis-batch"));
+    assertEquals(Collections.singleton("bind:" + Thread.currentThread().getName()), bindingThreads());
+    assertFalse(jdbc.overlap.get());
+  }
+
+  @Test
+  void shouldReportAFailedPipelinedBatch() throws SQLException {
+    configuration.setBatchSize(3);
+    configuration.setBatchPipelined(true);
+    jdbc.failOn = 2;
+    MappedStatement parent = statement("parent", SqlCommandType.INSERT, PARENT);
+    for (int i = 1; i <= 3; i++) {
+      executor.update(parent, row(i));
+    }
+
+    BatchExecutorException e = assertThrows(BatchExecutorException.class, executor::flushStatements);
+    assertEquals("parent", e.getFailingStatementId());
+    assertEquals(0, e.getSuccessfulBatchResults().size());
+    jdbc.failOn = null;
+    assertEquals(0, executor.flushStatements().size());
+  }
+
+  @Test
+  void shouldDiscardQueuedUpdatesOnRollback() throws SQLException {
+    configuration.setBatchSize(3);
+    configuration.setBatchPipelined(true);
+    jdbc.executeDelay = 50;
+    MappedStatement parent = statement("parent", SqlCommandType.INSERT, PARENT);
+    for (int i = 1; i <= 4; i++) {
+      executor.update(parent, row(i));
+    }
+    executor.rollback(true);
+
+    assertFalse(jdbc.executed.contains(PARENT + " [4]"));
+    assertEquals(0, executor.flushStatements().size());
+    assertFalse(jdbc.overlap.get());
+  }
+
+  @Test
+  void shouldInsertSeveralRowsPerStatement() throws SQLException {
+    configuration.setBatchInsertRows(3);
+    // the database reports the rows inserted by each statement
+    jdbc.rowCount = sql -> sql.split("\\(\\?").length - 1;
+    MappedStatement parent = statement("parent", SqlCommandType.INSERT, PARENT);
+    for (int i = 1; i <= 7; i++) {
+      executor.update(parent, row(i));
+    }
+
+    List<BatchResult> results = executor.flushStatements();
+    assertEquals(1, results.size());
+    assertArrayEquals(new int[] { 1, 1, 1, 1, 1, 1, 1 }, results.get(0).getUpdateCounts());
+    assertEquals(7, results.get(0).getParameterObjects().size());
+    String threeRows = "insert into parent (id) values (?), (?), (?)";
+    assertEquals(Arrays.asList(threeRows + " [1, 2, 3]", threeRows + " [4, 5, 6]", PARENT + " [7]"), jdbc.executed);
+  }
+
+  @Test
+  void shouldNotTellWhichRowsWereInsertedWhenTheCountDiffers() throws SQLException {
+    configuration.setBatchInsertRows(2);
+    MappedStatement parent = statement("parent", SqlCommandType.INSERT, PARENT);
+    for (int i = 1; i <= 3; i++) {
+      executor.update(parent, row(i));
+    }
+
+    List<BatchResult> results = executor.flushStatements();
+    assertArrayEquals(new int[] { Statement.SUCCESS_NO_INFO, Statement.SUCCESS_NO_INFO, 1 },
+        results.get(0).getUpdateCounts());
+  }
+
+  @Test
+  void shouldNotRewriteStatementsWithComments() throws SQLException {
+    configuration.setBatchInsertRows(2);
+    String commented = "insert into parent (id) /* (?) */ values (?)";
+    MappedStatement parent = statement("parent", SqlCommandType.INSERT, commented);
+    MappedStatement rename = statement("rename", SqlCommandType.UPDATE, "update parent set name = 'x' where id = ?");
+    executor.update(parent, row(1));
+    executor.update(parent, row(2));
+    executor.update(rename, row(1));
+    executor.update(rename, row(2));
+
+    List<BatchResult> results = executor.flushStatements();
+    assertEquals(2, results.size());
+    assertArrayEquals(new int[] { 1, 1 }, results.get(0).getUpdateCounts());
+    assertEquals(Arrays.asList(commented + " [1]", commented + " [2]"), jdbc.executed.subList(0, 2));
+  }
+
+  private Set<String> bindingThreads() {
+    Set<String> threads = new HashSet<>();
+    for (String thread : jdbc.threads) {
+      if (thread.startsWith("bind:")) {
+        threads.add(thread);
+      }
+    }
+    return threads;
+  }
+
+  private MappedStatement statement(String id, SqlCommandType type, String sql) {
+    return statement(id, type, new StaticSqlSource(configuration, sql, idMapping()));
+  }
+
+  private MappedStatement statement(String id, SqlCommandType type, SqlSource sqlSource) {
+    MappedStatement ms = new MappedStatement.Builder(configuration, id, sqlSource, type).build();
+    configuration.addMappedStatement(ms);
+    return ms;
+  }
+
+  private List<ParameterMapping> idMapping() {
+    return new ArrayList<>(Collections.singletonList(new ParameterMapping.Builder(configuration, "id", Object.class)
+        .build()));
+  }
+
+  private static Map<String, Object> row(Object id) {
+    Map<String, Object> row = new HashMap<>();
+    row.put("id", id);
+    return row;
+  }
+
+}
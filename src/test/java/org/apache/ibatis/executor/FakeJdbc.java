@@ -0,0 +1,151 @@
+/*
+ *    Copyright 2009-2022 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor;
+
+import java.lang.reflect.Proxy;
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ToIntFunction;
+
+/**
+ * A connection whose prepared statements record the rows they execute, as {@code "sql [parameters]"}.
+ */
+class FakeJdbc {
+
+  final List<String> executed = Collections.synchronizedList(new ArrayList<>());
+  final List<String> prepared = Collections.synchronizedList(new ArrayList<>());
+  final List<String> closed = Collections.synchronizedList(new ArrayList<>());
+  // the kind of calls ("bind" or "execute") made by each thread, by thread name
+  final Set<String> threads = ConcurrentHashMap.newKeySet();
+  // whether two threads ever used the connection at once
+  final AtomicBoolean overlap = new AtomicBoolean();
+  // the update count reported for each row of a batch, by SQL
+  volatile ToIntFunction<String> rowCount = sql -> 1;
+  volatile long executeDelay;
+  volatile Object failOn;
+
+  private final AtomicInteger busy = new AtomicInteger();
+
+  Connection connection() {
+    return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { Connection.class },
+        (proxy, method, args) -> {
+          enter();
+          try {
+            switch (method.getName()) {
+              case "prepareStatement":
+                prepared.add((String) args[0]);
+                return statement((String) args[0], (Connection) proxy);
+              case "getAutoCommit":
+              case "isClosed":
+                return false;
+              default:
+                return defaultValue(method.getReturnType());
+            }
+          } finally {
+            busy.decrementAndGet();
+          }
+        });
+  }
+
+  private PreparedStatement statement(String sql, Connection connection) {
+    List<List<Object>> batch = new ArrayList<>();
+    Map<Integer, Object> parameters = new TreeMap<>();
+    return (PreparedStatement) Proxy.newProxyInstance(getClass().getClassLoader(),
+        new Class<?>[] { PreparedStatement.class }, (proxy, method, args) -> {
+          enter();
+          try {
+            String name = method.getName();
+            if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer) {
+              parameters.put((Integer) args[0], args[1]);
+              threads.add("bind:" + Thread.currentThread().getName());
+              return null;
+            }
+            switch (name) {
+              case "addBatch":
+                batch.add(new ArrayList<>(parameters.values()));
+                parameters.clear();
+                return null;
+              case "executeBatch":
+                return executeBatch(sql, batch);
+              case "execute":
+                executed.add(sql + " " + parameters.values());
+                parameters.clear();
+                return false;
+              case "getUpdateCount":
+                return 1;
+              case "getConnection":
+                return connection;
+              case "close":
+                closed.add(sql);
+                return null;
+              default:
+                return defaultValue(method.getReturnType());
+            }
+          } finally {
+            busy.decrementAndGet();
+          }
+        });
+  }
+
+  private int[] executeBatch(String sql, List<List<Object>> batch) throws Exception {
+    threads.add("execute:" + Thread.currentThread().getName());
+    if (executeDelay > 0) {
+      Thread.sleep(executeDelay);
+    }
+    int[] counts = new int[batch.size()];
+    try {
+      for (int i = 0; i < batch.size(); i++) {
+        if (failOn != null && batch.get(i).contains(failOn)) {
+          throw new BatchUpdateException("Failed on " + failOn, Arrays.copyOf(counts, i));
+        }
+        executed.add(sql + " " + batch.get(i));
+        counts[i] = rowCount.applyAsInt(sql);
+      }
+      return counts;
+    } finally {
+      batch.clear();
+    }
+  }
+
+  private void enter() {
+    if (busy.incrementAndGet() > 1) {
+      overlap.set(true);
+    }
+  }
+
+  private static Object defaultValue(Class<?> type) {
+    if (type == boolean.class) {
+      return false;
+    } else if (type == int.class) {
+      return 0;
+    } else if (type == long.class) {
+      return 0L;
+    }
+    return null;
+  }
+
+}
@@ -0,0 +1,97 @@
+/*
+ *    Copyright 2009-2022 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.apache.ibatis.cache.EmptyResult;
+import org.junit.jupiter.api.Test;
+
+class LocalCacheTest {
+
+  @Test
+  void shouldEvictLeastRecentlyUsedEntriesOnlyWhenAsked() {
+    LocalCache cache = new LocalCache("local", 2, 0);
+    cache.putObject("a", Collections.singletonList(1));
+    cache.putObject("b", Collections.singletonList(2));
+    cache.putObject("c", Collections.singletonList(3));
+    // pending deferred loads may still need every entry
+    assertEquals(3, cache.getSize());
+    cache.getObject("a");
+    cache.evictExcess();
+    assertEquals(2, cache.getSize());
+    assertNotNull(cache.getObject("a"));
+    assertNull(cache.getObject("b"));
+    assertNotNull(cache.getObject("c"));
+  }
+
+  @Test
+  void shouldBoundTheNumberOfCachedRows() {
+    LocalCache cache = new LocalCache("local", 0, 4);
+    cache.putObject("a", Arrays.asList(1, 2));
+    cache.putObject("b", Arrays.asList(1, 2, 3));
+    assertEquals(5, cache.getRows());
+    cache.evictExcess();
+    assertNull(cache.getObject("a"));
+    assertEquals(3, cache.getRows());
+
+    cache.putObject("b", Collections.singletonList(1));
+    assertEquals(1, cache.getRows());
+    cache.removeObject("b");
+    assertEquals(0, cache.getRows());
+  }
+
+  @Test
+  void shouldNeverEvictExecutionPlaceholders() {
+    LocalCache cache = new LocalCache("local", 1, 0);
+    cache.putObject("running", ExecutionPlaceholder.EXECUTION_PLACEHOLDER);
+    cache.putObject("done", Collections.singletonList(1));
+    cache.evictExcess();
+    assertSame(ExecutionPlaceholder.EXECUTION_PLACEHOLDER, cache.getObject("running"));
+    assertNull(cache.getObject("done"));
+  }
+
+  @Test
+  void shouldNotCountRowsOfSharedEmptyResults() {
+    LocalCache cache = new LocalCache("local", 0, 1);
+    cache.putObject("a", EmptyResult.INSTANCE);
+    cache.putObject("b", Collections.singletonList(1));
+    assertEquals(1, cache.getRows());
+    cache.evictExcess();
+    assertEquals(2, cache.getSize());
+    cache.clear();
+    assertEquals(0, cache.getRows());
+    assertEquals(0, cache.getSize());
+  }
+
+  @Test
+  void shouldBeUnboundedByDefault() {
+    LocalCache cache = new LocalCache("local", 0, 0);
+    for (int i = 0; i < 1000; i++) {
+      cache.putObject(i, Collections.singletonList(i));
+    }
+    cache.evictExcess();
+    assertEquals(1000, cache.getSize());
+    assertEquals(1000, cache.getRows());
+  }
+
+}
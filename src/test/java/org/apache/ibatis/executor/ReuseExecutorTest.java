@@ -0,0 +1,153 @@
+/*
+ *    Copyright 2009-2022 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.ibatis.builder.StaticSqlSource;
+import org.apache.ibatis.cache.metrics.CacheMetrics;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ParameterMapping;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.transaction.jdbc.JdbcTransaction;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class ReuseExecutorTest {
+
+  private static final String FIRST = "update author set name = 'a' where id = ?";
+  private static final String SECOND = "update author set name = 'b' where id = ?";
+  private static final String THIRD = "update author set name = 'c' where id = ?";
+
+  private FakeJdbc jdbc;
+  private Configuration configuration;
+  private CountingMetrics metrics;
+  private final List<String> metricsIds = new ArrayList<>();
+
+  @BeforeEach
+  void setUp() {
+    jdbc = new FakeJdbc();
+    configuration = new Configuration();
+    metrics = new CountingMetrics();
+    configuration.setCacheMetricsFactory(id -> {
+      metricsIds.add(id);
+      return metrics;
+    });
+  }
+
+  @Test
+  void shouldCloseTheLeastRecentlyUsedStatement() throws SQLException {
+    configuration.setReuseStatementCacheSize(2);
+    ReuseExecutor executor = new ReuseExecutor(configuration, new JdbcTransaction(jdbc.connection()));
+    executor.update(statement("first", FIRST), row(1));
+    executor.update(statement("second", SECOND), row(1));
+    executor.update(statement("first", FIRST), row(2));
+    executor.update(statement("third", THIRD), row(1));
+    assertEquals(Collections.singletonList(SECOND), jdbc.closed);
+
+    executor.update(statement("second", SECOND), row(2));
+    assertEquals(Arrays.asList(SECOND, FIRST), jdbc.closed);
+    assertEquals(Arrays.asList(FIRST, SECOND, THIRD, SECOND), jdbc.prepared);
+    assertEquals(5, jdbc.executed.size());
+
+    assertEquals(Collections.singletonList(ReuseExecutor.STATEMENT_CACHE_ID), metricsIds);
+    assertEquals(1, metrics.hits);
+    assertEquals(4, metrics.misses);
+    assertEquals(4, metrics.loads);
+    assertEquals(2, metrics.evictions);
+    executor.close(false);
+  }
+
+  @Test
+  void shouldKeepEveryStatementByDefault() throws SQLException {
+    ReuseExecutor executor = new ReuseExecutor(configuration, new JdbcTransaction(jdbc.connection()));
+    for (int i = 0; i < 3; i++) {
+      executor.update(statement("first", FIRST), row(i));
+      executor.update(statement("second", SECOND), row(i));
+      executor.update(statement("third", THIRD), row(i));
+    }
+    assertEquals(Arrays.asList(FIRST, SECOND, THIRD), jdbc.prepared);
+    assertEquals(Collections.emptyList(), jdbc.closed);
+    assertEquals(6, metrics.hits);
+    assertEquals(0, metrics.evictions);
+
+    executor.flushStatements();
+    assertEquals(3, jdbc.closed.size());
+    executor.close(false);
+  }
+
+  private MappedStatement statement(String id, String sql) {
+    if (configuration.hasStatement(id)) {
+      return configuration.getMappedStatement(id);
+    }
+    List<ParameterMapping> parameterMappings = new ArrayList<>(
+        Collections.singletonList(new ParameterMapping.Builder(configuration, "id", Object.class).build()));
+    MappedStatement ms = new MappedStatement.Builder(configuration, id,
+        new StaticSqlSource(configuration, sql, parameterMappings), SqlCommandType.UPDATE).build();
+    configuration.addMappedStatement(ms);
+    return ms;
+  }
+
+  private static Map<String, Object> row(Object id) {
+    Map<String, Object> row = new HashMap<>();
+    row.put("id", id);
+    return row;
+  }
+
+  private static final class CountingMetrics implements CacheMetrics {
+    private int hits;
+    private int misses;
+    private int loads;
+    private int evictions;
+
+    @Override
+    public void recordGet(boolean hit, long nanos) {
+      if (hit) {
+        hits++;
+      } else {
+        misses++;
+      }
+    }
+
+    @Override
+    public void recordPut(int entries, long nanos) {
+    }
+
+    @Override
+    public void recordEviction() {
+      evictions++;
+    }
+
+    @Override
+    public void recordClear(long nanos) {
+    }
+
+    @Override
+    public void recordLoad(long nanos) {
+      loads++;
+    }
+  }
+
+}
@@ -0,0 +1,357 @@
+/*
+ *    Copyright 2009-2022 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor.resultset;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+import org.apache.ibatis.builder.StaticSqlSource;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ResultMap;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.RowBounds;
+import org.junit.jupiter.api.Test;
+
+class CachedResultSetsTest {
+
+  private static final String[] AUTHOR_COLUMNS = { "ID", "NAME", "SCORE", "JOINED" };
+  private static final int[] AUTHOR_TYPES = { Types.INTEGER, Types.VARCHAR, Types.DECIMAL, Types.TIMESTAMP };
+  private static final Object[][] AUTHOR_ROWS = {
+      { 1, "jane", new BigDecimal("4.50"), Timestamp.valueOf("2020-01-02 03:04:05") },
+      { 2, null, null, null } };
+
+  private static final String[] BLOG_COLUMNS = { "ID", "TITLE" };
+  private static final int[] BLOG_TYPES = { Types.BIGINT, Types.VARCHAR };
+  private static final Object[][] BLOG_ROWS = { { 10L, "first" } };
+
+  private final Configuration configuration = new Configuration();
+
+  @Test
+  void shouldMapRecordedRowsAgainIntoNewObjects() throws Exception {
+    MappedStatement ms = statement(Author.class);
+    CachedResultSets.Recording recording = CachedResultSets.startRecording(ms, Integer.MAX_VALUE);
+    List<Object> loaded;
+    try {
+      loaded = handle(ms, statement(resultSet(AUTHOR_COLUMNS, AUTHOR_TYPES, AUTHOR_ROWS)));
+    } finally {
+      CachedResultSets.stopRecording();
+    }
+    CachedResultSets cached = recording.getResult();
+    assertEquals(2, cached.size());
+
+    List<Object> first = handle(ms, cached.newStatement());
+    List<Object> second = handle(ms, cached.newStatement());
+    assertEquals(loaded, first);
+    assertEquals(loaded, second);
+    assertNotSame(first.get(0), second.get(0));
+    Author jane = (Author) first.get(0);
+    assertEquals(Integer.valueOf(1), jane.getId());
+    assertEquals("jane", jane.getName());
+    assertEquals(new BigDecimal("4.50"), jane.getScore());
+    assertEquals(LocalDateTime.of(2020, 1, 2, 3, 4, 5), jane.getJoined());
+    assertEquals(new Author(2, null, null, null), first.get(1));
+  }
+
+  @Test
+  void shouldMapEveryResultSetAgainAfterSerialization() throws Exception {
+    MappedStatement ms = statement(Author.class, Blog.class);
+    CachedResultSets.Recording recording = CachedResultSets.startRecording(ms, Integer.MAX_VALUE);
+    try {
+      handle(ms, statement(resultSet(AUTHOR_COLUMNS, AUTHOR_TYPES, AUTHOR_ROWS),
+          resultSet(BLOG_COLUMNS, BLOG_TYPES, BLOG_ROWS)));
+    } finally {
+      CachedResultSets.stopRecording();
+    }
+    CachedResultSets cached = roundTrip(recording.getResult());
+    assertEquals(3, cached.size());
+
+    List<Object> results = handle(ms, cached.newStatement());
+    assertEquals(2, results.size());
+    assertEquals(2, ((List<?>) results.get(0)).size());
+    assertEquals(Arrays.asList(new Blog(10L, "first")), results.get(1));
+  }
+
+  @Test
+  void shouldNotRecordStatementsThatWereNotAsked() throws Exception {
+    MappedStatement recorded = statement(Author.class);
+    MappedStatement other = statement(Author.class);
+    CachedResultSets.Recording recording = CachedResultSets.startRecording(recorded, Integer.MAX_VALUE);
+    try {
+      handle(other, statement(resultSet(AUTHOR_COLUMNS, AUTHOR_TYPES, AUTHOR_ROWS)));
+    } finally {
+      CachedResultSets.stopRecording();
+    }
+    assertNull(recording.getResult());
+  }
+
+  @Test
+  void shouldConvertCachedValuesLikeADriver() throws SQLException {
+    CachedRows rows = CachedRows.read(resultSet(AUTHOR_COLUMNS, AUTHOR_TYPES, AUTHOR_ROWS), 1);
+    assertEquals(1, rows.size());
+    ResultSet rs = rows.newResultSet();
+    assertThrows(SQLException.class, () -> rs.getInt(1));
+    assertTrue(rs.next());
+    assertEquals("1", rs.getString("id"));
+    assertEquals(1L, rs.getLong(1));
+    assertEquals(4.5d, rs.getDouble("SCORE"), 0d);
+    assertEquals(LocalDateTime.of(2020, 1, 2, 3, 4, 5), rs.getObject("JOINED", LocalDateTime.class));
+    assertFalse(rs.wasNull());
+    assertEquals(4, rs.getMetaData().getColumnCount());
+    assertEquals(Types.DECIMAL, rs.getMetaData().getColumnType(3));
+    assertThrows(SQLException.class, () -> rs.getString("MISSING"));
+    assertFalse(rs.next());
+    rs.close();
+    assertThrows(SQLException.class, rs::next);
+  }
+
+  private MappedStatement statement(Class<?>... resultTypes) {
+    List<ResultMap> resultMaps = new ArrayList<>();
+    for (Class<?> resultType : resultTypes) {
+      resultMaps.add(new ResultMap.Builder(configuration, resultType.getSimpleName(), resultType, new ArrayList<>())
+          .build());
+    }
+    return new MappedStatement.Builder(configuration, "select",
+        new StaticSqlSource(configuration, "select * from author"), SqlCommandType.SELECT).resultMaps(resultMaps)
+            .build();
+  }
+
+  private static List<Object> handle(MappedStatement ms, Statement statement) throws SQLException {
+    return new DefaultResultSetHandler(null, ms, null, null, null, RowBounds.DEFAULT).handleResultSets(statement);
+  }
+
+  private static CachedResultSets roundTrip(CachedResultSets cached) throws Exception {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+      out.writeObject(cached);
+    }
+    try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+      return (CachedResultSets) in.readObject();
+    }
+  }
+
+  private static Statement statement(ResultSet... resultSets) {
+    int[] current = { 0 };
+    // only asked whether it supports multiple result sets
+    DatabaseMetaData metaData = (DatabaseMetaData) Proxy.newProxyInstance(DatabaseMetaData.class.getClassLoader(),
+        new Class<?>[] { DatabaseMetaData.class }, (proxy, method, args) -> true);
+    Connection connection = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+        new Class<?>[] { Connection.class }, (proxy, method, args) -> metaData);
+    return (Statement) Proxy.newProxyInstance(Statement.class.getClassLoader(), new Class<?>[] { Statement.class },
+        (proxy, method, args) -> {
+          switch (method.getName()) {
+            case "getResultSet":
+              return current[0] < resultSets.length ? resultSets[current[0]] : null;
+            case "getMoreResults":
+              return ++current[0] < resultSets.length;
+            case "getUpdateCount":
+              return -1;
+            case "getConnection":
+              return connection;
+            default:
+              throw new UnsupportedOperationException(method.getName());
+          }
+        });
+  }
+
+  /**
+   * A result set that returns the values of each column with the getter of its JDBC type, as drivers do.
+   */
+  private static ResultSet resultSet(String[] columns, int[] types, Object[][] rows) {
+    int[] row = { -1 };
+    boolean[] wasNull = { false };
+    boolean[] closed = { false };
+    ResultSetMetaData metaData = (ResultSetMetaData) Proxy.newProxyInstance(
+        ResultSetMetaData.class.getClassLoader(), new Class<?>[] { ResultSetMetaData.class }, (proxy, method, args) -> {
+          switch (method.getName()) {
+            case "getColumnCount":
+              return columns.length;
+            case "getColumnName":
+            case "getColumnLabel":
+              return columns[(Integer) args[0] - 1];
+            case "getColumnType":
+              return types[(Integer) args[0] - 1];
+            case "getColumnClassName":
+              return Object.class.getName();
+            default:
+              throw new UnsupportedOperationException(method.getName());
+          }
+        });
+    return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[] { ResultSet.class },
+        (proxy, method, args) -> {
+          switch (method.getName()) {
+            case "getMetaData":
+              return metaData;
+            case "next":
+              return ++row[0] < rows.length;
+            case "wasNull":
+              return wasNull[0];
+            case "getType":
+              return ResultSet.TYPE_FORWARD_ONLY;
+            case "close":
+              closed[0] = true;
+              return null;
+            case "isClosed":
+              return closed[0];
+            case "getObject":
+            case "getInt":
+            case "getLong":
+            case "getString":
+            case "getBigDecimal":
+            case "getTimestamp":
+              int column = args[0] instanceof Integer ? (Integer) args[0] - 1
+                  : Arrays.asList(columns).indexOf(((String) args[0]).toUpperCase());
+              Object value = rows[row[0]][column];
+              wasNull[0] = value == null;
+              if (value instanceof Timestamp && args.length == 2 && args[1] == LocalDateTime.class) {
+                return ((Timestamp) value).toLocalDateTime();
+              }
+              return value;
+            default:
+              throw new UnsupportedOperationException(method.getName());
+          }
+        });
+  }
+
+  public static class Author {
+    private Integer id;
+    private String name;
+    private BigDecimal score;
+    private LocalDateTime joined;
+
+    public Author() {
+    }
+
+    Author(Integer id, String name, BigDecimal score, LocalDateTime joined) {
+      this.id = id;
+      this.name = name;
+      this.score = score;
+      this.joined = joined;
+    }
+
+    public Integer getId() {
+      return id;
+    }
+
+    public void setId(Integer id) {
+      this.id = id;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public void setName(String name) {
+      this.name = name;
+    }
+
+    public BigDecimal getScore() {
+      return score;
+    }
+
+    public void setScore(BigDecimal score) {
+      this.score = score;
+    }
+
+    public LocalDateTime getJoined() {
+      return joined;
+    }
+
+    public void setJoined(LocalDateTime joined) {
+      this.joined = joined;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Author)) {
+        return false;
+      }
+      Author other = (Author) o;
+      return Objects.equals(id, other.id) && Objects.equals(name, other.name)
+          && Objects.equals(score, other.score) && Objects.equals(joined, other.joined);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(id, name, score, joined);
+    }
+  }
+
+  public static class Blog {
+    private Long id;
+    private String title;
+
+    public Blog() {
+    }
+
+    Blog(Long id, String title) {
+      this.id = id;
+      this.title = title;
+    }
+
+    public Long getId() {
+      return id;
+    }
+
+    public void setId(Long id) {
+      this.id = id;
+    }
+
+    public String getTitle() {
+      return title;
+    }
+
+    public void setTitle(String title) {
+      this.title = title;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof Blog && Objects.equals(id, ((Blog) o).id)
+          && Objects.equals(title, ((Blog) o).title);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(id, title);
+    }
+  }
+
+}